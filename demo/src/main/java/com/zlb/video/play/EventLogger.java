@@ -56,7 +56,8 @@ import java.util.Locale;
  */
 /* package */ final class EventLogger implements ExoPlayer.EventListener,
         AudioRendererEventListener, VideoRendererEventListener, AdaptiveMediaSourceEventListener,
-    ExtractorMediaSource.EventListener, StreamingDrmSessionManager.EventListener,
+    AdaptiveMediaSourceEventListener.LoadAbandonmentListener, ExtractorMediaSource.EventListener,
+    StreamingDrmSessionManager.EventListener,
     TrackSelector.EventListener<MappedTrackInfo>, MetadataRenderer.Output<List<Id3Frame>> {
 
   private static final String TAG = "EventLogger";
@@ -73,6 +74,9 @@ import java.util.Locale;
   private final Timeline.Period period;
   private final long startTimeMs;
 
+  private int abandonedLoadCount;
+  private long abandonedBytes;
+
   public EventLogger() {
     window = new Timeline.Window();
     period = new Timeline.Period();
@@ -340,6 +344,15 @@ import java.util.Locale;
     // Do nothing.
   }
 
+  @Override
+  public void onLoadAbandoned(int trackType, Format trackFormat, long mediaStartTimeMs,
+      long mediaEndTimeMs, long bytesLoaded) {
+    abandonedLoadCount++;
+    abandonedBytes += bytesLoaded;
+    Log.d(TAG, "loadAbandoned [" + getSessionTimeString() + ", " + getFormatString(trackFormat)
+        + ", " + bytesLoaded + ", count=" + abandonedLoadCount + ", bytes=" + abandonedBytes + "]");
+  }
+
   @Override
   public void onDownstreamFormatChanged(int trackType, Format trackFormat, int trackSelectionReason,
                                         Object trackSelectionData, long mediaTimeMs) {
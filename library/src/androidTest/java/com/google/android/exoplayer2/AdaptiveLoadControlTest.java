@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelections;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AdaptiveLoadControl}.
+ */
+public class AdaptiveLoadControlTest extends TestCase {
+
+  private static final int MIN_BUFFER_MS = 15000;
+  private static final int MAX_BUFFER_MS = 30000;
+  private static final int MAX_ADAPTED_MIN_BUFFER_MS = 45000;
+  private static final int STALL_BUFFER_INCREMENT_MS = 5000;
+  private static final int METERED_MAX_BUFFER_BYTES = 1024 * 1024;
+  private static final int ALLOCATION_SIZE = 64 * 1024;
+
+  private FakeBandwidthMeter bandwidthMeter;
+  private FakeClock clock;
+  private DefaultAllocator allocator;
+  private AdaptiveLoadControl loadControl;
+
+  @Override
+  protected void setUp() throws Exception {
+    bandwidthMeter = new FakeBandwidthMeter();
+    clock = new FakeClock(0);
+    allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    loadControl = new AdaptiveLoadControl(allocator, bandwidthMeter, MIN_BUFFER_MS, MAX_BUFFER_MS,
+        MAX_ADAPTED_MIN_BUFFER_MS, STALL_BUFFER_INCREMENT_MS, 2500, 5000, METERED_MAX_BUFFER_BYTES,
+        clock);
+    loadControl.onPrepared();
+    TrackGroup trackGroup = new TrackGroup(
+        Format.createSampleFormat(null, MimeTypes.VIDEO_H264, null, 1000000, null));
+    loadControl.onTracksSelected(new Renderer[] {new FakeVideoRenderer()},
+        new TrackGroupArray(trackGroup),
+        new TrackSelections<>(null, new FixedTrackSelection(trackGroup, 0)));
+  }
+
+  public void testStableBandwidthUsesConfiguredWatermarks() {
+    for (int i = 0; i < 16; i++) {
+      bandwidthMeter.bitrateEstimate = 1000000 + (i % 2);
+      loadControl.shouldContinueLoading(0);
+    }
+    assertEquals(MIN_BUFFER_MS, loadControl.getMinBufferMs());
+    assertEquals(MAX_BUFFER_MS, loadControl.getMaxBufferMs());
+  }
+
+  public void testVariableBandwidthRaisesWatermarks() {
+    for (int i = 0; i < 16; i++) {
+      bandwidthMeter.bitrateEstimate = i % 2 == 0 ? 500000 : 1500000;
+      loadControl.shouldContinueLoading(0);
+    }
+    // The coefficient of variation is 0.5.
+    assertEquals(MIN_BUFFER_MS * 3 / 2, loadControl.getMinBufferMs());
+    assertEquals(MAX_BUFFER_MS + MIN_BUFFER_MS / 2, loadControl.getMaxBufferMs());
+    assertTrue(loadControl.shouldContinueLoading(MIN_BUFFER_MS * 1000L + 1));
+  }
+
+  public void testStallsRaiseWatermarksUntilPrepared() {
+    assertTrue(loadControl.shouldStartPlayback(5000000, false));
+    assertFalse(loadControl.shouldStartPlayback(0, true));
+    // Repeated calls during the same rebuffer are a single stall.
+    assertFalse(loadControl.shouldStartPlayback(1000000, true));
+    assertTrue(loadControl.shouldStartPlayback(5000000, true));
+    assertEquals(1, loadControl.getStallCount());
+    assertEquals(MIN_BUFFER_MS + STALL_BUFFER_INCREMENT_MS, loadControl.getMinBufferMs());
+    for (int i = 0; i < 10; i++) {
+      loadControl.shouldStartPlayback(0, true);
+      loadControl.shouldStartPlayback(5000000, true);
+    }
+    assertEquals(11, loadControl.getStallCount());
+    assertEquals(MAX_ADAPTED_MIN_BUFFER_MS, loadControl.getMinBufferMs());
+    loadControl.onPrepared();
+    assertEquals(0, loadControl.getStallCount());
+    assertEquals(MIN_BUFFER_MS, loadControl.getMinBufferMs());
+  }
+
+  public void testMeteredNetworkLimitsBufferedBytes() {
+    Allocation[] allocations = allocate(METERED_MAX_BUFFER_BYTES / ALLOCATION_SIZE);
+    long bufferedDurationUs = MIN_BUFFER_MS * 1000L + 1;
+    assertTrue(loadControl.shouldContinueLoading(0));
+    assertTrue(loadControl.shouldContinueLoading(bufferedDurationUs));
+    loadControl.setNetworkMetered(true);
+    assertFalse(loadControl.shouldContinueLoading(bufferedDurationUs));
+    // Loading always continues below the minimum buffer duration.
+    assertTrue(loadControl.shouldContinueLoading(MIN_BUFFER_MS * 1000L - 1));
+    allocator.release(allocations);
+  }
+
+  public void testWastedBytesOnAbandon() {
+    Allocation[] allocations = allocate(10);
+    loadControl.shouldContinueLoading(20000000);
+    // A quarter of the buffered media is played before playback is abandoned.
+    clock.advance(5000);
+    allocator.release(allocations);
+    loadControl.onStopped();
+    assertEquals(10 * ALLOCATION_SIZE * 3 / 4, loadControl.getWastedBytes());
+    // Media that was fully played isn't counted.
+    loadControl.onPrepared();
+    allocations = allocate(10);
+    loadControl.shouldContinueLoading(20000000);
+    clock.advance(30000);
+    allocator.release(allocations);
+    loadControl.onReleased();
+    assertEquals(10 * ALLOCATION_SIZE * 3 / 4, loadControl.getWastedBytes());
+  }
+
+  private Allocation[] allocate(int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate = NO_ESTIMATE;
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+  }
+
+  private static final class FakeVideoRenderer extends BaseRenderer {
+
+    public FakeVideoRenderer() {
+      super(C.TRACK_TYPE_VIDEO);
+    }
+
+    @Override
+    public int supportsFormat(Format format) {
+      return FORMAT_HANDLED;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the scheduling of the rendering loop in {@link ExoPlayerImplInternal}.
+ */
+public class ExoPlayerImplInternalTest extends TestCase {
+
+  private static final long PLAYBACK_DURATION_US = 10 * C.MICROS_PER_SECOND;
+  private static final long FRAME_DURATION_US = C.MICROS_PER_SECOND / 30;
+
+  public void testRenderingIntervalIsClamped() {
+    long defaultIntervalUs = ExoPlayerImplInternal.RENDERING_INTERVAL_MS * 1000L;
+    long maxIntervalUs = ExoPlayerImplInternal.MAX_RENDERING_INTERVAL_MS * 1000L;
+    assertEquals(defaultIntervalUs, getRenderingIntervalUs(C.TIME_UNSET));
+    assertEquals(defaultIntervalUs, getRenderingIntervalUs(0));
+    assertEquals(defaultIntervalUs + 1, getRenderingIntervalUs(defaultIntervalUs + 1));
+    assertEquals(maxIntervalUs, getRenderingIntervalUs(Long.MAX_VALUE));
+  }
+
+  public void testFrameDeadlinesReduceWakeups() {
+    int defaultWakeupCount = countWakeups(new FakeRenderer(false));
+    int frameDeadlineWakeupCount = countWakeups(new FakeRenderer(true));
+    // Without deadlines the loop runs at the default rendering interval. With them it runs about
+    // once per frame.
+    assertEquals(PLAYBACK_DURATION_US / (ExoPlayerImplInternal.RENDERING_INTERVAL_MS * 1000L),
+        defaultWakeupCount);
+    long frameCount = PLAYBACK_DURATION_US / FRAME_DURATION_US;
+    assertTrue(frameDeadlineWakeupCount <= frameCount + 1);
+    assertTrue(frameDeadlineWakeupCount * 3 <= defaultWakeupCount);
+  }
+
+  private static long getRenderingIntervalUs(final long renderDelayUs) {
+    FakeRenderer renderer = new FakeRenderer(false) {
+      @Override
+      public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+        return renderDelayUs;
+      }
+    };
+    return ExoPlayerImplInternal.getRenderingIntervalUs(renderer, 0, 0);
+  }
+
+  /**
+   * Simulates the rendering loop for {@link #PLAYBACK_DURATION_US}, with the playback position
+   * advancing in real time, and returns the number of iterations.
+   */
+  private static int countWakeups(FakeRenderer renderer) {
+    int wakeupCount = 0;
+    long positionUs = 0;
+    while (positionUs < PLAYBACK_DURATION_US) {
+      wakeupCount++;
+      positionUs += ExoPlayerImplInternal.getRenderingIntervalUs(renderer, positionUs, positionUs);
+    }
+    return wakeupCount;
+  }
+
+  /**
+   * A renderer that optionally reports the time until its next frame, as video renderers do.
+   */
+  private static class FakeRenderer extends BaseRenderer {
+
+    private final boolean reportFrameDeadlines;
+
+    public FakeRenderer(boolean reportFrameDeadlines) {
+      super(C.TRACK_TYPE_VIDEO);
+      this.reportFrameDeadlines = reportFrameDeadlines;
+    }
+
+    @Override
+    public int supportsFormat(Format format) {
+      return FORMAT_HANDLED;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return false;
+    }
+
+    @Override
+    public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+      if (!reportFrameDeadlines) {
+        return C.TIME_UNSET;
+      }
+      return (positionUs / FRAME_DURATION_US + 1) * FRAME_DURATION_US - positionUs;
+    }
+
+  }
+
+}
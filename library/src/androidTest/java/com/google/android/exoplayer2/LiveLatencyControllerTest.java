@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LiveLatencyController}.
+ */
+public class LiveLatencyControllerTest extends TestCase {
+
+  private static final long TOLERANCE_MS = LiveLatencyController.DEFAULT_LATENCY_TOLERANCE_MS;
+  private static final float MAX_ADJUSTMENT = LiveLatencyController.DEFAULT_MAX_SPEED_ADJUSTMENT;
+  private static final long TARGET_LATENCY_MS = 10000;
+
+  public void testSpeedWithinTolerance() {
+    assertEquals(1f, getSpeed(0));
+    assertEquals(1f, getSpeed(TOLERANCE_MS));
+    assertEquals(1f, getSpeed(-TOLERANCE_MS));
+  }
+
+  public void testSpeedIsProportionalAndBounded() {
+    float behindSpeed = getSpeed(2000);
+    float furtherBehindSpeed = getSpeed(4000);
+    assertTrue(behindSpeed > 1);
+    assertTrue(furtherBehindSpeed > behindSpeed);
+    assertEquals(1 + MAX_ADJUSTMENT, getSpeed(60000), 0.001f);
+    float aheadSpeed = getSpeed(-2000);
+    assertTrue(aheadSpeed < 1);
+    assertEquals(1 - MAX_ADJUSTMENT, getSpeed(-60000), 0.001f);
+  }
+
+  public void testConvergesAfterRebuffer() {
+    // Simulates a live origin whose edge advances in real time, whilst playback advances at the
+    // controlled speed, one second at a time. A 5 second rebuffer leaves playback behind.
+    long latencyMs = TARGET_LATENCY_MS + 5000;
+    float previousSpeed = Float.MAX_VALUE;
+    int elapsedSeconds = 0;
+    while (Math.abs(latencyMs - TARGET_LATENCY_MS) > TOLERANCE_MS) {
+      float speed = getSpeed(latencyMs - TARGET_LATENCY_MS);
+      assertTrue(speed > 1);
+      // The speed is never increased whilst catching up, so the adjustment is gentle.
+      assertTrue(speed <= previousSpeed);
+      previousSpeed = speed;
+      latencyMs -= (long) ((speed - 1) * 1000);
+      elapsedSeconds++;
+      assertTrue(elapsedSeconds < 600);
+    }
+    // Having converged, the latency doesn't overshoot and the speed returns to normal.
+    assertTrue(latencyMs >= TARGET_LATENCY_MS);
+    assertEquals(1f, getSpeed(latencyMs - TARGET_LATENCY_MS));
+  }
+
+  public void testConvergesWhenTooCloseToLiveEdge() {
+    long latencyMs = TARGET_LATENCY_MS - 3000;
+    int elapsedSeconds = 0;
+    while (Math.abs(latencyMs - TARGET_LATENCY_MS) > TOLERANCE_MS) {
+      float speed = getSpeed(latencyMs - TARGET_LATENCY_MS);
+      assertTrue(speed < 1);
+      latencyMs -= (long) ((speed - 1) * 1000);
+      elapsedSeconds++;
+      assertTrue(elapsedSeconds < 600);
+    }
+    assertTrue(latencyMs <= TARGET_LATENCY_MS);
+  }
+
+  private static float getSpeed(long latencyErrorMs) {
+    return LiveLatencyController.getSpeed(latencyErrorMs, TOLERANCE_MS, MAX_ADJUSTMENT);
+  }
+
+}
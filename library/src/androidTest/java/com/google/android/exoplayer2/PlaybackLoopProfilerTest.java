@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.exoplayer2.PlaybackLoopProfiler.Snapshot;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PlaybackLoopProfiler}.
+ */
+public class PlaybackLoopProfilerTest extends TestCase {
+
+  private static final String TAG = "PlaybackLoopProfilerTest";
+
+  public void testPhasesAreRecorded() {
+    PlaybackLoopProfiler profiler = new PlaybackLoopProfiler();
+    profiler.onIterationStarted();
+    SystemClock.sleep(2);
+    profiler.onUpdatePeriodsEnded();
+    profiler.onUpdatePlaybackPositionsEnded();
+    profiler.onRenderStarted();
+    SystemClock.sleep(5);
+    profiler.onRenderEnded(1);
+    profiler.onIterationEnded(10);
+
+    Snapshot snapshot = profiler.getSnapshot();
+    assertEquals(1, snapshot.iterationCount);
+    assertEquals(0, snapshot.overrunCount);
+    assertEquals(0, snapshot.lateIterationCount);
+    assertTrue(snapshot.updatePeriodsDurationsUs.getMin() >= 2000);
+    assertEquals(1, snapshot.updatePlaybackPositionsDurationsUs.getCount());
+    assertEquals(2, snapshot.renderDurationsUs.length);
+    assertEquals(0, snapshot.renderDurationsUs[0].getCount());
+    assertTrue(snapshot.renderDurationsUs[1].getMin() >= 5000);
+    assertTrue(snapshot.iterationDurationsUs.getMin() >= 7000);
+  }
+
+  public void testOverrunsAndLateIterationsAreCounted() {
+    PlaybackLoopProfiler profiler = new PlaybackLoopProfiler();
+    profiler.onIterationStarted();
+    // The iteration took longer than the interval to the next iteration.
+    profiler.onIterationEnded(-1);
+    profiler.onIterationStarted();
+    profiler.onIterationEnded(1);
+    // The next iteration starts well after it was scheduled.
+    SystemClock.sleep(1 + (PlaybackLoopProfiler.LATE_ITERATION_THRESHOLD_US / 1000) * 2);
+    profiler.onIterationStarted();
+    profiler.onIterationEnded(C.TIME_UNSET);
+    // No iteration was scheduled, so the next can't be late.
+    SystemClock.sleep(50);
+    profiler.onIterationStarted();
+
+    Snapshot snapshot = profiler.getSnapshot();
+    assertEquals(4, snapshot.iterationCount);
+    assertEquals(1, snapshot.overrunCount);
+    assertEquals(1, snapshot.lateIterationCount);
+    assertEquals(4, snapshot.iterationLatenessesUs.getCount());
+    assertEquals(1, snapshot.iterationLatenessesUs.getCountAbove(
+        PlaybackLoopProfiler.LATE_ITERATION_THRESHOLD_US));
+  }
+
+  public void testSnapshotIsUnaffectedByLaterIterations() {
+    PlaybackLoopProfiler profiler = new PlaybackLoopProfiler();
+    profiler.onIterationStarted();
+    profiler.onRenderStarted();
+    profiler.onRenderEnded(0);
+    profiler.onIterationEnded(10);
+    Snapshot snapshot = profiler.getSnapshot();
+    profiler.onIterationStarted();
+    profiler.onRenderStarted();
+    profiler.onRenderEnded(0);
+    profiler.onIterationEnded(10);
+    assertEquals(1, snapshot.iterationCount);
+    assertEquals(1, snapshot.renderDurationsUs[0].getCount());
+    profiler.reset();
+    assertEquals(0, profiler.getSnapshot().iterationCount);
+    assertEquals(1, snapshot.iterationDurationsUs.getCount());
+  }
+
+  public void testProfilingOverhead() {
+    PlaybackLoopProfiler profiler = new PlaybackLoopProfiler();
+    int iterationCount = 100000;
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < iterationCount; i++) {
+      profiler.onIterationStarted();
+      profiler.onUpdatePeriodsEnded();
+      profiler.onUpdatePlaybackPositionsEnded();
+      for (int j = 0; j < 2; j++) {
+        profiler.onRenderStarted();
+        profiler.onRenderEnded(j);
+      }
+      profiler.onIterationEnded(0);
+    }
+    long nanosPerIteration = (System.nanoTime() - startTimeNs) / iterationCount;
+    Log.d(TAG, "nanosPerIteration=" + nanosPerIteration);
+    // A playback loop iteration typically takes at least hundreds of microseconds.
+    assertTrue(nanosPerIteration < 50000);
+  }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.concurrent.atomic.AtomicBoolean;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultTrackOutput}.
+ */
+public class DefaultTrackOutputTest extends TestCase {
+
+  private static final String TAG = "DefaultTrackOutputTest";
+
+  private static final Format FORMAT = Format.createSampleFormat(null, MimeTypes.VIDEO_H264, null,
+      Format.NO_VALUE, null);
+  private static final int ALLOCATION_SIZE = 16;
+
+  private DefaultTrackOutput trackOutput;
+  private FormatHolder formatHolder;
+  private DecoderInputBuffer buffer;
+
+  @Override
+  public void setUp() {
+    trackOutput = new DefaultTrackOutput(new DefaultAllocator(false, ALLOCATION_SIZE));
+    formatHolder = new FormatHolder();
+    buffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  public void testReadFormatThenSamples() {
+    trackOutput.format(FORMAT);
+    writeSample(trackOutput, 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 10, 0);
+
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertSame(FORMAT, formatHolder.format);
+    assertReadSample(0, true);
+    assertReadSample(10, false);
+    assertEquals(C.RESULT_NOTHING_READ, read());
+    assertTrue(trackOutput.isEmpty());
+    assertEquals(2, trackOutput.getReadIndex());
+    assertEquals(10, trackOutput.getLargestQueuedTimestampUs());
+  }
+
+  public void testQueueGrowsWhilstPartiallyRead() {
+    trackOutput.format(FORMAT);
+    int sampleCount = 2500;
+    int readCount = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      writeSample(trackOutput, i, C.BUFFER_FLAG_KEY_FRAME);
+      if (i % 3 == 0) {
+        // Read more slowly than writing, so that the queue wraps and grows.
+        if (readCount == 0) {
+          assertEquals(C.RESULT_FORMAT_READ, read());
+        }
+        assertReadSample(readCount++, true);
+      }
+    }
+    while (readCount < sampleCount) {
+      assertReadSample(readCount++, true);
+    }
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testSpliceDiscardsUnreadLaterSamples() {
+    trackOutput.format(FORMAT);
+    writeSample(trackOutput, 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 10, 0);
+    writeSample(trackOutput, 20, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 30, 0);
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertReadSample(0, true);
+
+    trackOutput.splice();
+    // Non-keyframes can't be spliced in, and so are dropped.
+    writeSample(trackOutput, 14, 0);
+    writeSample(trackOutput, 15, C.BUFFER_FLAG_KEY_FRAME);
+
+    assertReadSample(10, false);
+    assertReadSample(15, true);
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testSpliceFailsIfLaterSampleRead() {
+    trackOutput.format(FORMAT);
+    writeSample(trackOutput, 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 20, C.BUFFER_FLAG_KEY_FRAME);
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertReadSample(0, true);
+    assertReadSample(20, true);
+
+    trackOutput.splice();
+    writeSample(trackOutput, 15, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 25, C.BUFFER_FLAG_KEY_FRAME);
+
+    assertReadSample(25, true);
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testSkipToKeyframeBefore() {
+    trackOutput.format(FORMAT);
+    writeSample(trackOutput, 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 10, 0);
+    writeSample(trackOutput, 20, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 30, 0);
+
+    assertFalse(trackOutput.skipToKeyframeBefore(40));
+    assertTrue(trackOutput.skipToKeyframeBefore(25));
+    assertEquals(2, trackOutput.getReadIndex());
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertReadSample(20, true);
+  }
+
+  public void testSkipBackwardWithoutBackBufferFails() {
+    trackOutput.format(FORMAT);
+    writeSample(trackOutput, 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(trackOutput, 10, 0);
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertReadSample(0, true);
+
+    assertFalse(trackOutput.skipToKeyframeBefore(0, true));
+    assertEquals(1, trackOutput.getFirstIndex());
+    assertReadSample(10, false);
+  }
+
+  public void testSkipBackwardWithinBackBuffer() {
+    trackOutput.setBackBufferDurationUs(100);
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 10; i++) {
+      writeSample(trackOutput, i * 10, i % 5 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    for (int i = 0; i < 8; i++) {
+      assertReadSample(i * 10, i % 5 == 0);
+    }
+    assertEquals(0, trackOutput.getFirstIndex());
+
+    // Skipping backward without allowing it should fail, since the samples have been read.
+    assertFalse(trackOutput.skipToKeyframeBefore(35));
+    assertTrue(trackOutput.skipToKeyframeBefore(35, true));
+    assertEquals(0, trackOutput.getReadIndex());
+    for (int i = 0; i < 10; i++) {
+      assertReadSample(i * 10, i % 5 == 0);
+    }
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testBackBufferRetainsKeyframeOfEarliestRetainedSample() {
+    trackOutput.setBackBufferDurationUs(25);
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 10; i++) {
+      writeSample(trackOutput, i * 10, i % 5 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    for (int i = 0; i < 9; i++) {
+      assertReadSample(i * 10, i % 5 == 0);
+    }
+    // Samples from 60 are retained, so the keyframe at 50 on which they depend is also retained.
+    assertEquals(5, trackOutput.getFirstIndex());
+    assertFalse(trackOutput.skipToKeyframeBefore(40, true));
+    assertTrue(trackOutput.skipToKeyframeBefore(65, true));
+    assertReadSample(50, true);
+    // Samples before the keyframe at 50 were discarded, and so remain unavailable.
+    assertEquals(5, trackOutput.getFirstIndex());
+  }
+
+  public void testBackBufferDurationChangedWhilstReading() {
+    trackOutput.setBackBufferDurationUs(25);
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 20; i++) {
+      writeSample(trackOutput, i * 10, i % 5 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    for (int i = 0; i < 9; i++) {
+      assertReadSample(i * 10, i % 5 == 0);
+    }
+    assertEquals(5, trackOutput.getFirstIndex());
+
+    // Increasing the duration retains everything that hasn't already been discarded.
+    trackOutput.setBackBufferDurationUs(1000);
+    for (int i = 9; i < 17; i++) {
+      assertReadSample(i * 10, i % 5 == 0);
+    }
+    assertEquals(5, trackOutput.getFirstIndex());
+
+    // Decreasing it again discards samples up to the keyframe of the earliest retained sample.
+    trackOutput.setBackBufferDurationUs(25);
+    assertReadSample(170, false);
+    assertEquals(15, trackOutput.getFirstIndex());
+    assertTrue(trackOutput.skipToKeyframeBefore(155, true));
+    assertReadSample(150, true);
+  }
+
+  public void testBackBufferLimitedBySize() {
+    trackOutput.setBackBufferDurationUs(1000);
+    // Each sample holds 8 bytes of data, so at most three samples can be retained.
+    trackOutput.setMaxBackBufferSize(24);
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 10; i++) {
+      writeSample(trackOutput, i * 10, i % 2 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    for (int i = 0; i < 8; i++) {
+      assertReadSample(i * 10, i % 2 == 0);
+    }
+    assertEquals(5, trackOutput.getFirstIndex());
+    // The sample at 50 depends on a keyframe that was discarded, so the earliest keyframe that can
+    // be skipped back to is at 60.
+    assertFalse(trackOutput.skipToKeyframeBefore(55, true));
+    assertTrue(trackOutput.skipToKeyframeBefore(65, true));
+    assertReadSample(60, true);
+  }
+
+  public void testBackBufferRetainedWhilstQueueGrows() {
+    trackOutput.setBackBufferDurationUs(Long.MAX_VALUE / 2);
+    trackOutput.format(FORMAT);
+    int sampleCount = 2500;
+    for (int i = 0; i < sampleCount; i++) {
+      writeSample(trackOutput, i, C.BUFFER_FLAG_KEY_FRAME);
+      if (i == 0) {
+        assertEquals(C.RESULT_FORMAT_READ, read());
+      }
+      assertReadSample(i, true);
+    }
+    assertTrue(trackOutput.skipToKeyframeBefore(0, true));
+    for (int i = 0; i < sampleCount; i++) {
+      assertReadSample(i, true);
+    }
+  }
+
+  public void testConcurrentWritesAndReads() throws InterruptedException {
+    final int sampleCount = 500000;
+    final AtomicBoolean writingFinished = new AtomicBoolean();
+    trackOutput.format(FORMAT);
+    Thread writingThread = new Thread() {
+      @Override
+      public void run() {
+        long timeUs = 0;
+        for (int i = 0; i < sampleCount; i++) {
+          if (i % 1000 == 999) {
+            // Splice in a sample that overlaps those that were most recently written.
+            trackOutput.splice();
+            timeUs -= 35;
+          }
+          writeSample(trackOutput, timeUs, C.BUFFER_FLAG_KEY_FRAME);
+          timeUs += 10;
+        }
+        writingFinished.set(true);
+      }
+    };
+
+    long startTimeNs = System.nanoTime();
+    writingThread.start();
+    int readCount = 0;
+    long lastTimeUs = Long.MIN_VALUE;
+    while (true) {
+      boolean finished = writingFinished.get();
+      int result = read();
+      if (result == C.RESULT_BUFFER_READ) {
+        // Timestamps should always increase, and data should be that written with the metadata.
+        assertTrue(buffer.timeUs > lastTimeUs);
+        assertEquals(buffer.timeUs, buffer.data.getLong(0));
+        lastTimeUs = buffer.timeUs;
+        readCount++;
+      } else if (result == C.RESULT_NOTHING_READ && finished) {
+        break;
+      }
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    writingThread.join();
+
+    assertTrue(readCount > sampleCount / 2);
+    Log.d(TAG, "samplesPerSecond=" + (readCount * 1000000000L / durationNs) + ", nanosPerSample="
+        + (durationNs / readCount));
+  }
+
+  private int read() {
+    buffer.clear();
+    return trackOutput.readData(formatHolder, buffer, false, 0);
+  }
+
+  private void assertReadSample(long timeUs, boolean isKeyframe) {
+    assertEquals(C.RESULT_BUFFER_READ, read());
+    assertEquals(timeUs, buffer.timeUs);
+    assertEquals(isKeyframe, buffer.isKeyFrame());
+    assertEquals(timeUs, buffer.data.getLong(0));
+  }
+
+  /**
+   * Writes a sample whose data is its timestamp.
+   */
+  private static void writeSample(DefaultTrackOutput trackOutput, long timeUs, int flags) {
+    ParsableByteArray data = new ParsableByteArray(8);
+    data.data[0] = (byte) (timeUs >> 56);
+    data.data[1] = (byte) (timeUs >> 48);
+    data.data[2] = (byte) (timeUs >> 40);
+    data.data[3] = (byte) (timeUs >> 32);
+    data.data[4] = (byte) (timeUs >> 24);
+    data.data[5] = (byte) (timeUs >> 16);
+    data.data[6] = (byte) (timeUs >> 8);
+    data.data[7] = (byte) timeUs;
+    trackOutput.sampleData(data, 8);
+    trackOutput.sampleMetadata(timeUs, flags, 8, 0, null);
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link MediaCodecPool}.
+ */
+public class MediaCodecPoolTest extends TestCase {
+
+  // AudioSpecificConfig for AAC LC, 44.1kHz, stereo.
+  private static final byte[] AAC_CSD = new byte[] {0x12, 0x10};
+  private static final long DEQUEUE_TIMEOUT_US = 100000;
+
+  private MediaCodecPool pool;
+  private String codecName;
+
+  @Override
+  protected void setUp() throws Exception {
+    pool = MediaCodecPool.getInstance();
+    MediaCodecInfo decoderInfo = MediaCodecUtil.getDecoderInfo(MimeTypes.AUDIO_AAC, false);
+    codecName = decoderInfo.name;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.setMaxCodecCount(0);
+  }
+
+  public void testReleasedCodecIsReused() throws Exception {
+    pool.setMaxCodecCount(1);
+    MediaCodecPool.Stats initialStats = pool.getStats();
+    MediaCodec codec = acquireAndUse();
+    releaseToPool(codec);
+
+    MediaCodec reusedCodec = acquireAndUse();
+    assertSame(codec, reusedCodec);
+    MediaCodecPool.Stats stats = pool.getStats();
+    assertEquals(initialStats.requestCount + 2, stats.requestCount);
+    assertEquals(initialStats.hitCount + 1, stats.hitCount);
+    releaseToPool(reusedCodec);
+  }
+
+  public void testCodecIsNotReusedWhenPoolingDisabled() throws Exception {
+    MediaCodecPool.Stats initialStats = pool.getStats();
+    MediaCodec codec = acquireAndUse();
+    releaseToPool(codec);
+
+    MediaCodec newCodec = acquireAndUse();
+    assertNotSame(codec, newCodec);
+    assertEquals(initialStats.hitCount, pool.getStats().hitCount);
+    releaseToPool(newCodec);
+  }
+
+  public void testLeastRecentlyPooledCodecIsEvicted() throws Exception {
+    pool.setMaxCodecCount(1);
+    MediaCodecPool.Stats initialStats = pool.getStats();
+    MediaCodec firstCodec = acquireAndUse();
+    MediaCodec secondCodec = acquireAndUse();
+    releaseToPool(firstCodec);
+    releaseToPool(secondCodec);
+    assertEquals(initialStats.evictionCount + 1, pool.getStats().evictionCount);
+
+    MediaCodec reusedCodec = pool.acquire(codecName);
+    assertSame(secondCodec, reusedCodec);
+    reusedCodec.release();
+  }
+
+  public void testAsynchronouslyUsedCodecCanBeReusedSynchronously() throws Exception {
+    if (Util.SDK_INT < 23) {
+      // Test doesn't apply.
+      return;
+    }
+    pool.setMaxCodecCount(1);
+    MediaCodec codec = pool.acquire(codecName);
+    useAsynchronouslyAndRelease(codec);
+
+    // The flush that was pending when the previous user released the codec mustn't restart it, so
+    // the new user is able to start it. The sleep gives a stale callback the chance to run.
+    MediaCodec reusedCodec = pool.acquire(codecName);
+    assertSame(codec, reusedCodec);
+    configure(reusedCodec);
+    SystemClock.sleep(100);
+    reusedCodec.start();
+    assertTrue(reusedCodec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US) >= 0);
+    releaseToPool(reusedCodec);
+  }
+
+  private MediaCodec acquireAndUse() throws Exception {
+    MediaCodec codec = pool.acquire(codecName);
+    configure(codec);
+    codec.start();
+    assertTrue(codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US) >= 0);
+    return codec;
+  }
+
+  private void releaseToPool(MediaCodec codec) {
+    codec.stop();
+    pool.release(codecName, codec);
+  }
+
+  /**
+   * Uses a codec in the same way as {@link MediaCodecRenderer} does when asynchronous buffer
+   * queueing is enabled, and then releases it to the pool while a flush is pending.
+   */
+  @TargetApi(23)
+  private void useAsynchronouslyAndRelease(MediaCodec codec) {
+    MediaCodecAsyncBufferQueue asyncBufferQueue = new MediaCodecAsyncBufferQueue();
+    asyncBufferQueue.attach(codec);
+    configure(codec);
+    codec.start();
+    asyncBufferQueue.flush(codec);
+    asyncBufferQueue.release();
+    releaseToPool(codec);
+  }
+
+  private static void configure(MediaCodec codec) {
+    MediaFormat format = MediaFormat.createAudioFormat(MimeTypes.AUDIO_AAC, 44100, 2);
+    format.setByteBuffer("csd-0", ByteBuffer.wrap(AAC_CSD));
+    codec.configure(format, null, null, 0);
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the persistent decoder info cache of {@link MediaCodecUtil}.
+ */
+public class MediaCodecUtilTest extends TestCase {
+
+  private static final String FINGERPRINT = "fingerprint";
+
+  // Restored instances approximate the decoder's video limits, so only sizes and frame rates that
+  // are well inside or outside of the limits of typical decoders are checked.
+  private static final int[][] VIDEO_SIZES = new int[][] {
+      {176, 144}, {640, 360}, {1280, 720}, {1920, 1080}, {7680, 4320}, {1279, 720}};
+  private static final double[] FRAME_RATES = new double[] {24, 30, 960};
+  private static final int[] SAMPLE_RATES = new int[] {7350, 8000, 22050, 44100, 48000, 96000,
+      192000};
+  private static final int[] CHANNEL_COUNTS = new int[] {1, 2, 6, 8, 16};
+
+  private File cacheFile;
+  private Map<CodecKey, List<MediaCodecInfo>> decoderInfos;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheFile = File.createTempFile("MediaCodecUtilTest", null);
+    decoderInfos = new HashMap<>();
+    for (String mimeType : new String[] {MimeTypes.VIDEO_H264, MimeTypes.AUDIO_AAC}) {
+      decoderInfos.put(new CodecKey(mimeType, false),
+          MediaCodecUtil.getDecoderInfos(mimeType, false));
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    cacheFile.delete();
+  }
+
+  public void testDecoderInfoCacheRoundTrip() {
+    MediaCodecUtil.writeDecoderInfoCache(cacheFile, FINGERPRINT, decoderInfos);
+    Map<CodecKey, List<MediaCodecInfo>> restoredDecoderInfos =
+        MediaCodecUtil.readDecoderInfoCache(cacheFile, FINGERPRINT);
+
+    assertEquals(decoderInfos.keySet(), restoredDecoderInfos.keySet());
+    for (CodecKey key : decoderInfos.keySet()) {
+      List<MediaCodecInfo> expected = decoderInfos.get(key);
+      List<MediaCodecInfo> actual = restoredDecoderInfos.get(key);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertDecoderInfosEqual(expected.get(i), actual.get(i));
+      }
+    }
+  }
+
+  public void testDecoderInfoCacheForDifferentBuildIsIgnored() {
+    MediaCodecUtil.writeDecoderInfoCache(cacheFile, FINGERPRINT, decoderInfos);
+    assertTrue(MediaCodecUtil.readDecoderInfoCache(cacheFile, "otherFingerprint").isEmpty());
+  }
+
+  public void testDecoderInfoCacheForDifferentVersionIsIgnored() throws Exception {
+    MediaCodecUtil.writeDecoderInfoCache(cacheFile, FINGERPRINT, decoderInfos);
+    RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+    int version = file.readInt();
+    file.seek(0);
+    file.writeInt(version - 1);
+    file.close();
+    assertTrue(MediaCodecUtil.readDecoderInfoCache(cacheFile, FINGERPRINT).isEmpty());
+  }
+
+  public void testTruncatedDecoderInfoCacheIsIgnored() throws Exception {
+    MediaCodecUtil.writeDecoderInfoCache(cacheFile, FINGERPRINT, decoderInfos);
+    RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+    file.setLength(file.length() - 1);
+    file.close();
+    assertTrue(MediaCodecUtil.readDecoderInfoCache(cacheFile, FINGERPRINT).isEmpty());
+  }
+
+  public void testMissingDecoderInfoCacheIsIgnored() {
+    assertTrue(cacheFile.delete());
+    assertTrue(MediaCodecUtil.readDecoderInfoCache(cacheFile, FINGERPRINT).isEmpty());
+  }
+
+  private static void assertDecoderInfosEqual(MediaCodecInfo expected, MediaCodecInfo actual) {
+    assertEquals(expected.name, actual.name);
+    assertEquals(expected.adaptive, actual.adaptive);
+    CodecProfileLevel[] expectedProfileLevels = expected.getProfileLevels();
+    CodecProfileLevel[] actualProfileLevels = actual.getProfileLevels();
+    assertEquals(expectedProfileLevels.length, actualProfileLevels.length);
+    for (int i = 0; i < expectedProfileLevels.length; i++) {
+      assertEquals(expectedProfileLevels[i].profile, actualProfileLevels[i].profile);
+      assertEquals(expectedProfileLevels[i].level, actualProfileLevels[i].level);
+    }
+    if (Util.SDK_INT < 21) {
+      return;
+    }
+    for (int[] size : VIDEO_SIZES) {
+      assertEquals(expected.isVideoSizeSupportedV21(size[0], size[1]),
+          actual.isVideoSizeSupportedV21(size[0], size[1]));
+      for (double frameRate : FRAME_RATES) {
+        assertEquals(expected.isVideoSizeAndRateSupportedV21(size[0], size[1], frameRate),
+            actual.isVideoSizeAndRateSupportedV21(size[0], size[1], frameRate));
+      }
+    }
+    for (int sampleRate : SAMPLE_RATES) {
+      assertEquals(expected.isAudioSampleRateSupportedV21(sampleRate),
+          actual.isAudioSampleRateSupportedV21(sampleRate));
+    }
+    for (int channelCount : CHANNEL_COUNTS) {
+      assertEquals(expected.isAudioChannelCountSupportedV21(channelCount),
+          actual.isAudioChannelCountSupportedV21(channelCount));
+    }
+  }
+
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LoopingMediaSource}.
+ */
+public class LoopingMediaSourceTest extends TestCase {
+
+  private static final String TAG = "LoopingMediaSourceTest";
+
+  private static final Format FORMAT =
+      Format.createSampleFormat("id", MimeTypes.VIDEO_H264, null, Format.NO_VALUE, null);
+  private static final Format SECOND_FORMAT =
+      Format.createSampleFormat("id2", MimeTypes.AUDIO_AAC, null, Format.NO_VALUE, null);
+  private static final int SAMPLE_COUNT = 100;
+  private static final int SAMPLE_SIZE = 1000;
+  private static final int KEYFRAME_INTERVAL = 10;
+  private static final long SAMPLE_DURATION_US = 33000;
+  private static final int PREFILLED_DATA_SIZE = 10;
+
+  public void testDefaultReloadsEachLoop() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source = prepare(new LoopingMediaSource(childSource, 3));
+    for (int i = 0; i < 3; i++) {
+      assertSamples(play(source, i, 0), 0);
+    }
+    assertEquals(3, childSource.createdPeriodCount);
+    assertEquals(3 * SAMPLE_COUNT * SAMPLE_SIZE, childSource.bytesLoaded);
+  }
+
+  public void testReplaysFromMemory() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    for (int i = 0; i < 3; i++) {
+      assertSamples(play(source, i, 0), 0);
+    }
+    assertEquals(1, childSource.createdPeriodCount);
+    assertEquals(SAMPLE_COUNT * SAMPLE_SIZE, childSource.bytesLoaded);
+  }
+
+  public void testReplayPreparedWhenRecordingCompletes() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    MediaPeriod firstPeriod = source.createPeriod(0, null, 0);
+    PreparationCallback firstCallback = new PreparationCallback();
+    firstPeriod.prepare(firstCallback);
+    SampleStream firstStream = selectTracks(firstPeriod, 0);
+    // Create the next period before the first has been read to the end.
+    MediaPeriod secondPeriod = source.createPeriod(1, null, 0);
+    PreparationCallback secondCallback = new PreparationCallback();
+    secondPeriod.prepare(secondCallback);
+    assertTrue(firstCallback.prepared);
+    assertFalse(secondCallback.prepared);
+
+    readToEnd(firstStream);
+    assertTrue(secondCallback.prepared);
+    assertSamples(readToEnd(selectTracks(secondPeriod, 0)), 0);
+    assertEquals(1, childSource.createdPeriodCount);
+  }
+
+  public void testReplaySeeksToKeyframe() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    play(source, 0, 0);
+    long positionUs = (KEYFRAME_INTERVAL + 5) * SAMPLE_DURATION_US;
+    assertSamples(play(source, 1, positionUs), KEYFRAME_INTERVAL + 5);
+    assertEquals(1, childSource.createdPeriodCount);
+  }
+
+  public void testReplayExcludesDataInBufferBeforeRead() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    // Read the first loop into buffers that already hold data, as a renderer does when it writes
+    // codec specific data into an input buffer before reading a sample.
+    MediaPeriod period = source.createPeriod(0, null, 0);
+    period.prepare(new PreparationCallback());
+    assertSamples(readToEnd(selectTracks(period, 0), FORMAT, PREFILLED_DATA_SIZE), 0);
+    source.releasePeriod(period);
+    assertSamples(play(source, 1, 0), 0);
+    assertEquals(1, childSource.createdPeriodCount);
+  }
+
+  public void testFallsBackIfRecordingTooLarge() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE - 1));
+    for (int i = 0; i < 3; i++) {
+      assertSamples(play(source, i, 0), 0);
+    }
+    assertEquals(3, childSource.createdPeriodCount);
+    assertEquals(3 * SAMPLE_COUNT * SAMPLE_SIZE, childSource.bytesLoaded);
+  }
+
+  public void testFallsBackIfRecordedPeriodSeeks() {
+    FakeMediaSource childSource = new FakeMediaSource();
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    MediaPeriod firstPeriod = source.createPeriod(0, null, 0);
+    firstPeriod.prepare(new PreparationCallback());
+    SampleStream firstStream = selectTracks(firstPeriod, 0);
+    MediaPeriod secondPeriod = source.createPeriod(1, null, 0);
+    PreparationCallback secondCallback = new PreparationCallback();
+    secondPeriod.prepare(secondCallback);
+    firstPeriod.seekToUs(0);
+    // The second period should have fallen back to a period of the child source.
+    assertEquals(2, childSource.createdPeriodCount);
+    assertTrue(secondCallback.prepared);
+    readToEnd(firstStream);
+    assertSamples(readToEnd(selectTracks(secondPeriod, 0)), 0);
+  }
+
+  public void testReplayReadsUnrecordedTrackGroupFromChildPeriod() {
+    FakeMediaSource childSource = new FakeMediaSource(2);
+    LoopingMediaSource source =
+        prepare(new LoopingMediaSource(childSource, 3, SAMPLE_COUNT * SAMPLE_SIZE));
+    // Only the first track group is recorded.
+    play(source, 0, 0);
+
+    MediaPeriod period = source.createPeriod(1, null, 0);
+    PreparationCallback callback = new PreparationCallback();
+    period.prepare(callback);
+    assertTrue(callback.prepared);
+    SampleStream[] streams = selectTracks(period, 0, 2);
+    assertSamples(readToEnd(streams[0], FORMAT), 0);
+    assertSamples(readToEnd(streams[1], SECOND_FORMAT), 0);
+    source.releasePeriod(period);
+    // The second track group is read from a period of the child source, and the first is replayed.
+    assertEquals(2, childSource.createdPeriodCount);
+    assertEquals(2 * SAMPLE_COUNT * SAMPLE_SIZE, childSource.bytesLoaded);
+  }
+
+  public void testLoopingBenchmark() {
+    int loopCount = 100;
+    FakeMediaSource reloadingChildSource = new FakeMediaSource();
+    long reloadingDurationNs = playLoops(new LoopingMediaSource(reloadingChildSource, loopCount),
+        loopCount);
+    FakeMediaSource replayingChildSource = new FakeMediaSource();
+    long replayingDurationNs = playLoops(new LoopingMediaSource(replayingChildSource, loopCount,
+        SAMPLE_COUNT * SAMPLE_SIZE), loopCount);
+    Log.d(TAG, "reloading: durationMs=" + (reloadingDurationNs / 1000000) + ", bytesLoaded="
+        + reloadingChildSource.bytesLoaded);
+    Log.d(TAG, "replaying: durationMs=" + (replayingDurationNs / 1000000) + ", bytesLoaded="
+        + replayingChildSource.bytesLoaded);
+    assertEquals(loopCount * SAMPLE_COUNT * SAMPLE_SIZE, reloadingChildSource.bytesLoaded);
+    assertEquals(SAMPLE_COUNT * SAMPLE_SIZE, replayingChildSource.bytesLoaded);
+  }
+
+  // Internal methods.
+
+  private static LoopingMediaSource prepare(LoopingMediaSource source) {
+    source.prepareSource(new MediaSource.Listener() {
+      @Override
+      public void onSourceInfoRefreshed(Timeline timeline, Object manifest) {
+        // Do nothing.
+      }
+    });
+    return source;
+  }
+
+  private static long playLoops(LoopingMediaSource source, int loopCount) {
+    prepare(source);
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < loopCount; i++) {
+      play(source, i, 0);
+    }
+    return System.nanoTime() - startTimeNs;
+  }
+
+  private static long[] play(MediaSource source, int index, long positionUs) {
+    MediaPeriod period = source.createPeriod(index, null, positionUs);
+    PreparationCallback callback = new PreparationCallback();
+    period.prepare(callback);
+    assertTrue(callback.prepared);
+    long[] sampleTimesUs = readToEnd(selectTracks(period, positionUs));
+    source.releasePeriod(period);
+    return sampleTimesUs;
+  }
+
+  private static SampleStream selectTracks(MediaPeriod period, long positionUs) {
+    return selectTracks(period, positionUs, 1)[0];
+  }
+
+  /**
+   * Selects the first {@code trackGroupCount} track groups of a period, returning their streams.
+   */
+  private static SampleStream[] selectTracks(MediaPeriod period, long positionUs,
+      int trackGroupCount) {
+    TrackSelection[] selections = new TrackSelection[trackGroupCount];
+    for (int i = 0; i < trackGroupCount; i++) {
+      selections[i] = new FixedTrackSelection(period.getTrackGroups().get(i), 0);
+    }
+    SampleStream[] streams = new SampleStream[trackGroupCount];
+    period.selectTracks(selections, new boolean[trackGroupCount], streams,
+        new boolean[trackGroupCount], positionUs);
+    return streams;
+  }
+
+  private static long[] readToEnd(SampleStream stream) {
+    return readToEnd(stream, FORMAT);
+  }
+
+  /**
+   * Reads a stream to the end, returning the timestamps of the samples that aren't decode only.
+   * The data of each sample is checked for consistency with its timestamp.
+   */
+  private static long[] readToEnd(SampleStream stream, Format format) {
+    return readToEnd(stream, format, 0);
+  }
+
+  /**
+   * Reads a stream to the end as {@link #readToEnd(SampleStream, Format)}, but into a buffer that
+   * holds {@code prefilledDataSize} bytes of other data before each read.
+   */
+  private static long[] readToEnd(SampleStream stream, Format format, int prefilledDataSize) {
+    FormatHolder formatHolder = new FormatHolder();
+    DecoderInputBuffer buffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    long[] sampleTimesUs = new long[SAMPLE_COUNT];
+    int sampleCount = 0;
+    boolean formatRead = false;
+    while (true) {
+      buffer.clear();
+      if (prefilledDataSize > 0) {
+        buffer.ensureSpaceForWrite(prefilledDataSize);
+        buffer.data.put(new byte[prefilledDataSize]);
+      }
+      int result = stream.readData(formatHolder, buffer);
+      if (result == C.RESULT_FORMAT_READ) {
+        assertEquals(format, formatHolder.format);
+        formatRead = true;
+        continue;
+      }
+      assertEquals(C.RESULT_BUFFER_READ, result);
+      if (buffer.isEndOfStream()) {
+        break;
+      }
+      assertTrue(formatRead);
+      buffer.flip();
+      buffer.data.position(prefilledDataSize);
+      int sampleIndex = (int) (buffer.timeUs / SAMPLE_DURATION_US);
+      assertEquals(SAMPLE_SIZE, buffer.data.remaining());
+      assertEquals((byte) sampleIndex, buffer.data.get(prefilledDataSize));
+      assertEquals(sampleIndex % KEYFRAME_INTERVAL == 0, buffer.isKeyFrame());
+      if (!buffer.isDecodeOnly()) {
+        sampleTimesUs[sampleCount++] = buffer.timeUs;
+      }
+    }
+    return Arrays.copyOf(sampleTimesUs, sampleCount);
+  }
+
+  private static void assertSamples(long[] sampleTimesUs, int firstSampleIndex) {
+    assertEquals(SAMPLE_COUNT - firstSampleIndex, sampleTimesUs.length);
+    for (int i = 0; i < sampleTimesUs.length; i++) {
+      assertEquals((firstSampleIndex + i) * SAMPLE_DURATION_US, sampleTimesUs[i]);
+    }
+  }
+
+  private static final class PreparationCallback implements MediaPeriod.Callback {
+
+    public boolean prepared;
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      prepared = true;
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod source) {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * A single period source with one or two track groups.
+   */
+  private static final class FakeMediaSource implements MediaSource {
+
+    private final int trackGroupCount;
+
+    public int createdPeriodCount;
+    public int bytesLoaded;
+
+    public FakeMediaSource() {
+      this(1);
+    }
+
+    public FakeMediaSource(int trackGroupCount) {
+      this.trackGroupCount = trackGroupCount;
+    }
+
+    @Override
+    public void prepareSource(Listener listener) {
+      listener.onSourceInfoRefreshed(
+          new SinglePeriodTimeline(SAMPLE_COUNT * SAMPLE_DURATION_US, true), null);
+    }
+
+    @Override
+    public void maybeThrowSourceInfoRefreshError() {
+      // Do nothing.
+    }
+
+    @Override
+    public MediaPeriod createPeriod(int index, Allocator allocator, long positionUs) {
+      assertEquals(0, index);
+      createdPeriodCount++;
+      return new FakeMediaPeriod(this, trackGroupCount);
+    }
+
+    @Override
+    public void releasePeriod(MediaPeriod mediaPeriod) {
+      // Do nothing.
+    }
+
+    @Override
+    public void releaseSource() {
+      // Do nothing.
+    }
+
+  }
+
+  private static final class FakeMediaPeriod implements MediaPeriod {
+
+    private final FakeMediaSource source;
+    private final TrackGroupArray trackGroups;
+    private final ArrayList<FakeSampleStream> sampleStreams;
+
+    public FakeMediaPeriod(FakeMediaSource source, int trackGroupCount) {
+      this.source = source;
+      trackGroups = trackGroupCount == 1 ? new TrackGroupArray(new TrackGroup(FORMAT))
+          : new TrackGroupArray(new TrackGroup(FORMAT), new TrackGroup(SECOND_FORMAT));
+      sampleStreams = new ArrayList<>();
+    }
+
+    @Override
+    public void prepare(Callback callback) {
+      callback.onPrepared(this);
+    }
+
+    @Override
+    public void maybeThrowPrepareError() throws IOException {
+      // Do nothing.
+    }
+
+    @Override
+    public TrackGroupArray getTrackGroups() {
+      return trackGroups;
+    }
+
+    @Override
+    public long selectTracks(TrackSelection[] selections, boolean[] mayRetainStreamFlags,
+        SampleStream[] streams, boolean[] streamResetFlags, long positionUs) {
+      for (int i = 0; i < selections.length; i++) {
+        if (streams[i] != null && (selections[i] == null || !mayRetainStreamFlags[i])) {
+          sampleStreams.remove(streams[i]);
+          streams[i] = null;
+        }
+        if (streams[i] == null && selections[i] != null) {
+          assertTrue(trackGroups.indexOf(selections[i].getTrackGroup()) != C.INDEX_UNSET);
+          FakeSampleStream stream =
+              new FakeSampleStream(source, selections[i].getSelectedFormat());
+          sampleStreams.add(stream);
+          streams[i] = stream;
+          streamResetFlags[i] = true;
+        }
+      }
+      seekToUs(positionUs);
+      return positionUs;
+    }
+
+    @Override
+    public boolean continueLoading(long positionUs) {
+      return false;
+    }
+
+    @Override
+    public long getNextLoadPositionUs() {
+      return C.TIME_END_OF_SOURCE;
+    }
+
+    @Override
+    public long readDiscontinuity() {
+      return C.TIME_UNSET;
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+      return C.TIME_END_OF_SOURCE;
+    }
+
+    @Override
+    public long seekToUs(long positionUs) {
+      for (int i = 0; i < sampleStreams.size(); i++) {
+        sampleStreams.get(i).seekToUs(positionUs);
+      }
+      return positionUs;
+    }
+
+  }
+
+  /**
+   * A stream whose samples are "loaded" as they're read.
+   */
+  private static final class FakeSampleStream implements SampleStream {
+
+    private final FakeMediaSource source;
+    private final Format format;
+    private final byte[] sampleData;
+
+    private int readIndex;
+    private boolean formatRead;
+    private long decodeOnlyUntilUs;
+
+    public FakeSampleStream(FakeMediaSource source, Format format) {
+      this.source = source;
+      this.format = format;
+      sampleData = new byte[SAMPLE_SIZE];
+    }
+
+    public void seekToUs(long positionUs) {
+      int sampleIndex = (int) (positionUs / SAMPLE_DURATION_US);
+      readIndex = sampleIndex - sampleIndex % KEYFRAME_INTERVAL;
+      decodeOnlyUntilUs = positionUs;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void maybeThrowError() throws IOException {
+      // Do nothing.
+    }
+
+    @Override
+    public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer) {
+      if (!formatRead) {
+        formatHolder.format = format;
+        formatRead = true;
+        return C.RESULT_FORMAT_READ;
+      }
+      if (readIndex == SAMPLE_COUNT) {
+        buffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
+        return C.RESULT_BUFFER_READ;
+      }
+      // Simulate loading and extracting the sample.
+      Arrays.fill(sampleData, (byte) readIndex);
+      source.bytesLoaded += SAMPLE_SIZE;
+      buffer.timeUs = readIndex * SAMPLE_DURATION_US;
+      if (readIndex % KEYFRAME_INTERVAL == 0) {
+        buffer.addFlag(C.BUFFER_FLAG_KEY_FRAME);
+      }
+      if (buffer.timeUs < decodeOnlyUntilUs) {
+        buffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+      }
+      buffer.ensureSpaceForWrite(SAMPLE_SIZE);
+      buffer.data.put(sampleData);
+      readIndex++;
+      return C.RESULT_BUFFER_READ;
+    }
+
+    @Override
+    public void skipToKeyframeBefore(long timeUs) {
+      // Do nothing.
+    }
+
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link StartupTimeline}.
+ */
+public class StartupTimelineTest extends TestCase {
+
+  private StartupTimeline timeline;
+
+  @Override
+  public void setUp() {
+    timeline = new StartupTimeline();
+  }
+
+  public void testRecordsPhases() {
+    loadStarted(C.DATA_TYPE_MANIFEST, 1000);
+    loadCompleted(C.DATA_TYPE_MANIFEST, 1200);
+    loadStarted(C.DATA_TYPE_MEDIA_INITIALIZATION, 1210);
+    loadStarted(C.DATA_TYPE_MEDIA_INITIALIZATION, 1220);
+    loadCompleted(C.DATA_TYPE_MEDIA_INITIALIZATION, 1300);
+    loadCompleted(C.DATA_TYPE_MEDIA_INITIALIZATION, 1350);
+    loadStarted(C.DATA_TYPE_MEDIA, 1300);
+    assertFalse(timeline.isCompleted());
+    loadCompleted(C.DATA_TYPE_MEDIA, 1700);
+    assertTrue(timeline.isCompleted());
+
+    assertEquals(0, timeline.getLoadStartTimeMs(C.DATA_TYPE_MANIFEST));
+    assertEquals(200, timeline.getLoadEndTimeMs(C.DATA_TYPE_MANIFEST));
+    assertEquals(C.TIME_UNSET, timeline.getLoadStartTimeMs(C.DATA_TYPE_TIME_SYNCHRONIZATION));
+    assertEquals(210, timeline.getLoadStartTimeMs(C.DATA_TYPE_MEDIA_INITIALIZATION));
+    assertEquals(300, timeline.getLoadEndTimeMs(C.DATA_TYPE_MEDIA_INITIALIZATION));
+    assertEquals(300, timeline.getLoadStartTimeMs(C.DATA_TYPE_MEDIA));
+    assertEquals(700, timeline.getLoadEndTimeMs(C.DATA_TYPE_MEDIA));
+    assertEquals("manifest=0-200, initialization=210-300, media=300-700", timeline.toString());
+  }
+
+  public void testStopsRecordingWhenCompleted() {
+    loadStarted(C.DATA_TYPE_MEDIA, 0);
+    loadCompleted(C.DATA_TYPE_MEDIA, 500);
+    loadStarted(C.DATA_TYPE_MANIFEST, 5000);
+    assertEquals(C.TIME_UNSET, timeline.getLoadStartTimeMs(C.DATA_TYPE_MANIFEST));
+    timeline.reset();
+    assertFalse(timeline.isCompleted());
+    loadStarted(C.DATA_TYPE_MANIFEST, 6000);
+    assertEquals(0, timeline.getLoadStartTimeMs(C.DATA_TYPE_MANIFEST));
+  }
+
+  public void testIgnoresCustomDataTypes() {
+    loadStarted(C.DATA_TYPE_CUSTOM_BASE, 0);
+    loadCompleted(C.DATA_TYPE_CUSTOM_BASE, 100);
+    loadStarted(C.DATA_TYPE_MANIFEST, 200);
+    assertEquals(200, timeline.getLoadStartTimeMs(C.DATA_TYPE_MANIFEST));
+    assertFalse(timeline.isCompleted());
+  }
+
+  private void loadStarted(int dataType, long elapsedRealtimeMs) {
+    timeline.onLoadStarted(null, dataType, C.TRACK_TYPE_UNKNOWN, null,
+        C.SELECTION_REASON_UNKNOWN, null, C.TIME_UNSET, C.TIME_UNSET, elapsedRealtimeMs);
+  }
+
+  private void loadCompleted(int dataType, long elapsedRealtimeMs) {
+    timeline.onLoadCompleted(null, dataType, C.TRACK_TYPE_UNKNOWN, null,
+        C.SELECTION_REASON_UNKNOWN, null, C.TIME_UNSET, C.TIME_UNSET, elapsedRealtimeMs, 0, 0);
+  }
+
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.source.AdaptiveMediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.SequenceableLoader;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ChunkSampleStream}.
+ */
+public class ChunkSampleStreamTest extends TestCase {
+
+  private static final Format FORMAT =
+      Format.createSampleFormat("id", MimeTypes.VIDEO_H264, null, Format.NO_VALUE, null);
+  private static final int CHUNK_COUNT = 3;
+  private static final int SAMPLE_COUNT = 5;
+  private static final int SAMPLE_SIZE = 10;
+  private static final long SAMPLE_DURATION_US = 200000;
+  private static final long CHUNK_DURATION_US = SAMPLE_COUNT * SAMPLE_DURATION_US;
+  // Long enough for a load to become eligible for abandonment.
+  private static final long ABANDONMENT_DELAY_MS = 600;
+  private static final long TIMEOUT_MS = 10000;
+
+  private HandlerThread playbackThread;
+  private Handler playbackHandler;
+  private FakeChunkSource chunkSource;
+  private ConditionVariable loadFinished;
+  private ChunkSampleStream<FakeChunkSource> stream;
+  private FormatHolder formatHolder;
+  private DecoderInputBuffer buffer;
+
+  @Override
+  protected void setUp() throws Exception {
+    playbackThread = new HandlerThread("ChunkSampleStreamTest");
+    playbackThread.start();
+    playbackHandler = new Handler(playbackThread.getLooper());
+    chunkSource = new FakeChunkSource();
+    loadFinished = new ConditionVariable();
+    stream = createStream(0);
+    formatHolder = new FormatHolder();
+    buffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    chunkSource.slowLoadUnblocked.open();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        stream.release();
+      }
+    });
+    playbackThread.quit();
+  }
+
+  public void testReadingStopsAtAbandonedChunk() {
+    loadChunk();
+    startSlowLoad();
+    SystemClock.sleep(ABANDONMENT_DELAY_MS);
+
+    // The first read abandons the slow load. Reading continues until the abandoned chunk is
+    // reached, even though its samples are buffered, since they're about to be discarded.
+    final List<Long> sampleTimesUs = new ArrayList<>();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        readSamples(sampleTimesUs);
+        assertFalse(stream.isReady());
+      }
+    });
+    assertEquals(1, chunkSource.tooSlowChunkCount);
+    assertSampleTimesUs(0, SAMPLE_COUNT, sampleTimesUs);
+
+    // Once the cancelation completes the same media is requested again, and reading continues
+    // from where it stopped.
+    chunkSource.slowLoadUnblocked.open();
+    assertTrue(loadFinished.block(TIMEOUT_MS));
+    loadChunk();
+    assertEquals(Arrays.asList(0, 1, 1), chunkSource.requestedChunkIndices);
+    sampleTimesUs.clear();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        readSamples(sampleTimesUs);
+      }
+    });
+    assertSampleTimesUs(SAMPLE_COUNT, SAMPLE_COUNT, sampleTimesUs);
+  }
+
+  public void testSkipIntoAbandonedChunkRestartsLoading() {
+    loadChunk();
+    startSlowLoad();
+    SystemClock.sleep(ABANDONMENT_DELAY_MS);
+
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        assertEquals(C.RESULT_FORMAT_READ, stream.readData(formatHolder, buffer));
+        assertEquals(C.RESULT_BUFFER_READ, stream.readData(formatHolder, buffer));
+        stream.skipToKeyframeBefore(CHUNK_DURATION_US + SAMPLE_DURATION_US);
+        assertEquals(C.RESULT_NOTHING_READ, stream.readData(formatHolder, buffer));
+        assertFalse(stream.isReady());
+      }
+    });
+    assertEquals(1, chunkSource.tooSlowChunkCount);
+
+    // The skipped to samples can't be discarded, so loading restarts from the last read position.
+    chunkSource.slowLoadUnblocked.open();
+    assertTrue(loadFinished.block(TIMEOUT_MS));
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        assertEquals(0, stream.getNextLoadPositionUs());
+      }
+    });
+    loadChunk();
+    assertEquals(Arrays.asList(0, 1, 0), chunkSource.requestedChunkIndices);
+  }
+
+  public void testSeekBackwardWithinBackBuffer() {
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        stream.release();
+      }
+    });
+    stream = createStream(CHUNK_COUNT * CHUNK_DURATION_US);
+    loadChunk();
+    loadChunk();
+
+    final List<Long> sampleTimesUs = new ArrayList<>();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        readSamples(sampleTimesUs);
+        // The read samples are retained, so seeking back to them doesn't restart loading.
+        stream.seekToUs(SAMPLE_DURATION_US);
+        sampleTimesUs.clear();
+        readSamples(sampleTimesUs);
+      }
+    });
+    assertSampleTimesUs(1, 2 * SAMPLE_COUNT - 1, sampleTimesUs);
+    assertEquals(Arrays.asList(0, 1), chunkSource.requestedChunkIndices);
+  }
+
+  private ChunkSampleStream<FakeChunkSource> createStream(long backBufferDurationUs) {
+    return new ChunkSampleStream<>(C.TRACK_TYPE_VIDEO, chunkSource,
+        new SequenceableLoader.Callback<ChunkSampleStream<FakeChunkSource>>() {
+          @Override
+          public void onContinueLoadingRequested(ChunkSampleStream<FakeChunkSource> source) {
+            loadFinished.open();
+          }
+        }, new DefaultAllocator(true, 1024), 0, 3, backBufferDurationUs, Integer.MAX_VALUE,
+        new EventDispatcher(null, null));
+  }
+
+  /**
+   * Starts loading the next chunk, and waits for the load to complete.
+   */
+  private void loadChunk() {
+    loadFinished.close();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        assertTrue(stream.continueLoading(0));
+      }
+    });
+    assertTrue(loadFinished.block(TIMEOUT_MS));
+  }
+
+  /**
+   * Starts loading the next chunk, and waits until its samples have been written. The load then
+   * blocks until {@link FakeChunkSource#slowLoadUnblocked} is opened.
+   */
+  private void startSlowLoad() {
+    chunkSource.nextChunkSlow = true;
+    loadFinished.close();
+    runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        assertTrue(stream.continueLoading(0));
+      }
+    });
+    assertTrue(chunkSource.slowLoadBlocked.block(TIMEOUT_MS));
+  }
+
+  /**
+   * Reads samples from the stream until nothing more can be read, adding their times to
+   * {@code sampleTimesUs}.
+   */
+  private void readSamples(List<Long> sampleTimesUs) {
+    int result;
+    do {
+      buffer.clear();
+      result = stream.readData(formatHolder, buffer);
+      if (result == C.RESULT_BUFFER_READ) {
+        sampleTimesUs.add(buffer.timeUs);
+      }
+    } while (result != C.RESULT_NOTHING_READ);
+  }
+
+  private void runOnPlaybackThread(final Runnable runnable) {
+    final ConditionVariable finished = new ConditionVariable();
+    final Throwable[] error = new Throwable[1];
+    playbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          runnable.run();
+        } catch (Throwable e) {
+          error[0] = e;
+        } finally {
+          finished.open();
+        }
+      }
+    });
+    assertTrue(finished.block(TIMEOUT_MS));
+    if (error[0] != null) {
+      throw new AssertionError(error[0]);
+    }
+  }
+
+  private static void assertSampleTimesUs(int firstSampleIndex, int sampleCount,
+      List<Long> sampleTimesUs) {
+    assertEquals(sampleCount, sampleTimesUs.size());
+    for (int i = 0; i < sampleCount; i++) {
+      assertEquals((firstSampleIndex + i) * SAMPLE_DURATION_US, (long) sampleTimesUs.get(i));
+    }
+  }
+
+  /**
+   * A {@link ChunkSource} that provides chunks of {@link #SAMPLE_COUNT} keyframes, and that agrees
+   * to the abandonment of slow loads.
+   */
+  private static final class FakeChunkSource
+      implements ChunkSource, ChunkSource.LoadAbandonmentHandler {
+
+    public final List<Integer> requestedChunkIndices;
+    public final ConditionVariable slowLoadBlocked;
+    public final ConditionVariable slowLoadUnblocked;
+
+    public volatile boolean nextChunkSlow;
+    public int tooSlowChunkCount;
+
+    public FakeChunkSource() {
+      requestedChunkIndices = new ArrayList<>();
+      slowLoadBlocked = new ConditionVariable();
+      slowLoadUnblocked = new ConditionVariable();
+    }
+
+    @Override
+    public void maybeThrowError() {
+      // Do nothing.
+    }
+
+    @Override
+    public int getPreferredQueueSize(long playbackPositionUs, List<? extends MediaChunk> queue) {
+      return queue.size();
+    }
+
+    @Override
+    public void getNextChunk(MediaChunk previous, long playbackPositionUs, ChunkHolder out) {
+      int chunkIndex = previous == null ? (int) (playbackPositionUs / CHUNK_DURATION_US)
+          : previous.getNextChunkIndex();
+      if (chunkIndex >= CHUNK_COUNT) {
+        out.endOfStream = true;
+        return;
+      }
+      requestedChunkIndices.add(chunkIndex);
+      out.chunk = new FakeMediaChunk(chunkIndex, nextChunkSlow ? this : null);
+      nextChunkSlow = false;
+    }
+
+    @Override
+    public void onChunkLoadCompleted(Chunk chunk) {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean onChunkLoadError(Chunk chunk, boolean cancelable, Exception e) {
+      return false;
+    }
+
+    @Override
+    public boolean onChunkLoadTooSlow(MediaChunk chunk) {
+      tooSlowChunkCount++;
+      return true;
+    }
+
+  }
+
+  /**
+   * A media chunk that writes its samples as soon as it starts loading. A slow chunk then blocks
+   * until it's unblocked, ignoring cancelation, and projects that most of its data is yet to be
+   * loaded.
+   */
+  private static final class FakeMediaChunk extends BaseMediaChunk {
+
+    private final FakeChunkSource slowChunkSource;
+
+    private volatile boolean loadCanceled;
+    private volatile boolean loadCompleted;
+
+    public FakeMediaChunk(int chunkIndex, FakeChunkSource slowChunkSource) {
+      super(new ByteArrayDataSource(new byte[SAMPLE_SIZE]), new DataSpec(Uri.parse("chunk"), 0,
+          SAMPLE_COUNT * SAMPLE_SIZE * (slowChunkSource != null ? 100 : 1), null), FORMAT,
+          C.SELECTION_REASON_UNKNOWN, null, chunkIndex * CHUNK_DURATION_US,
+          (chunkIndex + 1) * CHUNK_DURATION_US, chunkIndex);
+      this.slowChunkSource = slowChunkSource;
+    }
+
+    @Override
+    public boolean isLoadCompleted() {
+      return loadCompleted;
+    }
+
+    @Override
+    public long bytesLoaded() {
+      return SAMPLE_COUNT * SAMPLE_SIZE;
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return loadCanceled;
+    }
+
+    @Override
+    public void load() {
+      getTrackOutput().format(FORMAT);
+      for (int i = 0; i < SAMPLE_COUNT; i++) {
+        getTrackOutput().sampleData(new ParsableByteArray(SAMPLE_SIZE), SAMPLE_SIZE);
+        getTrackOutput().sampleMetadata(startTimeUs + i * SAMPLE_DURATION_US,
+            C.BUFFER_FLAG_KEY_FRAME, SAMPLE_SIZE, 0, null);
+      }
+      if (slowChunkSource != null) {
+        slowChunkSource.slowLoadBlocked.open();
+        slowChunkSource.slowLoadUnblocked.block();
+      } else {
+        loadCompleted = true;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.TrackSelectionSimulator;
+import com.google.android.exoplayer2.trackselection.AdaptiveVideoTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ChunkedTrackBlacklistUtil}.
+ */
+public class ChunkedTrackBlacklistUtilTest extends TestCase {
+
+  private static final TrackGroup TRACK_GROUP =
+      TrackSelectionSimulator.createVideoLadder(300000, 750000, 1200000, 2500000, 4500000);
+  private static final int[] TRACKS = new int[] {0, 1, 2, 3, 4};
+
+  public void testSlowTrackSwitchesToLowerQuality() {
+    FakeBandwidthMeter bandwidthMeter = new FakeBandwidthMeter();
+    bandwidthMeter.bitrateEstimate = 10000000;
+    TrackSelection selection = new AdaptiveVideoTrackSelection(TRACK_GROUP, TRACKS,
+        bandwidthMeter);
+    assertEquals(4500000, selection.getSelectedFormat().bitrate);
+    // Even though the bandwidth estimate hasn't yet reacted, the next selection is lower.
+    assertTrue(ChunkedTrackBlacklistUtil.maybeBlacklistSlowTrack(selection,
+        selection.getSelectedIndex()));
+    selection.updateSelectedTrack(0);
+    assertEquals(2500000, selection.getSelectedFormat().bitrate);
+    // A track of a higher bitrate than the slow one is also excluded.
+    bandwidthMeter.bitrateEstimate = 2000000;
+    selection.updateSelectedTrack(0);
+    assertEquals(1200000, selection.getSelectedFormat().bitrate);
+    assertTrue(ChunkedTrackBlacklistUtil.maybeBlacklistSlowTrack(selection,
+        selection.getSelectedIndex()));
+    bandwidthMeter.bitrateEstimate = 10000000;
+    selection.updateSelectedTrack(0);
+    assertEquals(750000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testLowestQualityTrackIsNotBlacklisted() {
+    FakeBandwidthMeter bandwidthMeter = new FakeBandwidthMeter();
+    bandwidthMeter.bitrateEstimate = 100000;
+    TrackSelection selection = new AdaptiveVideoTrackSelection(TRACK_GROUP, TRACKS,
+        bandwidthMeter);
+    assertEquals(300000, selection.getSelectedFormat().bitrate);
+    assertFalse(ChunkedTrackBlacklistUtil.maybeBlacklistSlowTrack(selection,
+        selection.getSelectedIndex()));
+    // Switching up isn't prevented.
+    bandwidthMeter.bitrateEstimate = 10000000;
+    selection.updateSelectedTrack(15000000);
+    assertEquals(4500000, selection.getSelectedFormat().bitrate);
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate;
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+  }
+
+}
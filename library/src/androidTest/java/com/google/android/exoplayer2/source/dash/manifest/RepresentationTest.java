@@ -16,8 +16,10 @@
 package com.google.android.exoplayer2.source.dash.manifest;
 
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentList;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Arrays;
 import junit.framework.TestCase;
 
 /**
@@ -40,4 +42,24 @@ public class RepresentationTest extends TestCase {
     assertEquals("test_stream_1.150.-1", representation.getCacheKey());
   }
 
+  public void testGetSegmentCacheKey() {
+    String uri = "http://www.google.com";
+    SegmentBase base = new SegmentList(new RangedUri(uri, "init", 0, 1), 1, 0, 1, 1, null,
+        Arrays.asList(new RangedUri(uri, "1", 0, 1), new RangedUri(uri, "2", 0, 1)));
+    Format format = Format.createVideoContainerFormat("0", MimeTypes.APPLICATION_MP4, null,
+        MimeTypes.VIDEO_H264, 2500000, 1920, 1080, Format.NO_VALUE, null);
+    Representation representation = Representation.newInstance("test_stream_1", 3, format, base,
+        "custom");
+    assertEquals("custom", representation.getCacheKey());
+    assertEquals("custom.init", representation.getInitializationCacheKey());
+    assertEquals("custom.1", representation.getSegmentCacheKey(1));
+    assertEquals("custom.2", representation.getSegmentCacheKey(2));
+
+    // Without a custom key each segment is cached under its own uri.
+    representation = Representation.newInstance("test_stream_1", 3, format, base);
+    assertNull(representation.getCacheKey());
+    assertNull(representation.getInitializationCacheKey());
+    assertNull(representation.getSegmentCacheKey(1));
+  }
+
 }
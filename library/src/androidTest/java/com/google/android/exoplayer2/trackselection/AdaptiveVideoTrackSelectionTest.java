@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.TrackSelectionSimulator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AdaptiveVideoTrackSelection}.
+ */
+public class AdaptiveVideoTrackSelectionTest extends TestCase {
+
+  private static final TrackGroup TRACK_GROUP =
+      TrackSelectionSimulator.createVideoLadder(300000, 750000, 1200000, 2500000, 4500000);
+  private static final int[] TRACKS = new int[] {0, 1, 2, 3, 4};
+
+  // Sufficient to allow switching both up and down.
+  private static final long BUFFERED_DURATION_US = 15000000;
+
+  public void testSelectionUsesNominalBitrates() {
+    AdaptiveVideoTrackSelection selection = new AdaptiveVideoTrackSelection(TRACK_GROUP, TRACKS,
+        new FixedBandwidthMeter(2000000));
+    assertEquals(1200000, selection.getSelectedFormat().bitrate);
+    selection.updateSelectedTrack(BUFFERED_DURATION_US, new FakeSegmentSizeProvider());
+    assertEquals(1200000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testSwitchUpWhenUpcomingSegmentsAreSmall() {
+    AdaptiveVideoTrackSelection selection = new AdaptiveVideoTrackSelection(TRACK_GROUP, TRACKS,
+        new FixedBandwidthMeter(2000000));
+    FakeSegmentSizeProvider segmentSizeProvider = new FakeSegmentSizeProvider();
+    // The upcoming segments of the 2.5Mbps track are much smaller than its nominal bitrate implies.
+    segmentSizeProvider.upcomingBitrates[1] = 1400000;
+    selection.updateSelectedTrack(BUFFERED_DURATION_US, segmentSizeProvider);
+    assertEquals(2500000, selection.getSelectedFormat().bitrate);
+    // Without segment sizes, the selection reverts to using nominal bitrates.
+    selection.updateSelectedTrack(BUFFERED_DURATION_US);
+    assertEquals(1200000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testSwitchDownWhenUpcomingSegmentsAreLarge() {
+    AdaptiveVideoTrackSelection selection = new AdaptiveVideoTrackSelection(TRACK_GROUP, TRACKS,
+        new FixedBandwidthMeter(2000000));
+    FakeSegmentSizeProvider segmentSizeProvider = new FakeSegmentSizeProvider();
+    // The upcoming segments of the 1.2Mbps track are larger than its nominal bitrate implies.
+    segmentSizeProvider.upcomingBitrates[2] = 1800000;
+    selection.updateSelectedTrack(BUFFERED_DURATION_US, segmentSizeProvider);
+    assertEquals(750000, selection.getSelectedFormat().bitrate);
+  }
+
+  private static final class FakeSegmentSizeProvider
+      implements SegmentSizeAwareTrackSelection.SegmentSizeProvider {
+
+    public final int[] upcomingBitrates;
+
+    public FakeSegmentSizeProvider() {
+      upcomingBitrates = new int[TRACKS.length];
+      Arrays.fill(upcomingBitrates, Format.NO_VALUE);
+    }
+
+    @Override
+    public int getUpcomingBitrate(int index, long durationUs) {
+      return upcomingBitrates[index];
+    }
+
+  }
+
+  private static final class FixedBandwidthMeter implements BandwidthMeter {
+
+    private final long bitrateEstimate;
+
+    public FixedBandwidthMeter(long bitrateEstimate) {
+      this.bitrateEstimate = bitrateEstimate;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import android.util.Log;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.TrackSelectionSimulator;
+import com.google.android.exoplayer2.testutil.TrackSelectionSimulator.Result;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link BufferBasedTrackSelection}.
+ */
+public class BufferBasedTrackSelectionTest extends TestCase {
+
+  private static final String TAG = "BufferBasedTrackSelectionTest";
+
+  private static final TrackGroup TRACK_GROUP = new TrackGroup(
+      buildFormat(300000, 320, 180),
+      buildFormat(750000, 640, 360),
+      buildFormat(1200000, 854, 480),
+      buildFormat(2500000, 1280, 720),
+      buildFormat(4500000, 1920, 1080));
+  private static final int[] TRACKS = new int[] {0, 1, 2, 3, 4};
+
+  private static final long CONTENT_DURATION_MS = 600000;
+  private static final long CHUNK_DURATION_MS = 4000;
+  private static final long MIN_BUFFER_MS = 15000;
+  private static final long MAX_BUFFER_MS = 30000;
+  private static final long BUFFER_FOR_PLAYBACK_MS = 2500;
+
+  private static final long MIN_BUFFER_US = BufferBasedTrackSelection.DEFAULT_MIN_BUFFER_MS * 1000L;
+  private static final long TARGET_BUFFER_US =
+      BufferBasedTrackSelection.DEFAULT_TARGET_BUFFER_MS * 1000L;
+
+  public void testInitialSelectionUsesMaxInitialBitrate() {
+    BufferBasedTrackSelection selection = new BufferBasedTrackSelection(TRACK_GROUP, TRACKS,
+        new FixedBandwidthMeter(BandwidthMeter.NO_ESTIMATE));
+    assertEquals(750000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testStartupSelectionUsesBandwidthEstimate() {
+    FixedBandwidthMeter bandwidthMeter = new FixedBandwidthMeter(BandwidthMeter.NO_ESTIMATE);
+    BufferBasedTrackSelection selection =
+        new BufferBasedTrackSelection(TRACK_GROUP, TRACKS, bandwidthMeter);
+    bandwidthMeter.bitrateEstimate = 4000000;
+    selection.updateSelectedTrack(0);
+    assertEquals(2500000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testSwitchDownFollowsBuffer() {
+    FixedBandwidthMeter bandwidthMeter = new FixedBandwidthMeter(100000000);
+    BufferBasedTrackSelection selection =
+        new BufferBasedTrackSelection(TRACK_GROUP, TRACKS, bandwidthMeter);
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    assertEquals(4500000, selection.getSelectedFormat().bitrate);
+    // The bandwidth can't sustain the current track, so the buffer determines the selection.
+    bandwidthMeter.bitrateEstimate = 100000;
+    int previousBitrate = Integer.MAX_VALUE;
+    for (long bufferedDurationUs = TARGET_BUFFER_US; bufferedDurationUs >= MIN_BUFFER_US;
+        bufferedDurationUs -= 1000000) {
+      selection.updateSelectedTrack(bufferedDurationUs);
+      int bitrate = selection.getSelectedFormat().bitrate;
+      assertTrue(bitrate <= previousBitrate);
+      previousBitrate = bitrate;
+    }
+    assertEquals(300000, previousBitrate);
+  }
+
+  public void testSwitchDownDeferredWhilstBandwidthSustainsTrack() {
+    FixedBandwidthMeter bandwidthMeter = new FixedBandwidthMeter(100000000);
+    BufferBasedTrackSelection selection =
+        new BufferBasedTrackSelection(TRACK_GROUP, TRACKS, bandwidthMeter);
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    assertEquals(4500000, selection.getSelectedFormat().bitrate);
+    selection.updateSelectedTrack(MIN_BUFFER_US);
+    assertEquals(4500000, selection.getSelectedFormat().bitrate);
+    // Below the minimum buffer, the buffer determines the selection regardless.
+    selection.updateSelectedTrack(MIN_BUFFER_US - 1000000);
+    assertEquals(300000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testSwitchUpLimitedByBandwidth() {
+    FixedBandwidthMeter bandwidthMeter = new FixedBandwidthMeter(1000000);
+    BufferBasedTrackSelection selection =
+        new BufferBasedTrackSelection(TRACK_GROUP, TRACKS, bandwidthMeter);
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    selection.updateSelectedTrack(0);
+    assertEquals(300000, selection.getSelectedFormat().bitrate);
+    // The buffer calls for the highest quality, but the bandwidth only sustains 750Kbps.
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    assertEquals(750000, selection.getSelectedFormat().bitrate);
+    // Having switched up, the selection isn't forced back down if the bandwidth drops.
+    bandwidthMeter.bitrateEstimate = 100000;
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    assertEquals(750000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testSwitchAwayFromBlacklistedTrack() {
+    FixedBandwidthMeter bandwidthMeter = new FixedBandwidthMeter(2000000);
+    BufferBasedTrackSelection selection =
+        new BufferBasedTrackSelection(TRACK_GROUP, TRACKS, bandwidthMeter);
+    selection.updateSelectedTrack(0);
+    assertEquals(1200000, selection.getSelectedFormat().bitrate);
+    assertTrue(selection.blacklist(selection.getSelectedIndex(), 60000));
+    // The buffer calls for a switch up, but the bandwidth only sustains the lowest quality track,
+    // so the selection would otherwise stay on the blacklisted track.
+    bandwidthMeter.bitrateEstimate = 600000;
+    selection.updateSelectedTrack(TARGET_BUFFER_US);
+    assertEquals(300000, selection.getSelectedFormat().bitrate);
+  }
+
+  public void testFactoryRejectsInvalidBufferDurations() {
+    BandwidthMeter bandwidthMeter = new FixedBandwidthMeter(BandwidthMeter.NO_ESTIMATE);
+    assertFactoryRejects(bandwidthMeter, 0, 25000);
+    assertFactoryRejects(bandwidthMeter, 10000, 10000);
+    assertFactoryRejects(bandwidthMeter, 10000, 5000);
+  }
+
+  public void testVolatileTraceSimulation() {
+    long[][] trace = buildVolatileTrace(new Random(0));
+    Result adaptiveResult = simulateAdaptive(trace);
+    Result bufferBasedResult = simulateBufferBased(trace);
+    Log.d(TAG, "volatile trace: adaptive: " + adaptiveResult);
+    Log.d(TAG, "volatile trace: buffer based: " + bufferBasedResult);
+    assertTrue(bufferBasedResult.switchCount < adaptiveResult.switchCount);
+    assertTrue(bufferBasedResult.stallDurationMs <= adaptiveResult.stallDurationMs);
+  }
+
+  public void testStableTraceSimulation() {
+    long[][] trace = new long[][] {{CONTENT_DURATION_MS, 4000000}};
+    Result adaptiveResult = simulateAdaptive(trace);
+    Result bufferBasedResult = simulateBufferBased(trace);
+    Log.d(TAG, "stable trace: adaptive: " + adaptiveResult);
+    Log.d(TAG, "stable trace: buffer based: " + bufferBasedResult);
+    assertEquals(0, bufferBasedResult.stallCount);
+    assertTrue(bufferBasedResult.switchCount <= adaptiveResult.switchCount);
+    // The highest sustainable bitrate should be reached quickly.
+    assertTrue(bufferBasedResult.averageBitrate > 2000000);
+  }
+
+  private static void assertFactoryRejects(BandwidthMeter bandwidthMeter, int minBufferMs,
+      int targetBufferMs) {
+    try {
+      new BufferBasedTrackSelection.Factory(bandwidthMeter,
+          BufferBasedTrackSelection.DEFAULT_MAX_INITIAL_BITRATE, minBufferMs, targetBufferMs,
+          BufferBasedTrackSelection.DEFAULT_BANDWIDTH_FRACTION);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  private static Result simulateAdaptive(long[][] trace) {
+    TrackSelectionSimulator simulator = new TrackSelectionSimulator(trace);
+    return simulate(simulator,
+        new AdaptiveVideoTrackSelection.Factory(simulator.getBandwidthMeter()));
+  }
+
+  private static Result simulateBufferBased(long[][] trace) {
+    TrackSelectionSimulator simulator = new TrackSelectionSimulator(trace);
+    return simulate(simulator,
+        new BufferBasedTrackSelection.Factory(simulator.getBandwidthMeter()));
+  }
+
+  private static Result simulate(TrackSelectionSimulator simulator,
+      TrackSelection.Factory factory) {
+    return simulator.simulate(factory, TRACK_GROUP, CONTENT_DURATION_MS, CHUNK_DURATION_MS,
+        MIN_BUFFER_MS, MAX_BUFFER_MS, BUFFER_FOR_PLAYBACK_MS);
+  }
+
+  /**
+   * Builds a trace resembling a mobile network, whose bandwidth changes every 1-5 seconds between
+   * 300Kbps and 6Mbps, with an average around 2Mbps.
+   */
+  private static long[][] buildVolatileTrace(Random random) {
+    long[][] trace = new long[200][];
+    for (int i = 0; i < trace.length; i++) {
+      long durationMs = 1000 + random.nextInt(4000);
+      long bandwidth = 300000 + (long) (5700000 * random.nextDouble() * random.nextDouble());
+      trace[i] = new long[] {durationMs, bandwidth};
+    }
+    return trace;
+  }
+
+  private static Format buildFormat(int bitrate, int width, int height) {
+    return Format.createVideoSampleFormat(null, MimeTypes.VIDEO_H264, null, bitrate,
+        Format.NO_VALUE, width, height, Format.NO_VALUE, null, null);
+  }
+
+  private static final class FixedBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate;
+
+    public FixedBandwidthMeter(long bitrateEstimate) {
+      this.bitrateEstimate = bitrateEstimate;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+  }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultTrackSelector}.
+ */
+public class DefaultTrackSelectorTest extends TestCase {
+
+  private static final String TAG = "DefaultTrackSelectorTest";
+
+  private static final String[] LANGUAGES = new String[] {"en", "de", "fr", "es", "it", "ja"};
+  private static final int VIDEO_TRACK_COUNT = 20;
+  private static final int AUDIO_GROUP_COUNT = 60;
+  private static final int TEXT_GROUP_COUNT = 30;
+  private static final int TRACK_COUNT = VIDEO_TRACK_COUNT + AUDIO_GROUP_COUNT + TEXT_GROUP_COUNT;
+  private static final int BENCHMARK_ITERATIONS = 100;
+
+  private FakeRendererCapabilities[] rendererCapabilities;
+  private TrackGroupArray trackGroups;
+  private DefaultTrackSelector trackSelector;
+
+  @Override
+  protected void setUp() {
+    rendererCapabilities = new FakeRendererCapabilities[] {
+        new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO),
+        new FakeRendererCapabilities(C.TRACK_TYPE_AUDIO),
+        new FakeRendererCapabilities(C.TRACK_TYPE_TEXT)};
+    trackGroups = createLargeTrackGroupArray();
+    trackSelector = new DefaultTrackSelector(new Handler(Looper.getMainLooper()));
+  }
+
+  public void testFormatSupportIsQueriedOncePerFormat() throws ExoPlaybackException {
+    // Each renderer fails if it's queried more than once for the same format.
+    trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    for (FakeRendererCapabilities capabilities : rendererCapabilities) {
+      assertTrue(capabilities.supportsFormatCount > 0);
+      assertTrue(capabilities.supportsFormatCount <= TRACK_COUNT);
+    }
+  }
+
+  public void testReselectionForSameTracksReusesMapping() throws ExoPlaybackException {
+    TrackSelections<MappedTrackInfo> selections =
+        trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    resetSupportsFormatCounts();
+    TrackSelections<MappedTrackInfo> newSelections =
+        trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    assertEquals(0, getSupportsFormatCount());
+    assertSame(selections.info, newSelections.info);
+    assertEquals(selections, newSelections);
+  }
+
+  public void testParameterChangeOnlyReselectsAffectedRenderers() throws ExoPlaybackException {
+    TrackSelections<MappedTrackInfo> selections =
+        trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    assertEquals("en", selections.get(1).getSelectedFormat().language);
+    resetSupportsFormatCounts();
+
+    trackSelector.setParameters(trackSelector.getParameters().withPreferredAudioLanguage("de"));
+    TrackSelections<MappedTrackInfo> newSelections =
+        trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    assertEquals(0, getSupportsFormatCount());
+    assertSame(selections.get(0), newSelections.get(0));
+    assertEquals("de", newSelections.get(1).getSelectedFormat().language);
+
+    trackSelector.setParameters(trackSelector.getParameters().withMaxVideoSize(1280, 720));
+    TrackSelections<MappedTrackInfo> cappedSelections =
+        trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    assertSame(newSelections.get(1), cappedSelections.get(1));
+    assertTrue(cappedSelections.get(0).getSelectedFormat().height <= 720);
+  }
+
+  public void testNewTrackGroupsAreMappedAgain() throws ExoPlaybackException {
+    trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    resetSupportsFormatCounts();
+    trackSelector.selectTracks(rendererCapabilities, createLargeTrackGroupArray());
+    assertEquals(TRACK_COUNT, rendererCapabilities[0].supportsFormatCount);
+  }
+
+  public void testSelectionBenchmark() throws ExoPlaybackException {
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      // Equal formats in the new track groups are queried again.
+      resetSupportsFormatCounts();
+      trackSelector.selectTracks(rendererCapabilities, createLargeTrackGroupArray());
+    }
+    long mappingDurationNs = System.nanoTime() - startTimeNs;
+    resetSupportsFormatCounts();
+    startTimeNs = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      String language = LANGUAGES[i % LANGUAGES.length];
+      trackSelector.setParameters(
+          trackSelector.getParameters().withPreferredAudioLanguage(language));
+      trackSelector.selectTracks(rendererCapabilities, trackGroups);
+    }
+    long reselectionDurationNs = System.nanoTime() - startTimeNs;
+    Log.d(TAG, "Tracks: " + TRACK_COUNT
+        + ", full selection: " + (mappingDurationNs / BENCHMARK_ITERATIONS / 1000) + "us"
+        + ", parameter reselection: " + (reselectionDurationNs / BENCHMARK_ITERATIONS / 1000)
+        + "us");
+  }
+
+  private void resetSupportsFormatCounts() {
+    for (FakeRendererCapabilities capabilities : rendererCapabilities) {
+      capabilities.supportsFormatCount = 0;
+      capabilities.queriedFormats.clear();
+    }
+  }
+
+  private int getSupportsFormatCount() {
+    int count = 0;
+    for (FakeRendererCapabilities capabilities : rendererCapabilities) {
+      count += capabilities.supportsFormatCount;
+    }
+    return count;
+  }
+
+  private static TrackGroupArray createLargeTrackGroupArray() {
+    TrackGroup[] groups = new TrackGroup[1 + AUDIO_GROUP_COUNT + TEXT_GROUP_COUNT];
+    Format[] videoFormats = new Format[VIDEO_TRACK_COUNT];
+    for (int i = 0; i < VIDEO_TRACK_COUNT; i++) {
+      int height = 144 + i * 54;
+      videoFormats[i] = Format.createVideoSampleFormat("v" + i, MimeTypes.VIDEO_H264, null,
+          200000 + i * 300000, Format.NO_VALUE, height * 16 / 9, height, Format.NO_VALUE, null,
+          null);
+    }
+    groups[0] = new TrackGroup(videoFormats);
+    for (int i = 0; i < AUDIO_GROUP_COUNT; i++) {
+      groups[1 + i] = new TrackGroup(Format.createAudioSampleFormat("a" + i, MimeTypes.AUDIO_AAC,
+          null, 64000 + (i / LANGUAGES.length) * 32000, Format.NO_VALUE, 2, 44100, null, null, 0,
+          LANGUAGES[i % LANGUAGES.length]));
+    }
+    for (int i = 0; i < TEXT_GROUP_COUNT; i++) {
+      groups[1 + AUDIO_GROUP_COUNT + i] = new TrackGroup(Format.createTextSampleFormat("t" + i,
+          MimeTypes.TEXT_VTT, null, Format.NO_VALUE, 0, LANGUAGES[i % LANGUAGES.length], null));
+    }
+    return new TrackGroupArray(groups);
+  }
+
+  private static final class FakeRendererCapabilities implements RendererCapabilities {
+
+    private final int trackType;
+    private final Set<Format> queriedFormats;
+
+    public int supportsFormatCount;
+
+    public FakeRendererCapabilities(int trackType) {
+      this.trackType = trackType;
+      queriedFormats = new HashSet<>();
+    }
+
+    @Override
+    public int getTrackType() {
+      return trackType;
+    }
+
+    @Override
+    public int supportsFormat(Format format) {
+      assertTrue(queriedFormats.add(format));
+      supportsFormatCount++;
+      return MimeTypes.getTrackType(format.sampleMimeType) == trackType
+          ? FORMAT_HANDLED | ADAPTIVE_SEAMLESS : FORMAT_UNSUPPORTED_TYPE;
+    }
+
+    @Override
+    public int supportsMixedMimeTypeAdaptation() {
+      return ADAPTIVE_NOT_SEAMLESS;
+    }
+
+  }
+
+}
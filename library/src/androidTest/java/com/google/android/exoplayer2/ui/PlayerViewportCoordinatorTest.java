@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.Parameters;
+import com.google.android.exoplayer2.util.MimeTypes;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PlayerViewportCoordinator}.
+ */
+public class PlayerViewportCoordinatorTest extends TestCase {
+
+  private static final int MIN_VIEWPORT_SIZE_PX =
+      PlayerViewportCoordinator.DEFAULT_MIN_VIEWPORT_SIZE_PX;
+  private static final int[] HEIGHTS = new int[] {144, 240, 360, 480, 720, 1080};
+
+  private DefaultTrackSelector trackSelector;
+  private RendererCapabilities[] rendererCapabilities;
+  private TrackGroupArray trackGroups;
+
+  @Override
+  protected void setUp() {
+    trackSelector = new DefaultTrackSelector(new Handler(Looper.getMainLooper()));
+    rendererCapabilities = new RendererCapabilities[] {new FakeVideoRendererCapabilities()};
+    Format[] formats = new Format[HEIGHTS.length];
+    for (int i = 0; i < HEIGHTS.length; i++) {
+      formats[i] = Format.createVideoSampleFormat(Integer.toString(i), MimeTypes.VIDEO_H264, null,
+          HEIGHTS[i] * 5000, Format.NO_VALUE, HEIGHTS[i] * 16 / 9, HEIGHTS[i], Format.NO_VALUE,
+          null, null);
+    }
+    trackGroups = new TrackGroupArray(new TrackGroup(formats));
+  }
+
+  public void testVisibleViewCapsResolution() throws ExoPlaybackException {
+    assertEquals(480, getSelectedHeight(800, 450, true));
+    assertEquals(1080, getSelectedHeight(1920, 1080, true));
+  }
+
+  public void testSmallViewSelectsLowestResolution() throws ExoPlaybackException {
+    assertEquals(144, getSelectedHeight(MIN_VIEWPORT_SIZE_PX * 16 / 9, MIN_VIEWPORT_SIZE_PX - 1,
+        true));
+  }
+
+  public void testHiddenViewSelectsLowestResolution() throws ExoPlaybackException {
+    assertEquals(144, getSelectedHeight(1920, 1080, false));
+  }
+
+  public void testUnchangedViewportRetainsParameters() {
+    Parameters params = PlayerViewportCoordinator.getViewportParameters(new Parameters(), 800, 450,
+        true, MIN_VIEWPORT_SIZE_PX);
+    assertSame(params, PlayerViewportCoordinator.getViewportParameters(params, 800, 450, true,
+        MIN_VIEWPORT_SIZE_PX));
+    Parameters hiddenParams = PlayerViewportCoordinator.getViewportParameters(params, 800, 450,
+        false, MIN_VIEWPORT_SIZE_PX);
+    assertSame(hiddenParams, PlayerViewportCoordinator.getViewportParameters(hiddenParams, 10, 10,
+        true, MIN_VIEWPORT_SIZE_PX));
+  }
+
+  private int getSelectedHeight(int width, int height, boolean visible)
+      throws ExoPlaybackException {
+    trackSelector.setParameters(PlayerViewportCoordinator.getViewportParameters(
+        trackSelector.getParameters(), width, height, visible, MIN_VIEWPORT_SIZE_PX));
+    return trackSelector.selectTracks(rendererCapabilities, trackGroups).get(0)
+        .getSelectedFormat().height;
+  }
+
+  private static final class FakeVideoRendererCapabilities implements RendererCapabilities {
+
+    @Override
+    public int getTrackType() {
+      return C.TRACK_TYPE_VIDEO;
+    }
+
+    @Override
+    public int supportsFormat(Format format) {
+      return FORMAT_HANDLED;
+    }
+
+    @Override
+    public int supportsMixedMimeTypeAdaptation() {
+      return ADAPTIVE_NOT_SEAMLESS;
+    }
+
+  }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link Loader}.
+ */
+public class LoaderTest extends TestCase {
+
+  private static final String TAG = "LoaderTest";
+
+  private static final int PLAYER_COUNT = 16;
+  private static final int LOADERS_PER_PLAYER = 3;
+  private static final int LOAD_DURATION_MS = 20;
+  private static final int MAX_SHARED_THREADS = 4;
+  private static final long TIMEOUT_MS = 10000;
+
+  private HandlerThread callbackThread;
+  private Handler callbackHandler;
+
+  @Override
+  protected void setUp() throws Exception {
+    callbackThread = new HandlerThread("LoaderTest");
+    callbackThread.start();
+    callbackHandler = new Handler(callbackThread.getLooper());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    callbackThread.quit();
+    LoaderExecutors.setSharedExecutor(null);
+  }
+
+  public void testSharedExecutorBoundsThreadCount() throws InterruptedException {
+    ExecutorService executor = LoaderExecutors.newBoundedExecutor(MAX_SHARED_THREADS);
+    LoaderExecutors.setSharedExecutor(executor);
+    LoadStats stats = runConcurrentLoads("shared");
+    assertTrue(stats.loadThreads.size() <= MAX_SHARED_THREADS);
+    executor.shutdown();
+  }
+
+  public void testDedicatedThreadsPerLoader() throws InterruptedException {
+    LoadStats stats = runConcurrentLoads("dedicated");
+    assertEquals(PLAYER_COUNT * LOADERS_PER_PLAYER, stats.loadThreads.size());
+  }
+
+  public void testVirtualThreadExecutorIfSupported() throws InterruptedException {
+    ExecutorService executor = LoaderExecutors.newVirtualThreadPerLoadExecutor();
+    if (executor == null) {
+      // Not supported by this runtime.
+      return;
+    }
+    LoaderExecutors.setSharedExecutor(executor);
+    runConcurrentLoads("virtual");
+    executor.shutdown();
+  }
+
+  public void testCancelInterruptsLoadOnSharedExecutor() throws InterruptedException {
+    ExecutorService executor = LoaderExecutors.newBoundedExecutor(1);
+    final Loader loader = new Loader(executor);
+    final BlockingLoadable loadable = new BlockingLoadable();
+    final CountDownLatch canceled = new CountDownLatch(1);
+    callbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        loader.startLoading(loadable, new CountingCallback(null, null) {
+          @Override
+          public void onLoadCanceled(Loadable loadable, long elapsedRealtimeMs,
+              long loadDurationMs, boolean released) {
+            canceled.countDown();
+          }
+        }, 0);
+      }
+    });
+    assertTrue(loadable.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    callbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        loader.cancelLoading();
+      }
+    });
+    assertTrue(canceled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    // The shared thread must be usable by a subsequent load without being interrupted.
+    final BlockingLoadable nextLoadable = new BlockingLoadable();
+    final Loader nextLoader = new Loader(executor);
+    callbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        nextLoader.startLoading(nextLoadable, new CountingCallback(null, null), 0);
+      }
+    });
+    assertTrue(nextLoadable.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    Thread.sleep(LOAD_DURATION_MS);
+    assertFalse(nextLoadable.interrupted);
+    nextLoader.release();
+    loader.release();
+    executor.shutdown();
+  }
+
+  private LoadStats runConcurrentLoads(String name) throws InterruptedException {
+    final LoadStats stats = new LoadStats();
+    final CountDownLatch completed = new CountDownLatch(PLAYER_COUNT * LOADERS_PER_PLAYER);
+    int threadCountBefore = Thread.activeCount();
+    final Loader[] loaders = new Loader[PLAYER_COUNT * LOADERS_PER_PLAYER];
+    for (int i = 0; i < loaders.length; i++) {
+      loaders[i] = new Loader("Loader:" + name + ":" + i);
+    }
+    callbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        for (Loader loader : loaders) {
+          loader.startLoading(new SleepingLoadable(stats), new CountingCallback(stats, completed),
+              0);
+        }
+      }
+    });
+    assertTrue(completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    int peakThreadCount = Thread.activeCount() - threadCountBefore;
+    for (Loader loader : loaders) {
+      loader.release();
+    }
+    Log.d(TAG, name + ": loads=" + loaders.length + ", threads=" + stats.loadThreads.size()
+        + ", activeThreadDelta=" + peakThreadCount + ", meanLatencyMs="
+        + (stats.totalLoadDurationMs.get() / loaders.length));
+    return stats;
+  }
+
+  private static final class LoadStats {
+
+    public final Set<Thread> loadThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    public final AtomicLong totalLoadDurationMs = new AtomicLong();
+
+  }
+
+  private static class CountingCallback implements Loader.Callback<Loadable> {
+
+    private final LoadStats stats;
+    private final CountDownLatch completed;
+
+    public CountingCallback(LoadStats stats, CountDownLatch completed) {
+      this.stats = stats;
+      this.completed = completed;
+    }
+
+    @Override
+    public void onLoadCompleted(Loadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      if (stats != null) {
+        stats.totalLoadDurationMs.addAndGet(loadDurationMs);
+      }
+      if (completed != null) {
+        completed.countDown();
+      }
+    }
+
+    @Override
+    public void onLoadCanceled(Loadable loadable, long elapsedRealtimeMs, long loadDurationMs,
+        boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public int onLoadError(Loadable loadable, long elapsedRealtimeMs, long loadDurationMs,
+        IOException error) {
+      return Loader.DONT_RETRY;
+    }
+
+  }
+
+  private static final class SleepingLoadable implements Loadable {
+
+    private final LoadStats stats;
+
+    private volatile boolean canceled;
+
+    public SleepingLoadable(LoadStats stats) {
+      this.stats = stats;
+    }
+
+    @Override
+    public void cancelLoad() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      stats.loadThreads.add(Thread.currentThread());
+      Thread.sleep(LOAD_DURATION_MS);
+    }
+
+  }
+
+  private static final class BlockingLoadable implements Loadable {
+
+    public final CountDownLatch started = new CountDownLatch(1);
+
+    public volatile boolean interrupted;
+
+    private volatile boolean canceled;
+
+    @Override
+    public void cancelLoad() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      started.countDown();
+      try {
+        Thread.sleep(TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+        throw e;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PooledHttpDataSource}.
+ */
+public class PooledHttpDataSourceTest extends TestCase {
+
+  private static final String TAG = "PooledHttpDataSourceTest";
+  private static final String USER_AGENT = "PooledHttpDataSourceTest";
+
+  private static final int SEGMENT_COUNT = 20;
+  private static final int SEGMENT_LENGTH = 32 * 1024;
+  private static final byte[] TEST_DATA = buildTestData(SEGMENT_COUNT * SEGMENT_LENGTH);
+
+  private LocalHttpServer server;
+  private ProxySelector defaultProxySelector;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new LocalHttpServer(TEST_DATA);
+    defaultProxySelector = ProxySelector.getDefault();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ProxySelector.setDefault(defaultProxySelector);
+    server.close();
+  }
+
+  public void testSequentialRangeRequestsReuseConnection() throws IOException {
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      // A new source per segment, as is the case for chunks loaded by a chunk source.
+      byte[] segment = readFully(factory.createDataSource(), buildSegmentDataSpec(i));
+      assertTrue(Arrays.equals(getSegmentData(i), segment));
+    }
+    HttpConnectionPool pool = factory.getConnectionPool();
+    assertEquals(1, server.acceptedConnectionCount.get());
+    assertEquals(1, pool.getConnectionsOpened());
+    assertEquals(SEGMENT_COUNT - 1, pool.getConnectionsReused());
+    pool.evictAll();
+  }
+
+  public void testChunkedResponse() throws IOException {
+    server.chunked = true;
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    for (int i = 0; i < 3; i++) {
+      byte[] segment = readFully(factory.createDataSource(), buildSegmentDataSpec(i));
+      assertTrue(Arrays.equals(getSegmentData(i), segment));
+    }
+    assertEquals(1, server.acceptedConnectionCount.get());
+    factory.getConnectionPool().evictAll();
+  }
+
+  public void testAbandonedResponseIsNotReused() throws IOException {
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    HttpDataSource dataSource = factory.createDataSource();
+    dataSource.open(buildSegmentDataSpec(0));
+    dataSource.read(new byte[1024], 0, 1024);
+    dataSource.close();
+    // The remainder of the response was too large to drain, so a new connection is required.
+    byte[] segment = readFully(factory.createDataSource(), buildSegmentDataSpec(1));
+    assertTrue(Arrays.equals(getSegmentData(1), segment));
+    assertEquals(2, server.acceptedConnectionCount.get());
+    factory.getConnectionPool().evictAll();
+  }
+
+  public void testRetriesWhenIdleConnectionClosedByServer() throws IOException {
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    readFully(factory.createDataSource(), buildSegmentDataSpec(0));
+    server.closeAfterNextResponse = true;
+    readFully(factory.createDataSource(), buildSegmentDataSpec(1));
+    // The pooled connection is now stale. The request should be retried on a new connection.
+    byte[] segment = readFully(factory.createDataSource(), buildSegmentDataSpec(2));
+    assertTrue(Arrays.equals(getSegmentData(2), segment));
+    assertEquals(2, server.acceptedConnectionCount.get());
+    factory.getConnectionPool().evictAll();
+  }
+
+  public void testPostIsNotRetriedWhenIdleConnectionClosedByServer() throws IOException {
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    server.closeAfterNextResponse = true;
+    readFully(factory.createDataSource(), buildSegmentDataSpec(0));
+    // The pooled connection is now stale. Sending the body again might not be safe, so the request
+    // should fail rather than being retried on a new connection.
+    DataSpec dataSpec = new DataSpec(buildSegmentDataSpec(1).uri, new byte[] {1, 2, 3}, 0, 0,
+        SEGMENT_LENGTH, null, 0);
+    try {
+      readFully(factory.createDataSource(), dataSpec);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertEquals(1, server.acceptedConnectionCount.get());
+    factory.getConnectionPool().evictAll();
+  }
+
+  public void testRequestIsMadeThroughHttpProxy() throws IOException {
+    // The local server stands in for the proxy, so the host needn't exist.
+    setHttpProxy();
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://proxied.invalid/media"), SEGMENT_LENGTH,
+        SEGMENT_LENGTH, null);
+    byte[] segment = readFully(factory.createDataSource(), dataSpec);
+    assertTrue(Arrays.equals(getSegmentData(1), segment));
+    assertEquals("GET http://proxied.invalid/media HTTP/1.1", server.lastRequestLine);
+    factory.getConnectionPool().evictAll();
+  }
+
+  public void testSecureRequestThroughHttpProxyOpensTunnel() throws IOException {
+    setHttpProxy();
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://proxied.invalid/media"), 0,
+        SEGMENT_LENGTH, null);
+    // The local server requires proxy authentication, which isn't supported.
+    try {
+      readFully(factory.createDataSource(), dataSpec);
+      fail();
+    } catch (HttpDataSource.HttpDataSourceException e) {
+      // Expected.
+    }
+    assertEquals("CONNECT proxied.invalid:443 HTTP/1.1", server.lastRequestLine);
+  }
+
+  /**
+   * Compares the time taken to load all segments using {@link DefaultHttpDataSource} with the time
+   * taken using {@link PooledHttpDataSource}, and reports the connection reuse ratio.
+   */
+  public void testBenchmarkAgainstDefaultHttpDataSource() throws IOException {
+    DefaultHttpDataSource defaultDataSource = new DefaultHttpDataSource(USER_AGENT, null);
+    long startTimeMs = SystemClock.elapsedRealtime();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      readFully(defaultDataSource, buildSegmentDataSpec(i));
+    }
+    long defaultDurationMs = SystemClock.elapsedRealtime() - startTimeMs;
+    int defaultConnectionCount = server.acceptedConnectionCount.getAndSet(0);
+
+    PooledHttpDataSource.Factory factory = new PooledHttpDataSource.Factory(USER_AGENT, null);
+    startTimeMs = SystemClock.elapsedRealtime();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      readFully(factory.createDataSource(), buildSegmentDataSpec(i));
+    }
+    long pooledDurationMs = SystemClock.elapsedRealtime() - startTimeMs;
+    int pooledConnectionCount = server.acceptedConnectionCount.get();
+
+    HttpConnectionPool pool = factory.getConnectionPool();
+    Log.d(TAG, "default: " + defaultDurationMs + "ms, " + defaultConnectionCount
+        + " connections; pooled: " + pooledDurationMs + "ms, " + pooledConnectionCount
+        + " connections, reuseRatio=" + pool.getReuseRatio());
+    assertEquals(1, pooledConnectionCount);
+    assertEquals((float) (SEGMENT_COUNT - 1) / SEGMENT_COUNT, pool.getReuseRatio(), 0.001f);
+    pool.evictAll();
+  }
+
+  /**
+   * Sets a default {@link ProxySelector} that selects the local server as an HTTP proxy.
+   */
+  private void setHttpProxy() {
+    final Proxy proxy = new Proxy(Proxy.Type.HTTP,
+        new InetSocketAddress("127.0.0.1", server.getPort()));
+    ProxySelector.setDefault(new ProxySelector() {
+      @Override
+      public List<Proxy> select(URI uri) {
+        return Collections.singletonList(proxy);
+      }
+
+      @Override
+      public void connectFailed(URI uri, SocketAddress address, IOException e) {
+        // Do nothing.
+      }
+    });
+  }
+
+  private DataSpec buildSegmentDataSpec(int segmentIndex) {
+    return new DataSpec(Uri.parse("http://127.0.0.1:" + server.getPort() + "/media"),
+        (long) segmentIndex * SEGMENT_LENGTH, SEGMENT_LENGTH, null);
+  }
+
+  private static byte[] getSegmentData(int segmentIndex) {
+    return Arrays.copyOfRange(TEST_DATA, segmentIndex * SEGMENT_LENGTH,
+        (segmentIndex + 1) * SEGMENT_LENGTH);
+  }
+
+  private static byte[] readFully(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    try {
+      byte[] data = new byte[(int) dataSpec.length];
+      long length = dataSource.open(dataSpec);
+      assertTrue(length == C.LENGTH_UNSET || length == data.length);
+      int position = 0;
+      while (position < data.length) {
+        int bytesRead = dataSource.read(data, position, Math.min(4096, data.length - position));
+        assertTrue(bytesRead != C.RESULT_END_OF_INPUT);
+        position += bytesRead;
+      }
+      assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+      return data;
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static byte[] buildTestData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  /**
+   * Stands in for an HTTP server. Serves byte ranges of a byte array over persistent HTTP/1.1
+   * connections, and counts the number of connections accepted. When standing in for a proxy, it
+   * requires authentication for CONNECT requests.
+   */
+  private static final class LocalHttpServer implements Runnable {
+
+    public final AtomicInteger acceptedConnectionCount;
+
+    public volatile boolean chunked;
+    public volatile boolean closeAfterNextResponse;
+    public volatile String lastRequestLine;
+
+    private final byte[] data;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    public LocalHttpServer(byte[] data) throws IOException {
+      this.data = data;
+      acceptedConnectionCount = new AtomicInteger();
+      serverSocket = new ServerSocket(0);
+      acceptThread = new Thread(this, "LocalHttpServer");
+      acceptThread.start();
+    }
+
+    public int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    public void close() throws IOException, InterruptedException {
+      serverSocket.close();
+      acceptThread.join();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (IOException e) {
+          // The server has been closed.
+          return;
+        }
+        acceptedConnectionCount.incrementAndGet();
+        try {
+          socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+          // Ignore.
+        }
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            serveConnection(socket);
+          }
+        }, "LocalHttpServer:Connection").start();
+      }
+    }
+
+    private void serveConnection(Socket socket) {
+      try {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        String requestLine;
+        while ((requestLine = readLine(in)) != null) {
+          int start = 0;
+          int end = data.length - 1;
+          String line;
+          while ((line = readLine(in)) != null && !line.isEmpty()) {
+            if (line.regionMatches(true, 0, "Range: bytes=", 0, 13)) {
+              String[] range = line.substring(13).split("-");
+              start = Integer.parseInt(range[0]);
+              if (range.length > 1) {
+                end = Integer.parseInt(range[1]);
+              }
+            }
+          }
+          lastRequestLine = requestLine;
+          if (requestLine.startsWith("CONNECT ")) {
+            out.write(("HTTP/1.1 407 Proxy Authentication Required\r\n"
+                + "Content-Length: 0\r\n\r\n").getBytes("ISO-8859-1"));
+            out.flush();
+            break;
+          } else if (!requestLine.startsWith("GET ")) {
+            break;
+          }
+          // Closing without a Connection: close header simulates an idle connection timing out.
+          boolean close = closeAfterNextResponse;
+          closeAfterNextResponse = false;
+          writeResponse(out, start, end - start + 1);
+          if (close) {
+            break;
+          }
+        }
+      } catch (IOException e) {
+        // The client closed the connection.
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Ignore.
+        }
+      }
+    }
+
+    private void writeResponse(OutputStream out, int offset, int length) throws IOException {
+      StringBuilder headers = new StringBuilder();
+      headers.append("HTTP/1.1 206 Partial Content\r\n");
+      headers.append("Content-Type: application/octet-stream\r\n");
+      headers.append("Content-Range: bytes ").append(offset).append('-')
+          .append(offset + length - 1).append('/').append(data.length).append("\r\n");
+      if (chunked) {
+        headers.append("Transfer-Encoding: chunked\r\n");
+      } else {
+        headers.append("Content-Length: ").append(length).append("\r\n");
+      }
+      headers.append("\r\n");
+      out.write(headers.toString().getBytes("ISO-8859-1"));
+      if (chunked) {
+        int chunkLength = 8 * 1024;
+        for (int position = 0; position < length; position += chunkLength) {
+          int bytesToWrite = Math.min(chunkLength, length - position);
+          out.write((Integer.toHexString(bytesToWrite) + "\r\n").getBytes("ISO-8859-1"));
+          out.write(data, offset + position, bytesToWrite);
+          out.write("\r\n".getBytes("ISO-8859-1"));
+        }
+        out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+      } else {
+        out.write(data, offset, length);
+      }
+      out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = in.read()) != -1) {
+        if (b == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+          }
+          return line.toString();
+        }
+        line.append((char) b);
+      }
+      return line.length() == 0 ? null : line.toString();
+    }
+
+  }
+
+}
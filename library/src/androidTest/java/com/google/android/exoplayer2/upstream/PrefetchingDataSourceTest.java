@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PrefetchingDataSource}.
+ */
+public class PrefetchingDataSourceTest extends TestCase {
+
+  private static final String TAG = "PrefetchingDataSourceTest";
+
+  private static final int SEGMENT_COUNT = 8;
+  private static final int SEGMENT_LENGTH = 100 * 1024;
+  private static final byte[] TEST_DATA = buildTestData(SEGMENT_COUNT * SEGMENT_LENGTH);
+
+  public void testPrefetchedReadMatchesUpstream() throws IOException {
+    FakeLatencyDataSourceFactory upstreamFactory = new FakeLatencyDataSourceFactory(TEST_DATA, 0);
+    PrefetchingDataSource dataSource = new PrefetchingDataSource(upstreamFactory, 2, 1024);
+    dataSource.prefetch(buildSegmentDataSpec(0),
+        Arrays.asList(buildSegmentDataSpec(1), buildSegmentDataSpec(2)));
+    for (int i = 0; i < 3; i++) {
+      byte[] segment = readFully(dataSource, buildSegmentDataSpec(i));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(TEST_DATA, i * SEGMENT_LENGTH,
+          (i + 1) * SEGMENT_LENGTH), segment));
+    }
+    // One direct open for segment 0, plus the two prefetched segments.
+    assertEquals(3, upstreamFactory.openCount.get());
+  }
+
+  public void testUnannouncedOpenIsPassedUpstream() throws IOException {
+    FakeLatencyDataSourceFactory upstreamFactory = new FakeLatencyDataSourceFactory(TEST_DATA, 0);
+    PrefetchingDataSource dataSource = new PrefetchingDataSource(upstreamFactory, 2, 1024);
+    dataSource.prefetch(buildSegmentDataSpec(0),
+        Collections.singletonList(buildSegmentDataSpec(1)));
+    byte[] segment = readFully(dataSource, buildSegmentDataSpec(5));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(TEST_DATA, 5 * SEGMENT_LENGTH,
+        6 * SEGMENT_LENGTH), segment));
+  }
+
+  public void testPrefetchOfNextRangeIsRetained() throws IOException {
+    FakeLatencyDataSourceFactory upstreamFactory = new FakeLatencyDataSourceFactory(TEST_DATA, 0);
+    PrefetchingDataSource dataSource = new PrefetchingDataSource(upstreamFactory, 1, 1024);
+    dataSource.prefetch(buildSegmentDataSpec(0),
+        Collections.singletonList(buildSegmentDataSpec(1)));
+    readFully(dataSource, buildSegmentDataSpec(0));
+    // Segment 1 is about to be opened, so its prefetch must not be canceled.
+    dataSource.prefetch(buildSegmentDataSpec(1),
+        Collections.singletonList(buildSegmentDataSpec(2)));
+    readFully(dataSource, buildSegmentDataSpec(1));
+    readFully(dataSource, buildSegmentDataSpec(2));
+    assertEquals(3, upstreamFactory.openCount.get());
+  }
+
+  public void testReplacedPrefetchIsCanceled() throws IOException {
+    FakeLatencyDataSourceFactory upstreamFactory = new FakeLatencyDataSourceFactory(TEST_DATA, 0);
+    PrefetchingDataSource dataSource = new PrefetchingDataSource(upstreamFactory, 1, 1024);
+    dataSource.prefetch(buildSegmentDataSpec(0),
+        Collections.singletonList(buildSegmentDataSpec(1)));
+    // Simulates a seek: segment 1 is no longer expected.
+    dataSource.prefetch(buildSegmentDataSpec(3),
+        Collections.singletonList(buildSegmentDataSpec(4)));
+    int opensBeforeRead = upstreamFactory.openCount.get();
+    readFully(dataSource, buildSegmentDataSpec(1));
+    // Segment 1 had to be requested again.
+    assertTrue(upstreamFactory.openCount.get() > opensBeforeRead);
+  }
+
+  /**
+   * Compares the throughput of reading segments one after another with the throughput achieved
+   * when the following segments are prefetched, for a range of injected request latencies.
+   */
+  public void testThroughputVersusInjectedLatency() throws IOException {
+    int[] latenciesMs = new int[] {10, 50, 100};
+    for (int latencyMs : latenciesMs) {
+      long sequentialDurationMs = readAllSegments(latencyMs, false);
+      long prefetchingDurationMs = readAllSegments(latencyMs, true);
+      Log.d(TAG, "latency=" + latencyMs + "ms, sequential="
+          + getThroughputKbps(sequentialDurationMs) + "kbps, prefetching="
+          + getThroughputKbps(prefetchingDurationMs) + "kbps");
+      if (latencyMs >= 50) {
+        assertTrue(prefetchingDurationMs < sequentialDurationMs);
+      }
+    }
+  }
+
+  private static long readAllSegments(int latencyMs, boolean prefetch) throws IOException {
+    FakeLatencyDataSourceFactory upstreamFactory =
+        new FakeLatencyDataSourceFactory(TEST_DATA, latencyMs);
+    PrefetchingDataSource dataSource = new PrefetchingDataSource(upstreamFactory,
+        PrefetchingDataSource.DEFAULT_MAX_PREFETCH_COUNT,
+        PrefetchingDataSource.DEFAULT_MAX_BUFFERED_BYTES_PER_REQUEST);
+    long startTimeMs = SystemClock.elapsedRealtime();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      if (prefetch) {
+        List<DataSpec> followingDataSpecs = new ArrayList<>();
+        for (int j = i + 1; j < SEGMENT_COUNT; j++) {
+          followingDataSpecs.add(buildSegmentDataSpec(j));
+        }
+        dataSource.prefetch(buildSegmentDataSpec(i), followingDataSpecs);
+      }
+      readFully(dataSource, buildSegmentDataSpec(i));
+    }
+    return SystemClock.elapsedRealtime() - startTimeMs;
+  }
+
+  private static long getThroughputKbps(long durationMs) {
+    return durationMs == 0 ? 0 : (TEST_DATA.length * 8L) / durationMs;
+  }
+
+  private static DataSpec buildSegmentDataSpec(int segmentIndex) {
+    return new DataSpec(Uri.parse("http://localhost/segment"),
+        (long) segmentIndex * SEGMENT_LENGTH, SEGMENT_LENGTH, null);
+  }
+
+  private static byte[] readFully(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    try {
+      byte[] data = new byte[(int) dataSource.open(dataSpec)];
+      int position = 0;
+      while (position < data.length) {
+        int bytesRead = dataSource.read(data, position, Math.min(4096, data.length - position));
+        assertTrue(bytesRead != C.RESULT_END_OF_INPUT);
+        position += bytesRead;
+      }
+      assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+      return data;
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static byte[] buildTestData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  /**
+   * Stands in for an HTTP server, serving ranges of a byte array after a fixed request latency.
+   */
+  private static final class FakeLatencyDataSourceFactory implements DataSource.Factory {
+
+    public final AtomicInteger openCount;
+
+    private final byte[] data;
+    private final int latencyMs;
+
+    public FakeLatencyDataSourceFactory(byte[] data, int latencyMs) {
+      this.data = data;
+      this.latencyMs = latencyMs;
+      openCount = new AtomicInteger();
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new DataSource() {
+
+        private final ByteArrayDataSource source = new ByteArrayDataSource(data);
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          openCount.incrementAndGet();
+          SystemClock.sleep(latencyMs);
+          return source.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+          return source.read(buffer, offset, readLength);
+        }
+
+        @Override
+        public Uri getUri() {
+          return source.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+          source.close();
+        }
+
+      };
+    }
+
+  }
+
+}
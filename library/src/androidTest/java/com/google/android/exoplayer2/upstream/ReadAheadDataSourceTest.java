@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.C;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ReadAheadDataSource}.
+ */
+public class ReadAheadDataSourceTest extends TestCase {
+
+  private static final Uri URI = Uri.parse("http://localhost/media");
+  private static final byte[] TEST_DATA = buildTestData(1024 * 1024);
+  private static final int WINDOW_SIZE = 64 * 1024;
+  private static final int MAX_SKIP_BYTES = 16 * 1024;
+  // Large enough that the measured skip threshold will always be capped to MAX_SKIP_BYTES.
+  private static final int OPEN_LATENCY_MS = 5;
+
+  private CountingDataSource upstream;
+  private ReadAheadDataSource dataSource;
+
+  @Override
+  protected void setUp() throws Exception {
+    upstream = new CountingDataSource(TEST_DATA);
+    dataSource = new ReadAheadDataSource(upstream, WINDOW_SIZE, MAX_SKIP_BYTES);
+  }
+
+  public void testAdjacentRangesUseSingleRequest() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      assertReadRange(i * 1000, 1000);
+    }
+    assertEquals(1, upstream.openCount);
+    assertEquals(0, dataSource.getBytesSkipped());
+  }
+
+  public void testSmallForwardGapIsSkipped() throws IOException {
+    assertReadRange(0, 1000);
+    assertReadRange(2000, 1000);
+    assertEquals(1, upstream.openCount);
+    assertEquals(1000, dataSource.getBytesSkipped());
+  }
+
+  public void testLargeForwardGapReopens() throws IOException {
+    assertReadRange(0, 1000);
+    assertReadRange(1000 + MAX_SKIP_BYTES + 1, 1000);
+    assertEquals(2, upstream.openCount);
+    assertEquals(0, dataSource.getBytesSkipped());
+  }
+
+  public void testBackwardRangeWithinWindowIsServedFromMemory() throws IOException {
+    assertReadRange(0, 8000);
+    assertReadRange(100, 500);
+    assertReadRange(8000, 1000);
+    assertEquals(1, upstream.openCount);
+  }
+
+  public void testBackwardRangeOutsideWindowReopens() throws IOException {
+    assertReadRange(0, WINDOW_SIZE * 2);
+    assertReadRange(0, 1000);
+    assertEquals(2, upstream.openCount);
+  }
+
+  public void testOtherUriReopens() throws IOException {
+    assertReadRange(0, 1000);
+    DataSpec otherDataSpec = new DataSpec(Uri.parse("http://localhost/other"), 1000, 1000, null);
+    readFully(otherDataSpec);
+    assertEquals(2, upstream.openCount);
+  }
+
+  public void testUnboundedRangeReadsToEnd() throws IOException {
+    assertReadRange(0, 1000);
+    DataSpec dataSpec = new DataSpec(URI, 1000, C.LENGTH_UNSET, null);
+    assertEquals(TEST_DATA.length - 1000, dataSource.open(dataSpec));
+    byte[] buffer = new byte[TEST_DATA.length];
+    int position = 0;
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, position, 4096)) != C.RESULT_END_OF_INPUT) {
+      position += bytesRead;
+    }
+    dataSource.close();
+    assertEquals(TEST_DATA.length - 1000, position);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(TEST_DATA, 1000, TEST_DATA.length),
+        Arrays.copyOf(buffer, position)));
+    assertEquals(1, upstream.openCount);
+  }
+
+  public void testRangeBeyondEndThrowsEOFException() throws IOException {
+    dataSource.open(new DataSpec(URI, TEST_DATA.length - 10, 20, null));
+    try {
+      dataSource.read(new byte[20], 0, 20);
+      dataSource.read(new byte[20], 0, 20);
+      fail();
+    } catch (EOFException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  public void testRandomRangesMatchUpstream() throws IOException {
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      int position = random.nextInt(TEST_DATA.length - 1);
+      int length = 1 + random.nextInt(Math.min(TEST_DATA.length - position, 20000));
+      assertReadRange(position, length);
+    }
+  }
+
+  public void testReleaseClosesUpstream() throws IOException {
+    assertReadRange(0, 1000);
+    assertTrue(upstream.opened);
+    dataSource.release();
+    assertFalse(upstream.opened);
+  }
+
+  public void testIdleUpstreamIsClosed() throws IOException {
+    dataSource = new ReadAheadDataSource(upstream, WINDOW_SIZE, MAX_SKIP_BYTES, 10);
+    assertReadRange(0, 1000);
+    long timeoutMs = SystemClock.elapsedRealtime() + 10000;
+    while (upstream.opened && SystemClock.elapsedRealtime() < timeoutMs) {
+      SystemClock.sleep(10);
+    }
+    assertFalse(upstream.opened);
+    // The following range requires a new request.
+    assertReadRange(1000, 1000);
+    assertEquals(2, upstream.openCount);
+  }
+
+  private void assertReadRange(int position, int length) throws IOException {
+    byte[] data = readFully(new DataSpec(URI, position, length, null));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(TEST_DATA, position, position + length), data));
+  }
+
+  private byte[] readFully(DataSpec dataSpec) throws IOException {
+    try {
+      assertEquals(dataSpec.length, dataSource.open(dataSpec));
+      byte[] data = new byte[(int) dataSpec.length];
+      int position = 0;
+      while (position < data.length) {
+        int bytesRead = dataSource.read(data, position, Math.min(4096, data.length - position));
+        assertTrue(bytesRead != C.RESULT_END_OF_INPUT);
+        position += bytesRead;
+      }
+      assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+      return data;
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static byte[] buildTestData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  /**
+   * A {@link ByteArrayDataSource} that counts the number of times it's opened, and takes
+   * {@link #OPEN_LATENCY_MS} to open.
+   */
+  private static final class CountingDataSource implements DataSource {
+
+    private final ByteArrayDataSource source;
+
+    public int openCount;
+    public volatile boolean opened;
+
+    public CountingDataSource(byte[] data) {
+      source = new ByteArrayDataSource(data);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      assertFalse(opened);
+      openCount++;
+      opened = true;
+      SystemClock.sleep(OPEN_LATENCY_MS);
+      return source.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return source.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public Uri getUri() {
+      return source.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+      opened = false;
+      source.close();
+    }
+
+  }
+
+}
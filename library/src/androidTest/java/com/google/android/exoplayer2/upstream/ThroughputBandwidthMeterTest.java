@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.util.Log;
+import com.google.android.exoplayer2.upstream.ThroughputBandwidthMeter.Estimator;
+import com.google.android.exoplayer2.upstream.ThroughputBandwidthMeter.EwmaEstimator;
+import com.google.android.exoplayer2.upstream.ThroughputBandwidthMeter.SlidingPercentileEstimator;
+import com.google.android.exoplayer2.util.Clock;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ThroughputBandwidthMeter}.
+ */
+public class ThroughputBandwidthMeterTest extends TestCase {
+
+  private static final String TAG = "ThroughputBandwidthMeterTest";
+  private static final DataSpec DATA_SPEC = new DataSpec(Uri.parse("http://localhost/media"));
+
+  /**
+   * A bandwidth trace, as pairs of phase duration (ms) and bandwidth (bits/sec).
+   */
+  private static final long[][] STEP_TRACE = new long[][] {
+      {20000, 2000000}, {20000, 500000}, {20000, 5000000}, {20000, 1000000}};
+
+  private FakeClock clock;
+
+  @Override
+  protected void setUp() throws Exception {
+    clock = new FakeClock();
+  }
+
+  public void testNoEstimateBeforeEnoughData() {
+    ThroughputBandwidthMeter meter = newMeter(new SlidingPercentileEstimator());
+    Object source = new Object();
+    meter.onTransferStart(source, DATA_SPEC);
+    clock.advance(100);
+    meter.onBytesTransferred(source, 1000);
+    meter.onTransferEnd(source);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, meter.getBitrateEstimate());
+  }
+
+  public void testSingleTransfer() {
+    ThroughputBandwidthMeter meter = newMeter(new SlidingPercentileEstimator());
+    Object source = new Object();
+    meter.onTransferStart(source, DATA_SPEC);
+    clock.advance(400);
+    meter.onBytesTransferred(source, 1000000);
+    meter.onTransferEnd(source);
+    assertEquals(20000000, meter.getBitrateEstimate());
+  }
+
+  public void testOverlappingTransfersAreAggregated() {
+    ThroughputBandwidthMeter meter = newMeter(new SlidingPercentileEstimator());
+    Object source1 = new Object();
+    Object source2 = new Object();
+    meter.onTransferStart(source1, DATA_SPEC);
+    meter.onTransferStart(source2, DATA_SPEC);
+    assertEquals(2, meter.getActiveTransferCount());
+    clock.advance(400);
+    meter.onBytesTransferred(source1, 500000);
+    meter.onBytesTransferred(source2, 500000);
+    // The transfers end in the opposite order to which they started.
+    meter.onTransferEnd(source2);
+    meter.onTransferEnd(source1);
+    assertEquals(0, meter.getActiveTransferCount());
+    // The available bandwidth is shared by the two transfers, so the estimate should be the
+    // aggregate throughput rather than the throughput of either.
+    assertEquals(20000000, meter.getBitrateEstimate());
+  }
+
+  public void testLongTransferIsSampledBeforeItEnds() {
+    ThroughputBandwidthMeter meter = newMeter(new EwmaEstimator());
+    Object source = new Object();
+    meter.onTransferStart(source, DATA_SPEC);
+    for (int i = 0; i < 40; i++) {
+      clock.advance(100);
+      meter.onBytesTransferred(source, 12500);
+    }
+    assertEquals(1000000, meter.getBitrateEstimate(), 1);
+  }
+
+  public void testEwmaEstimator() {
+    EwmaEstimator estimator = new EwmaEstimator(1000);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getEstimate());
+    estimator.addSample(125000, 1000);
+    // Bias correction means that the first sample is returned unchanged.
+    assertEquals(1000000, estimator.getEstimate());
+    estimator.addSample(375000, 1000);
+    // The first sample has decayed to half the weight of the second.
+    assertEquals(2333333, estimator.getEstimate());
+  }
+
+  public void testEstimatorsTrackStepTrace() {
+    for (int connections = 1; connections <= 2; connections++) {
+      ReplayResult percentileResult = replay(new SlidingPercentileEstimator(), connections);
+      ReplayResult ewmaResult = replay(new EwmaEstimator(), connections);
+      Log.d(TAG, "connections=" + connections + ", percentile: " + percentileResult
+          + ", ewma: " + ewmaResult);
+      assertTrue(percentileResult.meanRelativeError < 0.3);
+      assertTrue(ewmaResult.meanRelativeError < 0.3);
+    }
+  }
+
+  private ThroughputBandwidthMeter newMeter(Estimator estimator) {
+    return new ThroughputBandwidthMeter(null, null, estimator,
+        ThroughputBandwidthMeter.DEFAULT_SAMPLE_INTERVAL_MS, clock);
+  }
+
+  /**
+   * Replays {@link #STEP_TRACE}, loading 500KB segments back-to-back over the given number of
+   * parallel connections with 50ms of request latency, and measures the estimate error and the CPU
+   * time taken per sample.
+   */
+  private ReplayResult replay(Estimator estimator, int connections) {
+    TimingEstimator timingEstimator = new TimingEstimator(estimator);
+    ThroughputBandwidthMeter meter = newMeter(timingEstimator);
+    int tickMs = 10;
+    int segmentSize = 500 * 1024;
+    int requestLatencyMs = 50;
+    Object[] sources = new Object[connections];
+    long[] bytesRemaining = new long[connections];
+    long[] latencyRemainingMs = new long[connections];
+    double errorSum = 0;
+    int errorCount = 0;
+    for (long[] phase : STEP_TRACE) {
+      long bandwidth = phase[1];
+      for (long elapsedMs = 0; elapsedMs < phase[0]; elapsedMs += tickMs) {
+        for (int i = 0; i < connections; i++) {
+          if (sources[i] == null) {
+            sources[i] = new Object();
+            bytesRemaining[i] = segmentSize;
+            latencyRemainingMs[i] = requestLatencyMs;
+            meter.onTransferStart(sources[i], DATA_SPEC);
+          }
+        }
+        clock.advance(tickMs);
+        int receivingCount = 0;
+        for (int i = 0; i < connections; i++) {
+          latencyRemainingMs[i] -= tickMs;
+          if (latencyRemainingMs[i] < 0) {
+            receivingCount++;
+          }
+        }
+        for (int i = 0; i < connections; i++) {
+          if (latencyRemainingMs[i] < 0) {
+            int bytes = (int) Math.min(bytesRemaining[i],
+                bandwidth * tickMs / 8000 / receivingCount);
+            bytesRemaining[i] -= bytes;
+            meter.onBytesTransferred(sources[i], bytes);
+            if (bytesRemaining[i] == 0) {
+              meter.onTransferEnd(sources[i]);
+              sources[i] = null;
+            }
+          }
+        }
+        long estimate = meter.getBitrateEstimate();
+        // Allow time for the estimate to adapt to each step before measuring its error.
+        if (estimate != BandwidthMeter.NO_ESTIMATE && elapsedMs >= phase[0] / 2) {
+          errorSum += Math.abs(estimate - bandwidth) / (double) bandwidth;
+          errorCount++;
+        }
+      }
+    }
+    return new ReplayResult(errorSum / errorCount, timingEstimator.getNanosPerSample());
+  }
+
+  private static final class ReplayResult {
+
+    public final double meanRelativeError;
+    public final long nanosPerSample;
+
+    public ReplayResult(double meanRelativeError, long nanosPerSample) {
+      this.meanRelativeError = meanRelativeError;
+      this.nanosPerSample = nanosPerSample;
+    }
+
+    @Override
+    public String toString() {
+      return "meanRelativeError=" + meanRelativeError + ", nanosPerSample=" + nanosPerSample;
+    }
+
+  }
+
+  /**
+   * Wraps an {@link Estimator}, measuring the CPU time taken to add each sample and update the
+   * estimate.
+   */
+  private static final class TimingEstimator implements Estimator {
+
+    private final Estimator estimator;
+
+    private long sampleCount;
+    private long totalNanos;
+
+    public TimingEstimator(Estimator estimator) {
+      this.estimator = estimator;
+    }
+
+    public long getNanosPerSample() {
+      return sampleCount == 0 ? 0 : totalNanos / sampleCount;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      long startNanos = System.nanoTime();
+      estimator.addSample(bytes, elapsedMs);
+      estimator.getEstimate();
+      totalNanos += System.nanoTime() - startNanos;
+      sampleCount++;
+    }
+
+    @Override
+    public long getEstimate() {
+      return estimator.getEstimate();
+    }
+
+  }
+
+  private static final class FakeClock implements Clock {
+
+    private long timeMs;
+
+    public void advance(long durationMs) {
+      timeMs += durationMs;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+}
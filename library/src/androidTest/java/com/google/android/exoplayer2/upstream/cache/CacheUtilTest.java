@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * Unit tests for {@link CacheUtil}.
+ */
+public class CacheUtilTest extends InstrumentationTestCase {
+
+  private static final int DATA_LENGTH = 1000;
+  private static final int MAX_CACHE_FILE_SIZE = 300;
+  private static final String KEY = "key";
+
+  private File tempDir;
+  private File cacheDir;
+  private Uri dataUri;
+  private SimpleCache simpleCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    // Create a temporary folder
+    tempDir = File.createTempFile("CacheUtilTest", null);
+    assertTrue(tempDir.delete());
+    assertTrue(tempDir.mkdir());
+    cacheDir = new File(tempDir, "cache");
+    assertTrue(cacheDir.mkdir());
+    File dataFile = new File(tempDir, "data");
+    FileOutputStream fos = new FileOutputStream(dataFile);
+    fos.write(new byte[DATA_LENGTH]);
+    fos.close();
+    dataUri = Uri.fromFile(dataFile);
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    TestUtil.recursiveDelete(tempDir);
+  }
+
+  public void testGetKey() {
+    assertEquals(KEY, CacheUtil.getKey(new DataSpec(dataUri, 0, C.LENGTH_UNSET, KEY)));
+    assertEquals(dataUri.toString(),
+        CacheUtil.getKey(new DataSpec(dataUri, 0, C.LENGTH_UNSET, null)));
+  }
+
+  public void testCacheBoundedRequest() throws Exception {
+    DataSpec dataSpec = new DataSpec(dataUri, 100, 500, KEY);
+    assertEquals(500, cache(dataSpec));
+    assertEquals(500, CacheUtil.getCachedBytes(dataSpec, simpleCache));
+    assertEquals(0, CacheUtil.getCachedBytes(new DataSpec(dataUri, 0, 100, KEY), simpleCache));
+    assertEquals(C.LENGTH_UNSET, simpleCache.getContentLength(KEY));
+  }
+
+  public void testCacheUnboundedRequestSetsContentLength() throws Exception {
+    DataSpec dataSpec = new DataSpec(dataUri, 0, C.LENGTH_UNSET, null);
+    assertEquals(DATA_LENGTH, cache(dataSpec));
+    assertEquals(DATA_LENGTH, simpleCache.getContentLength(dataUri.toString()));
+    assertEquals(DATA_LENGTH, CacheUtil.getCachedBytes(dataSpec, simpleCache));
+  }
+
+  public void testCachedDataIsNotDownloadedAgain() throws Exception {
+    DataSpec dataSpec = new DataSpec(dataUri, 0, C.LENGTH_UNSET, KEY);
+    assertEquals(DATA_LENGTH, cache(dataSpec));
+    assertEquals(0, cache(dataSpec));
+
+    // The content length is known to a new instance, so nothing is downloaded.
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(0, cache(dataSpec));
+  }
+
+  public void testCacheResumesFromPartiallyCachedData() throws Exception {
+    assertEquals(200, cache(new DataSpec(dataUri, 0, 200, KEY)));
+    assertEquals(200, cache(new DataSpec(dataUri, 500, 200, KEY)));
+    assertEquals(DATA_LENGTH - 400, cache(new DataSpec(dataUri, 0, C.LENGTH_UNSET, KEY)));
+    assertEquals(DATA_LENGTH, simpleCache.getContentLength(KEY));
+    assertEquals(DATA_LENGTH,
+        CacheUtil.getCachedBytes(new DataSpec(dataUri, 0, C.LENGTH_UNSET, KEY), simpleCache));
+  }
+
+  private long cache(DataSpec dataSpec) throws Exception {
+    CacheDataSource dataSource = new CacheDataSource(simpleCache, new FileDataSource(),
+        CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_CACHE_UNBOUNDED_REQUESTS,
+        MAX_CACHE_FILE_SIZE);
+    return CacheUtil.cache(dataSpec, simpleCache, dataSource, new byte[128]);
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link SegmentDownloader}.
+ */
+public class SegmentDownloaderTest extends InstrumentationTestCase {
+
+  private static final int SEGMENT_COUNT = 20;
+  private static final int SEGMENT_LENGTH = 1000;
+  private static final int PARALLELISM = 3;
+
+  private File tempDir;
+  private File cacheDir;
+  private Uri manifestUri;
+  private SimpleCache simpleCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    // Create a temporary folder
+    tempDir = File.createTempFile("SegmentDownloaderTest", null);
+    assertTrue(tempDir.delete());
+    assertTrue(tempDir.mkdir());
+    cacheDir = new File(tempDir, "cache");
+    assertTrue(cacheDir.mkdir());
+    // The manifest lists the uris of the segments, one per line, in reverse order.
+    StringBuilder manifest = new StringBuilder();
+    for (int i = SEGMENT_COUNT - 1; i >= 0; i--) {
+      File segmentFile = new File(tempDir, "segment" + i);
+      writeFile(segmentFile, new byte[SEGMENT_LENGTH]);
+      manifest.append(Uri.fromFile(segmentFile)).append('\n');
+    }
+    File manifestFile = new File(tempDir, "manifest");
+    writeFile(manifestFile, manifest.toString().getBytes());
+    manifestUri = Uri.fromFile(manifestFile);
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    TestUtil.recursiveDelete(tempDir);
+  }
+
+  public void testDownloadCachesManifestAndSegments() throws Exception {
+    TestSegmentDownloader downloader = new TestSegmentDownloader(simpleCache);
+    final AtomicInteger progressCount = new AtomicInteger();
+    downloader.download(new SegmentDownloader.ProgressListener() {
+      @Override
+      public void onDownloadProgress(SegmentDownloader<?, ?> downloader, int downloadedSegments,
+          int totalSegments, long downloadedBytes) {
+        assertEquals(SEGMENT_COUNT, totalSegments);
+        assertTrue(downloadedSegments <= totalSegments);
+        progressCount.incrementAndGet();
+      }
+    });
+    assertEquals(SEGMENT_COUNT, progressCount.get());
+    assertEquals(SEGMENT_COUNT, downloader.getTotalSegments());
+    assertEquals(SEGMENT_COUNT, downloader.getDownloadedSegments());
+    assertEquals(SEGMENT_COUNT * SEGMENT_LENGTH, downloader.getDownloadedBytes());
+    assertTrue(downloader.getThroughputBitsPerSecond() >= 0);
+    assertEquals(SEGMENT_COUNT + 1, simpleCache.getKeys().size());
+    for (Uri segmentUri : downloader.getManifest()) {
+      DataSpec dataSpec = new DataSpec(segmentUri, 0, C.LENGTH_UNSET, null);
+      assertEquals(SEGMENT_LENGTH, CacheUtil.getCachedBytes(dataSpec, simpleCache));
+      assertEquals(SEGMENT_LENGTH, simpleCache.getContentLength(CacheUtil.getKey(dataSpec)));
+    }
+  }
+
+  public void testDownloadOfSelectedRepresentation() throws Exception {
+    TestSegmentDownloader downloader = new TestSegmentDownloader(simpleCache);
+    downloader.selectRepresentations(new Integer[] {0, 1});
+    downloader.download(null);
+    assertEquals(2, downloader.getDownloadedSegments());
+    assertEquals(2 * SEGMENT_LENGTH, downloader.getDownloadedBytes());
+  }
+
+  public void testDownloadResumes() throws Exception {
+    TestSegmentDownloader downloader = new TestSegmentDownloader(simpleCache);
+    downloader.selectRepresentations(new Integer[] {0, 1});
+    downloader.download(null);
+
+    // Only the segments that weren't downloaded before are downloaded, including by a new cache
+    // instance.
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    downloader = new TestSegmentDownloader(simpleCache);
+    downloader.download(null);
+    assertEquals(SEGMENT_COUNT, downloader.getDownloadedSegments());
+    assertEquals((SEGMENT_COUNT - 2) * SEGMENT_LENGTH, downloader.getDownloadedBytes());
+    downloader.download(null);
+    assertEquals(SEGMENT_COUNT, downloader.getDownloadedSegments());
+    assertEquals(0, downloader.getDownloadedBytes());
+  }
+
+  public void testDownloadErrorIsThrown() throws Exception {
+    TestSegmentDownloader downloader = new TestSegmentDownloader(simpleCache);
+    downloader.getManifest();
+    assertTrue(new File(tempDir, "segment" + (SEGMENT_COUNT / 2)).delete());
+    try {
+      downloader.download(null);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertTrue(downloader.getDownloadedSegments() < SEGMENT_COUNT);
+  }
+
+  private static void writeFile(File file, byte[] data) throws IOException {
+    FileOutputStream fos = new FileOutputStream(file);
+    fos.write(data);
+    fos.close();
+  }
+
+  /**
+   * Downloads a manifest listing segment uris, whose representations are single segments
+   * identified by their indices.
+   */
+  private final class TestSegmentDownloader extends SegmentDownloader<List<Uri>, Integer> {
+
+    public TestSegmentDownloader(Cache cache) {
+      super(manifestUri, cache, new FileDataSourceFactory(), PARALLELISM);
+    }
+
+    @Override
+    protected List<Uri> loadManifest(Uri uri) throws IOException, InterruptedException {
+      return loadManifest(uri, new ParsingLoadable.Parser<List<Uri>>() {
+        @Override
+        public List<Uri> parse(Uri uri, InputStream inputStream) throws IOException {
+          List<Uri> segmentUris = new ArrayList<>();
+          BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+          String line;
+          while ((line = reader.readLine()) != null) {
+            segmentUris.add(Uri.parse(line));
+          }
+          return segmentUris;
+        }
+      });
+    }
+
+    @Override
+    protected List<Segment> getSegments(List<Uri> manifest, Integer[] keys) {
+      List<Segment> segments = new ArrayList<>();
+      for (int i = 0; i < manifest.size(); i++) {
+        if (keys == null || contains(keys, i)) {
+          segments.add(new Segment(i, new DataSpec(manifest.get(i), 0, C.LENGTH_UNSET, null)));
+        }
+      }
+      return segments;
+    }
+
+    private boolean contains(Integer[] keys, int key) {
+      for (Integer k : keys) {
+        if (k == key) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+}
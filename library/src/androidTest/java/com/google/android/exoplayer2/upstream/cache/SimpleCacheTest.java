@@ -99,7 +99,6 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     assertEquals("Content length should be unchanged.",
         150, simpleCache.getContentLength(KEY_1));
 
-    /* TODO Enable when the length persistance is fixed
     // Check if values are kept after cache is reloaded.
     simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
     assertEquals(150, simpleCache.getContentLength(KEY_1));
@@ -109,7 +108,14 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     simpleCache.removeSpan(lastSpan);
     simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
     assertEquals(150, simpleCache.getContentLength(KEY_1));
-     */
+  }
+
+  public void testLengthIsNotPersistedWithoutCachedData() throws Exception {
+    SimpleCache simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(simpleCache.setContentLength(KEY_1, 15));
+
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(C.LENGTH_UNSET, simpleCache.getContentLength(KEY_1));
   }
 
   private void addCache(SimpleCache simpleCache, int position, int length) throws IOException {
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LogLinearHistogram}.
+ */
+public class LogLinearHistogramTest extends TestCase {
+
+  private static final long HIGHEST_TRACKABLE_VALUE = 60000000;
+
+  public void testEmpty() {
+    LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE);
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(0, histogram.getMean(), 0);
+  }
+
+  public void testSmallValuesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE);
+    for (int i = 0; i < LogLinearHistogram.SUB_BUCKET_COUNT; i++) {
+      histogram.record(i);
+    }
+    for (int i = 0; i < LogLinearHistogram.SUB_BUCKET_COUNT; i++) {
+      double percentile = 100d * (i + 1) / LogLinearHistogram.SUB_BUCKET_COUNT;
+      assertEquals(i, histogram.getValueAtPercentile(percentile));
+    }
+    assertEquals(LogLinearHistogram.SUB_BUCKET_COUNT - 1, histogram.getCountAbove(0));
+  }
+
+  public void testPercentilesWithinPrecision() {
+    LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE);
+    Random random = new Random(0);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      // Log-uniformly distributed values, as is typical of durations.
+      values[i] = (long) Math.pow(10, random.nextDouble() * 7);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    double maxRelativeError = 2d / LogLinearHistogram.SUB_BUCKET_COUNT;
+    for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+      long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long actual = histogram.getValueAtPercentile(percentile);
+      assertTrue(actual >= expected);
+      assertTrue(actual - expected <= expected * maxRelativeError);
+    }
+    assertEquals(values[0], histogram.getMin());
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+  }
+
+  public void testValuesOutOfRangeAreClamped() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000);
+    histogram.record(-1);
+    histogram.record(1000000);
+    assertEquals(0, histogram.getMin());
+    assertEquals(1000, histogram.getMax());
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+  }
+
+  public void testCountAbove() {
+    LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE);
+    histogram.record(1000);
+    histogram.record(20000);
+    histogram.record(30000);
+    assertEquals(2, histogram.getCountAbove(16667));
+    assertEquals(0, histogram.getCountAbove(40000));
+  }
+
+  public void testCopyAddAndReset() {
+    LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE);
+    histogram.record(10);
+    histogram.record(30);
+    LogLinearHistogram copy = new LogLinearHistogram(histogram);
+    histogram.record(1000);
+    assertEquals(2, copy.getCount());
+    assertEquals(20, copy.getMean(), 0);
+
+    copy.add(histogram);
+    assertEquals(5, copy.getCount());
+    assertEquals(10, copy.getMin());
+    assertEquals(1000, copy.getMax());
+
+    copy.reset();
+    assertEquals(0, copy.getCount());
+    assertEquals(0, copy.getMax());
+    assertEquals(3, histogram.getCount());
+  }
+
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelections;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.SystemClock;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link LoadControl} whose buffer watermarks adapt to the network conditions and to the stalls
+ * that have occurred, rather than being fixed.
+ * <p>
+ * The low watermark is the configured minimum buffer duration, scaled up by the variability of the
+ * bandwidth estimate (its coefficient of variation over recent changes, capped at 1) and increased
+ * by a fixed amount for each stall since the player was prepared, up to a maximum. The high
+ * watermark is always the same distance above the low watermark as in the configuration. A stable
+ * network therefore buffers no more than {@link DefaultLoadControl} would, whilst a volatile one
+ * buffers further ahead.
+ * <p>
+ * When the network is marked as metered by {@link #setNetworkMetered(boolean)}, loading beyond the
+ * low watermark is additionally limited to a byte budget, which avoids downloading far ahead on
+ * high bitrate streams that may not be watched to the end.
+ * <p>
+ * The control also estimates the number of bytes wasted when playback is abandoned, meaning the
+ * amount of media that was buffered but not played when the player was stopped, released or
+ * prepared with a new source.
+ */
+public final class AdaptiveLoadControl implements LoadControl {
+
+  /**
+   * The default minimum duration of media that the player will attempt to ensure is buffered on a
+   * stable network without stalls, in milliseconds.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+  /**
+   * The default maximum duration of media that the player will attempt to buffer on a stable
+   * network without stalls, in milliseconds.
+   */
+  public static final int DEFAULT_MAX_BUFFER_MS = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+  /**
+   * The default upper limit on the adapted minimum buffer duration, in milliseconds.
+   */
+  public static final int DEFAULT_MAX_ADAPTED_MIN_BUFFER_MS = 60000;
+  /**
+   * The default amount by which the minimum buffer duration is increased for each stall, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_STALL_BUFFER_INCREMENT_MS = 5000;
+  /**
+   * The default maximum number of bytes buffered beyond the minimum buffer duration when the
+   * network is metered.
+   */
+  public static final int DEFAULT_METERED_MAX_BUFFER_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * The number of changes of the bandwidth estimate over which its variability is calculated.
+   */
+  private static final int BANDWIDTH_SAMPLE_COUNT = 16;
+  /**
+   * The minimum number of changes of the bandwidth estimate before its variability is used.
+   */
+  private static final int MIN_BANDWIDTH_SAMPLE_COUNT = 4;
+
+  private final DefaultAllocator allocator;
+  private final BandwidthMeter bandwidthMeter;
+  private final long minBufferUs;
+  private final long bufferRangeUs;
+  private final long maxAdaptedMinBufferUs;
+  private final long stallBufferIncrementUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final int meteredMaxBufferBytes;
+  private final Clock clock;
+  private final long[] bandwidthSamples;
+
+  private int targetBufferSize;
+  private boolean isBuffering;
+  private boolean isRebuffering;
+  private int bandwidthSampleCount;
+  private int nextBandwidthSampleIndex;
+  private long lastBitrateEstimate;
+  private long lastBufferedDurationUs;
+  private long lastBufferedBytes;
+  private long lastBufferedRealtimeMs;
+
+  private volatile boolean networkMetered;
+  private volatile long adaptedMinBufferUs;
+  private volatile int stallCount;
+  private volatile long wastedBytes;
+
+  /**
+   * Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class and in
+   * {@link DefaultLoadControl}.
+   *
+   * @param bandwidthMeter The {@link BandwidthMeter} whose estimate's variability is observed.
+   */
+  public AdaptiveLoadControl(BandwidthMeter bandwidthMeter) {
+    this(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE), bandwidthMeter,
+        DEFAULT_MIN_BUFFER_MS, DEFAULT_MAX_BUFFER_MS, DEFAULT_MAX_ADAPTED_MIN_BUFFER_MS,
+        DEFAULT_STALL_BUFFER_INCREMENT_MS, DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+        DEFAULT_METERED_MAX_BUFFER_BYTES, new SystemClock());
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link DefaultAllocator} used by the loader.
+   * @param bandwidthMeter The {@link BandwidthMeter} whose estimate's variability is observed.
+   * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+   *     buffered on a stable network without stalls, in milliseconds.
+   * @param maxBufferMs The maximum duration of media that the player will attempt to buffer on a
+   *     stable network without stalls, in milliseconds.
+   * @param maxAdaptedMinBufferMs The upper limit on the adapted minimum buffer duration, in
+   *     milliseconds.
+   * @param stallBufferIncrementMs The amount by which the minimum buffer duration is increased
+   *     for each stall, in milliseconds.
+   * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start or
+   *     resume following a user action such as a seek, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered for
+   *     playback to resume after a rebuffer, in milliseconds.
+   * @param meteredMaxBufferBytes The maximum number of bytes buffered beyond the minimum buffer
+   *     duration when the network is metered.
+   * @param clock The {@link Clock} used to estimate playback progress when estimating wasted
+   *     bytes. {@link SystemClock} should be used except when simulating playback.
+   */
+  public AdaptiveLoadControl(DefaultAllocator allocator, BandwidthMeter bandwidthMeter,
+      int minBufferMs, int maxBufferMs, int maxAdaptedMinBufferMs, int stallBufferIncrementMs,
+      long bufferForPlaybackMs, long bufferForPlaybackAfterRebufferMs, int meteredMaxBufferBytes,
+      Clock clock) {
+    this.allocator = allocator;
+    this.bandwidthMeter = bandwidthMeter;
+    this.clock = clock;
+    minBufferUs = minBufferMs * 1000L;
+    bufferRangeUs = (maxBufferMs - minBufferMs) * 1000L;
+    maxAdaptedMinBufferUs = Math.max(minBufferMs, maxAdaptedMinBufferMs) * 1000L;
+    stallBufferIncrementUs = stallBufferIncrementMs * 1000L;
+    bufferForPlaybackUs = bufferForPlaybackMs * 1000L;
+    bufferForPlaybackAfterRebufferUs = bufferForPlaybackAfterRebufferMs * 1000L;
+    this.meteredMaxBufferBytes = meteredMaxBufferBytes;
+    bandwidthSamples = new long[BANDWIDTH_SAMPLE_COUNT];
+    adaptedMinBufferUs = minBufferUs;
+  }
+
+  /**
+   * Sets whether the network is metered, in which case loading beyond the minimum buffer duration
+   * is limited to a byte budget. May be called from any thread.
+   *
+   * @param networkMetered Whether the network is metered.
+   */
+  public void setNetworkMetered(boolean networkMetered) {
+    this.networkMetered = networkMetered;
+  }
+
+  /**
+   * Returns the current minimum buffer duration, as adapted to the network conditions and stalls,
+   * in milliseconds. May be called from any thread.
+   */
+  public long getMinBufferMs() {
+    return adaptedMinBufferUs / 1000;
+  }
+
+  /**
+   * Returns the current maximum buffer duration, as adapted to the network conditions and stalls,
+   * in milliseconds. May be called from any thread.
+   */
+  public long getMaxBufferMs() {
+    return (adaptedMinBufferUs + bufferRangeUs) / 1000;
+  }
+
+  /**
+   * Returns the number of stalls since the player was last prepared. May be called from any
+   * thread.
+   */
+  public int getStallCount() {
+    return stallCount;
+  }
+
+  /**
+   * Returns the estimated total number of bytes that were buffered but not played when playback
+   * was abandoned, since this instance was created. May be called from any thread.
+   */
+  public long getWastedBytes() {
+    return wastedBytes;
+  }
+
+  // LoadControl implementation.
+
+  @Override
+  public void onPrepared() {
+    reset(false);
+  }
+
+  @Override
+  public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups,
+      TrackSelections<?> trackSelections) {
+    targetBufferSize = 0;
+    for (int i = 0; i < renderers.length; i++) {
+      if (trackSelections.get(i) != null) {
+        targetBufferSize += Util.getDefaultBufferSize(renderers[i].getTrackType());
+      }
+    }
+    allocator.setTargetBufferSize(targetBufferSize);
+  }
+
+  @Override
+  public void onStopped() {
+    reset(true);
+  }
+
+  @Override
+  public void onReleased() {
+    reset(true);
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(long bufferedDurationUs, boolean rebuffering) {
+    if (rebuffering && !isRebuffering) {
+      isRebuffering = true;
+      stallCount++;
+      updateAdaptedMinBuffer();
+    }
+    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    boolean shouldStartPlayback = minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs;
+    if (shouldStartPlayback) {
+      isRebuffering = false;
+    }
+    return shouldStartPlayback;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs) {
+    maybeAddBandwidthSample();
+    int bufferedBytes = allocator.getTotalBytesAllocated();
+    lastBufferedDurationUs = bufferedDurationUs;
+    lastBufferedBytes = bufferedBytes;
+    lastBufferedRealtimeMs = clock.elapsedRealtime();
+
+    long minBufferUs = adaptedMinBufferUs;
+    long maxBufferUs = minBufferUs + bufferRangeUs;
+    if (bufferedDurationUs < minBufferUs) {
+      isBuffering = true;
+    } else if (bufferedDurationUs > maxBufferUs) {
+      isBuffering = false;
+    } else {
+      boolean targetBufferSizeReached = bufferedBytes >= targetBufferSize
+          || (networkMetered && bufferedBytes >= meteredMaxBufferBytes);
+      isBuffering = isBuffering && !targetBufferSizeReached;
+    }
+    return isBuffering;
+  }
+
+  // Internal methods.
+
+  private void maybeAddBandwidthSample() {
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE || bitrateEstimate == lastBitrateEstimate) {
+      return;
+    }
+    lastBitrateEstimate = bitrateEstimate;
+    bandwidthSamples[nextBandwidthSampleIndex] = bitrateEstimate;
+    nextBandwidthSampleIndex = (nextBandwidthSampleIndex + 1) % BANDWIDTH_SAMPLE_COUNT;
+    bandwidthSampleCount = Math.min(bandwidthSampleCount + 1, BANDWIDTH_SAMPLE_COUNT);
+    updateAdaptedMinBuffer();
+  }
+
+  private void updateAdaptedMinBuffer() {
+    double variability = Math.min(1, getBandwidthVariability());
+    long adaptedMinBufferUs = (long) (minBufferUs * (1 + variability))
+        + stallCount * stallBufferIncrementUs;
+    this.adaptedMinBufferUs = Math.min(adaptedMinBufferUs, maxAdaptedMinBufferUs);
+  }
+
+  /**
+   * Returns the coefficient of variation of the recent bandwidth estimates, or 0 if there are too
+   * few of them.
+   */
+  private double getBandwidthVariability() {
+    if (bandwidthSampleCount < MIN_BANDWIDTH_SAMPLE_COUNT) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = 0; i < bandwidthSampleCount; i++) {
+      sum += bandwidthSamples[i];
+    }
+    double mean = sum / bandwidthSampleCount;
+    double squaredDeviationSum = 0;
+    for (int i = 0; i < bandwidthSampleCount; i++) {
+      double deviation = bandwidthSamples[i] - mean;
+      squaredDeviationSum += deviation * deviation;
+    }
+    return Math.sqrt(squaredDeviationSum / bandwidthSampleCount) / mean;
+  }
+
+  /**
+   * Adds the media that was buffered but not yet played to the wasted bytes. Buffered media is
+   * only observed whilst the player is deciding whether to load, so the amount is extrapolated
+   * from the most recent observation assuming that playback has progressed in real time since.
+   */
+  private void recordWastedBytes() {
+    if (lastBufferedBytes > 0 && lastBufferedDurationUs > 0) {
+      long elapsedUs = (clock.elapsedRealtime() - lastBufferedRealtimeMs) * 1000;
+      long remainingDurationUs = Math.max(0, lastBufferedDurationUs - elapsedUs);
+      wastedBytes += lastBufferedBytes * remainingDurationUs / lastBufferedDurationUs;
+    }
+    lastBufferedBytes = 0;
+    lastBufferedDurationUs = 0;
+  }
+
+  private void reset(boolean resetAllocator) {
+    recordWastedBytes();
+    targetBufferSize = 0;
+    isBuffering = false;
+    isRebuffering = false;
+    stallCount = 0;
+    updateAdaptedMinBuffer();
+    if (resetAllocator) {
+      allocator.reset();
+    }
+  }
+
+}
@@ -116,6 +116,33 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
     stream.maybeThrowError();
   }
 
+  /**
+   * Returns the maximum time for which the player may wait before next calling
+   * {@link #render(long, long)}, measured from the start of the current iteration of the rendering
+   * loop. The player may call {@link #render(long, long)} sooner, for example because another
+   * renderer requires it, and may also enforce its own maximum interval between calls.
+   * <p>
+   * This method is called immediately after {@link #render(long, long)}, and is passed the same
+   * arguments. A renderer that's waiting for something that happens at a predictable time, such as
+   * the presentation time of its next frame, should return the time remaining until it needs to
+   * act. A renderer that's waiting for something that it cannot predict, such as a decoder
+   * producing output, should return {@link C#TIME_UNSET}.
+   * <p>
+   * The default implementation returns {@link C#TIME_UNSET}. Renderers that don't extend this
+   * class are always rendered at the player's default rendering interval.
+   *
+   * @param positionUs The current media time in microseconds, measured at the start of the
+   *     current iteration of the rendering loop.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds,
+   *     measured at the start of the current iteration of the rendering loop.
+   * @return The maximum delay before the next call to {@link #render(long, long)} in microseconds,
+   *     {@link Long#MAX_VALUE} if the renderer has no deadline, or {@link C#TIME_UNSET} if the
+   *     player should use its default rendering interval.
+   */
+  public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+    return C.TIME_UNSET;
+  }
+
   @Override
   public final void resetPosition(long positionUs) throws ExoPlaybackException {
     streamIsFinal = false;
@@ -412,6 +412,17 @@ public final class C {
    */
   public static final int MSG_SET_PLAYBACK_PARAMS = 3;
 
+  /**
+   * The type of a message that can be passed to a {@link Renderer} that decodes using
+   * {@link android.media.MediaCodec} via {@link ExoPlayer#sendMessages} or
+   * {@link ExoPlayer#blockingSendMessages}. The message object should be a {@link Boolean}
+   * indicating whether input and output buffers should be queued asynchronously. If true, on API
+   * level 23 and above the codec's callbacks are received on a dedicated thread, and buffers are
+   * taken from queues populated by the callbacks rather than by polling the codec. This has no
+   * effect on earlier API levels.
+   */
+  public static final int MSG_SET_ASYNC_BUFFER_QUEUEING = 4;
+
   /**
    * Applications or extensions may define custom {@code MSG_*} constants greater than or equal to
    * this value.
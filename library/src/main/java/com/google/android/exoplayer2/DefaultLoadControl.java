@@ -50,6 +50,12 @@ public final class DefaultLoadControl implements LoadControl {
    */
   public static final int DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS  = 5000;
 
+  /**
+   * The default size of the buffer reserved for each selected track to retain media after it has
+   * been read, in bytes.
+   */
+  public static final int DEFAULT_BACK_BUFFER_SIZE = 0;
+
   private static final int ABOVE_HIGH_WATERMARK = 0;
   private static final int BETWEEN_WATERMARKS = 1;
   private static final int BELOW_LOW_WATERMARK = 2;
@@ -60,6 +66,7 @@ public final class DefaultLoadControl implements LoadControl {
   private final long maxBufferUs;
   private final long bufferForPlaybackUs;
   private final long bufferForPlaybackAfterRebufferUs;
+  private final int backBufferSize;
 
   private int targetBufferSize;
   private boolean isBuffering;
@@ -97,11 +104,38 @@ public final class DefaultLoadControl implements LoadControl {
    */
   public DefaultLoadControl(DefaultAllocator allocator, int minBufferMs, int maxBufferMs,
       long bufferForPlaybackMs, long bufferForPlaybackAfterRebufferMs) {
+    this(allocator, minBufferMs, maxBufferMs, bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs, DEFAULT_BACK_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link DefaultAllocator} used by the loader.
+   * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+   *     buffered at all times, in milliseconds.
+   * @param maxBufferMs The maximum duration of media that the player will attempt buffer, in
+   *     milliseconds.
+   * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start or
+   *     resume following a user action such as a seek, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered for
+   *     playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be caused by
+   *     buffer depletion rather than a user action.
+   * @param backBufferSize The size of the buffer reserved for each selected track to retain media
+   *     after it has been read, in bytes. Retained media remains allocated, and so is charged
+   *     against the target buffer size. This amount is added to the target for each selected
+   *     track, so that retaining up to this amount of media per track doesn't reduce how much is
+   *     buffered ahead of the playback position. It should match the maximum back buffer size
+   *     configured on the media source.
+   */
+  public DefaultLoadControl(DefaultAllocator allocator, int minBufferMs, int maxBufferMs,
+      long bufferForPlaybackMs, long bufferForPlaybackAfterRebufferMs, int backBufferSize) {
     this.allocator = allocator;
     minBufferUs = minBufferMs * 1000L;
     maxBufferUs = maxBufferMs * 1000L;
     bufferForPlaybackUs = bufferForPlaybackMs * 1000L;
     bufferForPlaybackAfterRebufferUs = bufferForPlaybackAfterRebufferMs * 1000L;
+    this.backBufferSize = backBufferSize;
   }
 
   @Override
@@ -115,7 +149,8 @@ public final class DefaultLoadControl implements LoadControl {
     targetBufferSize = 0;
     for (int i = 0; i < renderers.length; i++) {
       if (trackSelections.get(i) != null) {
-        targetBufferSize += Util.getDefaultBufferSize(renderers[i].getTrackType());
+        targetBufferSize += Util.getDefaultBufferSize(renderers[i].getTrackType())
+            + backBufferSize;
       }
     }
     allocator.setTargetBufferSize(targetBufferSize);
@@ -268,6 +268,23 @@ import java.util.concurrent.CopyOnWriteArraySet;
         : (int) (duration == 0 ? 100 : (bufferedPosition * 100) / duration);
   }
 
+  /**
+   * Returns the number of iterations of the playback loop that have been performed since the
+   * player was created.
+   */
+  public long getPlaybackLoopIterationCount() {
+    return internalPlayer.getPlaybackLoopIterationCount();
+  }
+
+  /**
+   * Sets a profiler to record the timing of each iteration of the playback loop.
+   *
+   * @param profiler The profiler, or null to stop profiling.
+   */
+  public void setPlaybackLoopProfiler(PlaybackLoopProfiler profiler) {
+    internalPlayer.setPlaybackLoopProfiler(profiler);
+  }
+
   @Override
   public Timeline getCurrentTimeline() {
     return timeline;
@@ -86,9 +86,11 @@ import java.io.IOException;
   private static final int MSG_SOURCE_CONTINUE_LOADING_REQUESTED = 8;
   private static final int MSG_TRACK_SELECTION_INVALIDATED = 9;
   private static final int MSG_CUSTOM = 10;
+  private static final int MSG_SET_PLAYBACK_LOOP_PROFILER = 11;
 
   private static final int PREPARING_SOURCE_INTERVAL_MS = 10;
-  private static final int RENDERING_INTERVAL_MS = 10;
+  /* package */ static final int RENDERING_INTERVAL_MS = 10;
+  /* package */ static final int MAX_RENDERING_INTERVAL_MS = 100;
   private static final int IDLE_INTERVAL_MS = 1000;
 
   /**
@@ -122,6 +124,8 @@ import java.io.IOException;
   private int customMessagesSent;
   private int customMessagesProcessed;
   private long elapsedRealtimeUs;
+  private volatile long playbackLoopIterationCount;
+  private PlaybackLoopProfiler playbackLoopProfiler;
 
   private long rendererPositionUs;
 
@@ -206,6 +210,14 @@ import java.io.IOException;
     }
   }
 
+  public void setPlaybackLoopProfiler(PlaybackLoopProfiler playbackLoopProfiler) {
+    handler.obtainMessage(MSG_SET_PLAYBACK_LOOP_PROFILER, playbackLoopProfiler).sendToTarget();
+  }
+
+  public long getPlaybackLoopIterationCount() {
+    return playbackLoopIterationCount;
+  }
+
   public synchronized void release() {
     if (released) {
       return;
@@ -297,6 +309,10 @@ import java.io.IOException;
           sendMessagesInternal((ExoPlayerMessage[]) msg.obj);
           return true;
         }
+        case MSG_SET_PLAYBACK_LOOP_PROFILER: {
+          playbackLoopProfiler = (PlaybackLoopProfiler) msg.obj;
+          return true;
+        }
         default:
           return false;
       }
@@ -410,8 +426,16 @@ import java.io.IOException;
 
   private void doSomeWork() throws ExoPlaybackException, IOException {
     long operationStartTimeMs = SystemClock.elapsedRealtime();
+    playbackLoopIterationCount++;
+    PlaybackLoopProfiler profiler = playbackLoopProfiler;
+    if (profiler != null) {
+      profiler.onIterationStarted();
+    }
 
     updatePeriods();
+    if (profiler != null) {
+      profiler.onUpdatePeriodsEnded();
+    }
     if (playingPeriodHolder == null) {
       // We're still waiting for the first period to be prepared.
       maybeThrowPeriodPrepareError();
@@ -422,17 +446,29 @@ import java.io.IOException;
     TraceUtil.beginSection("doSomeWork");
 
     updatePlaybackPositions();
+    if (profiler != null) {
+      profiler.onUpdatePlaybackPositionsEnded();
+    }
     boolean allRenderersEnded = true;
     boolean allRenderersReadyOrEnded = true;
+    long maxRenderDelayUs = MAX_RENDERING_INTERVAL_MS * 1000L;
     for (Renderer renderer : enabledRenderers) {
-      // TODO: Each renderer should return the maximum delay before which it wishes to be called
-      // again. The minimum of these values should then be used as the delay before the next
-      // invocation of this method.
+      if (profiler != null) {
+        profiler.onRenderStarted();
+      }
       renderer.render(rendererPositionUs, elapsedRealtimeUs);
-      allRenderersEnded = allRenderersEnded && renderer.isEnded();
+      if (profiler != null) {
+        profiler.onRenderEnded(getRendererIndex(renderer));
+      }
+      boolean rendererEnded = renderer.isEnded();
+      if (!rendererEnded) {
+        maxRenderDelayUs = Math.min(maxRenderDelayUs,
+            getRenderingIntervalUs(renderer, rendererPositionUs, elapsedRealtimeUs));
+      }
+      allRenderersEnded = allRenderersEnded && rendererEnded;
       // Determine whether the renderer is ready (or ended). If it's not, throw an error that's
       // preventing the renderer from making progress, if such an error exists.
-      boolean rendererReadyOrEnded = renderer.isReady() || renderer.isEnded();
+      boolean rendererReadyOrEnded = renderer.isReady() || rendererEnded;
       if (!rendererReadyOrEnded) {
         renderer.maybeThrowStreamError();
       }
@@ -472,12 +508,19 @@ import java.io.IOException;
       }
     }
 
-    if ((playWhenReady && state == ExoPlayer.STATE_READY) || state == ExoPlayer.STATE_BUFFERING) {
+    if (playWhenReady && state == ExoPlayer.STATE_READY) {
+      // Sleep until the earliest time at which a renderer needs to do work, but no less than the
+      // default rendering interval.
+      scheduleNextWork(operationStartTimeMs, maxRenderDelayUs / 1000);
+    } else if (state == ExoPlayer.STATE_BUFFERING) {
       scheduleNextWork(operationStartTimeMs, RENDERING_INTERVAL_MS);
     } else if (enabledRenderers.length != 0) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
     } else {
       handler.removeMessages(MSG_DO_SOME_WORK);
+      if (profiler != null) {
+        profiler.onIterationEnded(C.TIME_UNSET);
+      }
     }
 
     TraceUtil.endSection();
@@ -487,6 +530,9 @@ import java.io.IOException;
     handler.removeMessages(MSG_DO_SOME_WORK);
     long nextOperationStartTimeMs = thisOperationStartTimeMs + intervalMs;
     long nextOperationDelayMs = nextOperationStartTimeMs - SystemClock.elapsedRealtime();
+    if (playbackLoopProfiler != null) {
+      playbackLoopProfiler.onIterationEnded(nextOperationDelayMs);
+    }
     if (nextOperationDelayMs <= 0) {
       handler.sendEmptyMessage(MSG_DO_SOME_WORK);
     } else {
@@ -494,6 +540,36 @@ import java.io.IOException;
     }
   }
 
+  /**
+   * Returns the interval after which a renderer needs to be rendered again, which is at least the
+   * default rendering interval and at most the maximum rendering interval.
+   *
+   * @param renderer The renderer, which has just been rendered.
+   * @param positionUs The position passed to the renderer.
+   * @param elapsedRealtimeUs The elapsed real time passed to the renderer.
+   * @return The rendering interval in microseconds.
+   */
+  /* package */ static long getRenderingIntervalUs(Renderer renderer, long positionUs,
+      long elapsedRealtimeUs) {
+    long renderDelayUs = renderer instanceof BaseRenderer
+        ? ((BaseRenderer) renderer).getMaxRenderDelayUs(positionUs, elapsedRealtimeUs)
+        : C.TIME_UNSET;
+    if (renderDelayUs == C.TIME_UNSET) {
+      return RENDERING_INTERVAL_MS * 1000L;
+    }
+    return Math.max(RENDERING_INTERVAL_MS * 1000L,
+        Math.min(MAX_RENDERING_INTERVAL_MS * 1000L, renderDelayUs));
+  }
+
+  private int getRendererIndex(Renderer renderer) {
+    for (int i = 0; i < renderers.length; i++) {
+      if (renderers[i] == renderer) {
+        return i;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
   private void seekToInternal(int periodIndex, long periodPositionUs) throws ExoPlaybackException {
     try {
       if (periodPositionUs == C.TIME_UNSET && timeline != null
@@ -1074,6 +1150,11 @@ import java.io.IOException;
       return;
     }
     maybeContinueLoading();
+    if (playWhenReady && state == ExoPlayer.STATE_READY) {
+      // New media may have been loaded, which renderers that were waiting for input can now read.
+      handler.removeMessages(MSG_DO_SOME_WORK);
+      handler.sendEmptyMessage(MSG_DO_SOME_WORK);
+    }
   }
 
   private void maybeContinueLoading() {
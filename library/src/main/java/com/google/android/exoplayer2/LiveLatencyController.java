@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.annotation.TargetApi;
+import android.media.PlaybackParams;
+import android.os.Handler;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Keeps playback of a live stream at a target distance behind the live edge, by adjusting the
+ * playback speed of a {@link SimpleExoPlayer}.
+ * <p>
+ * The latency is measured as the distance between the playback position and the end of the
+ * current window, extrapolated by the time elapsed since the window was last updated. It's only
+ * measured for dynamic windows of known duration. Whilst the latency differs from the target by
+ * more than a tolerance, the speed is adjusted in proportion to the difference, by at most a
+ * small fraction so that the change isn't noticeable. If the latency exceeds the target by more
+ * than a maximum catch-up duration, for example after a long rebuffer, the player seeks to the
+ * target position instead.
+ * <p>
+ * The speed is applied through {@link SimpleExoPlayer#setPlaybackParams(PlaybackParams)}, and so
+ * only takes effect for streams that have audio. Any parameters previously set by the application
+ * are replaced. Playback parameters are only supported from API level 23, so on earlier versions
+ * the speed is never adjusted. The latency is still measured, and the player still seeks if it
+ * falls too far behind the live edge.
+ */
+public final class LiveLatencyController {
+
+  /**
+   * Indicates that the target latency should be derived from the manifest.
+   */
+  public static final long TARGET_LATENCY_FROM_MANIFEST = C.TIME_UNSET;
+
+  /**
+   * The default maximum fraction by which the speed is adjusted.
+   */
+  public static final float DEFAULT_MAX_SPEED_ADJUSTMENT = 0.05f;
+  /**
+   * The default tolerance within which the latency is considered to be on target, in milliseconds.
+   */
+  public static final long DEFAULT_LATENCY_TOLERANCE_MS = 500;
+  /**
+   * The default latency in excess of the target beyond which the player seeks rather than
+   * adjusting the speed, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_CATCH_UP_LATENCY_MS = 30000;
+
+  /**
+   * The speed adjustment per millisecond of difference between the latency and the target.
+   */
+  private static final float SPEED_ADJUSTMENT_PER_MS = 0.00001f;
+  /**
+   * The granularity of the applied speed, which avoids reconfiguring the audio output for
+   * insignificant changes.
+   */
+  private static final float SPEED_STEP = 0.01f;
+  private static final int UPDATE_INTERVAL_MS = 1000;
+
+  private final SimpleExoPlayer player;
+  private final long configuredTargetLatencyMs;
+  private final float maxSpeedAdjustment;
+  private final long latencyToleranceMs;
+  private final long maxCatchUpLatencyMs;
+  private final Handler handler;
+  private final ComponentListener componentListener;
+  private final Timeline.Window window;
+
+  private Timeline timeline;
+  private long timelineUpdateRealtimeMs;
+  private long targetLatencyMs;
+  private long currentLatencyMs;
+  private float speed;
+  private boolean released;
+
+  /**
+   * Constructs a controller with the default parameters, whose target latency is derived from the
+   * manifest. Must be called on the thread on which the player's listeners are notified.
+   *
+   * @param player The player whose speed should be controlled.
+   */
+  public LiveLatencyController(SimpleExoPlayer player) {
+    this(player, TARGET_LATENCY_FROM_MANIFEST, DEFAULT_MAX_SPEED_ADJUSTMENT,
+        DEFAULT_LATENCY_TOLERANCE_MS, DEFAULT_MAX_CATCH_UP_LATENCY_MS);
+  }
+
+  /**
+   * Must be called on the thread on which the player's listeners are notified.
+   *
+   * @param player The player whose speed should be controlled.
+   * @param targetLatencyMs The target distance behind the live edge, in milliseconds, or
+   *     {@link #TARGET_LATENCY_FROM_MANIFEST} to use the suggested presentation delay of a DASH
+   *     manifest, or three target durations of an HLS media playlist.
+   * @param maxSpeedAdjustment The maximum fraction by which the speed may be increased or
+   *     decreased.
+   * @param latencyToleranceMs The tolerance within which the latency is considered to be on
+   *     target, in milliseconds.
+   * @param maxCatchUpLatencyMs The latency in excess of the target beyond which the player seeks
+   *     to the target rather than adjusting the speed, in milliseconds, or {@link C#TIME_UNSET} if
+   *     the player should never seek.
+   */
+  public LiveLatencyController(SimpleExoPlayer player, long targetLatencyMs,
+      float maxSpeedAdjustment, long latencyToleranceMs, long maxCatchUpLatencyMs) {
+    Assertions.checkArgument(maxSpeedAdjustment >= 0 && maxSpeedAdjustment < 1);
+    this.player = Assertions.checkNotNull(player);
+    this.configuredTargetLatencyMs = targetLatencyMs;
+    this.maxSpeedAdjustment = maxSpeedAdjustment;
+    this.latencyToleranceMs = latencyToleranceMs;
+    this.maxCatchUpLatencyMs = maxCatchUpLatencyMs;
+    handler = new Handler();
+    componentListener = new ComponentListener();
+    window = new Timeline.Window();
+    targetLatencyMs = configuredTargetLatencyMs;
+    currentLatencyMs = C.TIME_UNSET;
+    speed = 1;
+    player.addListener(componentListener);
+    timeline = player.getCurrentTimeline();
+    timelineUpdateRealtimeMs = SystemClock.elapsedRealtime();
+    updateTargetLatency(player.getCurrentManifest());
+    handler.post(componentListener);
+  }
+
+  /**
+   * Returns the most recently measured distance between the playback position and the live edge
+   * in milliseconds, or {@link C#TIME_UNSET} if it's unknown.
+   */
+  public long getCurrentLatencyMs() {
+    return currentLatencyMs;
+  }
+
+  /**
+   * Returns the target distance between the playback position and the live edge in milliseconds,
+   * or {@link C#TIME_UNSET} if it's unknown.
+   */
+  public long getTargetLatencyMs() {
+    return targetLatencyMs;
+  }
+
+  /**
+   * Returns the playback speed currently applied by the controller, which is always 1 before API
+   * level 23.
+   */
+  public float getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Stops controlling the player, restoring the normal playback speed.
+   */
+  public void release() {
+    if (!released) {
+      released = true;
+      handler.removeCallbacks(componentListener);
+      player.removeListener(componentListener);
+      setSpeed(1);
+    }
+  }
+
+  /**
+   * Returns the speed that should be applied for a given difference between the latency and the
+   * target.
+   *
+   * @param latencyErrorMs The latency minus the target latency, in milliseconds.
+   * @param latencyToleranceMs The tolerance within which the latency is considered to be on target,
+   *     in milliseconds.
+   * @param maxSpeedAdjustment The maximum fraction by which the speed may be adjusted.
+   * @return The speed.
+   */
+  /* package */ static float getSpeed(long latencyErrorMs, long latencyToleranceMs,
+      float maxSpeedAdjustment) {
+    if (Math.abs(latencyErrorMs) <= latencyToleranceMs) {
+      return 1;
+    }
+    float adjustment = latencyErrorMs * SPEED_ADJUSTMENT_PER_MS;
+    adjustment = Math.max(-maxSpeedAdjustment, Math.min(maxSpeedAdjustment, adjustment));
+    return 1 + Math.round(adjustment / SPEED_STEP) * SPEED_STEP;
+  }
+
+  // Internal methods.
+
+  private void update() {
+    currentLatencyMs = C.TIME_UNSET;
+    long liveEdgePositionMs = getLiveEdgePositionMs();
+    if (liveEdgePositionMs != C.TIME_UNSET) {
+      currentLatencyMs = liveEdgePositionMs - player.getCurrentPosition();
+    }
+    if (currentLatencyMs == C.TIME_UNSET || targetLatencyMs == C.TIME_UNSET
+        || player.getPlaybackState() != ExoPlayer.STATE_READY) {
+      setSpeed(1);
+      return;
+    }
+    long latencyErrorMs = currentLatencyMs - targetLatencyMs;
+    if (maxCatchUpLatencyMs != C.TIME_UNSET && latencyErrorMs > maxCatchUpLatencyMs) {
+      setSpeed(1);
+      player.seekTo(player.getCurrentWindowIndex(),
+          Math.max(0, liveEdgePositionMs - targetLatencyMs));
+      return;
+    }
+    setSpeed(getSpeed(latencyErrorMs, latencyToleranceMs, maxSpeedAdjustment));
+  }
+
+  /**
+   * Returns the estimated position of the live edge in the current window, or
+   * {@link C#TIME_UNSET} if the window isn't live or its extent is unknown.
+   */
+  private long getLiveEdgePositionMs() {
+    if (timeline == null || timeline.getWindowCount() == 0) {
+      return C.TIME_UNSET;
+    }
+    timeline.getWindow(player.getCurrentWindowIndex(), window);
+    if (!window.isDynamic || window.getDurationMs() == C.TIME_UNSET) {
+      return C.TIME_UNSET;
+    }
+    return window.getDurationMs() + SystemClock.elapsedRealtime() - timelineUpdateRealtimeMs;
+  }
+
+  private void updateTargetLatency(Object manifest) {
+    if (configuredTargetLatencyMs != TARGET_LATENCY_FROM_MANIFEST) {
+      return;
+    }
+    if (manifest instanceof DashManifest) {
+      DashManifest dashManifest = (DashManifest) manifest;
+      targetLatencyMs = dashManifest.suggestedPresentationDelay != C.TIME_UNSET
+          ? dashManifest.suggestedPresentationDelay
+          : DashMediaSource.DEFAULT_LIVE_PRESENTATION_DELAY_FIXED_MS;
+    } else if (manifest instanceof HlsMediaPlaylist) {
+      targetLatencyMs = 3 * ((HlsMediaPlaylist) manifest).targetDurationSecs * 1000L;
+    }
+  }
+
+  private void setSpeed(float speed) {
+    if (this.speed != speed && Util.SDK_INT >= 23) {
+      this.speed = speed;
+      setPlaybackSpeedV23(player, speed);
+    }
+  }
+
+  @TargetApi(23)
+  private static void setPlaybackSpeedV23(SimpleExoPlayer player, float speed) {
+    player.setPlaybackParams(new PlaybackParams().setSpeed(speed));
+  }
+
+  private final class ComponentListener implements ExoPlayer.EventListener, Runnable {
+
+    // Runnable implementation.
+
+    @Override
+    public void run() {
+      update();
+      handler.postDelayed(this, UPDATE_INTERVAL_MS);
+    }
+
+    // ExoPlayer.EventListener implementation.
+
+    @Override
+    public void onLoadingChanged(boolean isLoading) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, Object manifest) {
+      LiveLatencyController.this.timeline = timeline;
+      timelineUpdateRealtimeMs = SystemClock.elapsedRealtime();
+      updateTargetLatency(manifest);
+    }
+
+    @Override
+    public void onPlayerError(ExoPlaybackException error) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onPositionDiscontinuity() {
+      // Do nothing.
+    }
+
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.os.Handler;
+import com.google.android.exoplayer2.util.LogLinearHistogram;
+import java.util.Arrays;
+
+/**
+ * Profiles the iterations of a player's playback loop.
+ * <p>
+ * A profiler is attached to a player by calling {@link SimpleExoPlayer#setPlaybackLoopProfiler}.
+ * Whilst attached, the time taken by each phase of each iteration is recorded into histograms,
+ * together with how late each iteration started relative to when it was scheduled. The recorded
+ * data can be read at any time by calling {@link #getSnapshot()}, and can also be reported
+ * periodically to a {@link Listener}. When no profiler is attached the player does not read the
+ * clock, so profiling has no cost.
+ * <p>
+ * Durations are recorded in microseconds.
+ */
+public final class PlaybackLoopProfiler {
+
+  /**
+   * A listener of profiler reports.
+   */
+  public interface Listener {
+
+    /**
+     * Called periodically whilst the profiler is attached to a player.
+     *
+     * @param snapshot A snapshot of the data recorded since the profiler was created or last
+     *     reset.
+     */
+    void onPlaybackLoopProfile(Snapshot snapshot);
+
+  }
+
+  /**
+   * A snapshot of the data recorded by a profiler.
+   */
+  public static final class Snapshot {
+
+    /**
+     * The number of iterations of the playback loop.
+     */
+    public final long iterationCount;
+    /**
+     * The number of iterations that took longer than the interval until the next iteration was
+     * due to start, meaning that the next iteration could not start on time.
+     */
+    public final long overrunCount;
+    /**
+     * The number of iterations that started more than {@link #LATE_ITERATION_THRESHOLD_US} later
+     * than they were scheduled. Each is an iteration in which a video renderer may have released a
+     * frame late, or dropped it.
+     */
+    public final long lateIterationCount;
+    /**
+     * The durations of whole iterations.
+     */
+    public final LogLinearHistogram iterationDurationsUs;
+    /**
+     * The durations of the updates of the loading, reading and playing periods.
+     */
+    public final LogLinearHistogram updatePeriodsDurationsUs;
+    /**
+     * The durations of the updates of the playback and buffered positions.
+     */
+    public final LogLinearHistogram updatePlaybackPositionsDurationsUs;
+    /**
+     * The durations of calls to {@link Renderer#render(long, long)}, indexed by renderer index.
+     */
+    public final LogLinearHistogram[] renderDurationsUs;
+    /**
+     * How late each iteration started relative to when it was scheduled.
+     */
+    public final LogLinearHistogram iterationLatenessesUs;
+
+    private Snapshot(long iterationCount, long overrunCount, long lateIterationCount,
+        LogLinearHistogram iterationDurationsUs, LogLinearHistogram updatePeriodsDurationsUs,
+        LogLinearHistogram updatePlaybackPositionsDurationsUs,
+        LogLinearHistogram[] renderDurationsUs, LogLinearHistogram iterationLatenessesUs) {
+      this.iterationCount = iterationCount;
+      this.overrunCount = overrunCount;
+      this.lateIterationCount = lateIterationCount;
+      this.iterationDurationsUs = iterationDurationsUs;
+      this.updatePeriodsDurationsUs = updatePeriodsDurationsUs;
+      this.updatePlaybackPositionsDurationsUs = updatePlaybackPositionsDurationsUs;
+      this.renderDurationsUs = renderDurationsUs;
+      this.iterationLatenessesUs = iterationLatenessesUs;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      builder.append("iterations=").append(iterationCount)
+          .append(", overruns=").append(overrunCount)
+          .append(", late=").append(lateIterationCount)
+          .append("\n  iteration: ").append(iterationDurationsUs)
+          .append("\n  updatePeriods: ").append(updatePeriodsDurationsUs)
+          .append("\n  updatePlaybackPositions: ").append(updatePlaybackPositionsDurationsUs);
+      for (int i = 0; i < renderDurationsUs.length; i++) {
+        builder.append("\n  render[").append(i).append("]: ").append(renderDurationsUs[i]);
+      }
+      builder.append("\n  lateness: ").append(iterationLatenessesUs);
+      return builder.toString();
+    }
+
+  }
+
+  /**
+   * The amount by which an iteration must start later than scheduled to be counted as late. Equal
+   * to the duration of one frame at 60 fps.
+   */
+  public static final long LATE_ITERATION_THRESHOLD_US = 16667;
+
+  /**
+   * The default interval between reports to the {@link Listener}.
+   */
+  public static final long DEFAULT_REPORT_INTERVAL_MS = 5000;
+
+  private static final long HIGHEST_TRACKABLE_DURATION_US = 60000000;
+
+  private final Handler eventHandler;
+  private final Listener listener;
+  private final long reportIntervalNs;
+
+  private final LogLinearHistogram iterationDurationsUs;
+  private final LogLinearHistogram updatePeriodsDurationsUs;
+  private final LogLinearHistogram updatePlaybackPositionsDurationsUs;
+  private final LogLinearHistogram iterationLatenessesUs;
+  private LogLinearHistogram[] renderDurationsUs;
+  private long iterationCount;
+  private long overrunCount;
+  private long lateIterationCount;
+
+  // Accessed only on the playback thread.
+  private long scheduledIterationStartTimeNs;
+  private long iterationStartTimeNs;
+  private long phaseStartTimeNs;
+  private long lastReportTimeNs;
+
+  public PlaybackLoopProfiler() {
+    this(null, null);
+  }
+
+  /**
+   * @param eventHandler A handler for reports. May be null if reports are not required.
+   * @param listener A listener of reports. May be null if reports are not required.
+   */
+  public PlaybackLoopProfiler(Handler eventHandler, Listener listener) {
+    this(eventHandler, listener, DEFAULT_REPORT_INTERVAL_MS);
+  }
+
+  /**
+   * @param eventHandler A handler for reports. May be null if reports are not required.
+   * @param listener A listener of reports. May be null if reports are not required.
+   * @param reportIntervalMs The interval between reports, in milliseconds.
+   */
+  public PlaybackLoopProfiler(Handler eventHandler, Listener listener, long reportIntervalMs) {
+    this.eventHandler = eventHandler;
+    this.listener = listener;
+    this.reportIntervalNs = reportIntervalMs * 1000000;
+    iterationDurationsUs = new LogLinearHistogram(HIGHEST_TRACKABLE_DURATION_US);
+    updatePeriodsDurationsUs = new LogLinearHistogram(HIGHEST_TRACKABLE_DURATION_US);
+    updatePlaybackPositionsDurationsUs = new LogLinearHistogram(HIGHEST_TRACKABLE_DURATION_US);
+    iterationLatenessesUs = new LogLinearHistogram(HIGHEST_TRACKABLE_DURATION_US);
+    renderDurationsUs = new LogLinearHistogram[0];
+    scheduledIterationStartTimeNs = Long.MAX_VALUE;
+    lastReportTimeNs = C.TIME_UNSET;
+  }
+
+  /**
+   * Returns a snapshot of the data recorded since the profiler was created or last reset. May be
+   * called from any thread.
+   */
+  public synchronized Snapshot getSnapshot() {
+    LogLinearHistogram[] renderDurationsUsCopy = new LogLinearHistogram[renderDurationsUs.length];
+    for (int i = 0; i < renderDurationsUs.length; i++) {
+      renderDurationsUsCopy[i] = new LogLinearHistogram(renderDurationsUs[i]);
+    }
+    return new Snapshot(iterationCount, overrunCount, lateIterationCount,
+        new LogLinearHistogram(iterationDurationsUs),
+        new LogLinearHistogram(updatePeriodsDurationsUs),
+        new LogLinearHistogram(updatePlaybackPositionsDurationsUs), renderDurationsUsCopy,
+        new LogLinearHistogram(iterationLatenessesUs));
+  }
+
+  /**
+   * Discards all recorded data. May be called from any thread.
+   */
+  public synchronized void reset() {
+    iterationCount = 0;
+    overrunCount = 0;
+    lateIterationCount = 0;
+    iterationDurationsUs.reset();
+    updatePeriodsDurationsUs.reset();
+    updatePlaybackPositionsDurationsUs.reset();
+    iterationLatenessesUs.reset();
+    for (LogLinearHistogram histogram : renderDurationsUs) {
+      histogram.reset();
+    }
+  }
+
+  // Called by the player on the playback thread.
+
+  /* package */ void onIterationStarted() {
+    long nowNs = System.nanoTime();
+    iterationStartTimeNs = nowNs;
+    phaseStartTimeNs = nowNs;
+    if (lastReportTimeNs == C.TIME_UNSET) {
+      lastReportTimeNs = nowNs;
+    }
+    // An iteration may start earlier than scheduled, for example in response to a seek.
+    long latenessUs = Math.max(0, (nowNs - scheduledIterationStartTimeNs) / 1000);
+    scheduledIterationStartTimeNs = Long.MAX_VALUE;
+    synchronized (this) {
+      iterationCount++;
+      iterationLatenessesUs.record(latenessUs);
+      if (latenessUs > LATE_ITERATION_THRESHOLD_US) {
+        lateIterationCount++;
+      }
+    }
+  }
+
+  /* package */ void onUpdatePeriodsEnded() {
+    long durationUs = endPhase();
+    synchronized (this) {
+      updatePeriodsDurationsUs.record(durationUs);
+    }
+  }
+
+  /* package */ void onUpdatePlaybackPositionsEnded() {
+    long durationUs = endPhase();
+    synchronized (this) {
+      updatePlaybackPositionsDurationsUs.record(durationUs);
+    }
+  }
+
+  /* package */ void onRenderStarted() {
+    phaseStartTimeNs = System.nanoTime();
+  }
+
+  /* package */ void onRenderEnded(int rendererIndex) {
+    long durationUs = endPhase();
+    synchronized (this) {
+      if (rendererIndex >= renderDurationsUs.length) {
+        int oldLength = renderDurationsUs.length;
+        renderDurationsUs = Arrays.copyOf(renderDurationsUs, rendererIndex + 1);
+        for (int i = oldLength; i < renderDurationsUs.length; i++) {
+          renderDurationsUs[i] = new LogLinearHistogram(HIGHEST_TRACKABLE_DURATION_US);
+        }
+      }
+      renderDurationsUs[rendererIndex].record(durationUs);
+    }
+  }
+
+  /**
+   * @param nextIterationDelayMs The delay until the next iteration is due to start in milliseconds,
+   *     which is negative if it's overdue, or {@link C#TIME_UNSET} if no iteration is scheduled.
+   */
+  /* package */ void onIterationEnded(long nextIterationDelayMs) {
+    long nowNs = System.nanoTime();
+    long durationUs = (nowNs - iterationStartTimeNs) / 1000;
+    scheduledIterationStartTimeNs = nextIterationDelayMs == C.TIME_UNSET ? Long.MAX_VALUE
+        : nowNs + Math.max(0, nextIterationDelayMs) * 1000000;
+    synchronized (this) {
+      iterationDurationsUs.record(durationUs);
+      if (nextIterationDelayMs != C.TIME_UNSET && nextIterationDelayMs < 0) {
+        overrunCount++;
+      }
+    }
+    if (eventHandler != null && listener != null && nowNs - lastReportTimeNs >= reportIntervalNs) {
+      lastReportTimeNs = nowNs;
+      final Snapshot snapshot = getSnapshot();
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          listener.onPlaybackLoopProfile(snapshot);
+        }
+      });
+    }
+  }
+
+  private long endPhase() {
+    long nowNs = System.nanoTime();
+    long durationUs = (nowNs - phaseStartTimeNs) / 1000;
+    phaseStartTimeNs = nowNs;
+    return durationUs;
+  }
+
+}
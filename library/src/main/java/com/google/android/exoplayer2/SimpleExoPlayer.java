@@ -96,7 +96,7 @@ public final class SimpleExoPlayer implements ExoPlayer {
   private static final String TAG = "SimpleExoPlayer";
   private static final int MAX_DROPPED_VIDEO_FRAME_COUNT_TO_NOTIFY = 50;
 
-  private final ExoPlayer player;
+  private final ExoPlayerImpl player;
   private final Renderer[] renderers;
   private final ComponentListener componentListener;
   private final Handler mainHandler;
@@ -517,6 +517,24 @@ public final class SimpleExoPlayer implements ExoPlayer {
     return player.getBufferedPercentage();
   }
 
+  /**
+   * Returns the number of iterations of the playback loop that have been performed since the
+   * player was created. Each iteration requires the playback thread to wake up, so the rate at
+   * which this count increases during playback is an indication of the player's power consumption.
+   */
+  public long getPlaybackLoopIterationCount() {
+    return player.getPlaybackLoopIterationCount();
+  }
+
+  /**
+   * Sets a profiler to record the timing of each iteration of the playback loop.
+   *
+   * @param profiler The profiler, or null to stop profiling.
+   */
+  public void setPlaybackLoopProfiler(PlaybackLoopProfiler profiler) {
+    player.setPlaybackLoopProfiler(profiler);
+  }
+
   @Override
   public Timeline getCurrentTimeline() {
     return player.getCurrentTimeline();
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelections;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link LoadControl} that wraps another, and whose loading can be suspended. Whilst loading is
+ * suspended the player doesn't load any further media, although media that's already buffered can
+ * still be played. When loading is resumed the wrapped {@link LoadControl} decides whether to load
+ * as normal.
+ */
+public final class SuspendableLoadControl implements LoadControl {
+
+  private final LoadControl loadControl;
+
+  private volatile boolean loadingSuspended;
+
+  /**
+   * @param loadControl The {@link LoadControl} that decides whether to load whilst loading isn't
+   *     suspended.
+   */
+  public SuspendableLoadControl(LoadControl loadControl) {
+    this.loadControl = Assertions.checkNotNull(loadControl);
+  }
+
+  /**
+   * Sets whether loading is suspended. May be called from any thread.
+   *
+   * @param loadingSuspended Whether loading is suspended.
+   */
+  public void setLoadingSuspended(boolean loadingSuspended) {
+    this.loadingSuspended = loadingSuspended;
+  }
+
+  /**
+   * Returns whether loading is suspended. May be called from any thread.
+   */
+  public boolean isLoadingSuspended() {
+    return loadingSuspended;
+  }
+
+  // LoadControl implementation.
+
+  @Override
+  public void onPrepared() {
+    loadControl.onPrepared();
+  }
+
+  @Override
+  public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups,
+      TrackSelections<?> trackSelections) {
+    loadControl.onTracksSelected(renderers, trackGroups, trackSelections);
+  }
+
+  @Override
+  public void onStopped() {
+    loadControl.onStopped();
+  }
+
+  @Override
+  public void onReleased() {
+    loadControl.onReleased();
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return loadControl.getAllocator();
+  }
+
+  @Override
+  public boolean shouldStartPlayback(long bufferedDurationUs, boolean rebuffering) {
+    return loadControl.shouldStartPlayback(bufferedDurationUs, rebuffering);
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs) {
+    // The wrapped control is always consulted, so that any state it keeps remains up to date.
+    boolean shouldContinueLoading = loadControl.shouldContinueLoading(bufferedDurationUs);
+    return shouldContinueLoading && !loadingSuspended;
+  }
+
+}
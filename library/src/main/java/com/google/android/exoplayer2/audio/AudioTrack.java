@@ -683,6 +683,20 @@ public final class AudioTrack {
         || overrideHasPendingData());
   }
 
+  /**
+   * Returns the duration of the data that has been written to the audio track but not yet played
+   * out, or {@link C#TIME_UNSET} if the audio track is not initialized.
+   *
+   * @return The duration of the pending data in microseconds, or {@link C#TIME_UNSET}.
+   */
+  public long getPendingDataDurationUs() {
+    if (!isInitialized()) {
+      return C.TIME_UNSET;
+    }
+    long pendingFrames = getSubmittedFrames() - audioTrackUtil.getPlaybackHeadPosition();
+    return framesToDurationUs(Math.max(0, pendingFrames));
+  }
+
   /**
    * Sets the playback parameters. Only available for {@link Util#SDK_INT} &gt;= 23
    *
@@ -38,6 +38,8 @@ import com.google.android.exoplayer2.util.MediaClock;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Decodes and renders audio using {@link MediaCodec} and {@link AudioTrack}.
@@ -203,6 +205,19 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
   }
 
+  @Override
+  protected boolean canKeepCodec(MediaCodec codec, Format oldFormat, Format newFormat) {
+    // A decoder that was configured for a format can decode another that has the same parameters
+    // and initialization data. Gapless playback information is applied by the decoder when it's
+    // configured, so the codec is only kept if neither format has any.
+    return Util.areEqual(oldFormat.sampleMimeType, newFormat.sampleMimeType)
+        && oldFormat.channelCount == newFormat.channelCount
+        && oldFormat.sampleRate == newFormat.sampleRate
+        && oldFormat.pcmEncoding == newFormat.pcmEncoding
+        && !hasGaplessInfo(oldFormat) && !hasGaplessInfo(newFormat)
+        && areInitializationDataEqual(oldFormat.initializationData, newFormat.initializationData);
+  }
+
   @Override
   public MediaClock getMediaClock() {
     return this;
@@ -383,6 +398,18 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     return false;
   }
 
+  @Override
+  protected long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs,
+      long bufferPresentationTimeUs) {
+    if (getState() != STATE_STARTED) {
+      return C.TIME_UNSET;
+    }
+    // The output buffer couldn't be written in full because the audio track is full. Wait until
+    // half of the pending data has been played out before trying to write more.
+    long pendingDataDurationUs = audioTrack.getPendingDataDurationUs();
+    return pendingDataDurationUs == C.TIME_UNSET ? C.TIME_UNSET : pendingDataDurationUs / 2;
+  }
+
   @Override
   protected void onOutputStreamEnded() {
     audioTrack.handleEndOfStream();
@@ -407,4 +434,21 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
   }
 
+  private static boolean hasGaplessInfo(Format format) {
+    return (format.encoderDelay != Format.NO_VALUE && format.encoderDelay != 0)
+        || (format.encoderPadding != Format.NO_VALUE && format.encoderPadding != 0);
+  }
+
+  private static boolean areInitializationDataEqual(List<byte[]> data, List<byte[]> otherData) {
+    if (data.size() != otherData.size()) {
+      return false;
+    }
+    for (int i = 0; i < data.size(); i++) {
+      if (!Arrays.equals(data.get(i), otherData.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 }
@@ -270,6 +270,17 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     decoder.flush();
   }
 
+  @Override
+  public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+    if (outputBuffer == null || outputStreamEnded || getState() != STATE_STARTED) {
+      return C.TIME_UNSET;
+    }
+    // The output buffer couldn't be written in full because the audio track is full. Wait until
+    // half of the pending data has been played out before trying to write more.
+    long pendingDataDurationUs = audioTrack.getPendingDataDurationUs();
+    return pendingDataDurationUs == C.TIME_UNSET ? C.TIME_UNSET : pendingDataDurationUs / 2;
+  }
+
   @Override
   public boolean isEnded() {
     return outputStreamEnded && !audioTrack.hasPendingData();
@@ -59,6 +59,30 @@ public final class DecoderCounters {
    * Skipped output buffers are ignored for the purposes of calculating this value.
    */
   public int maxConsecutiveDroppedOutputBufferCount;
+  /**
+   * The number of transitions from one stream to the next that occurred without the decoder being
+   * flushed, such as those between the periods of a playlist.
+   */
+  public int streamTransitionCount;
+  /**
+   * The sum of the latencies of all stream transitions, in milliseconds.
+   * <p>
+   * The latency of a transition is the time taken to output the first buffer of the new stream in
+   * excess of the media duration between it and the last buffer of the previous stream. It is zero
+   * if the transition was seamless.
+   */
+  public int totalStreamTransitionLatencyMs;
+  /**
+   * The maximum latency of a single stream transition, in milliseconds.
+   */
+  public int maxStreamTransitionLatencyMs;
+  /**
+   * The maximum number of decoded output buffers that were ready to be processed at once.
+   * <p>
+   * Only counted when output buffers are queued asynchronously. A renderer that keeps up with its
+   * decoder rarely has more than one ready output buffer.
+   */
+  public int maxReadyOutputBufferCount;
 
   /**
    * Should be called to ensure counter values are made visible across threads. The playback thread
@@ -84,6 +108,12 @@ public final class DecoderCounters {
     droppedOutputBufferCount += other.droppedOutputBufferCount;
     maxConsecutiveDroppedOutputBufferCount = Math.max(maxConsecutiveDroppedOutputBufferCount,
         other.maxConsecutiveDroppedOutputBufferCount);
+    streamTransitionCount += other.streamTransitionCount;
+    totalStreamTransitionLatencyMs += other.totalStreamTransitionLatencyMs;
+    maxStreamTransitionLatencyMs = Math.max(maxStreamTransitionLatencyMs,
+        other.maxStreamTransitionLatencyMs);
+    maxReadyOutputBufferCount = Math.max(maxReadyOutputBufferCount,
+        other.maxReadyOutputBufferCount);
   }
 
 }
@@ -27,8 +27,10 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A {@link TrackOutput} that buffers extracted samples in a queue and allows for consumption from
@@ -61,6 +63,7 @@ public final class DefaultTrackOutput implements TrackOutput {
 
   private final InfoQueue infoQueue;
   private final LinkedBlockingDeque<Allocation> dataQueue;
+  private final ArrayDeque<Allocation> backBufferQueue;
   private final BufferExtrasHolder extrasHolder;
   private final ParsableByteArray scratch;
   private final AtomicInteger state;
@@ -68,6 +71,8 @@ public final class DefaultTrackOutput implements TrackOutput {
   // Accessed only by the consuming thread.
   private long totalBytesDropped;
   private Format downstreamFormat;
+  private long backBufferDurationUs;
+  private int maxBackBufferSize;
 
   // Accessed only by the loading thread (or the consuming thread when there is no loading thread).
   private long sampleOffsetUs;
@@ -86,11 +91,13 @@ public final class DefaultTrackOutput implements TrackOutput {
     allocationLength = allocator.getIndividualAllocationLength();
     infoQueue = new InfoQueue();
     dataQueue = new LinkedBlockingDeque<>();
+    backBufferQueue = new ArrayDeque<>();
     extrasHolder = new BufferExtrasHolder();
     scratch = new ParsableByteArray(INITIAL_SCRATCH_SIZE);
     state = new AtomicInteger();
     lastAllocationOffset = allocationLength;
     needKeyframe = true;
+    maxBackBufferSize = Integer.MAX_VALUE;
   }
 
   // Called by the consuming thread, but only when there is no loading thread.
@@ -194,6 +201,46 @@ public final class DefaultTrackOutput implements TrackOutput {
     return infoQueue.getReadIndex();
   }
 
+  /**
+   * Returns the absolute index of the first sample in the buffer. This is less than the read index
+   * if samples that have already been read are being retained in the back buffer.
+   */
+  public int getFirstIndex() {
+    return infoQueue.getFirstIndex();
+  }
+
+  /**
+   * Sets the duration of media that should be retained after it's been read, so that it's possible
+   * to skip backward within the buffer. A sample is retained until it's more than this duration
+   * before the most recently read sample, or before the position most recently skipped to. The
+   * keyframe on which the earliest retained sample depends is also retained. The new duration
+   * takes effect when the next sample is read.
+   *
+   * @param backBufferDurationUs The duration of media to retain, in microseconds. Zero disables
+   *     retention, which is the default.
+   */
+  public void setBackBufferDurationUs(long backBufferDurationUs) {
+    Assertions.checkArgument(backBufferDurationUs >= 0);
+    this.backBufferDurationUs = backBufferDurationUs;
+  }
+
+  /**
+   * Sets the maximum size of the sample data retained after it's been read, in addition to the
+   * duration set by {@link #setBackBufferDurationUs(long)}. If retaining the duration would exceed
+   * this size then the earliest samples are discarded, including any keyframe on which the
+   * earliest retained sample depends. The new size takes effect when the next sample is read.
+   * <p>
+   * Retained data remains allocated from the {@link Allocator}, and so counts toward the total
+   * buffer size that the player's load control compares against its target.
+   *
+   * @param maxBackBufferSize The maximum size of the retained sample data, in bytes. The default
+   *     is {@link Integer#MAX_VALUE}, meaning that the size isn't limited.
+   */
+  public void setMaxBackBufferSize(int maxBackBufferSize) {
+    Assertions.checkArgument(maxBackBufferSize >= 0);
+    this.maxBackBufferSize = maxBackBufferSize;
+  }
+
   /**
    * Peeks the source id of the next sample, or the current upstream source id if the buffer is
    * empty.
@@ -226,17 +273,32 @@ public final class DefaultTrackOutput implements TrackOutput {
   }
 
   /**
-   * Attempts to skip to the keyframe before the specified time, if it's present in the buffer.
+   * Attempts to skip to the keyframe before the specified time, if it's present in the buffer at or
+   * after the current read position.
    *
    * @param timeUs The seek time.
    * @return Whether the skip was successful.
    */
   public boolean skipToKeyframeBefore(long timeUs) {
-    long nextOffset = infoQueue.skipToKeyframeBefore(timeUs);
+    return skipToKeyframeBefore(timeUs, false);
+  }
+
+  /**
+   * Attempts to skip to the keyframe before the specified time, if it's present in the buffer.
+   *
+   * @param timeUs The seek time.
+   * @param allowSkipBackward Whether the skip may be to a sample that's already been read and that
+   *     is being retained in the back buffer. If false, only samples at or after the current read
+   *     position are considered.
+   * @return Whether the skip was successful.
+   */
+  public boolean skipToKeyframeBefore(long timeUs, boolean allowSkipBackward) {
+    long nextOffset = infoQueue.skipToKeyframeBefore(timeUs, allowSkipBackward);
     if (nextOffset == C.POSITION_UNSET) {
       return false;
     }
-    dropDownstreamTo(nextOffset);
+    rewindDownstreamTo(nextOffset);
+    discardReadSamples(timeUs, nextOffset);
     return true;
   }
 
@@ -276,8 +338,8 @@ public final class DefaultTrackOutput implements TrackOutput {
         // Write the sample data into the holder.
         buffer.ensureSpaceForWrite(extrasHolder.size);
         readData(extrasHolder.offset, buffer.data, extrasHolder.size);
-        // Advance the read head.
-        dropDownstreamTo(extrasHolder.nextOffset);
+        // Advance the read head, retaining any samples that should be kept in the back buffer.
+        discardReadSamples(buffer.timeUs, extrasHolder.nextOffset);
         return C.RESULT_BUFFER_READ;
       default:
         throw new IllegalStateException();
@@ -367,7 +429,7 @@ public final class DefaultTrackOutput implements TrackOutput {
   private void readData(long absolutePosition, ByteBuffer target, int length) {
     int remaining = length;
     while (remaining > 0) {
-      dropDownstreamTo(absolutePosition);
+      advanceDownstreamTo(absolutePosition);
       int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(remaining, allocationLength - positionInAllocation);
       Allocation allocation = dataQueue.peek();
@@ -387,7 +449,7 @@ public final class DefaultTrackOutput implements TrackOutput {
   private void readData(long absolutePosition, byte[] target, int length) {
     int bytesRead = 0;
     while (bytesRead < length) {
-      dropDownstreamTo(absolutePosition);
+      advanceDownstreamTo(absolutePosition);
       int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(length - bytesRead, allocationLength - positionInAllocation);
       Allocation allocation = dataQueue.peek();
@@ -399,20 +461,69 @@ public final class DefaultTrackOutput implements TrackOutput {
   }
 
   /**
-   * Discard any allocations that hold data prior to the specified absolute position, returning
-   * them to the allocator.
+   * Discards samples that have been read, other than those that should be retained in the back
+   * buffer, and returns allocations that are no longer required to the allocator.
    *
-   * @param absolutePosition The absolute position up to which allocations can be discarded.
+   * @param positionUs The position from which the back buffer duration is measured.
+   * @param nextOffset The absolute position of the first byte that's still required if no samples
+   *     are retained, from which the back buffer size is measured.
    */
-  private void dropDownstreamTo(long absolutePosition) {
+  private void discardReadSamples(long positionUs, long nextOffset) {
+    long retainFromTimeUs = backBufferDurationUs == 0 ? Long.MAX_VALUE
+        : positionUs - backBufferDurationUs;
+    long retainFromOffset = nextOffset - maxBackBufferSize;
+    long retainedOffset = infoQueue.discardReadSamples(retainFromTimeUs, retainFromOffset);
+    dropDownstreamTo(retainedOffset == C.POSITION_UNSET ? nextOffset : retainedOffset);
+  }
+
+  /**
+   * Moves any allocations that hold data prior to the specified absolute position from the front
+   * of the rolling buffer to the back buffer.
+   *
+   * @param absolutePosition The absolute position up to which allocations can be moved.
+   */
+  private void advanceDownstreamTo(long absolutePosition) {
     int relativePosition = (int) (absolutePosition - totalBytesDropped);
     int allocationIndex = relativePosition / allocationLength;
     for (int i = 0; i < allocationIndex; i++) {
-      allocator.release(dataQueue.remove());
+      backBufferQueue.add(dataQueue.remove());
       totalBytesDropped += allocationLength;
     }
   }
 
+  /**
+   * Moves allocations from the back buffer to the front of the rolling buffer, until the rolling
+   * buffer holds data from the specified absolute position.
+   *
+   * @param absolutePosition The absolute position from which data should be held by the rolling
+   *     buffer.
+   */
+  private void rewindDownstreamTo(long absolutePosition) {
+    while (absolutePosition < totalBytesDropped) {
+      dataQueue.addFirst(backBufferQueue.removeLast());
+      totalBytesDropped -= allocationLength;
+    }
+  }
+
+  /**
+   * Discard any allocations that hold data prior to the specified absolute position, returning
+   * them to the allocator. Allocations in the back buffer are discarded first.
+   *
+   * @param absolutePosition The absolute position up to which allocations can be discarded.
+   */
+  private void dropDownstreamTo(long absolutePosition) {
+    long backBufferPosition = totalBytesDropped - (long) backBufferQueue.size() * allocationLength;
+    int allocationIndex = (int) ((absolutePosition - backBufferPosition) / allocationLength);
+    for (int i = 0; i < allocationIndex; i++) {
+      if (!backBufferQueue.isEmpty()) {
+        allocator.release(backBufferQueue.remove());
+      } else {
+        allocator.release(dataQueue.remove());
+        totalBytesDropped += allocationLength;
+      }
+    }
+  }
+
   // Called by the loading thread.
 
   /**
@@ -539,6 +650,8 @@ public final class DefaultTrackOutput implements TrackOutput {
     infoQueue.clearSampleData();
     allocator.release(dataQueue.toArray(new Allocation[dataQueue.size()]));
     dataQueue.clear();
+    allocator.release(backBufferQueue.toArray(new Allocation[backBufferQueue.size()]));
+    backBufferQueue.clear();
     allocator.trim();
     totalBytesDropped = 0;
     totalBytesWritten = 0;
@@ -579,51 +692,109 @@ public final class DefaultTrackOutput implements TrackOutput {
 
   /**
    * Holds information about the samples in the rolling buffer.
+   * <p>
+   * The queue is written by a single loading thread and read by a single consuming thread, and is
+   * lock-free for both. Sample information is held in a ring of parallel arrays. The loading thread
+   * publishes a sample by writing its information and then the volatile write index. The consuming
+   * thread advances the read index by compare-and-set on {@link #readState}, which packs the read
+   * index together with two flags and a version:
+   * <ul>
+   * <li>The loading thread sets {@link #FLAG_SPLICING} whilst it discards samples for a splice,
+   * during which the read index cannot be advanced. It increments the version when it clears the
+   * flag, so any read that overlapped with the splice fails its compare-and-set, and is retried.
+   * </li>
+   * <li>The consuming thread sets {@link #FLAG_DEQUEUING} when it advances the read index past a
+   * sample, and clears it once the sample's timestamp has been included in the largest dequeued
+   * timestamp. A splice can't start whilst the flag is set, so the loading thread never checks
+   * the largest dequeued timestamp without the timestamps of all of the dequeued samples.</li>
+   * </ul>
+   * Samples before the read index that are retained in the back buffer are held from the first
+   * index, which is written only by the consuming thread.
    */
   private static final class InfoQueue {
 
     private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
 
-    private int capacity;
+    private static final long READ_INDEX_MASK = 0xFFFFFFFFL;
+    private static final long FLAG_SPLICING = 1L << 32;
+    private static final long FLAG_DEQUEUING = 1L << 33;
+    private static final long VERSION_INCREMENT = 1L << 34;
 
-    private int[] sourceIds;
-    private long[] offsets;
-    private int[] sizes;
-    private int[] flags;
-    private long[] timesUs;
-    private byte[][] encryptionKeys;
-    private Format[] formats;
+    /**
+     * Parallel arrays holding sample information. The information for the sample with absolute
+     * index {@code i} is held at position {@code i % capacity}. The arrays are replaced rather than
+     * resized when the capacity is increased, so that a consuming thread can continue to read from
+     * the old arrays.
+     */
+    private static final class InfoArrays {
+
+      public final int capacity;
+      public final int[] sourceIds;
+      public final long[] offsets;
+      public final int[] sizes;
+      public final int[] flags;
+      public final long[] timesUs;
+      public final byte[][] encryptionKeys;
+      public final Format[] formats;
+
+      public InfoArrays(int capacity) {
+        this.capacity = capacity;
+        sourceIds = new int[capacity];
+        offsets = new long[capacity];
+        sizes = new int[capacity];
+        flags = new int[capacity];
+        timesUs = new long[capacity];
+        encryptionKeys = new byte[capacity][];
+        formats = new Format[capacity];
+      }
 
-    private int queueSize;
-    private int absoluteReadIndex;
-    private int relativeReadIndex;
-    private int relativeWriteIndex;
+      public void copy(int index, InfoArrays source, int sourceIndex) {
+        sourceIds[index] = source.sourceIds[sourceIndex];
+        offsets[index] = source.offsets[sourceIndex];
+        sizes[index] = source.sizes[sourceIndex];
+        flags[index] = source.flags[sourceIndex];
+        timesUs[index] = source.timesUs[sourceIndex];
+        encryptionKeys[index] = source.encryptionKeys[sourceIndex];
+        formats[index] = source.formats[sourceIndex];
+      }
+
+    }
 
-    private long largestDequeuedTimestampUs;
-    private long largestQueuedTimestampUs;
-    private boolean upstreamFormatRequired;
-    private Format upstreamFormat;
-    private int upstreamSourceId;
+    // The absolute read index in the lower 32 bits, FLAG_SPLICING, FLAG_DEQUEUING and a version.
+    private final AtomicLong readState;
+
+    private volatile InfoArrays infoArrays;
+    private volatile int absoluteFirstIndex;
+    private volatile int absoluteWriteIndex;
+
+    // The progress of the search for the first sample to retain in the back buffer, which is
+    // resumed by each call to discardReadSamples unless the retention thresholds move backward.
+    // Accessed only by the consuming thread.
+    private int retainSearchIndex;
+    private int retainSearchKeyframeIndex;
+    private long retainSearchFromTimeUs;
+    private long retainSearchFromOffset;
+
+    private volatile long largestDequeuedTimestampUs;
+    private volatile long largestQueuedTimestampUs;
+    private volatile boolean upstreamFormatRequired;
+    private volatile Format upstreamFormat;
+    private volatile int upstreamSourceId;
 
     public InfoQueue() {
-      capacity = SAMPLE_CAPACITY_INCREMENT;
-      sourceIds = new int[capacity];
-      offsets = new long[capacity];
-      timesUs = new long[capacity];
-      flags = new int[capacity];
-      sizes = new int[capacity];
-      encryptionKeys = new byte[capacity][];
-      formats = new Format[capacity];
+      readState = new AtomicLong();
+      infoArrays = new InfoArrays(SAMPLE_CAPACITY_INCREMENT);
       largestDequeuedTimestampUs = Long.MIN_VALUE;
       largestQueuedTimestampUs = Long.MIN_VALUE;
       upstreamFormatRequired = true;
+      resetRetainSearch();
     }
 
     public void clearSampleData() {
-      absoluteReadIndex = 0;
-      relativeReadIndex = 0;
-      relativeWriteIndex = 0;
-      queueSize = 0;
+      readState.set(0);
+      absoluteFirstIndex = 0;
+      absoluteWriteIndex = 0;
+      resetRetainSearch();
     }
 
     // Called by the consuming thread, but only when there is no loading thread.
@@ -637,7 +808,7 @@ public final class DefaultTrackOutput implements TrackOutput {
      * Returns the current absolute write index.
      */
     public int getWriteIndex() {
-      return absoluteReadIndex + queueSize;
+      return absoluteWriteIndex;
     }
 
     /**
@@ -647,31 +818,35 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The reduced total number of bytes written, after the samples have been discarded.
      */
     public long discardUpstreamSamples(int discardFromIndex) {
-      int discardCount = getWriteIndex() - discardFromIndex;
-      Assertions.checkArgument(0 <= discardCount && discardCount <= queueSize);
+      int readIndex = getReadIndex(readState.get());
+      int writeIndex = absoluteWriteIndex;
+      InfoArrays infoArrays = this.infoArrays;
+      int discardCount = writeIndex - discardFromIndex;
+      Assertions.checkArgument(0 <= discardCount && discardCount <= writeIndex - readIndex);
 
       if (discardCount == 0) {
-        if (absoluteReadIndex == 0) {
-          // queueSize == absoluteReadIndex == 0, so nothing has been written to the queue.
+        if (writeIndex == 0) {
+          // Nothing has been written to the queue.
           return 0;
         }
-        int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-        return offsets[lastWriteIndex] + sizes[lastWriteIndex];
+        int lastWriteIndex = (writeIndex - 1) % infoArrays.capacity;
+        return infoArrays.offsets[lastWriteIndex] + infoArrays.sizes[lastWriteIndex];
       }
 
-      queueSize -= discardCount;
-      relativeWriteIndex = (relativeWriteIndex + capacity - discardCount) % capacity;
       // Update the largest queued timestamp, assuming that the timestamps prior to a keyframe are
       // always less than the timestamp of the keyframe itself, and of subsequent frames.
-      largestQueuedTimestampUs = Long.MIN_VALUE;
-      for (int i = queueSize - 1; i >= 0; i--) {
-        int sampleIndex = (relativeReadIndex + i) % capacity;
-        largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timesUs[sampleIndex]);
-        if ((flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      long largestQueuedTimestampUs = Long.MIN_VALUE;
+      for (int i = discardFromIndex - 1; i >= readIndex; i--) {
+        int sampleIndex = i % infoArrays.capacity;
+        largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs,
+            infoArrays.timesUs[sampleIndex]);
+        if ((infoArrays.flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
           break;
         }
       }
-      return offsets[relativeWriteIndex];
+      this.largestQueuedTimestampUs = largestQueuedTimestampUs;
+      absoluteWriteIndex = discardFromIndex;
+      return infoArrays.offsets[discardFromIndex % infoArrays.capacity];
     }
 
     public void sourceId(int sourceId) {
@@ -684,7 +859,14 @@ public final class DefaultTrackOutput implements TrackOutput {
      * Returns the current absolute read index.
      */
     public int getReadIndex() {
-      return absoluteReadIndex;
+      return getReadIndex(readState.get());
+    }
+
+    /**
+     * Returns the absolute index of the first sample retained in the queue.
+     */
+    public int getFirstIndex() {
+      return absoluteFirstIndex;
     }
 
     /**
@@ -692,20 +874,31 @@ public final class DefaultTrackOutput implements TrackOutput {
      * empty.
      */
     public int peekSourceId() {
-      return queueSize == 0 ? upstreamSourceId : sourceIds[relativeReadIndex];
+      while (true) {
+        long readState = getUnsplicedReadState();
+        int readIndex = getReadIndex(readState);
+        if (readIndex == absoluteWriteIndex) {
+          return upstreamSourceId;
+        }
+        InfoArrays infoArrays = this.infoArrays;
+        int sourceId = infoArrays.sourceIds[readIndex % infoArrays.capacity];
+        if (validate(readState)) {
+          return sourceId;
+        }
+      }
     }
 
     /**
      * Returns whether the queue is empty.
      */
-    public synchronized boolean isEmpty() {
-      return queueSize == 0;
+    public boolean isEmpty() {
+      return getReadIndex(readState.get()) == absoluteWriteIndex;
     }
 
     /**
      * Returns the upstream {@link Format} in which samples are being queued.
      */
-    public synchronized Format getUpstreamFormat() {
+    public Format getUpstreamFormat() {
       return upstreamFormatRequired ? null : upstreamFormat;
     }
 
@@ -719,7 +912,7 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The largest sample timestamp that has been queued, or {@link Long#MIN_VALUE} if no
      *     samples have been queued.
      */
-    public synchronized long getLargestQueuedTimestampUs() {
+    public long getLargestQueuedTimestampUs() {
       return Math.max(largestDequeuedTimestampUs, largestQueuedTimestampUs);
     }
 
@@ -739,164 +932,218 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The result, which can be {@link C#RESULT_NOTHING_READ}, {@link C#RESULT_FORMAT_READ}
      *     or {@link C#RESULT_BUFFER_READ}.
      */
-    public synchronized int readData(FormatHolder formatHolder, DecoderInputBuffer buffer,
+    public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer,
         Format downstreamFormat, BufferExtrasHolder extrasHolder) {
-      if (queueSize == 0) {
-        if (upstreamFormat != null && upstreamFormat != downstreamFormat) {
-          formatHolder.format = upstreamFormat;
-          return C.RESULT_FORMAT_READ;
+      while (true) {
+        long readState = getUnsplicedReadState();
+        int readIndex = getReadIndex(readState);
+        int writeIndex = absoluteWriteIndex;
+        if (readIndex == writeIndex) {
+          Format upstreamFormat = this.upstreamFormat;
+          if (upstreamFormat != null && upstreamFormat != downstreamFormat) {
+            formatHolder.format = upstreamFormat;
+            return C.RESULT_FORMAT_READ;
+          }
+          return C.RESULT_NOTHING_READ;
         }
-        return C.RESULT_NOTHING_READ;
-      }
 
-      if (formats[relativeReadIndex] != downstreamFormat) {
-        formatHolder.format = formats[relativeReadIndex];
-        return C.RESULT_FORMAT_READ;
-      }
+        InfoArrays infoArrays = this.infoArrays;
+        int relativeReadIndex = readIndex % infoArrays.capacity;
+        Format format = infoArrays.formats[relativeReadIndex];
+        if (format != downstreamFormat) {
+          if (!validate(readState)) {
+            continue;
+          }
+          formatHolder.format = format;
+          return C.RESULT_FORMAT_READ;
+        }
 
-      buffer.timeUs = timesUs[relativeReadIndex];
-      buffer.setFlags(flags[relativeReadIndex]);
-      extrasHolder.size = sizes[relativeReadIndex];
-      extrasHolder.offset = offsets[relativeReadIndex];
-      extrasHolder.encryptionKeyId = encryptionKeys[relativeReadIndex];
-
-      largestDequeuedTimestampUs = Math.max(largestDequeuedTimestampUs, buffer.timeUs);
-      queueSize--;
-      relativeReadIndex++;
-      absoluteReadIndex++;
-      if (relativeReadIndex == capacity) {
-        // Wrap around.
-        relativeReadIndex = 0;
+        long timeUs = infoArrays.timesUs[relativeReadIndex];
+        int flags = infoArrays.flags[relativeReadIndex];
+        int size = infoArrays.sizes[relativeReadIndex];
+        long offset = infoArrays.offsets[relativeReadIndex];
+        byte[] encryptionKey = infoArrays.encryptionKeys[relativeReadIndex];
+        long nextOffset = readIndex + 1 < writeIndex
+            ? infoArrays.offsets[(readIndex + 1) % infoArrays.capacity] : offset + size;
+
+        // Dequeue the sample, preventing a splice from starting until its timestamp has been
+        // included in the largest dequeued timestamp.
+        if (!this.readState.compareAndSet(readState, (readState + 1) | FLAG_DEQUEUING)) {
+          continue;
+        }
+        largestDequeuedTimestampUs = Math.max(largestDequeuedTimestampUs, timeUs);
+        // The loading thread doesn't modify the read state whilst FLAG_DEQUEUING is set.
+        this.readState.set(readState + 1);
+
+        buffer.timeUs = timeUs;
+        buffer.setFlags(flags);
+        extrasHolder.size = size;
+        extrasHolder.offset = offset;
+        extrasHolder.encryptionKeyId = encryptionKey;
+        extrasHolder.nextOffset = nextOffset;
+        return C.RESULT_BUFFER_READ;
       }
-
-      extrasHolder.nextOffset = queueSize > 0 ? offsets[relativeReadIndex]
-          : extrasHolder.offset + extrasHolder.size;
-      return C.RESULT_BUFFER_READ;
     }
 
     /**
      * Attempts to locate the keyframe before the specified time, if it's present in the buffer.
      *
      * @param timeUs The seek time.
+     * @param allowSkipBackward Whether samples retained before the read index may be skipped to.
      * @return The offset of the keyframe's data if the keyframe was present.
      *     {@link C#POSITION_UNSET} otherwise.
      */
-    public synchronized long skipToKeyframeBefore(long timeUs) {
-      if (queueSize == 0 || timeUs < timesUs[relativeReadIndex]) {
-        return C.POSITION_UNSET;
-      }
+    public long skipToKeyframeBefore(long timeUs, boolean allowSkipBackward) {
+      while (true) {
+        long readState = getUnsplicedReadState();
+        int readIndex = getReadIndex(readState);
+        int searchStartIndex = allowSkipBackward ? absoluteFirstIndex : readIndex;
+        int writeIndex = absoluteWriteIndex;
+        InfoArrays infoArrays = this.infoArrays;
+        if (searchStartIndex == writeIndex
+            || timeUs < infoArrays.timesUs[searchStartIndex % infoArrays.capacity]
+            || timeUs > infoArrays.timesUs[(writeIndex - 1) % infoArrays.capacity]) {
+          if (!validate(readState)) {
+            continue;
+          }
+          return C.POSITION_UNSET;
+        }
+
+        // This could be optimized to use a binary search, however in practice callers to this
+        // method often pass times near to the start of the buffer. Hence it's unclear whether
+        // switching to a binary search would yield any real benefit.
+        int keyframeIndex = -1;
+        for (int i = searchStartIndex; i < writeIndex; i++) {
+          int searchIndex = i % infoArrays.capacity;
+          if (infoArrays.timesUs[searchIndex] > timeUs) {
+            // We've gone too far.
+            break;
+          } else if ((infoArrays.flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+            // We've found a keyframe, and we're still before the seek position.
+            keyframeIndex = i;
+          }
+        }
 
-      int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-      long lastTimeUs = timesUs[lastWriteIndex];
-      if (timeUs > lastTimeUs) {
-        return C.POSITION_UNSET;
+        if (keyframeIndex == -1) {
+          if (!validate(readState)) {
+            continue;
+          }
+          return C.POSITION_UNSET;
+        }
+
+        long offset = infoArrays.offsets[keyframeIndex % infoArrays.capacity];
+        if (this.readState.compareAndSet(readState, readState - readIndex + keyframeIndex)) {
+          return offset;
+        }
       }
+    }
 
-      // This could be optimized to use a binary search, however in practice callers to this method
-      // often pass times near to the start of the buffer. Hence it's unclear whether switching to
-      // a binary search would yield any real benefit.
-      int sampleCount = 0;
-      int sampleCountToKeyframe = -1;
-      int searchIndex = relativeReadIndex;
-      while (searchIndex != relativeWriteIndex) {
-        if (timesUs[searchIndex] > timeUs) {
-          // We've gone too far.
+    /**
+     * Discards samples before the read index, other than those that should be retained.
+     * <p>
+     * Samples are retained from the first sample whose timestamp is greater than or equal to
+     * {@code retainFromTimeUs}, and whose data starts at or after {@code retainFromOffset}. If that
+     * sample isn't a keyframe, samples are instead retained from the last keyframe before it on
+     * which it depends, provided that the keyframe's data also starts at or after
+     * {@code retainFromOffset}.
+     *
+     * @param retainFromTimeUs The timestamp from which samples should be retained.
+     * @param retainFromOffset The absolute position from which sample data may be retained.
+     * @return The offset of the first retained sample's data, or {@link C#POSITION_UNSET} if no
+     *     samples before the read index are retained.
+     */
+    public long discardReadSamples(long retainFromTimeUs, long retainFromOffset) {
+      // Only the consuming thread modifies the read index, so it can be read without waiting for a
+      // splice to finish. The loading thread never modifies information for samples before it.
+      int readIndex = getReadIndex(readState.get());
+      int firstIndex = absoluteFirstIndex;
+      InfoArrays infoArrays = this.infoArrays;
+      if (retainFromTimeUs < retainSearchFromTimeUs || retainFromOffset < retainSearchFromOffset
+          || retainSearchIndex > readIndex) {
+        // Samples that the search has passed may now need to be retained, so restart it.
+        retainSearchIndex = firstIndex;
+        retainSearchKeyframeIndex = C.INDEX_UNSET;
+      }
+      retainSearchFromTimeUs = retainFromTimeUs;
+      retainSearchFromOffset = retainFromOffset;
+      // Sample offsets increase with the index, and the thresholds only move forward between
+      // restarts, so no sample that the search passes needs to be considered again.
+      while (retainSearchIndex < readIndex) {
+        int sampleIndex = retainSearchIndex % infoArrays.capacity;
+        if (infoArrays.offsets[sampleIndex] >= retainFromOffset
+            && infoArrays.timesUs[sampleIndex] >= retainFromTimeUs) {
           break;
-        } else if ((flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-          // We've found a keyframe, and we're still before the seek position.
-          sampleCountToKeyframe = sampleCount;
         }
-        searchIndex = (searchIndex + 1) % capacity;
-        sampleCount++;
+        if ((infoArrays.flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          retainSearchKeyframeIndex = retainSearchIndex;
+        }
+        retainSearchIndex++;
       }
 
-      if (sampleCountToKeyframe == -1) {
-        return C.POSITION_UNSET;
+      int newFirstIndex = retainSearchIndex;
+      if (newFirstIndex < readIndex
+          && (infoArrays.flags[newFirstIndex % infoArrays.capacity] & C.BUFFER_FLAG_KEY_FRAME) == 0
+          && retainSearchKeyframeIndex >= firstIndex
+          && infoArrays.offsets[retainSearchKeyframeIndex % infoArrays.capacity]
+              >= retainFromOffset) {
+        // Retain the keyframe on which the sample depends, unless it would exceed the maximum size.
+        newFirstIndex = retainSearchKeyframeIndex;
       }
-
-      queueSize -= sampleCountToKeyframe;
-      relativeReadIndex = (relativeReadIndex + sampleCountToKeyframe) % capacity;
-      absoluteReadIndex += sampleCountToKeyframe;
-      return offsets[relativeReadIndex];
+      absoluteFirstIndex = newFirstIndex;
+      return newFirstIndex == readIndex ? C.POSITION_UNSET
+          : infoArrays.offsets[newFirstIndex % infoArrays.capacity];
     }
 
     // Called by the loading thread.
 
-    public synchronized boolean format(Format format) {
+    public boolean format(Format format) {
       if (format == null) {
         upstreamFormatRequired = true;
         return false;
       }
-      upstreamFormatRequired = false;
       if (Util.areEqual(format, upstreamFormat)) {
         // Suppress changes between equal formats so we can use referential equality in readData.
+        upstreamFormatRequired = false;
         return false;
       } else {
         upstreamFormat = format;
+        upstreamFormatRequired = false;
         return true;
       }
     }
 
-    public synchronized void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
+    public void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
         int size, byte[] encryptionKey) {
       Assertions.checkState(!upstreamFormatRequired);
       commitSampleTimestamp(timeUs);
-      timesUs[relativeWriteIndex] = timeUs;
-      offsets[relativeWriteIndex] = offset;
-      sizes[relativeWriteIndex] = size;
-      flags[relativeWriteIndex] = sampleFlags;
-      encryptionKeys[relativeWriteIndex] = encryptionKey;
-      formats[relativeWriteIndex] = upstreamFormat;
-      sourceIds[relativeWriteIndex] = upstreamSourceId;
-      // Increment the write index.
-      queueSize++;
-      if (queueSize == capacity) {
-        // Increase the capacity.
-        int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-        int[] newSourceIds = new int[newCapacity];
-        long[] newOffsets = new long[newCapacity];
-        long[] newTimesUs = new long[newCapacity];
-        int[] newFlags = new int[newCapacity];
-        int[] newSizes = new int[newCapacity];
-        byte[][] newEncryptionKeys = new byte[newCapacity][];
-        Format[] newFormats = new Format[newCapacity];
-        int beforeWrap = capacity - relativeReadIndex;
-        System.arraycopy(offsets, relativeReadIndex, newOffsets, 0, beforeWrap);
-        System.arraycopy(timesUs, relativeReadIndex, newTimesUs, 0, beforeWrap);
-        System.arraycopy(flags, relativeReadIndex, newFlags, 0, beforeWrap);
-        System.arraycopy(sizes, relativeReadIndex, newSizes, 0, beforeWrap);
-        System.arraycopy(encryptionKeys, relativeReadIndex, newEncryptionKeys, 0, beforeWrap);
-        System.arraycopy(formats, relativeReadIndex, newFormats, 0, beforeWrap);
-        System.arraycopy(sourceIds, relativeReadIndex, newSourceIds, 0, beforeWrap);
-        int afterWrap = relativeReadIndex;
-        System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-        System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-        System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-        System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-        System.arraycopy(encryptionKeys, 0, newEncryptionKeys, beforeWrap, afterWrap);
-        System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-        System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-        offsets = newOffsets;
-        timesUs = newTimesUs;
-        flags = newFlags;
-        sizes = newSizes;
-        encryptionKeys = newEncryptionKeys;
-        formats = newFormats;
-        sourceIds = newSourceIds;
-        relativeReadIndex = 0;
-        relativeWriteIndex = capacity;
-        queueSize = capacity;
-        capacity = newCapacity;
-      } else {
-        relativeWriteIndex++;
-        if (relativeWriteIndex == capacity) {
-          // Wrap around.
-          relativeWriteIndex = 0;
+      int writeIndex = absoluteWriteIndex;
+      InfoArrays infoArrays = this.infoArrays;
+      int firstIndex = absoluteFirstIndex;
+      if (writeIndex - firstIndex == infoArrays.capacity) {
+        // Increase the capacity. The consuming thread may dequeue or discard samples concurrently,
+        // but the first index only increases, so the information of any sample it may still read
+        // is copied to the new arrays.
+        InfoArrays newInfoArrays =
+            new InfoArrays(infoArrays.capacity + SAMPLE_CAPACITY_INCREMENT);
+        for (int i = firstIndex; i < writeIndex; i++) {
+          newInfoArrays.copy(i % newInfoArrays.capacity, infoArrays, i % infoArrays.capacity);
         }
+        infoArrays = newInfoArrays;
+        this.infoArrays = newInfoArrays;
       }
+      int relativeWriteIndex = writeIndex % infoArrays.capacity;
+      infoArrays.timesUs[relativeWriteIndex] = timeUs;
+      infoArrays.offsets[relativeWriteIndex] = offset;
+      infoArrays.sizes[relativeWriteIndex] = size;
+      infoArrays.flags[relativeWriteIndex] = sampleFlags;
+      infoArrays.encryptionKeys[relativeWriteIndex] = encryptionKey;
+      infoArrays.formats[relativeWriteIndex] = upstreamFormat;
+      infoArrays.sourceIds[relativeWriteIndex] = upstreamSourceId;
+      // Publish the sample by incrementing the write index.
+      absoluteWriteIndex = writeIndex + 1;
     }
 
-    public synchronized void commitSampleTimestamp(long timeUs) {
+    public void commitSampleTimestamp(long timeUs) {
       largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
     }
 
@@ -907,19 +1154,75 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @param timeUs The timestamp at which the splice occurs.
      * @return Whether the splice was successful.
      */
-    public synchronized boolean attemptSplice(long timeUs) {
-      if (largestDequeuedTimestampUs >= timeUs) {
-        return false;
-      }
-      int retainCount = queueSize;
-      while (retainCount > 0
-          && timesUs[(relativeReadIndex + retainCount - 1) % capacity] >= timeUs) {
-        retainCount--;
+    public boolean attemptSplice(long timeUs) {
+      long readState;
+      do {
+        readState = this.readState.get();
+        if ((readState & FLAG_DEQUEUING) != 0) {
+          // Wait for the consuming thread to update the largest dequeued timestamp.
+          Thread.yield();
+          continue;
+        }
+        // The largest dequeued timestamp is read after the read state, so it includes the
+        // timestamps of all of the samples before the read index.
+        if (largestDequeuedTimestampUs >= timeUs) {
+          return false;
+        }
+        // Prevent the consuming thread from dequeuing samples whilst they're being discarded. This
+        // fails if it's dequeued a sample since the read state was read.
+      } while ((readState & FLAG_DEQUEUING) != 0
+          || !this.readState.compareAndSet(readState, readState | FLAG_SPLICING));
+      try {
+        int readIndex = getReadIndex(readState);
+        InfoArrays infoArrays = this.infoArrays;
+        int retainCount = absoluteWriteIndex - readIndex;
+        while (retainCount > 0
+            && infoArrays.timesUs[(readIndex + retainCount - 1) % infoArrays.capacity] >= timeUs) {
+          retainCount--;
+        }
+        discardUpstreamSamples(readIndex + retainCount);
+      } finally {
+        this.readState.set(readState + VERSION_INCREMENT);
       }
-      discardUpstreamSamples(absoluteReadIndex + retainCount);
       return true;
     }
 
+    // Internal methods.
+
+    private void resetRetainSearch() {
+      retainSearchIndex = 0;
+      retainSearchKeyframeIndex = C.INDEX_UNSET;
+      retainSearchFromTimeUs = Long.MIN_VALUE;
+      retainSearchFromOffset = Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the read state, waiting for the loading thread to finish discarding samples if it's
+     * doing so.
+     */
+    private long getUnsplicedReadState() {
+      long readState = this.readState.get();
+      while ((readState & FLAG_SPLICING) != 0) {
+        Thread.yield();
+        readState = this.readState.get();
+      }
+      return readState;
+    }
+
+    /**
+     * Returns whether the read state is unchanged, in which case any sample information that was
+     * read since the read state was obtained is valid.
+     */
+    private boolean validate(long readState) {
+      // A compare-and-set, rather than a read, ensures that the preceding reads aren't reordered
+      // after the check.
+      return this.readState.compareAndSet(readState, readState);
+    }
+
+    private static int getReadIndex(long readState) {
+      return (int) (readState & READ_INDEX_MASK);
+    }
+
   }
 
   /**
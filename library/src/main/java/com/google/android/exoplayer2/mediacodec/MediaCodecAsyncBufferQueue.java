@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodec.CodecException;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import java.util.ArrayDeque;
+
+/**
+ * Receives the asynchronous callbacks of a {@link MediaCodec} on a dedicated thread, and queues the
+ * indices of available input and output buffers so that they can be dequeued without blocking and
+ * without calling into the codec.
+ * <p>
+ * The indices of output buffers are queued in the order in which the codec makes them available,
+ * interleaved with {@link MediaCodec#INFO_OUTPUT_FORMAT_CHANGED} for output format changes. Hence
+ * {@link #dequeueOutputBufferIndex(MediaCodec.BufferInfo)} behaves in the same way as
+ * {@link MediaCodec#dequeueOutputBuffer(MediaCodec.BufferInfo, long)} does when the codec is used
+ * synchronously, except that it never returns {@link MediaCodec#INFO_OUTPUT_BUFFERS_CHANGED}.
+ */
+@TargetApi(23)
+/* package */ final class MediaCodecAsyncBufferQueue extends MediaCodec.Callback {
+
+  private final HandlerThread callbackThread;
+  private final Handler handler;
+  private final ArrayDeque<Integer> inputBufferIndices;
+  private final ArrayDeque<Integer> outputBufferIndices;
+  private final ArrayDeque<MediaCodec.BufferInfo> outputBufferInfos;
+  private final ArrayDeque<MediaCodec.BufferInfo> recycledBufferInfos;
+  private final ArrayDeque<MediaFormat> outputFormats;
+
+  private MediaFormat currentOutputFormat;
+  private IllegalStateException error;
+  private int pendingFlushCount;
+  private boolean released;
+
+  public MediaCodecAsyncBufferQueue() {
+    callbackThread = new HandlerThread("MediaCodecAsyncBufferQueue:Handler");
+    callbackThread.start();
+    handler = new Handler(callbackThread.getLooper());
+    inputBufferIndices = new ArrayDeque<>();
+    outputBufferIndices = new ArrayDeque<>();
+    outputBufferInfos = new ArrayDeque<>();
+    recycledBufferInfos = new ArrayDeque<>();
+    outputFormats = new ArrayDeque<>();
+  }
+
+  /**
+   * Sets this instance as the callback of a codec. Must be called before the codec is configured.
+   *
+   * @param codec The codec.
+   */
+  public void attach(MediaCodec codec) {
+    codec.setCallback(this, handler);
+  }
+
+  /**
+   * Dequeues the index of an input buffer that's available to be filled.
+   *
+   * @return The index of the input buffer, or {@link MediaCodec#INFO_TRY_AGAIN_LATER} if none is
+   *     available.
+   * @throws IllegalStateException If the codec reported an error.
+   */
+  public synchronized int dequeueInputBufferIndex() {
+    maybeThrowError();
+    if (pendingFlushCount > 0 || inputBufferIndices.isEmpty()) {
+      return MediaCodec.INFO_TRY_AGAIN_LATER;
+    }
+    return inputBufferIndices.removeFirst();
+  }
+
+  /**
+   * Dequeues the index of an output buffer that's available to be processed, or the next output
+   * format change.
+   *
+   * @param bufferInfo Populated with the metadata of the output buffer, if one is dequeued.
+   * @return The index of the output buffer, {@link MediaCodec#INFO_OUTPUT_FORMAT_CHANGED} if the
+   *     output format changed, or {@link MediaCodec#INFO_TRY_AGAIN_LATER} if neither is available.
+   * @throws IllegalStateException If the codec reported an error.
+   */
+  public synchronized int dequeueOutputBufferIndex(MediaCodec.BufferInfo bufferInfo) {
+    maybeThrowError();
+    if (pendingFlushCount > 0 || outputBufferIndices.isEmpty()) {
+      return MediaCodec.INFO_TRY_AGAIN_LATER;
+    }
+    int index = outputBufferIndices.removeFirst();
+    if (index >= 0) {
+      MediaCodec.BufferInfo queuedBufferInfo = outputBufferInfos.removeFirst();
+      bufferInfo.set(queuedBufferInfo.offset, queuedBufferInfo.size,
+          queuedBufferInfo.presentationTimeUs, queuedBufferInfo.flags);
+      recycledBufferInfos.add(queuedBufferInfo);
+    } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+      currentOutputFormat = outputFormats.removeFirst();
+    }
+    return index;
+  }
+
+  /**
+   * Returns the output format most recently dequeued by
+   * {@link #dequeueOutputBufferIndex(MediaCodec.BufferInfo)}.
+   */
+  public synchronized MediaFormat getOutputFormat() {
+    return currentOutputFormat;
+  }
+
+  /**
+   * Returns the number of output buffers that are available to be dequeued.
+   */
+  public synchronized int getReadyOutputBufferCount() {
+    return pendingFlushCount > 0 ? 0 : outputBufferInfos.size();
+  }
+
+  /**
+   * Flushes the codec, discarding all queued buffer indices. The codec is restarted on the
+   * callback thread once any callbacks that were already pending have been delivered. No buffers
+   * are dequeued until this has happened.
+   *
+   * @param codec The codec.
+   */
+  public void flush(final MediaCodec codec) {
+    synchronized (this) {
+      pendingFlushCount++;
+    }
+    codec.flush();
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        onFlushCompleted(codec);
+      }
+    });
+  }
+
+  /**
+   * Releases the callback thread. Must be called before the codec is stopped or released. Once
+   * this method has returned, a flush that's still pending won't restart the codec.
+   */
+  public void release() {
+    synchronized (this) {
+      released = true;
+    }
+    callbackThread.quit();
+  }
+
+  // MediaCodec.Callback implementation.
+
+  @Override
+  public synchronized void onInputBufferAvailable(MediaCodec codec, int index) {
+    inputBufferIndices.add(index);
+  }
+
+  @Override
+  public synchronized void onOutputBufferAvailable(MediaCodec codec, int index,
+      MediaCodec.BufferInfo info) {
+    MediaCodec.BufferInfo queuedBufferInfo = recycledBufferInfos.isEmpty()
+        ? new MediaCodec.BufferInfo() : recycledBufferInfos.removeFirst();
+    queuedBufferInfo.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+    outputBufferIndices.add(index);
+    outputBufferInfos.add(queuedBufferInfo);
+  }
+
+  @Override
+  public synchronized void onError(MediaCodec codec, CodecException e) {
+    error = e;
+  }
+
+  @Override
+  public synchronized void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+    outputBufferIndices.add(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    outputFormats.add(format);
+  }
+
+  // Internal methods.
+
+  private synchronized void onFlushCompleted(MediaCodec codec) {
+    pendingFlushCount--;
+    if (released || pendingFlushCount > 0) {
+      return;
+    }
+    // Discard the indices of buffers that were available before the flush.
+    inputBufferIndices.clear();
+    while (!outputBufferInfos.isEmpty()) {
+      recycledBufferInfos.add(outputBufferInfos.removeFirst());
+    }
+    outputBufferIndices.clear();
+    if (!outputFormats.isEmpty()) {
+      // The codec won't report format changes that were discarded again, so keep the latest one.
+      MediaFormat latestOutputFormat = outputFormats.getLast();
+      outputFormats.clear();
+      outputBufferIndices.add(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+      outputFormats.add(latestOutputFormat);
+    }
+    try {
+      codec.start();
+    } catch (IllegalStateException e) {
+      error = e;
+    }
+  }
+
+  private void maybeThrowError() {
+    if (error != null) {
+      IllegalStateException e = error;
+      error = null;
+      throw e;
+    }
+  }
+
+}
@@ -22,9 +22,13 @@ import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaCodecInfo.CodecProfileLevel;
 import android.media.MediaCodecInfo.VideoCapabilities;
 import android.util.Pair;
+import android.util.Range;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * Information about a {@link MediaCodec} for a given mime type.
@@ -49,7 +53,12 @@ public final class MediaCodecInfo {
   public final boolean adaptive;
 
   private final String mimeType;
+  private final CodecProfileLevel[] profileLevels;
+  // Null if the instance was restored by readFrom.
   private final CodecCapabilities capabilities;
+  // Null if unknown, or if the device SDK version is less than 21.
+  private final VideoLimits videoLimits;
+  private final AudioLimits audioLimits;
 
   /**
    * Creates an instance representing an audio passthrough decoder.
@@ -58,7 +67,7 @@ public final class MediaCodecInfo {
    * @return The created instance.
    */
   public static MediaCodecInfo newPassthroughInstance(String name) {
-    return new MediaCodecInfo(name, null, null);
+    return new MediaCodecInfo(name, null, false, new CodecProfileLevel[0], null, null, null);
   }
 
   /**
@@ -71,18 +80,78 @@ public final class MediaCodecInfo {
    */
   public static MediaCodecInfo newInstance(String name, String mimeType,
       CodecCapabilities capabilities) {
-    return new MediaCodecInfo(name, mimeType, capabilities);
+    boolean adaptive = capabilities != null && isAdaptive(capabilities);
+    CodecProfileLevel[] profileLevels = capabilities == null || capabilities.profileLevels == null
+        ? new CodecProfileLevel[0] : capabilities.profileLevels;
+    VideoLimits videoLimits = null;
+    AudioLimits audioLimits = null;
+    if (capabilities != null && Util.SDK_INT >= 21) {
+      videoLimits = VideoLimits.fromCapabilitiesV21(capabilities);
+      audioLimits = AudioLimits.fromCapabilitiesV21(capabilities);
+    }
+    return new MediaCodecInfo(name, mimeType, adaptive, profileLevels, capabilities, videoLimits,
+        audioLimits);
   }
 
   /**
-   * @param name The name of the decoder.
-   * @param capabilities The capabilities of the decoder.
+   * Reads an instance that was written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param input The stream from which to read.
+   * @param mimeType The mime type for which the instance was created.
+   * @return The restored instance.
+   * @throws IOException If an error occurs reading from the stream.
    */
-  private MediaCodecInfo(String name, String mimeType, CodecCapabilities capabilities) {
+  /* package */ static MediaCodecInfo readFrom(DataInputStream input, String mimeType)
+      throws IOException {
+    String name = input.readUTF();
+    boolean adaptive = input.readBoolean();
+    CodecProfileLevel[] profileLevels = new CodecProfileLevel[input.readInt()];
+    for (int i = 0; i < profileLevels.length; i++) {
+      profileLevels[i] = new CodecProfileLevel();
+      profileLevels[i].profile = input.readInt();
+      profileLevels[i].level = input.readInt();
+    }
+    VideoLimits videoLimits = input.readBoolean() ? VideoLimits.readFrom(input) : null;
+    AudioLimits audioLimits = input.readBoolean() ? AudioLimits.readFrom(input) : null;
+    return new MediaCodecInfo(name, Assertions.checkNotNull(mimeType), adaptive, profileLevels,
+        null, videoLimits, audioLimits);
+  }
+
+  private MediaCodecInfo(String name, String mimeType, boolean adaptive,
+      CodecProfileLevel[] profileLevels, CodecCapabilities capabilities, VideoLimits videoLimits,
+      AudioLimits audioLimits) {
     this.name = Assertions.checkNotNull(name);
     this.mimeType = mimeType;
+    this.adaptive = adaptive;
+    this.profileLevels = profileLevels;
     this.capabilities = capabilities;
-    adaptive = capabilities != null && isAdaptive(capabilities);
+    this.videoLimits = videoLimits;
+    this.audioLimits = audioLimits;
+  }
+
+  /**
+   * Writes this instance, including the capabilities needed by the V21 methods, so that it can be
+   * restored by {@link #readFrom(DataInputStream, String)} without querying the device.
+   *
+   * @param output The stream to which to write.
+   * @throws IOException If an error occurs writing to the stream.
+   */
+  /* package */ void writeTo(DataOutputStream output) throws IOException {
+    output.writeUTF(name);
+    output.writeBoolean(adaptive);
+    output.writeInt(profileLevels.length);
+    for (CodecProfileLevel profileLevel : profileLevels) {
+      output.writeInt(profileLevel.profile);
+      output.writeInt(profileLevel.level);
+    }
+    output.writeBoolean(videoLimits != null);
+    if (videoLimits != null) {
+      videoLimits.writeTo(output);
+    }
+    output.writeBoolean(audioLimits != null);
+    if (audioLimits != null) {
+      audioLimits.writeTo(output);
+    }
   }
 
   /**
@@ -91,8 +160,7 @@ public final class MediaCodecInfo {
    * @return The profile levels supported by the decoder.
    */
   public CodecProfileLevel[] getProfileLevels() {
-    return capabilities == null || capabilities.profileLevels == null ? new CodecProfileLevel[0]
-        : capabilities.profileLevels;
+    return profileLevels;
   }
 
   /**
@@ -138,11 +206,11 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isVideoSizeSupportedV21(int width, int height) {
-    if (capabilities == null) {
-      return false;
+    if (capabilities != null) {
+      VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+      return videoCapabilities != null && videoCapabilities.isSizeSupported(width, height);
     }
-    VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
-    return videoCapabilities != null && videoCapabilities.isSizeSupported(width, height);
+    return videoLimits != null && videoLimits.isSizeSupported(width, height);
   }
 
   /**
@@ -157,12 +225,12 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isVideoSizeAndRateSupportedV21(int width, int height, double frameRate) {
-    if (capabilities == null) {
-      return false;
+    if (capabilities != null) {
+      VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+      return videoCapabilities != null && videoCapabilities.areSizeAndRateSupported(width, height,
+          frameRate);
     }
-    VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
-    return videoCapabilities != null && videoCapabilities.areSizeAndRateSupported(width, height,
-        frameRate);
+    return videoLimits != null && videoLimits.areSizeAndRateSupported(width, height, frameRate);
   }
 
   /**
@@ -175,11 +243,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioSampleRateSupportedV21(int sampleRate) {
-    if (capabilities == null) {
-      return false;
-    }
-    AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
-    return audioCapabilities != null && audioCapabilities.isSampleRateSupported(sampleRate);
+    return audioLimits != null && audioLimits.isSampleRateSupported(sampleRate);
   }
 
   /**
@@ -192,11 +256,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioChannelCountSupportedV21(int channelCount) {
-    if (capabilities == null) {
-      return false;
-    }
-    AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
-    return audioCapabilities != null && audioCapabilities.getMaxInputChannelCount() >= channelCount;
+    return audioLimits != null && audioLimits.maxChannelCount >= channelCount;
   }
 
   private static boolean isAdaptive(CodecCapabilities capabilities) {
@@ -208,4 +268,162 @@ public final class MediaCodecInfo {
     return capabilities.isFeatureSupported(CodecCapabilities.FEATURE_AdaptivePlayback);
   }
 
+  // Private classes.
+
+  /**
+   * The video size and frame rate limits of a decoder, as used by instances restored by
+   * {@link #readFrom(DataInputStream, String)}. {@link VideoCapabilities} limits sizes and rates by
+   * counting macroblocks, whose dimensions aren't exposed. The limits are therefore approximated by
+   * a maximum area and a maximum pixel rate, which are measured at the largest supported sizes.
+   * Instances created from {@link CodecCapabilities} query them directly instead.
+   */
+  private static final class VideoLimits {
+
+    public final int minWidth;
+    public final int maxWidth;
+    public final int minHeight;
+    public final int maxHeight;
+    public final int widthAlignment;
+    public final int heightAlignment;
+    public final long maxArea;
+    public final double maxFrameRate;
+    public final double maxPixelRate;
+
+    @TargetApi(21)
+    public static VideoLimits fromCapabilitiesV21(CodecCapabilities capabilities) {
+      VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+      if (videoCapabilities == null) {
+        return null;
+      }
+      Range<Integer> widths = videoCapabilities.getSupportedWidths();
+      Range<Integer> heights = videoCapabilities.getSupportedHeights();
+      double maxFrameRate = videoCapabilities.getSupportedFrameRates().getUpper();
+      long maxArea;
+      double maxPixelRate;
+      try {
+        // The largest supported sizes are the widest and the tallest.
+        int widestWidth = widths.getUpper();
+        int widestHeight = videoCapabilities.getSupportedHeightsFor(widestWidth).getUpper();
+        int tallestHeight = heights.getUpper();
+        int tallestWidth = videoCapabilities.getSupportedWidthsFor(tallestHeight).getUpper();
+        long widestArea = (long) widestWidth * widestHeight;
+        long tallestArea = (long) tallestWidth * tallestHeight;
+        maxArea = Math.max(widestArea, tallestArea);
+        maxPixelRate = Math.max(
+            widestArea * videoCapabilities.getSupportedFrameRatesFor(widestWidth, widestHeight)
+                .getUpper(),
+            tallestArea * videoCapabilities.getSupportedFrameRatesFor(tallestWidth, tallestHeight)
+                .getUpper());
+      } catch (IllegalArgumentException e) {
+        // The reported ranges are inconsistent. Fall back to limiting only the dimensions.
+        maxArea = (long) widths.getUpper() * heights.getUpper();
+        maxPixelRate = maxArea * maxFrameRate;
+      }
+      return new VideoLimits(widths.getLower(), widths.getUpper(), heights.getLower(),
+          heights.getUpper(), videoCapabilities.getWidthAlignment(),
+          videoCapabilities.getHeightAlignment(), maxArea, maxFrameRate, maxPixelRate);
+    }
+
+    public static VideoLimits readFrom(DataInputStream input) throws IOException {
+      return new VideoLimits(input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+          input.readInt(), input.readInt(), input.readLong(), input.readDouble(),
+          input.readDouble());
+    }
+
+    private VideoLimits(int minWidth, int maxWidth, int minHeight, int maxHeight,
+        int widthAlignment, int heightAlignment, long maxArea, double maxFrameRate,
+        double maxPixelRate) {
+      this.minWidth = minWidth;
+      this.maxWidth = maxWidth;
+      this.minHeight = minHeight;
+      this.maxHeight = maxHeight;
+      this.widthAlignment = widthAlignment;
+      this.heightAlignment = heightAlignment;
+      this.maxArea = maxArea;
+      this.maxFrameRate = maxFrameRate;
+      this.maxPixelRate = maxPixelRate;
+    }
+
+    public boolean isSizeSupported(int width, int height) {
+      return width >= minWidth && width <= maxWidth && height >= minHeight && height <= maxHeight
+          && width % widthAlignment == 0 && height % heightAlignment == 0
+          && (long) width * height <= maxArea;
+    }
+
+    public boolean areSizeAndRateSupported(int width, int height, double frameRate) {
+      return isSizeSupported(width, height) && frameRate <= maxFrameRate
+          && (long) width * height * frameRate <= maxPixelRate;
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+      output.writeInt(minWidth);
+      output.writeInt(maxWidth);
+      output.writeInt(minHeight);
+      output.writeInt(maxHeight);
+      output.writeInt(widthAlignment);
+      output.writeInt(heightAlignment);
+      output.writeLong(maxArea);
+      output.writeDouble(maxFrameRate);
+      output.writeDouble(maxPixelRate);
+    }
+
+  }
+
+  /**
+   * The sample rate and channel count limits of a decoder.
+   */
+  private static final class AudioLimits {
+
+    public final int maxChannelCount;
+    // The lower and upper bounds of each supported sample rate range, interleaved.
+    public final int[] sampleRateBounds;
+
+    @TargetApi(21)
+    public static AudioLimits fromCapabilitiesV21(CodecCapabilities capabilities) {
+      AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
+      if (audioCapabilities == null) {
+        return null;
+      }
+      Range<Integer>[] sampleRateRanges = audioCapabilities.getSupportedSampleRateRanges();
+      int[] sampleRateBounds = new int[sampleRateRanges.length * 2];
+      for (int i = 0; i < sampleRateRanges.length; i++) {
+        sampleRateBounds[i * 2] = sampleRateRanges[i].getLower();
+        sampleRateBounds[i * 2 + 1] = sampleRateRanges[i].getUpper();
+      }
+      return new AudioLimits(audioCapabilities.getMaxInputChannelCount(), sampleRateBounds);
+    }
+
+    public static AudioLimits readFrom(DataInputStream input) throws IOException {
+      int maxChannelCount = input.readInt();
+      int[] sampleRateBounds = new int[input.readInt()];
+      for (int i = 0; i < sampleRateBounds.length; i++) {
+        sampleRateBounds[i] = input.readInt();
+      }
+      return new AudioLimits(maxChannelCount, sampleRateBounds);
+    }
+
+    private AudioLimits(int maxChannelCount, int[] sampleRateBounds) {
+      this.maxChannelCount = maxChannelCount;
+      this.sampleRateBounds = sampleRateBounds;
+    }
+
+    public boolean isSampleRateSupported(int sampleRate) {
+      for (int i = 0; i < sampleRateBounds.length; i += 2) {
+        if (sampleRate >= sampleRateBounds[i] && sampleRate <= sampleRateBounds[i + 1]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+      output.writeInt(maxChannelCount);
+      output.writeInt(sampleRateBounds.length);
+      for (int sampleRateBound : sampleRateBounds) {
+        output.writeInt(sampleRateBound);
+      }
+    }
+
+  }
+
 }
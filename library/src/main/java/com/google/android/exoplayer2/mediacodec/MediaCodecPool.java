@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A process-wide pool of {@link MediaCodec} instances, which allows codecs released by one
+ * {@link MediaCodecRenderer} to be reused by another, including one belonging to a different
+ * player.
+ * <p>
+ * Pooled codecs are held in the stopped (uninitialized) state, so that they hold no reference to an
+ * output surface or crypto session and can be configured for any format that the named component
+ * supports. Reusing a codec therefore saves the time taken to allocate the underlying component,
+ * which is typically the most expensive part of codec initialization.
+ * <p>
+ * Pooling is disabled by default, since pooled codecs continue to consume decoder resources. It's
+ * enabled by calling {@link #setMaxCodecCount(int)} with a positive value.
+ */
+public final class MediaCodecPool {
+
+  /**
+   * Statistics about the use of a pool.
+   */
+  public static final class Stats {
+
+    /**
+     * The number of codecs requested from the pool.
+     */
+    public final int requestCount;
+    /**
+     * The number of requests that were satisfied by a pooled codec.
+     */
+    public final int hitCount;
+    /**
+     * The number of pooled codecs that were released to make space for others, or because the
+     * pool was trimmed.
+     */
+    public final int evictionCount;
+    /**
+     * The estimated total codec initialization time saved by reusing pooled codecs, in
+     * milliseconds. Each reuse is assumed to save the time most recently taken to create a codec
+     * with the same name.
+     */
+    public final long savedInitializationTimeMs;
+
+    private Stats(int requestCount, int hitCount, int evictionCount,
+        long savedInitializationTimeMs) {
+      this.requestCount = requestCount;
+      this.hitCount = hitCount;
+      this.evictionCount = evictionCount;
+      this.savedInitializationTimeMs = savedInitializationTimeMs;
+    }
+
+    /**
+     * Returns the fraction of requests that were satisfied by a pooled codec, or 0 if no codecs
+     * have been requested.
+     */
+    public float getHitRate() {
+      return requestCount == 0 ? 0 : (float) hitCount / requestCount;
+    }
+
+  }
+
+  private static final String TAG = "MediaCodecPool";
+
+  private static final MediaCodecPool INSTANCE = new MediaCodecPool();
+
+  // Pooled codecs and their names, in order of least to most recently pooled.
+  private final List<MediaCodec> pooledCodecs;
+  private final List<String> pooledCodecNames;
+  private final HashMap<String, Long> creationTimesMs;
+
+  private int maxCodecCount;
+  private int requestCount;
+  private int hitCount;
+  private int evictionCount;
+  private long savedInitializationTimeMs;
+
+  /**
+   * Returns the process-wide pool.
+   */
+  public static MediaCodecPool getInstance() {
+    return INSTANCE;
+  }
+
+  private MediaCodecPool() {
+    pooledCodecs = new ArrayList<>();
+    pooledCodecNames = new ArrayList<>();
+    creationTimesMs = new HashMap<>();
+  }
+
+  /**
+   * Sets the maximum number of codecs that may be pooled. If more codecs are currently pooled then
+   * the least recently pooled are released.
+   *
+   * @param maxCodecCount The maximum number of pooled codecs. Zero disables pooling.
+   */
+  public synchronized void setMaxCodecCount(int maxCodecCount) {
+    Assertions.checkArgument(maxCodecCount >= 0);
+    this.maxCodecCount = maxCodecCount;
+    trimToSize(maxCodecCount);
+  }
+
+  /**
+   * Releases all pooled codecs. Should be called if the application is asked to trim its memory.
+   */
+  public synchronized void clear() {
+    trimToSize(0);
+  }
+
+  /**
+   * Returns statistics about the use of the pool.
+   */
+  public synchronized Stats getStats() {
+    return new Stats(requestCount, hitCount, evictionCount, savedInitializationTimeMs);
+  }
+
+  /**
+   * Returns a pooled codec with the specified name if one is available, or creates a new one.
+   *
+   * @param name The name of the codec.
+   * @return A codec in the uninitialized state.
+   * @throws IOException If the codec could not be created.
+   */
+  /* package */ MediaCodec acquire(String name) throws IOException {
+    synchronized (this) {
+      requestCount++;
+      for (int i = pooledCodecs.size() - 1; i >= 0; i--) {
+        if (pooledCodecNames.get(i).equals(name)) {
+          hitCount++;
+          Long creationTimeMs = creationTimesMs.get(name);
+          if (creationTimeMs != null) {
+            savedInitializationTimeMs += creationTimeMs;
+          }
+          pooledCodecNames.remove(i);
+          return pooledCodecs.remove(i);
+        }
+      }
+    }
+    // Create the codec without holding the lock, since this may take some time.
+    long creationStartTimeMs = SystemClock.elapsedRealtime();
+    MediaCodec codec = MediaCodec.createByCodecName(name);
+    long creationTimeMs = SystemClock.elapsedRealtime() - creationStartTimeMs;
+    synchronized (this) {
+      creationTimesMs.put(name, creationTimeMs);
+    }
+    return codec;
+  }
+
+  /**
+   * Returns a stopped codec to the pool, or releases it if pooling is disabled.
+   *
+   * @param name The name of the codec.
+   * @param codec The codec, which must have been stopped.
+   */
+  /* package */ void release(String name, MediaCodec codec) {
+    if (Util.SDK_INT >= 21) {
+      // Clear any callback set by the previous user, so that the next may use the codec
+      // synchronously.
+      clearCallbackV21(codec);
+    }
+    synchronized (this) {
+      if (maxCodecCount > 0) {
+        trimToSize(maxCodecCount - 1);
+        pooledCodecs.add(codec);
+        pooledCodecNames.add(name);
+        return;
+      }
+    }
+    codec.release();
+  }
+
+  @TargetApi(21)
+  private static void clearCallbackV21(MediaCodec codec) {
+    codec.setCallback(null);
+  }
+
+  private void trimToSize(int codecCount) {
+    while (pooledCodecs.size() > codecCount) {
+      pooledCodecNames.remove(0);
+      MediaCodec codec = pooledCodecs.remove(0);
+      evictionCount++;
+      try {
+        codec.release();
+      } catch (RuntimeException e) {
+        Log.w(TAG, "Failed to release pooled codec", e);
+      }
+    }
+  }
+
+}
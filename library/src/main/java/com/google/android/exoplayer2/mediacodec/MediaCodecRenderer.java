@@ -175,6 +175,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
 
   private Format format;
   private MediaCodec codec;
+  private String codecName;
+  private MediaCodecAsyncBufferQueue asyncBufferQueue;
+  private boolean asyncBufferQueueingEnabled;
   private DrmSession<FrameworkMediaCrypto> drmSession;
   private DrmSession<FrameworkMediaCrypto> pendingDrmSession;
   private boolean codecIsAdaptive;
@@ -191,6 +194,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private long codecHotswapDeadlineMs;
   private int inputIndex;
   private int outputIndex;
+  private ByteBuffer outputBuffer;
   private boolean shouldSkipOutputBuffer;
   private boolean codecReconfigured;
   private int codecReconfigurationState;
@@ -202,6 +206,11 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private boolean outputStreamEnded;
   private boolean waitingForKeys;
 
+  private boolean streamTransitionPending;
+  private long streamTransitionTimeUs;
+  private long lastOutputBufferTimeUs;
+  private long lastOutputBufferRealtimeMs;
+
   protected DecoderCounters decoderCounters;
 
   /**
@@ -230,6 +239,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     outputBufferInfo = new MediaCodec.BufferInfo();
     codecReconfigurationState = RECONFIGURATION_STATE_NONE;
     codecReinitializationState = REINITIALIZATION_STATE_NONE;
+    streamTransitionTimeUs = C.TIME_UNSET;
+    lastOutputBufferTimeUs = C.TIME_UNSET;
   }
 
   @Override
@@ -342,7 +353,12 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     try {
       long codecInitializingTimestamp = SystemClock.elapsedRealtime();
       TraceUtil.beginSection("createCodec:" + codecName);
-      codec = MediaCodec.createByCodecName(codecName);
+      codec = MediaCodecPool.getInstance().acquire(codecName);
+      this.codecName = codecName;
+      if (asyncBufferQueueingEnabled && Util.SDK_INT >= 23) {
+        asyncBufferQueue = new MediaCodecAsyncBufferQueue();
+        asyncBufferQueue.attach(codec);
+      }
       TraceUtil.endSection();
       TraceUtil.beginSection("configureCodec");
       configureCodec(codec, format, mediaCrypto);
@@ -353,9 +369,15 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       long codecInitializedTimestamp = SystemClock.elapsedRealtime();
       onCodecInitialized(codecName, codecInitializedTimestamp,
           codecInitializedTimestamp - codecInitializingTimestamp);
-      inputBuffers = codec.getInputBuffers();
-      outputBuffers = codec.getOutputBuffers();
+      if (asyncBufferQueue == null) {
+        inputBuffers = codec.getInputBuffers();
+        outputBuffers = codec.getOutputBuffers();
+      }
     } catch (Exception e) {
+      if (asyncBufferQueue != null) {
+        asyncBufferQueue.release();
+        asyncBufferQueue = null;
+      }
       throwDecoderInitError(new DecoderInitializationException(format, e,
           drmSessionRequiresSecureDecoder, codecName));
     }
@@ -363,6 +385,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
         ? (SystemClock.elapsedRealtime() + MAX_CODEC_HOTSWAP_TIME_MS) : C.TIME_UNSET;
     inputIndex = C.INDEX_UNSET;
     outputIndex = C.INDEX_UNSET;
+    outputBuffer = null;
     decoderCounters.decoderInitCount++;
   }
 
@@ -380,10 +403,18 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     decoderCounters = new DecoderCounters();
   }
 
+  @Override
+  protected void onStreamChanged(Format[] formats) throws ExoPlaybackException {
+    // If the renderer is already decoding then this is a transition from one stream to the next,
+    // the first sample of which will be the next to be read.
+    streamTransitionPending = codec != null;
+  }
+
   @Override
   protected void onPositionReset(long positionUs, boolean joining) throws ExoPlaybackException {
     inputStreamEnded = false;
     outputStreamEnded = false;
+    resetStreamTransition();
     if (codec != null) {
       flushCodec();
     }
@@ -392,6 +423,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   @Override
   protected void onDisabled() {
     format = null;
+    resetStreamTransition();
     try {
       releaseCodec();
     } finally {
@@ -417,6 +449,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       codecHotswapDeadlineMs = C.TIME_UNSET;
       inputIndex = C.INDEX_UNSET;
       outputIndex = C.INDEX_UNSET;
+      outputBuffer = null;
       waitingForKeys = false;
       shouldSkipOutputBuffer = false;
       decodeOnlyPresentationTimestamps.clear();
@@ -437,13 +470,26 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       codecReconfigurationState = RECONFIGURATION_STATE_NONE;
       codecReinitializationState = REINITIALIZATION_STATE_NONE;
       decoderCounters.decoderReleaseCount++;
+      if (asyncBufferQueue != null) {
+        // Release the queue first, so that a pending flush can't restart the codec once it's been
+        // stopped or handed to another renderer by the pool.
+        asyncBufferQueue.release();
+        asyncBufferQueue = null;
+      }
+      boolean codecStopped = false;
       try {
         codec.stop();
+        codecStopped = true;
       } finally {
         try {
-          codec.release();
+          if (codecStopped) {
+            MediaCodecPool.getInstance().release(codecName, codec);
+          } else {
+            codec.release();
+          }
         } finally {
           codec = null;
+          codecName = null;
           if (drmSession != null && pendingDrmSession != drmSession) {
             try {
               drmSessionManager.releaseSession(drmSession);
@@ -483,6 +529,27 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     decoderCounters.ensureUpdated();
   }
 
+  @Override
+  public void handleMessage(int messageType, Object message) throws ExoPlaybackException {
+    if (messageType == C.MSG_SET_ASYNC_BUFFER_QUEUEING) {
+      setAsyncBufferQueueingEnabled((Boolean) message);
+    } else {
+      super.handleMessage(messageType, message);
+    }
+  }
+
+  private void setAsyncBufferQueueingEnabled(boolean enabled) throws ExoPlaybackException {
+    if (asyncBufferQueueingEnabled == enabled) {
+      return;
+    }
+    asyncBufferQueueingEnabled = enabled;
+    if (codec != null) {
+      // The mode in which a codec operates can't be changed once it's been configured.
+      releaseCodec();
+      maybeInitCodec();
+    }
+  }
+
   private void readFormat() throws ExoPlaybackException {
     int result = readSource(formatHolder, null);
     if (result == C.RESULT_FORMAT_READ) {
@@ -494,6 +561,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     codecHotswapDeadlineMs = C.TIME_UNSET;
     inputIndex = C.INDEX_UNSET;
     outputIndex = C.INDEX_UNSET;
+    outputBuffer = null;
     waitingForKeys = false;
     shouldSkipOutputBuffer = false;
     decodeOnlyPresentationTimestamps.clear();
@@ -510,7 +578,11 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       maybeInitCodec();
     } else {
       // We can flush and re-use the existing decoder.
-      codec.flush();
+      if (asyncBufferQueue != null) {
+        asyncBufferQueue.flush(codec);
+      } else {
+        codec.flush();
+      }
       codecReceivedBuffers = false;
     }
     if (codecReconfigured && format != null) {
@@ -533,11 +605,12 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
 
     if (inputIndex < 0) {
-      inputIndex = codec.dequeueInputBuffer(0);
+      inputIndex = asyncBufferQueue != null ? asyncBufferQueue.dequeueInputBufferIndex()
+          : codec.dequeueInputBuffer(0);
       if (inputIndex < 0) {
         return false;
       }
-      buffer.data = inputBuffers[inputIndex];
+      buffer.data = getInputBuffer(inputIndex);
       buffer.clear();
     }
 
@@ -641,6 +714,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       if (buffer.isDecodeOnly()) {
         decodeOnlyPresentationTimestamps.add(presentationTimeUs);
       }
+      if (streamTransitionPending) {
+        streamTransitionPending = false;
+        streamTransitionTimeUs = presentationTimeUs;
+      }
 
       buffer.flip();
       onQueueInputBuffer(buffer);
@@ -733,6 +810,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
 
     if (pendingDrmSession == drmSession && codec != null
+        && canKeepCodec(codec, oldFormat, format)) {
+      // The existing codec can decode the new format as it is. Samples in the new format are
+      // decoded as soon as they're read, without waiting for the codec to be drained.
+    } else if (pendingDrmSession == drmSession && codec != null
         && canReconfigureCodec(codec, codecIsAdaptive, oldFormat, format)) {
       codecReconfigured = true;
       codecReconfigurationState = RECONFIGURATION_STATE_WRITE_PENDING;
@@ -814,6 +895,25 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     return false;
   }
 
+  /**
+   * Determines whether the existing {@link MediaCodec} can continue to be used for a new format
+   * without being reconfigured or re-initialized. If true is returned then samples in the new
+   * format are queued to the existing instance as though the format had not changed. This allows
+   * the first samples of a new stream to be decoded before the end of the previous stream has
+   * been output, so that the transition between the two is seamless.
+   * <p>
+   * This method is called before {@link #canReconfigureCodec(MediaCodec, boolean, Format,
+   * Format)}. The default implementation returns false.
+   *
+   * @param codec The existing {@link MediaCodec} instance.
+   * @param oldFormat The format for which the existing instance is configured.
+   * @param newFormat The new format.
+   * @return Whether the existing instance can be used for the new format as it is.
+   */
+  protected boolean canKeepCodec(MediaCodec codec, Format oldFormat, Format newFormat) {
+    return false;
+  }
+
   @Override
   public boolean isEnded() {
     return outputStreamEnded;
@@ -826,6 +926,36 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
         && SystemClock.elapsedRealtime() < codecHotswapDeadlineMs));
   }
 
+  @Override
+  public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+    if (codec == null || outputIndex < 0 || outputStreamEnded) {
+      // We're waiting for the codec to produce output, which we can't predict.
+      return C.TIME_UNSET;
+    }
+    return getMaxRenderDelayUs(positionUs, elapsedRealtimeUs, outputBufferInfo.presentationTimeUs);
+  }
+
+  /**
+   * Returns the maximum time for which the player may wait before next calling
+   * {@link #render(long, long)}, given that the current output buffer was not fully processed by
+   * the most recent call to
+   * {@link #processOutputBuffer(long, long, MediaCodec, ByteBuffer, int, int, long, boolean)}.
+   * <p>
+   * The default implementation returns {@link C#TIME_UNSET}.
+   *
+   * @param positionUs The current media time in microseconds, measured at the start of the
+   *     current iteration of the rendering loop.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds,
+   *     measured at the start of the current iteration of the rendering loop.
+   * @param bufferPresentationTimeUs The presentation time of the output buffer in microseconds.
+   * @return The maximum delay in microseconds, {@link Long#MAX_VALUE} if there's no deadline, or
+   *     {@link C#TIME_UNSET} if the player should use its default rendering interval.
+   */
+  protected long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs,
+      long bufferPresentationTimeUs) {
+    return C.TIME_UNSET;
+  }
+
   /**
    * Returns the maximum time to block whilst waiting for a decoded output buffer.
    *
@@ -847,7 +977,15 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
 
     if (outputIndex < 0) {
-      outputIndex = codec.dequeueOutputBuffer(outputBufferInfo, getDequeueOutputBufferTimeoutUs());
+      if (asyncBufferQueue != null) {
+        decoderCounters.maxReadyOutputBufferCount = Math.max(
+            decoderCounters.maxReadyOutputBufferCount,
+            asyncBufferQueue.getReadyOutputBufferCount());
+        outputIndex = asyncBufferQueue.dequeueOutputBufferIndex(outputBufferInfo);
+      } else {
+        outputIndex = codec.dequeueOutputBuffer(outputBufferInfo,
+            getDequeueOutputBufferTimeoutUs());
+      }
       if (outputIndex >= 0) {
         // We've dequeued a buffer.
         if (shouldSkipAdaptationWorkaroundOutputBuffer) {
@@ -863,8 +1001,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
           return true;
         } else {
           // The dequeued buffer is a media buffer. Do some initial setup. The buffer will be
-          // processed by calling processOutputBuffer (possibly multiple times) below.
-          ByteBuffer outputBuffer = outputBuffers[outputIndex];
+          // processed by calling processOutputBuffer (possibly multiple times) below. The same
+          // ByteBuffer instance must be passed each time, since processing may consume it
+          // partially, so it's only obtained once.
+          outputBuffer = getOutputBuffer(outputIndex);
           if (outputBuffer != null) {
             outputBuffer.position(outputBufferInfo.offset);
             outputBuffer.limit(outputBufferInfo.offset + outputBufferInfo.size);
@@ -887,22 +1027,61 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
     }
 
-    if (processOutputBuffer(positionUs, elapsedRealtimeUs, codec, outputBuffers[outputIndex],
-        outputIndex, outputBufferInfo.flags, outputBufferInfo.presentationTimeUs,
-        shouldSkipOutputBuffer)) {
+    if (processOutputBuffer(positionUs, elapsedRealtimeUs, codec, outputBuffer, outputIndex,
+        outputBufferInfo.flags, outputBufferInfo.presentationTimeUs, shouldSkipOutputBuffer)) {
+      maybeUpdateStreamTransitionCounters(outputBufferInfo.presentationTimeUs);
       onProcessedOutputBuffer(outputBufferInfo.presentationTimeUs);
       outputIndex = C.INDEX_UNSET;
+      outputBuffer = null;
       return true;
     }
 
     return false;
   }
 
+  private void maybeUpdateStreamTransitionCounters(long presentationTimeUs) {
+    long nowMs = SystemClock.elapsedRealtime();
+    if (streamTransitionTimeUs != C.TIME_UNSET && presentationTimeUs >= streamTransitionTimeUs) {
+      // This is the first output buffer of a new stream. Any time taken to process it beyond the
+      // media duration that elapsed since the last output buffer of the previous stream was lost
+      // in the transition.
+      if (lastOutputBufferTimeUs != C.TIME_UNSET) {
+        long mediaDurationMs = Math.max(0, presentationTimeUs - lastOutputBufferTimeUs) / 1000;
+        int latencyMs = (int) Math.max(0,
+            (nowMs - lastOutputBufferRealtimeMs) - mediaDurationMs);
+        decoderCounters.streamTransitionCount++;
+        decoderCounters.totalStreamTransitionLatencyMs += latencyMs;
+        decoderCounters.maxStreamTransitionLatencyMs =
+            Math.max(decoderCounters.maxStreamTransitionLatencyMs, latencyMs);
+      }
+      streamTransitionTimeUs = C.TIME_UNSET;
+    }
+    lastOutputBufferTimeUs = presentationTimeUs;
+    lastOutputBufferRealtimeMs = nowMs;
+  }
+
+  private void resetStreamTransition() {
+    streamTransitionPending = false;
+    streamTransitionTimeUs = C.TIME_UNSET;
+    lastOutputBufferTimeUs = C.TIME_UNSET;
+  }
+
+  @TargetApi(21)
+  private ByteBuffer getInputBuffer(int index) {
+    return asyncBufferQueue != null ? codec.getInputBuffer(index) : inputBuffers[index];
+  }
+
+  @TargetApi(21)
+  private ByteBuffer getOutputBuffer(int index) {
+    return asyncBufferQueue != null ? codec.getOutputBuffer(index) : outputBuffers[index];
+  }
+
   /**
    * Processes a new output format.
    */
   private void processOutputFormat() {
-    MediaFormat format = codec.getOutputFormat();
+    MediaFormat format = asyncBufferQueue != null ? asyncBufferQueue.getOutputFormat()
+        : codec.getOutputFormat();
     if (codecNeedsAdaptationWorkaround
         && format.getInteger(MediaFormat.KEY_WIDTH) == ADAPTATION_WORKAROUND_SLICE_WIDTH_HEIGHT
         && format.getInteger(MediaFormat.KEY_HEIGHT) == ADAPTATION_WORKAROUND_SLICE_WIDTH_HEIGHT) {
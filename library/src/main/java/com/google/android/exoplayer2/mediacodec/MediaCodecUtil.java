@@ -20,16 +20,29 @@ import android.annotation.TargetApi;
 import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaCodecInfo.CodecProfileLevel;
 import android.media.MediaCodecList;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,7 +72,18 @@ public final class MediaCodecUtil {
       MediaCodecInfo.newPassthroughInstance("OMX.google.raw.decoder");
   private static final Pattern PROFILE_PATTERN = Pattern.compile("^\\D?(\\d+)$");
 
-  private static final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache = new HashMap<>();
+  private static final ConcurrentHashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache =
+      new ConcurrentHashMap<>();
+
+  private static final int DECODER_INFO_CACHE_FILE_VERSION = 2;
+  private static final long DECODER_INFO_CACHE_THREAD_KEEP_ALIVE_MS = 1000;
+
+  // Opened when there is no persistent decoder info cache being loaded.
+  private static final ConditionVariable decoderInfoCacheLoaded = new ConditionVariable();
+
+  // Guarded by the class lock.
+  private static File decoderInfoCacheFile;
+  private static ExecutorService decoderInfoCacheExecutor;
 
   // Codecs to constant mappings.
   // AVC.
@@ -95,6 +119,42 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Sets a file in which the results of decoder queries are persisted, so that they need not be
+   * repeated by later processes. Any results persisted by an earlier process are loaded on a
+   * background thread. Queries that are made whilst they're loading block until loading completes,
+   * which is typically much quicker than querying the device. Results persisted by a build of the
+   * platform with a different fingerprint are discarded.
+   * <p>
+   * Should be called at most once, as early as possible in the life of the process. The persisted
+   * results include the capabilities used on API level 21 and above to check whether a decoder
+   * supports specific video sizes, frame rates, sample rates and channel counts, so restored
+   * decoders never need to be queried.
+   *
+   * @param cacheFile The file in which to persist results.
+   */
+  public static synchronized void setDecoderInfoCacheFile(final File cacheFile) {
+    Assertions.checkState(decoderInfoCacheFile == null);
+    decoderInfoCacheFile = cacheFile;
+    decoderInfoCacheExecutor = Util.newBoundedThreadPoolExecutor("MediaCodecUtil:DecoderInfoCache",
+        1, DECODER_INFO_CACHE_THREAD_KEEP_ALIVE_MS);
+    decoderInfoCacheLoaded.close();
+    decoderInfoCacheExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Map<CodecKey, List<MediaCodecInfo>> decoderInfos =
+              readDecoderInfoCache(cacheFile, Build.FINGERPRINT);
+          for (Map.Entry<CodecKey, List<MediaCodecInfo>> entry : decoderInfos.entrySet()) {
+            decoderInfosCache.putIfAbsent(entry.getKey(), entry.getValue());
+          }
+        } finally {
+          decoderInfoCacheLoaded.open();
+        }
+      }
+    });
+  }
+
   /**
    * Returns information about a decoder suitable for audio passthrough.
    **
@@ -133,16 +193,32 @@ public final class MediaCodecUtil {
    *     given by {@link MediaCodecList}.
    * @throws DecoderQueryException If there was an error querying the available decoders.
    */
-  public static synchronized List<MediaCodecInfo> getDecoderInfos(String mimeType,
-      boolean secure) throws DecoderQueryException {
+  public static List<MediaCodecInfo> getDecoderInfos(String mimeType, boolean secure)
+      throws DecoderQueryException {
     CodecKey key = new CodecKey(mimeType, secure);
     List<MediaCodecInfo> decoderInfos = decoderInfosCache.get(key);
     if (decoderInfos != null) {
       return decoderInfos;
     }
+    maybeWaitForDecoderInfoCacheLoad();
+    synchronized (MediaCodecUtil.class) {
+      decoderInfos = decoderInfosCache.get(key);
+      if (decoderInfos == null) {
+        decoderInfos = getDecoderInfosUncached(key);
+        decoderInfosCache.put(key, decoderInfos);
+        maybeSaveDecoderInfoCache();
+      }
+    }
+    return decoderInfos;
+  }
+
+  private static List<MediaCodecInfo> getDecoderInfosUncached(CodecKey key)
+      throws DecoderQueryException {
+    String mimeType = key.mimeType;
+    boolean secure = key.secure;
     MediaCodecListCompat mediaCodecList = Util.SDK_INT >= 21
         ? new MediaCodecListCompatV21(secure) : new MediaCodecListCompatV16();
-    decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
+    List<MediaCodecInfo> decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
     if (secure && decoderInfos.isEmpty() && 21 <= Util.SDK_INT && Util.SDK_INT <= 23) {
       // Some devices don't list secure decoders on API level 21 [Internal: b/18678462]. Try the
       // legacy path. We also try this path on API levels 22 and 23 as a defensive measure.
@@ -153,9 +229,122 @@ public final class MediaCodecUtil {
             + ". Assuming: " + decoderInfos.get(0).name);
       }
     }
-    decoderInfos = Collections.unmodifiableList(decoderInfos);
-    decoderInfosCache.put(key, decoderInfos);
-    return decoderInfos;
+    return Collections.unmodifiableList(decoderInfos);
+  }
+
+  private static void maybeWaitForDecoderInfoCacheLoad() {
+    try {
+      decoderInfoCacheLoaded.block();
+    } catch (InterruptedException e) {
+      // Query the device instead.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads decoder query results that were written by
+   * {@link #writeDecoderInfoCache(File, String, Map)}.
+   *
+   * @param cacheFile The file from which to read.
+   * @param fingerprint The fingerprint of the platform build.
+   * @return The results, which are empty if the file doesn't exist, can't be read, or was written
+   *     by a different version of this class or for a different build.
+   */
+  /* package */ static Map<CodecKey, List<MediaCodecInfo>> readDecoderInfoCache(File cacheFile,
+      String fingerprint) {
+    Map<CodecKey, List<MediaCodecInfo>> decoderInfosByKey = new HashMap<>();
+    if (!cacheFile.exists()) {
+      return decoderInfosByKey;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      if (input.readInt() != DECODER_INFO_CACHE_FILE_VERSION
+          || !fingerprint.equals(input.readUTF())) {
+        // The cache was written by a different version of this class or platform build.
+        return decoderInfosByKey;
+      }
+      int keyCount = input.readInt();
+      for (int i = 0; i < keyCount; i++) {
+        String mimeType = input.readUTF();
+        boolean secure = input.readBoolean();
+        int decoderInfoCount = input.readInt();
+        List<MediaCodecInfo> decoderInfos = new ArrayList<>(decoderInfoCount);
+        for (int j = 0; j < decoderInfoCount; j++) {
+          decoderInfos.add(MediaCodecInfo.readFrom(input, mimeType));
+        }
+        decoderInfosByKey.put(new CodecKey(mimeType, secure),
+            Collections.unmodifiableList(decoderInfos));
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to load decoder info cache", e);
+      decoderInfosByKey.clear();
+    } finally {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // Ignore.
+        }
+      }
+    }
+    return decoderInfosByKey;
+  }
+
+  private static void maybeSaveDecoderInfoCache() {
+    if (decoderInfoCacheExecutor == null) {
+      return;
+    }
+    final File cacheFile = decoderInfoCacheFile;
+    final Map<CodecKey, List<MediaCodecInfo>> decoderInfos = new HashMap<>(decoderInfosCache);
+    decoderInfoCacheExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        writeDecoderInfoCache(cacheFile, Build.FINGERPRINT, decoderInfos);
+      }
+    });
+  }
+
+  /**
+   * Writes decoder query results, so that they can be read by
+   * {@link #readDecoderInfoCache(File, String)}.
+   *
+   * @param cacheFile The file to which to write.
+   * @param fingerprint The fingerprint of the platform build.
+   * @param decoderInfosByKey The results.
+   */
+  /* package */ static void writeDecoderInfoCache(File cacheFile, String fingerprint,
+      Map<CodecKey, List<MediaCodecInfo>> decoderInfosByKey) {
+    // Write to a temporary file first, so that a partially written cache is never loaded.
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(DECODER_INFO_CACHE_FILE_VERSION);
+      output.writeUTF(fingerprint);
+      output.writeInt(decoderInfosByKey.size());
+      for (Map.Entry<CodecKey, List<MediaCodecInfo>> entry : decoderInfosByKey.entrySet()) {
+        output.writeUTF(entry.getKey().mimeType);
+        output.writeBoolean(entry.getKey().secure);
+        List<MediaCodecInfo> decoderInfos = entry.getValue();
+        output.writeInt(decoderInfos.size());
+        for (MediaCodecInfo decoderInfo : decoderInfos) {
+          decoderInfo.writeTo(output);
+        }
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(cacheFile)) {
+        throw new IOException("Failed to rename " + tempFile + " to " + cacheFile);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to save decoder info cache", e);
+      tempFile.delete();
+    } finally {
+      if (output != null) {
+        Util.closeQuietly(output);
+      }
+    }
   }
 
   private static List<MediaCodecInfo> getDecoderInfosInternal(
@@ -521,7 +710,7 @@ public final class MediaCodecUtil {
 
   }
 
-  private static final class CodecKey {
+  /* package */ static final class CodecKey {
 
     public final String mimeType;
     public final boolean secure;
@@ -555,6 +744,8 @@ public final class MediaCodecUtil {
   }
 
   static {
+    decoderInfoCacheLoaded.open();
+
     AVC_PROFILE_NUMBER_TO_CONST = new HashMap<>();
     AVC_PROFILE_NUMBER_TO_CONST.put(66, CodecProfileLevel.AVCProfileBaseline);
     AVC_PROFILE_NUMBER_TO_CONST.put(77, CodecProfileLevel.AVCProfileMain);
@@ -127,6 +127,15 @@ public final class MetadataRenderer<T> extends BaseRenderer implements Callback
     super.onDisabled();
   }
 
+  @Override
+  public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+    if (pendingMetadata == null) {
+      return Long.MAX_VALUE;
+    }
+    return getState() == STATE_STARTED ? Math.max(0, pendingMetadataTimestamp - positionUs)
+        : C.TIME_UNSET;
+  }
+
   @Override
   public boolean isEnded() {
     return inputStreamEnded;
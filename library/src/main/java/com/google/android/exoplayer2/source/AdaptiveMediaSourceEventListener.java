@@ -167,6 +167,30 @@ public interface AdaptiveMediaSourceEventListener {
   void onDownstreamFormatChanged(int trackType, Format trackFormat, int trackSelectionReason,
       Object trackSelectionData, long mediaTimeMs);
 
+  /**
+   * An optional interface that a {@link AdaptiveMediaSourceEventListener} can implement to be
+   * notified when media loads are abandoned.
+   */
+  interface LoadAbandonmentListener {
+
+    /**
+     * Called when a media load is abandoned because it was projected to complete after the
+     * buffered media had been played out. The media is requested again, normally in a lower
+     * quality format. {@link AdaptiveMediaSourceEventListener#onLoadCanceled} is called in
+     * addition to this method.
+     *
+     * @param trackType The type of the media. One of the {@link C} {@code TRACK_TYPE_*} constants.
+     * @param trackFormat The format of the track to which the abandoned data belongs.
+     * @param mediaStartTimeMs The start time of the media whose load was abandoned.
+     * @param mediaEndTimeMs The end time of the media whose load was abandoned.
+     * @param bytesLoaded The number of bytes that were loaded prior to abandonment, which are
+     *     wasted.
+     */
+    void onLoadAbandoned(int trackType, Format trackFormat, long mediaStartTimeMs,
+        long mediaEndTimeMs, long bytesLoaded);
+
+  }
+
   /**
    * Dispatches events to a {@link AdaptiveMediaSourceEventListener}.
    */
@@ -281,6 +305,19 @@ public interface AdaptiveMediaSourceEventListener {
       }
     }
 
+    public void loadAbandoned(final int trackType, final Format trackFormat,
+        final long mediaStartTimeUs, final long mediaEndTimeUs, final long bytesLoaded) {
+      if (listener instanceof LoadAbandonmentListener) {
+        handler.post(new Runnable()  {
+          @Override
+          public void run() {
+            ((LoadAbandonmentListener) listener).onLoadAbandoned(trackType, trackFormat,
+                usToMs(mediaStartTimeUs), usToMs(mediaEndTimeUs), bytesLoaded);
+          }
+        });
+      }
+    }
+
     public void downstreamFormatChanged(final int trackType, final Format trackFormat,
         final int trackSelectionReason, final Object trackSelectionData,
         final long mediaTimeUs) {
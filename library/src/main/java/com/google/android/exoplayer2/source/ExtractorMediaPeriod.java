@@ -62,6 +62,8 @@ import java.io.IOException;
   private final ExtractorMediaSource.EventListener eventListener;
   private final MediaSource.Listener sourceListener;
   private final Allocator allocator;
+  private final long backBufferDurationUs;
+  private final int maxBackBufferSize;
   private final Loader loader;
   private final ExtractorHolder extractorHolder;
   private final ConditionVariable loadCondition;
@@ -99,11 +101,15 @@ import java.io.IOException;
    * @param eventListener A listener of events. May be null if delivery of events is not required.
    * @param sourceListener A listener to notify when the timeline has been loaded.
    * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
+   * @param backBufferDurationUs The duration of media to retain in the sample queues after it has
+   *     been read, so that backward seeks within it don't require loading, in microseconds.
+   * @param maxBackBufferSize The maximum size of the media retained in each sample queue after it
+   *     has been read, in bytes.
    */
   public ExtractorMediaPeriod(Uri uri, DataSource dataSource, Extractor[] extractors,
       int minLoadableRetryCount, Handler eventHandler,
       ExtractorMediaSource.EventListener eventListener, MediaSource.Listener sourceListener,
-      Allocator allocator) {
+      Allocator allocator, long backBufferDurationUs, int maxBackBufferSize) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.minLoadableRetryCount = minLoadableRetryCount;
@@ -111,6 +117,8 @@ import java.io.IOException;
     this.eventListener = eventListener;
     this.sourceListener = sourceListener;
     this.allocator = allocator;
+    this.backBufferDurationUs = backBufferDurationUs;
+    this.maxBackBufferSize = maxBackBufferSize;
     loader = new Loader("Loader:ExtractorMediaPeriod");
     extractorHolder = new ExtractorHolder(extractors, this);
     loadCondition = new ConditionVariable();
@@ -273,11 +281,12 @@ import java.io.IOException;
     positionUs = seekMap.isSeekable() ? positionUs : 0;
     lastSeekPositionUs = positionUs;
     int trackCount = sampleQueues.size();
-    // If we're not pending a reset, see if we can seek within the sample queues.
+    // If we're not pending a reset, see if we can seek within the sample queues, including any
+    // samples retained in their back buffers.
     boolean seekInsideBuffer = !isPendingReset();
     for (int i = 0; seekInsideBuffer && i < trackCount; i++) {
       if (trackEnabledStates[i]) {
-        seekInsideBuffer = sampleQueues.valueAt(i).skipToKeyframeBefore(positionUs);
+        seekInsideBuffer = sampleQueues.valueAt(i).skipToKeyframeBefore(positionUs, true);
       }
     }
     // If we failed to seek within the sample queues, we need to restart.
@@ -366,6 +375,8 @@ import java.io.IOException;
     DefaultTrackOutput trackOutput = sampleQueues.get(id);
     if (trackOutput == null) {
       trackOutput = new DefaultTrackOutput(allocator);
+      trackOutput.setBackBufferDurationUs(backBufferDurationUs);
+      trackOutput.setMaxBackBufferSize(maxBackBufferSize);
       trackOutput.setUpstreamFormatChangeListener(this);
       sampleQueues.put(id, trackOutput);
     }
@@ -85,10 +85,24 @@ public final class ExtractorMediaSource implements MediaSource, MediaSource.List
    */
   public static final int MIN_RETRY_COUNT_DEFAULT_FOR_MEDIA = -1;
 
+  /**
+   * The default duration of media retained after it has been read, in milliseconds. Retention is
+   * disabled by default.
+   */
+  public static final long DEFAULT_BACK_BUFFER_DURATION_MS = 0;
+
+  /**
+   * The default maximum size of the media retained for each track after it has been read, in
+   * bytes. The size isn't limited by default.
+   */
+  public static final int DEFAULT_MAX_BACK_BUFFER_SIZE = Integer.MAX_VALUE;
+
   private final Uri uri;
   private final DataSource.Factory dataSourceFactory;
   private final ExtractorsFactory extractorsFactory;
   private final int minLoadableRetryCount;
+  private final long backBufferDurationMs;
+  private final int maxBackBufferSize;
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final Timeline.Period period;
@@ -125,10 +139,34 @@ public final class ExtractorMediaSource implements MediaSource, MediaSource.List
   public ExtractorMediaSource(Uri uri, DataSource.Factory dataSourceFactory,
       ExtractorsFactory extractorsFactory, int minLoadableRetryCount, Handler eventHandler,
       EventListener eventListener) {
+    this(uri, dataSourceFactory, extractorsFactory, minLoadableRetryCount,
+        DEFAULT_BACK_BUFFER_DURATION_MS, DEFAULT_MAX_BACK_BUFFER_SIZE, eventHandler, eventListener);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the media stream.
+   * @param dataSourceFactory A factory for {@link DataSource}s to read the media.
+   * @param extractorsFactory A factory for {@link Extractor}s to process the media stream. If the
+   *     possible formats are known, pass a factory that instantiates extractors for those formats.
+   *     Otherwise, pass a {@link DefaultExtractorsFactory} to use default extractors.
+   * @param minLoadableRetryCount The minimum number of times to retry if a loading error occurs.
+   * @param backBufferDurationMs The duration of media to retain after it has been read, in
+   *     milliseconds. Seeks backward into the retained media are performed without loading.
+   * @param maxBackBufferSize The maximum size of the media retained for each track after it has
+   *     been read, in bytes. If retaining {@code backBufferDurationMs} of media would exceed this
+   *     size, the earliest media is discarded.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public ExtractorMediaSource(Uri uri, DataSource.Factory dataSourceFactory,
+      ExtractorsFactory extractorsFactory, int minLoadableRetryCount, long backBufferDurationMs,
+      int maxBackBufferSize, Handler eventHandler, EventListener eventListener) {
     this.uri = uri;
     this.dataSourceFactory = dataSourceFactory;
     this.extractorsFactory = extractorsFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.backBufferDurationMs = backBufferDurationMs;
+    this.maxBackBufferSize = maxBackBufferSize;
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     period = new Timeline.Period();
@@ -151,7 +189,7 @@ public final class ExtractorMediaSource implements MediaSource, MediaSource.List
     Assertions.checkArgument(index == 0);
     return new ExtractorMediaPeriod(uri, dataSourceFactory.createDataSource(),
         extractorsFactory.createExtractors(), minLoadableRetryCount, eventHandler, eventListener,
-        this, allocator);
+        this, allocator, C.msToUs(backBufferDurationMs), maxBackBufferSize);
   }
 
   @Override
@@ -25,15 +25,27 @@ import java.io.IOException;
 
 /**
  * Loops a {@link MediaSource}.
+ * <p>
+ * If the child source has a single period then the samples read from it during the first loop can
+ * optionally be kept in memory, up to a specified total size, and replayed for subsequent loops.
+ * This avoids reloading and re-extracting short clips each time they're repeated.
  */
 public final class LoopingMediaSource implements MediaSource {
 
   private static final String TAG = "LoopingMediaSource";
 
+  /**
+   * The default maximum total size of the sample data kept in memory for replaying, in bytes. Zero
+   * means that the child source is reloaded for every loop.
+   */
+  public static final int DEFAULT_MAX_IN_MEMORY_SIZE = 0;
+
   private final MediaSource childSource;
   private final int loopCount;
+  private final int maxInMemorySize;
 
   private int childPeriodCount;
+  private SampleRecording recording;
 
   /**
    * Loops the provided source indefinitely.
@@ -53,9 +65,27 @@ public final class LoopingMediaSource implements MediaSource {
    *     periods exposed by the source to exceed {@link Integer#MAX_VALUE}.
    */
   public LoopingMediaSource(MediaSource childSource, int loopCount) {
+    this(childSource, loopCount, DEFAULT_MAX_IN_MEMORY_SIZE);
+  }
+
+  /**
+   * Loops the provided source a specified number of times, replaying it from memory after the
+   * first loop if possible.
+   *
+   * @param childSource The {@link MediaSource} to loop.
+   * @param loopCount The desired number of loops. Must be strictly positive. The actual number of
+   *     loops will be capped at the maximum value that can achieved without causing the number of
+   *     periods exposed by the source to exceed {@link Integer#MAX_VALUE}.
+   * @param maxInMemorySize The maximum total size of the sample data kept in memory for replaying,
+   *     in bytes. If the child source has more than one period, or if its samples exceed this size,
+   *     then it's reloaded for every loop.
+   */
+  public LoopingMediaSource(MediaSource childSource, int loopCount, int maxInMemorySize) {
     Assertions.checkArgument(loopCount > 0);
+    Assertions.checkArgument(maxInMemorySize >= 0);
     this.childSource = childSource;
     this.loopCount = loopCount;
+    this.maxInMemorySize = maxInMemorySize;
   }
 
   @Override
@@ -76,16 +106,44 @@ public final class LoopingMediaSource implements MediaSource {
 
   @Override
   public MediaPeriod createPeriod(int index, Allocator allocator, long positionUs) {
-    return childSource.createPeriod(index % childPeriodCount, allocator, positionUs);
+    int childIndex = index % childPeriodCount;
+    if (maxInMemorySize == 0 || childPeriodCount != 1) {
+      return childSource.createPeriod(childIndex, allocator, positionUs);
+    }
+    if (recording != null && (recording.isCompleted() || recording.isRecording())) {
+      return new ReplayingMediaPeriod(recording, childSource, childIndex, allocator, positionUs);
+    }
+    MediaPeriod childPeriod = childSource.createPeriod(childIndex, allocator, positionUs);
+    if (positionUs != 0) {
+      return childPeriod;
+    }
+    RecordingMediaPeriod recordingPeriod =
+        new RecordingMediaPeriod(childPeriod, positionUs, maxInMemorySize);
+    recording = recordingPeriod.recording;
+    return recordingPeriod;
   }
 
   @Override
   public void releasePeriod(MediaPeriod mediaPeriod) {
-    childSource.releasePeriod(mediaPeriod);
+    if (mediaPeriod instanceof RecordingMediaPeriod) {
+      RecordingMediaPeriod recordingPeriod = (RecordingMediaPeriod) mediaPeriod;
+      // A recording that's incomplete when its period is released can never be completed.
+      recordingPeriod.recording.abandon();
+      childSource.releasePeriod(recordingPeriod.period);
+    } else if (mediaPeriod instanceof ReplayingMediaPeriod) {
+      ReplayingMediaPeriod replayingPeriod = (ReplayingMediaPeriod) mediaPeriod;
+      replayingPeriod.release();
+      if (replayingPeriod.getChildPeriod() != null) {
+        childSource.releasePeriod(replayingPeriod.getChildPeriod());
+      }
+    } else {
+      childSource.releasePeriod(mediaPeriod);
+    }
   }
 
   @Override
   public void releaseSource() {
+    recording = null;
     childSource.releaseSource();
   }
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps a {@link MediaPeriod}, recording the samples read from it into a {@link SampleRecording}.
+ * <p>
+ * The recording is abandoned if the samples read aren't a complete copy of the period's enabled
+ * tracks. This is the case if the period doesn't start from the beginning, if it seeks or reports
+ * a discontinuity, if its tracks are reselected, if samples are skipped, or if a sample is
+ * encrypted.
+ */
+/* package */ final class RecordingMediaPeriod implements MediaPeriod, MediaPeriod.Callback {
+
+  public final MediaPeriod period;
+  public final SampleRecording recording;
+
+  private Callback callback;
+  private boolean tracksSelected;
+
+  /**
+   * @param period The period to record.
+   * @param positionUs The position from which the period was created, in microseconds.
+   * @param maxRecordingSize The maximum total size of the recorded sample data, in bytes.
+   */
+  public RecordingMediaPeriod(MediaPeriod period, long positionUs, int maxRecordingSize) {
+    this.period = period;
+    recording = new SampleRecording(maxRecordingSize);
+    if (positionUs != 0) {
+      recording.abandon();
+    }
+  }
+
+  @Override
+  public void prepare(Callback callback) {
+    this.callback = callback;
+    period.prepare(this);
+  }
+
+  @Override
+  public void maybeThrowPrepareError() throws IOException {
+    period.maybeThrowPrepareError();
+  }
+
+  @Override
+  public TrackGroupArray getTrackGroups() {
+    return period.getTrackGroups();
+  }
+
+  @Override
+  public long selectTracks(TrackSelection[] selections, boolean[] mayRetainStreamFlags,
+      SampleStream[] streams, boolean[] streamResetFlags, long positionUs) {
+    if (tracksSelected) {
+      // The recorded tracks may no longer match those being read.
+      recording.abandon();
+    }
+    tracksSelected = true;
+    SampleStream[] childStreams = new SampleStream[streams.length];
+    for (int i = 0; i < streams.length; i++) {
+      childStreams[i] = streams[i] == null ? null : ((RecordingSampleStream) streams[i]).stream;
+    }
+    positionUs = period.selectTracks(selections, mayRetainStreamFlags, childStreams,
+        streamResetFlags, positionUs);
+    if (positionUs != 0) {
+      recording.abandon();
+    }
+    TrackGroupArray trackGroups = period.getTrackGroups();
+    for (int i = 0; i < streams.length; i++) {
+      if (childStreams[i] == null) {
+        streams[i] = null;
+      } else if (streams[i] == null
+          || ((RecordingSampleStream) streams[i]).stream != childStreams[i]) {
+        int trackGroupIndex = trackGroups.indexOf(selections[i].getTrackGroup());
+        if (recording.isRecording()) {
+          recording.startTrack(trackGroupIndex);
+        }
+        streams[i] = new RecordingSampleStream(childStreams[i], trackGroupIndex);
+      }
+    }
+    return positionUs;
+  }
+
+  @Override
+  public boolean continueLoading(long positionUs) {
+    return period.continueLoading(positionUs);
+  }
+
+  @Override
+  public long getNextLoadPositionUs() {
+    return period.getNextLoadPositionUs();
+  }
+
+  @Override
+  public long readDiscontinuity() {
+    long positionUs = period.readDiscontinuity();
+    if (positionUs != C.TIME_UNSET) {
+      recording.abandon();
+    }
+    return positionUs;
+  }
+
+  @Override
+  public long getBufferedPositionUs() {
+    return period.getBufferedPositionUs();
+  }
+
+  @Override
+  public long seekToUs(long positionUs) {
+    recording.abandon();
+    return period.seekToUs(positionUs);
+  }
+
+  // MediaPeriod.Callback implementation.
+
+  @Override
+  public void onPrepared(MediaPeriod ignored) {
+    recording.setTrackGroups(period.getTrackGroups());
+    callback.onPrepared(this);
+  }
+
+  @Override
+  public void onContinueLoadingRequested(MediaPeriod ignored) {
+    callback.onContinueLoadingRequested(this);
+  }
+
+  private final class RecordingSampleStream implements SampleStream {
+
+    public final SampleStream stream;
+
+    private final int trackGroupIndex;
+
+    private Format format;
+
+    public RecordingSampleStream(SampleStream stream, int trackGroupIndex) {
+      this.stream = stream;
+      this.trackGroupIndex = trackGroupIndex;
+    }
+
+    @Override
+    public boolean isReady() {
+      return stream.isReady();
+    }
+
+    @Override
+    public void maybeThrowError() throws IOException {
+      stream.maybeThrowError();
+    }
+
+    @Override
+    public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer) {
+      // The buffer may already hold data, such as codec specific data written by the renderer.
+      int dataStartPosition = buffer.data == null ? 0 : buffer.data.position();
+      int result = stream.readData(formatHolder, buffer);
+      if (!recording.isRecording()) {
+        return result;
+      }
+      if (result == C.RESULT_FORMAT_READ) {
+        format = formatHolder.format;
+      } else if (result == C.RESULT_BUFFER_READ) {
+        if (buffer.isEndOfStream()) {
+          recording.endTrack(trackGroupIndex);
+        } else if (buffer.isEncrypted() || buffer.data == null) {
+          recording.abandon();
+        } else {
+          ByteBuffer data = buffer.data.duplicate();
+          data.flip();
+          data.position(dataStartPosition);
+          byte[] sampleData = new byte[data.remaining()];
+          data.get(sampleData);
+          recording.addSample(trackGroupIndex,
+              new SampleRecording.Sample(format, buffer.timeUs, buffer.isKeyFrame(), sampleData));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public void skipToKeyframeBefore(long timeUs) {
+      recording.abandon();
+      stream.skipToKeyframeBefore(timeUs);
+    }
+
+  }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A {@link MediaPeriod} that replays the samples of a {@link SampleRecording} from memory.
+ * <p>
+ * If the recording is still in progress when the period is prepared then preparation completes
+ * when the recording does. If the recording is abandoned then the period falls back to creating
+ * and delegating to a period of the child source, as though it had never been recorded. A period
+ * of the child source is also prepared if some of the track groups weren't recorded, so that they
+ * can be selected. Streams of those track groups are obtained from it, and it's expected to load
+ * nothing further if none of them are selected.
+ */
+/* package */ final class ReplayingMediaPeriod implements MediaPeriod, MediaPeriod.Callback,
+    SampleRecording.Listener {
+
+  public final SampleRecording recording;
+
+  private final MediaSource childSource;
+  private final int childIndex;
+  private final Allocator allocator;
+  private final long positionUs;
+  private final ArrayList<ReplayingSampleStream> sampleStreams;
+
+  private Callback callback;
+  private MediaPeriod childPeriod;
+
+  /**
+   * @param recording The recording to replay.
+   * @param childSource The source from which to create a period if the recording is abandoned.
+   * @param childIndex The index of the period in the child source.
+   * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
+   * @param positionUs The position from which to start playback, in microseconds.
+   */
+  public ReplayingMediaPeriod(SampleRecording recording, MediaSource childSource, int childIndex,
+      Allocator allocator, long positionUs) {
+    this.recording = recording;
+    this.childSource = childSource;
+    this.childIndex = childIndex;
+    this.allocator = allocator;
+    this.positionUs = positionUs;
+    sampleStreams = new ArrayList<>();
+  }
+
+  /**
+   * Returns the period of the child source to which this period is delegating, or null if it's
+   * only replaying (or waiting to replay) the recording.
+   */
+  public MediaPeriod getChildPeriod() {
+    return childPeriod;
+  }
+
+  /**
+   * Stops waiting for the recording to finish. Must be called when the period is released.
+   */
+  public void release() {
+    recording.removeListener(this);
+  }
+
+  @Override
+  public void prepare(Callback callback) {
+    this.callback = callback;
+    if (recording.isRecording()) {
+      recording.addListener(this);
+    } else {
+      onRecordingFinished(recording);
+    }
+  }
+
+  @Override
+  public void maybeThrowPrepareError() throws IOException {
+    if (childPeriod != null) {
+      childPeriod.maybeThrowPrepareError();
+    }
+  }
+
+  @Override
+  public TrackGroupArray getTrackGroups() {
+    // The track groups of the child period are exposed if there is one, so that selections of
+    // track groups that weren't recorded can be passed to it.
+    return childPeriod != null ? childPeriod.getTrackGroups() : recording.getTrackGroups();
+  }
+
+  @Override
+  public long selectTracks(TrackSelection[] selections, boolean[] mayRetainStreamFlags,
+      SampleStream[] streams, boolean[] streamResetFlags, long positionUs) {
+    if (!recording.isCompleted()) {
+      return childPeriod.selectTracks(selections, mayRetainStreamFlags, streams,
+          streamResetFlags, positionUs);
+    }
+    TrackGroupArray trackGroups = getTrackGroups();
+    TrackSelection[] childSelections = new TrackSelection[selections.length];
+    SampleStream[] childStreams = new SampleStream[streams.length];
+    for (int i = 0; i < selections.length; i++) {
+      if (streams[i] instanceof ReplayingSampleStream
+          && (selections[i] == null || !mayRetainStreamFlags[i])) {
+        sampleStreams.remove(streams[i]);
+        streams[i] = null;
+      }
+      if (!(streams[i] instanceof ReplayingSampleStream)) {
+        childStreams[i] = streams[i];
+        if (selections[i] != null && recording.getSamples(
+            trackGroups.indexOf(selections[i].getTrackGroup())) == null) {
+          childSelections[i] = selections[i];
+        }
+      }
+    }
+    if (childPeriod != null) {
+      boolean[] childStreamResetFlags = new boolean[streams.length];
+      positionUs = childPeriod.selectTracks(childSelections, mayRetainStreamFlags, childStreams,
+          childStreamResetFlags, positionUs);
+      for (int i = 0; i < streams.length; i++) {
+        if (!(streams[i] instanceof ReplayingSampleStream)) {
+          streams[i] = childStreams[i];
+          streamResetFlags[i] = childStreamResetFlags[i];
+        }
+      }
+    }
+    for (int i = 0; i < selections.length; i++) {
+      if (streams[i] == null && selections[i] != null) {
+        int trackGroupIndex = trackGroups.indexOf(selections[i].getTrackGroup());
+        ReplayingSampleStream stream =
+            new ReplayingSampleStream(recording.getSamples(trackGroupIndex));
+        stream.seekToUs(positionUs);
+        sampleStreams.add(stream);
+        streams[i] = stream;
+        streamResetFlags[i] = true;
+      }
+    }
+    return positionUs;
+  }
+
+  @Override
+  public boolean continueLoading(long positionUs) {
+    return childPeriod != null && childPeriod.continueLoading(positionUs);
+  }
+
+  @Override
+  public long getNextLoadPositionUs() {
+    return childPeriod != null ? childPeriod.getNextLoadPositionUs() : C.TIME_END_OF_SOURCE;
+  }
+
+  @Override
+  public long readDiscontinuity() {
+    return childPeriod != null ? childPeriod.readDiscontinuity() : C.TIME_UNSET;
+  }
+
+  @Override
+  public long getBufferedPositionUs() {
+    return childPeriod != null ? childPeriod.getBufferedPositionUs() : C.TIME_END_OF_SOURCE;
+  }
+
+  @Override
+  public long seekToUs(long positionUs) {
+    if (childPeriod != null) {
+      positionUs = childPeriod.seekToUs(positionUs);
+    }
+    for (int i = 0; i < sampleStreams.size(); i++) {
+      sampleStreams.get(i).seekToUs(positionUs);
+    }
+    return positionUs;
+  }
+
+  // SampleRecording.Listener implementation.
+
+  @Override
+  public void onRecordingFinished(SampleRecording recording) {
+    if (recording.isCompleted() && isEveryTrackGroupRecorded()) {
+      callback.onPrepared(this);
+    } else {
+      // Preparation completes when the child period is prepared.
+      childPeriod = childSource.createPeriod(childIndex, allocator, positionUs);
+      childPeriod.prepare(this);
+    }
+  }
+
+  // MediaPeriod.Callback implementation.
+
+  @Override
+  public void onPrepared(MediaPeriod ignored) {
+    callback.onPrepared(this);
+  }
+
+  @Override
+  public void onContinueLoadingRequested(MediaPeriod ignored) {
+    callback.onContinueLoadingRequested(this);
+  }
+
+  // Internal methods.
+
+  private boolean isEveryTrackGroupRecorded() {
+    for (int i = 0; i < recording.getTrackGroups().length; i++) {
+      if (recording.getSamples(i) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class ReplayingSampleStream implements SampleStream {
+
+    private final ArrayList<SampleRecording.Sample> samples;
+
+    private Format downstreamFormat;
+    private int readIndex;
+    private long decodeOnlyUntilUs;
+
+    /**
+     * @param samples The samples to replay.
+     */
+    public ReplayingSampleStream(ArrayList<SampleRecording.Sample> samples) {
+      this.samples = samples;
+    }
+
+    public void seekToUs(long positionUs) {
+      readIndex = SampleRecording.getKeyframeIndexBefore(samples, positionUs);
+      decodeOnlyUntilUs = positionUs;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void maybeThrowError() throws IOException {
+      // Do nothing.
+    }
+
+    @Override
+    public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer) {
+      if (readIndex == samples.size()) {
+        buffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
+        return C.RESULT_BUFFER_READ;
+      }
+      SampleRecording.Sample sample = samples.get(readIndex);
+      if (sample.format != downstreamFormat) {
+        downstreamFormat = sample.format;
+        formatHolder.format = sample.format;
+        return C.RESULT_FORMAT_READ;
+      }
+      buffer.timeUs = sample.timeUs;
+      if (sample.isKeyFrame) {
+        buffer.addFlag(C.BUFFER_FLAG_KEY_FRAME);
+      }
+      if (sample.timeUs < decodeOnlyUntilUs) {
+        buffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+      }
+      buffer.ensureSpaceForWrite(sample.data.length);
+      buffer.data.put(sample.data);
+      readIndex++;
+      return C.RESULT_BUFFER_READ;
+    }
+
+    @Override
+    public void skipToKeyframeBefore(long timeUs) {
+      int keyframeIndex = SampleRecording.getKeyframeIndexBefore(samples, timeUs);
+      readIndex = Math.max(readIndex, keyframeIndex);
+    }
+
+  }
+
+}
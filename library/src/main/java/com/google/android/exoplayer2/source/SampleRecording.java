@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+
+/**
+ * A recording of the samples read from the tracks of a {@link MediaPeriod}, from its start to the
+ * end of each track, which can be replayed from memory.
+ * <p>
+ * A recording is either in progress, completed or abandoned. It's completed when the end of every
+ * recorded track has been reached, and is abandoned if the samples read aren't a complete and
+ * replayable copy of the media, or if they exceed a maximum size. All methods must be called on
+ * the playback thread.
+ */
+/* package */ final class SampleRecording {
+
+  /**
+   * Listener for the completion or abandonment of a recording.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a recording that was in progress is completed or abandoned.
+     *
+     * @param recording The recording.
+     */
+    void onRecordingFinished(SampleRecording recording);
+
+  }
+
+  /**
+   * A sample recorded from a track.
+   */
+  public static final class Sample {
+
+    /**
+     * The format of the track at the time the sample was read.
+     */
+    public final Format format;
+    /**
+     * The sample timestamp in microseconds.
+     */
+    public final long timeUs;
+    /**
+     * Whether the sample is a keyframe.
+     */
+    public final boolean isKeyFrame;
+    /**
+     * The sample data.
+     */
+    public final byte[] data;
+
+    public Sample(Format format, long timeUs, boolean isKeyFrame, byte[] data) {
+      this.format = format;
+      this.timeUs = timeUs;
+      this.isKeyFrame = isKeyFrame;
+      this.data = data;
+    }
+
+  }
+
+  private static final int STATE_RECORDING = 0;
+  private static final int STATE_COMPLETED = 1;
+  private static final int STATE_ABANDONED = 2;
+
+  private final int maxSize;
+  private final ArrayList<Listener> listeners;
+
+  private TrackGroupArray trackGroups;
+  private ArrayList<Sample>[] trackSamples;
+  private boolean[] trackEndedFlags;
+  private int state;
+  private int recordedTrackCount;
+  private int endedTrackCount;
+  private long size;
+
+  /**
+   * @param maxSize The maximum total size of the recorded sample data, in bytes. The recording is
+   *     abandoned if it would exceed this size.
+   */
+  public SampleRecording(int maxSize) {
+    this.maxSize = maxSize;
+    listeners = new ArrayList<>();
+  }
+
+  /**
+   * Returns whether the recording is in progress.
+   */
+  public boolean isRecording() {
+    return state == STATE_RECORDING;
+  }
+
+  /**
+   * Returns whether the recording has been completed, in which case it can be replayed.
+   */
+  public boolean isCompleted() {
+    return state == STATE_COMPLETED;
+  }
+
+  /**
+   * Adds a listener to be notified when a recording that's in progress is finished.
+   *
+   * @param listener The listener.
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener.
+   *
+   * @param listener The listener.
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the track groups of the recorded period, or null if the period isn't yet prepared.
+   */
+  public TrackGroupArray getTrackGroups() {
+    return trackGroups;
+  }
+
+  /**
+   * Returns the recorded samples of a track group, or null if the track group wasn't recorded.
+   *
+   * @param trackGroupIndex The index of the track group.
+   * @return The recorded samples, or null.
+   */
+  public ArrayList<Sample> getSamples(int trackGroupIndex) {
+    return trackSamples[trackGroupIndex];
+  }
+
+  // Called whilst recording.
+
+  /**
+   * Sets the track groups of the period being recorded. Must be called when the period has been
+   * prepared, before any tracks are recorded.
+   *
+   * @param trackGroups The track groups.
+   */
+  @SuppressWarnings("unchecked")
+  public void setTrackGroups(TrackGroupArray trackGroups) {
+    this.trackGroups = trackGroups;
+    trackSamples = new ArrayList[trackGroups.length];
+    trackEndedFlags = new boolean[trackGroups.length];
+  }
+
+  /**
+   * Starts recording a track group. Must be called before any samples are read from it.
+   *
+   * @param trackGroupIndex The index of the track group.
+   */
+  public void startTrack(int trackGroupIndex) {
+    Assertions.checkState(trackSamples[trackGroupIndex] == null);
+    trackSamples[trackGroupIndex] = new ArrayList<>();
+    recordedTrackCount++;
+  }
+
+  /**
+   * Records a sample read from a track group.
+   *
+   * @param trackGroupIndex The index of the track group.
+   * @param sample The sample.
+   */
+  public void addSample(int trackGroupIndex, Sample sample) {
+    if (state != STATE_RECORDING) {
+      return;
+    }
+    size += sample.data.length;
+    if (size > maxSize) {
+      abandon();
+      return;
+    }
+    trackSamples[trackGroupIndex].add(sample);
+  }
+
+  /**
+   * Records that the end of a track group has been read.
+   *
+   * @param trackGroupIndex The index of the track group.
+   */
+  public void endTrack(int trackGroupIndex) {
+    if (state != STATE_RECORDING || trackEndedFlags[trackGroupIndex]) {
+      return;
+    }
+    trackEndedFlags[trackGroupIndex] = true;
+    if (++endedTrackCount == recordedTrackCount) {
+      finish(STATE_COMPLETED);
+    }
+  }
+
+  /**
+   * Abandons the recording, if it's in progress.
+   */
+  public void abandon() {
+    if (state == STATE_RECORDING) {
+      trackSamples = null;
+      finish(STATE_ABANDONED);
+    }
+  }
+
+  /**
+   * Returns the index of the last keyframe at or before the specified time, or 0 if there is none.
+   *
+   * @param samples The samples to search.
+   * @param timeUs The time.
+   * @return The index of the keyframe.
+   */
+  public static int getKeyframeIndexBefore(ArrayList<Sample> samples, long timeUs) {
+    int keyframeIndex = 0;
+    for (int i = 0; i < samples.size(); i++) {
+      Sample sample = samples.get(i);
+      if (sample.timeUs > timeUs) {
+        break;
+      } else if (sample.isKeyFrame) {
+        keyframeIndex = i;
+      }
+    }
+    return keyframeIndex;
+  }
+
+  // Internal methods.
+
+  private void finish(int state) {
+    this.state = state;
+    ArrayList<Listener> listeners = new ArrayList<>(this.listeners);
+    this.listeners.clear();
+    for (int i = 0; i < listeners.size(); i++) {
+      listeners.get(i).onRecordingFinished(this);
+    }
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An {@link AdaptiveMediaSourceEventListener} that records when each phase of startup takes place,
+ * so that it's possible to see where the time to start playback goes.
+ * <p>
+ * A phase corresponds to a data type, such as {@link C#DATA_TYPE_MANIFEST},
+ * {@link C#DATA_TYPE_TIME_SYNCHRONIZATION}, {@link C#DATA_TYPE_MEDIA_INITIALIZATION} and
+ * {@link C#DATA_TYPE_MEDIA}. For each phase the timeline records when the first load of the
+ * corresponding type started, and when the first load of that type completed. Times are relative
+ * to the start of the first load of any type. Recording stops when the first media load completes.
+ * <p>
+ * Events are forwarded to an optional listener, so the timeline can be used alongside another
+ * listener.
+ */
+public final class StartupTimeline implements AdaptiveMediaSourceEventListener,
+    AdaptiveMediaSourceEventListener.LoadAbandonmentListener {
+
+  private static final int DATA_TYPE_COUNT = C.DATA_TYPE_TIME_SYNCHRONIZATION + 1;
+  private static final String[] DATA_TYPE_NAMES = new String[] {"unknown", "media",
+      "initialization", "drm", "manifest", "timeSync"};
+
+  private final AdaptiveMediaSourceEventListener listener;
+  private final long[] loadStartTimesMs;
+  private final long[] loadEndTimesMs;
+
+  private long startTimeMs;
+  private boolean completed;
+
+  public StartupTimeline() {
+    this(null);
+  }
+
+  /**
+   * @param listener A listener to which all events are forwarded, or null.
+   */
+  public StartupTimeline(AdaptiveMediaSourceEventListener listener) {
+    this.listener = listener;
+    loadStartTimesMs = new long[DATA_TYPE_COUNT];
+    loadEndTimesMs = new long[DATA_TYPE_COUNT];
+    reset();
+  }
+
+  /**
+   * Clears the timeline, so that the next startup can be recorded.
+   */
+  public void reset() {
+    Arrays.fill(loadStartTimesMs, C.TIME_UNSET);
+    Arrays.fill(loadEndTimesMs, C.TIME_UNSET);
+    startTimeMs = C.TIME_UNSET;
+    completed = false;
+  }
+
+  /**
+   * Returns whether startup has completed, meaning that the first media load has completed.
+   */
+  public boolean isCompleted() {
+    return completed;
+  }
+
+  /**
+   * Returns the time at which the first load of the specified type started, relative to the start
+   * of the first load of any type.
+   *
+   * @param dataType The data type, which must be one of the {@code C.DATA_TYPE_*} constants other
+   *     than {@link C#DATA_TYPE_CUSTOM_BASE}.
+   * @return The start time in milliseconds, or {@link C#TIME_UNSET} if no load of the specified
+   *     type has started.
+   */
+  public long getLoadStartTimeMs(int dataType) {
+    return loadStartTimesMs[dataType];
+  }
+
+  /**
+   * Returns the time at which the first load of the specified type completed, relative to the
+   * start of the first load of any type.
+   *
+   * @param dataType The data type, which must be one of the {@code C.DATA_TYPE_*} constants other
+   *     than {@link C#DATA_TYPE_CUSTOM_BASE}.
+   * @return The end time in milliseconds, or {@link C#TIME_UNSET} if no load of the specified type
+   *     has completed.
+   */
+  public long getLoadEndTimeMs(int dataType) {
+    return loadEndTimesMs[dataType];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (int dataType : new int[] {C.DATA_TYPE_MANIFEST, C.DATA_TYPE_TIME_SYNCHRONIZATION,
+        C.DATA_TYPE_DRM, C.DATA_TYPE_MEDIA_INITIALIZATION, C.DATA_TYPE_MEDIA}) {
+      if (loadStartTimesMs[dataType] != C.TIME_UNSET) {
+        if (builder.length() > 0) {
+          builder.append(", ");
+        }
+        builder.append(DATA_TYPE_NAMES[dataType]).append('=').append(loadStartTimesMs[dataType])
+            .append('-');
+        if (loadEndTimesMs[dataType] != C.TIME_UNSET) {
+          builder.append(loadEndTimesMs[dataType]);
+        }
+      }
+    }
+    return builder.toString();
+  }
+
+  // AdaptiveMediaSourceEventListener implementation.
+
+  @Override
+  public void onLoadStarted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+      int trackSelectionReason, Object trackSelectionData, long mediaStartTimeMs,
+      long mediaEndTimeMs, long elapsedRealtimeMs) {
+    if (!completed) {
+      if (startTimeMs == C.TIME_UNSET) {
+        startTimeMs = elapsedRealtimeMs;
+      }
+      if (dataType < DATA_TYPE_COUNT && loadStartTimesMs[dataType] == C.TIME_UNSET) {
+        loadStartTimesMs[dataType] = elapsedRealtimeMs - startTimeMs;
+      }
+    }
+    if (listener != null) {
+      listener.onLoadStarted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+          trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs);
+    }
+  }
+
+  @Override
+  public void onLoadCompleted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+      int trackSelectionReason, Object trackSelectionData, long mediaStartTimeMs,
+      long mediaEndTimeMs, long elapsedRealtimeMs, long loadDurationMs, long bytesLoaded) {
+    if (!completed && startTimeMs != C.TIME_UNSET && dataType < DATA_TYPE_COUNT
+        && loadEndTimesMs[dataType] == C.TIME_UNSET) {
+      loadEndTimesMs[dataType] = elapsedRealtimeMs - startTimeMs;
+      completed = dataType == C.DATA_TYPE_MEDIA;
+    }
+    if (listener != null) {
+      listener.onLoadCompleted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+          trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs,
+          bytesLoaded);
+    }
+  }
+
+  @Override
+  public void onLoadCanceled(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+      int trackSelectionReason, Object trackSelectionData, long mediaStartTimeMs,
+      long mediaEndTimeMs, long elapsedRealtimeMs, long loadDurationMs, long bytesLoaded) {
+    if (listener != null) {
+      listener.onLoadCanceled(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+          trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs,
+          bytesLoaded);
+    }
+  }
+
+  @Override
+  public void onLoadError(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+      int trackSelectionReason, Object trackSelectionData, long mediaStartTimeMs,
+      long mediaEndTimeMs, long elapsedRealtimeMs, long loadDurationMs, long bytesLoaded,
+      IOException error, boolean wasCanceled) {
+    if (listener != null) {
+      listener.onLoadError(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+          trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs,
+          bytesLoaded, error, wasCanceled);
+    }
+  }
+
+  @Override
+  public void onUpstreamDiscarded(int trackType, long mediaStartTimeMs, long mediaEndTimeMs) {
+    if (listener != null) {
+      listener.onUpstreamDiscarded(trackType, mediaStartTimeMs, mediaEndTimeMs);
+    }
+  }
+
+  @Override
+  public void onDownstreamFormatChanged(int trackType, Format trackFormat,
+      int trackSelectionReason, Object trackSelectionData, long mediaTimeMs) {
+    if (listener != null) {
+      listener.onDownstreamFormatChanged(trackType, trackFormat, trackSelectionReason,
+          trackSelectionData, mediaTimeMs);
+    }
+  }
+
+  // LoadAbandonmentListener implementation.
+
+  @Override
+  public void onLoadAbandoned(int trackType, Format trackFormat, long mediaStartTimeMs,
+      long mediaEndTimeMs, long bytesLoaded) {
+    if (listener instanceof LoadAbandonmentListener) {
+      ((LoadAbandonmentListener) listener).onLoadAbandoned(trackType, trackFormat,
+          mediaStartTimeMs, mediaEndTimeMs, bytesLoaded);
+    }
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.source.chunk;
 
+import android.os.SystemClock;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
@@ -33,10 +34,26 @@ import java.util.List;
 
 /**
  * A {@link SampleStream} that loads media in {@link Chunk}s, obtained from a {@link ChunkSource}.
+ * <p>
+ * Whilst a media chunk is loading, the stream periodically projects when the load will complete
+ * from the throughput it has achieved so far. If the load is projected to complete after the
+ * buffered media has been played out, the {@link ChunkSource} is given the opportunity to abandon
+ * it, in which case the same media is requested again, normally at a lower quality. Samples of an
+ * abandoned chunk are never read, since they're discarded when the cancelation completes.
  */
 public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, SequenceableLoader,
     Loader.Callback<Chunk> {
 
+  /**
+   * The minimum duration for which a media chunk must have been loading before its load can be
+   * abandoned, so that its throughput is measured over a meaningful period.
+   */
+  private static final int MIN_LOAD_DURATION_FOR_ABANDONMENT_MS = 500;
+  /**
+   * The minimum interval between evaluations of whether the current load should be abandoned.
+   */
+  private static final int ABANDONMENT_EVALUATION_INTERVAL_MS = 200;
+
   private final int trackType;
   private final T chunkSource;
   private final SequenceableLoader.Callback<ChunkSampleStream<T>> callback;
@@ -49,8 +66,13 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   private final Loader loader;
 
   private Format downstreamTrackFormat;
+  private BaseMediaChunk loadingMediaChunk;
+  private BaseMediaChunk abandonedMediaChunk;
+  private long loadStartRealtimeMs;
+  private long lastAbandonmentEvaluationRealtimeMs;
 
   private long lastSeekPositionUs;
+  private long lastReadPositionUs;
   private long pendingResetPositionUs;
 
   private boolean loadingFinished;
@@ -68,6 +90,28 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   public ChunkSampleStream(int trackType, T chunkSource,
       SequenceableLoader.Callback<ChunkSampleStream<T>> callback, Allocator allocator,
       long positionUs, int minLoadableRetryCount, EventDispatcher eventDispatcher) {
+    this(trackType, chunkSource, callback, allocator, positionUs, minLoadableRetryCount, 0,
+        Integer.MAX_VALUE, eventDispatcher);
+  }
+
+  /**
+   * @param trackType The type of the track. One of the {@link C} {@code TRACK_TYPE_*} constants.
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param callback An {@link Callback} for the stream.
+   * @param allocator An {@link Allocator} from which allocations can be obtained.
+   * @param positionUs The position from which to start loading media.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param backBufferDurationUs The duration of media to retain after it has been read, so that
+   *     backward seeks within it don't require loading, in microseconds.
+   * @param maxBackBufferSize The maximum size of the media retained after it has been read, in
+   *     bytes.
+   * @param eventDispatcher A dispatcher to notify of events.
+   */
+  public ChunkSampleStream(int trackType, T chunkSource,
+      SequenceableLoader.Callback<ChunkSampleStream<T>> callback, Allocator allocator,
+      long positionUs, int minLoadableRetryCount, long backBufferDurationUs, int maxBackBufferSize,
+      EventDispatcher eventDispatcher) {
     this.trackType = trackType;
     this.chunkSource = chunkSource;
     this.callback = callback;
@@ -78,7 +122,10 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     mediaChunks = new LinkedList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
     sampleQueue = new DefaultTrackOutput(allocator);
+    sampleQueue.setBackBufferDurationUs(backBufferDurationUs);
+    sampleQueue.setMaxBackBufferSize(maxBackBufferSize);
     lastSeekPositionUs = positionUs;
+    lastReadPositionUs = positionUs;
     pendingResetPositionUs = positionUs;
   }
 
@@ -121,18 +168,19 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
    */
   public void seekToUs(long positionUs) {
     lastSeekPositionUs = positionUs;
-    // If we're not pending a reset, see if we can seek within the sample queue.
-    boolean seekInsideBuffer = !isPendingReset() && sampleQueue.skipToKeyframeBefore(positionUs);
+    lastReadPositionUs = positionUs;
+    // If we're not pending a reset, see if we can seek within the sample queue, including any
+    // samples retained in its back buffer.
+    boolean seekInsideBuffer = !isPendingReset()
+        && sampleQueue.skipToKeyframeBefore(positionUs, true);
     if (seekInsideBuffer) {
       // We succeeded. All we need to do is discard any chunks that we've moved past.
-      while (mediaChunks.size() > 1
-          && mediaChunks.get(1).getFirstSampleIndex() <= sampleQueue.getReadIndex()) {
-        mediaChunks.removeFirst();
-      }
+      discardDownstreamMediaChunks();
     } else {
       // We failed, and need to restart.
       pendingResetPositionUs = positionUs;
       loadingFinished = false;
+      abandonedMediaChunk = null;
       mediaChunks.clear();
       if (loader.isLoading()) {
         loader.cancelLoading();
@@ -156,7 +204,8 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public boolean isReady() {
-    return loadingFinished || (!isPendingReset() && !sampleQueue.isEmpty());
+    return loadingFinished
+        || (!isPendingReset() && !isAbandonedMediaChunkReached() && !sampleQueue.isEmpty());
   }
 
   @Override
@@ -169,15 +218,12 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer) {
-    if (isPendingReset()) {
+    if (isPendingReset() || isAbandonedMediaChunkReached()) {
       return C.RESULT_NOTHING_READ;
     }
 
-    while (mediaChunks.size() > 1
-        && mediaChunks.get(1).getFirstSampleIndex() <= sampleQueue.getReadIndex()) {
-      mediaChunks.removeFirst();
-    }
-    BaseMediaChunk currentChunk = mediaChunks.getFirst();
+    discardDownstreamMediaChunks();
+    BaseMediaChunk currentChunk = getCurrentMediaChunk();
 
     Format trackFormat = currentChunk.trackFormat;
     if (!trackFormat.equals(downstreamTrackFormat)) {
@@ -186,7 +232,12 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
           currentChunk.startTimeUs);
     }
     downstreamTrackFormat = trackFormat;
-    return sampleQueue.readData(formatHolder, buffer, loadingFinished, lastSeekPositionUs);
+    int result = sampleQueue.readData(formatHolder, buffer, loadingFinished, lastSeekPositionUs);
+    if (result == C.RESULT_BUFFER_READ && !buffer.isEndOfStream()) {
+      lastReadPositionUs = buffer.timeUs;
+    }
+    maybeAbandonLoad();
+    return result;
   }
 
   @Override
@@ -198,6 +249,8 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public void onLoadCompleted(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs) {
+    loadingMediaChunk = null;
+    abandonedMediaChunk = null;
     chunkSource.onChunkLoadCompleted(loadable);
     eventDispatcher.loadCompleted(loadable.dataSpec, loadable.type, trackType, loadable.trackFormat,
         loadable.trackSelectionReason, loadable.trackSelectionData, loadable.startTimeUs,
@@ -208,13 +261,36 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   @Override
   public void onLoadCanceled(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs,
       boolean released) {
+    loadingMediaChunk = null;
+    boolean abandoned = loadable == abandonedMediaChunk;
+    abandonedMediaChunk = null;
+    if (abandoned) {
+      eventDispatcher.loadAbandoned(trackType, loadable.trackFormat, loadable.startTimeUs,
+          loadable.endTimeUs, loadable.bytesLoaded());
+    }
     eventDispatcher.loadCanceled(loadable.dataSpec, loadable.type, trackType, loadable.trackFormat,
         loadable.trackSelectionReason, loadable.trackSelectionData, loadable.startTimeUs,
         loadable.endTimeUs, elapsedRealtimeMs, loadDurationMs, loadable.bytesLoaded());
-    if (!released) {
+    if (released) {
+      return;
+    }
+    if (abandoned) {
+      BaseMediaChunk removed = mediaChunks.removeLast();
+      Assertions.checkState(removed == loadable);
+      if (sampleQueue.getReadIndex() <= removed.getFirstSampleIndex()) {
+        // Discard the abandoned chunk so that the same media is requested again.
+        sampleQueue.discardUpstreamSamples(removed.getFirstSampleIndex());
+      } else {
+        // The read position was moved into the abandoned chunk by a skip, so its samples can't be
+        // discarded. Restart from the last read position instead.
+        mediaChunks.clear();
+        sampleQueue.reset(true);
+        pendingResetPositionUs = lastReadPositionUs;
+      }
+    } else {
       sampleQueue.reset(true);
-      callback.onContinueLoadingRequested(this);
     }
+    callback.onContinueLoadingRequested(this);
   }
 
   @Override
@@ -226,6 +302,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     boolean canceled = false;
     if (chunkSource.onChunkLoadError(loadable, cancelable, error)) {
       canceled = true;
+      loadingMediaChunk = null;
       if (isMediaChunk) {
         BaseMediaChunk removed = mediaChunks.removeLast();
         Assertions.checkState(removed == loadable);
@@ -276,8 +353,10 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       BaseMediaChunk mediaChunk = (BaseMediaChunk) loadable;
       mediaChunk.init(sampleQueue);
       mediaChunks.add(mediaChunk);
+      loadingMediaChunk = mediaChunk;
     }
     long elapsedRealtimeMs = loader.startLoading(loadable, this, minLoadableRetryCount);
+    loadStartRealtimeMs = elapsedRealtimeMs;
     eventDispatcher.loadStarted(loadable.dataSpec, loadable.type, trackType, loadable.trackFormat,
         loadable.trackSelectionReason, loadable.trackSelectionData, loadable.startTimeUs,
         loadable.endTimeUs, elapsedRealtimeMs);
@@ -295,6 +374,56 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   // Internal methods
 
+  /**
+   * Abandons the media chunk being loaded if the load is projected to complete after the buffered
+   * media has been played out, and if the chunk source implements
+   * {@link ChunkSource.LoadAbandonmentHandler} and agrees.
+   * <p>
+   * A load is only abandoned if none of its samples have been read, since otherwise the samples
+   * would be read twice when the media is requested again, and if an earlier media chunk is
+   * buffered, so that the media that's requested again follows on from it.
+   */
+  private void maybeAbandonLoad() {
+    BaseMediaChunk mediaChunk = loadingMediaChunk;
+    if (!(chunkSource instanceof ChunkSource.LoadAbandonmentHandler) || mediaChunk == null
+        || abandonedMediaChunk != null || mediaChunks.size() < 2
+        || mediaChunk.getFirstSampleIndex() < sampleQueue.getReadIndex()) {
+      return;
+    }
+    long nowMs = SystemClock.elapsedRealtime();
+    long loadDurationMs = nowMs - loadStartRealtimeMs;
+    if (loadDurationMs < MIN_LOAD_DURATION_FOR_ABANDONMENT_MS
+        || nowMs - lastAbandonmentEvaluationRealtimeMs < ABANDONMENT_EVALUATION_INTERVAL_MS) {
+      return;
+    }
+    lastAbandonmentEvaluationRealtimeMs = nowMs;
+    long chunkLength = getExpectedLength(mediaChunk);
+    long bytesLoaded = mediaChunk.bytesLoaded();
+    if (chunkLength == C.LENGTH_UNSET || bytesLoaded >= chunkLength) {
+      return;
+    }
+    long remainingLoadDurationUs = bytesLoaded == 0 ? Long.MAX_VALUE
+        : (chunkLength - bytesLoaded) * loadDurationMs * 1000 / bytesLoaded;
+    long bufferedDurationUs = getBufferedPositionUs() - lastReadPositionUs;
+    if (remainingLoadDurationUs > bufferedDurationUs
+        && ((ChunkSource.LoadAbandonmentHandler) chunkSource).onChunkLoadTooSlow(mediaChunk)) {
+      abandonedMediaChunk = mediaChunk;
+      loader.cancelLoading();
+    }
+  }
+
+  /**
+   * Returns the expected length of a chunk in bytes, or {@link C#LENGTH_UNSET} if it's unknown.
+   */
+  private static long getExpectedLength(Chunk chunk) {
+    if (chunk.dataSpec.length != C.LENGTH_UNSET) {
+      return chunk.dataSpec.length;
+    } else if (chunk.trackFormat.bitrate != Format.NO_VALUE) {
+      return chunk.trackFormat.bitrate * chunk.getDurationUs() / (8 * C.MICROS_PER_SECOND);
+    }
+    return C.LENGTH_UNSET;
+  }
+
   // TODO[REFACTOR]: Call maybeDiscardUpstream for DASH and SmoothStreaming.
   /**
    * Discards media chunks from the back of the buffer if conditions have changed such that it's
@@ -307,6 +436,32 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     discardUpstreamMediaChunks(Math.max(1, queueSize));
   }
 
+  /**
+   * Discards media chunks from the front of the queue whose samples have all been discarded from
+   * the sample queue.
+   */
+  private void discardDownstreamMediaChunks() {
+    while (mediaChunks.size() > 1
+        && mediaChunks.get(1).getFirstSampleIndex() <= sampleQueue.getFirstIndex()) {
+      mediaChunks.removeFirst();
+    }
+  }
+
+  /**
+   * Returns the media chunk containing the sample at the read index. Chunks before it may remain in
+   * the queue if the sample queue is retaining samples that have already been read.
+   */
+  private BaseMediaChunk getCurrentMediaChunk() {
+    int readIndex = sampleQueue.getReadIndex();
+    for (int i = mediaChunks.size() - 1; i > 0; i--) {
+      BaseMediaChunk mediaChunk = mediaChunks.get(i);
+      if (mediaChunk.getFirstSampleIndex() <= readIndex) {
+        return mediaChunk;
+      }
+    }
+    return mediaChunks.getFirst();
+  }
+
   private boolean isMediaChunk(Chunk chunk) {
     return chunk instanceof BaseMediaChunk;
   }
@@ -315,6 +470,15 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     return pendingResetPositionUs != C.TIME_UNSET;
   }
 
+  /**
+   * Returns whether the read position has reached the first sample of a media chunk whose load has
+   * been abandoned, but whose cancelation hasn't yet completed.
+   */
+  private boolean isAbandonedMediaChunkReached() {
+    return abandonedMediaChunk != null
+        && sampleQueue.getReadIndex() >= abandonedMediaChunk.getFirstSampleIndex();
+  }
+
   /**
    * Discard upstream media chunks until the queue length is equal to the length specified.
    *
@@ -84,4 +84,27 @@ public interface ChunkSource {
    */
   boolean onChunkLoadError(Chunk chunk, boolean cancelable, Exception e);
 
+  /**
+   * An optional interface that a {@link ChunkSource} can implement to allow the
+   * {@link ChunkSampleStream} to abandon media chunk loads that are too slow.
+   */
+  interface LoadAbandonmentHandler {
+
+    /**
+     * Called when the {@link ChunkSampleStream} projects that a media chunk obtained from this
+     * source will finish loading after the buffered media has been played out.
+     * <p>
+     * If the load should be abandoned, the source should ensure that the media is requested again
+     * at a lower quality by the next call to
+     * {@link ChunkSource#getNextChunk(MediaChunk, long, ChunkHolder)}.
+     * <p>
+     * This method should only be called when the source is enabled.
+     *
+     * @param chunk The chunk whose load is too slow.
+     * @return Whether the load should be abandoned.
+     */
+    boolean onChunkLoadTooSlow(MediaChunk chunk);
+
+  }
+
 }
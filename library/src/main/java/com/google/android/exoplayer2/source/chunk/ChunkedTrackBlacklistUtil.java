@@ -21,7 +21,7 @@ import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCode
 
 /**
  * Helper class for blacklisting tracks in a {@link TrackSelection} when 404 (Not Found) and 410
- * (Gone) HTTP response codes are encountered.
+ * (Gone) HTTP response codes are encountered, and when loads are too slow.
  */
 public final class ChunkedTrackBlacklistUtil {
 
@@ -30,6 +30,12 @@ public final class ChunkedTrackBlacklistUtil {
    */
   public static final long DEFAULT_TRACK_BLACKLIST_MS = 60000;
 
+  /**
+   * The default duration for which tracks are blacklisted after a load is found to be too slow, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_SLOW_TRACK_BLACKLIST_MS = 10000;
+
   private static final String TAG = "ChunkedTrackBlacklist";
 
   /**
@@ -85,6 +91,39 @@ public final class ChunkedTrackBlacklistUtil {
     return false;
   }
 
+  /**
+   * Blacklists {@code trackSelectionIndex} in {@code trackSelection}, and any tracks of the same or
+   * a higher bitrate, for {@link #DEFAULT_SLOW_TRACK_BLACKLIST_MS}, so that the next chunk is
+   * loaded at a lower quality. Does nothing if the selection has no track of a lower bitrate.
+   *
+   * @param trackSelection The track selection.
+   * @param trackSelectionIndex The index in the selection of the track whose load is too slow.
+   * @return Whether the track was blacklisted.
+   */
+  public static boolean maybeBlacklistSlowTrack(TrackSelection trackSelection,
+      int trackSelectionIndex) {
+    int bitrate = trackSelection.getFormat(trackSelectionIndex).bitrate;
+    boolean hasLowerBitrateTrack = false;
+    for (int i = 0; i < trackSelection.length(); i++) {
+      hasLowerBitrateTrack |= trackSelection.getFormat(i).bitrate < bitrate;
+    }
+    if (!hasLowerBitrateTrack) {
+      return false;
+    }
+    for (int i = 0; i < trackSelection.length(); i++) {
+      if (i != trackSelectionIndex && trackSelection.getFormat(i).bitrate >= bitrate) {
+        trackSelection.blacklist(i, DEFAULT_SLOW_TRACK_BLACKLIST_MS);
+      }
+    }
+    boolean blacklisted = trackSelection.blacklist(trackSelectionIndex,
+        DEFAULT_SLOW_TRACK_BLACKLIST_MS);
+    if (blacklisted) {
+      Log.w(TAG, "Blacklisted slow track: duration=" + DEFAULT_SLOW_TRACK_BLACKLIST_MS
+          + ", format=" + trackSelection.getFormat(trackSelectionIndex));
+    }
+    return blacklisted;
+  }
+
   private ChunkedTrackBlacklistUtil() {}
 
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.source.dash.manifest.RepresentationKey;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.SegmentDownloader;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downloads the representations of a static DASH stream, identified by {@link RepresentationKey}s,
+ * for offline playback through a {@link DashMediaSource}.
+ *
+ * @see SegmentDownloader
+ */
+public final class DashDownloader extends SegmentDownloader<DashManifest, RepresentationKey> {
+
+  /**
+   * @param manifestUri The {@link Uri} of the manifest.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   */
+  public DashDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory) {
+    this(manifestUri, cache, upstreamDataSourceFactory, DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * @param manifestUri The {@link Uri} of the manifest.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   * @param parallelism The number of segments that are downloaded in parallel.
+   */
+  public DashDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory, int parallelism) {
+    super(manifestUri, cache, upstreamDataSourceFactory, parallelism);
+  }
+
+  @Override
+  protected DashManifest loadManifest(Uri uri) throws IOException, InterruptedException {
+    // The content id must match that of DashMediaSource, since it's part of the cache keys of
+    // single segment representations.
+    return loadManifest(uri, new DashManifestParser(Util.sha1(uri.toString())));
+  }
+
+  @Override
+  protected List<Segment> getSegments(DashManifest manifest, RepresentationKey[] keys)
+      throws IOException {
+    if (manifest.dynamic) {
+      throw new IOException("Live streams can't be downloaded.");
+    }
+    List<Segment> segments = new ArrayList<>();
+    if (keys != null) {
+      for (RepresentationKey key : keys) {
+        Period period = manifest.getPeriod(key.periodIndex);
+        Representation representation = period.adaptationSets.get(key.adaptationSetIndex)
+            .representations.get(key.representationIndex);
+        addSegments(manifest, key.periodIndex, representation, segments);
+      }
+    } else {
+      for (int i = 0; i < manifest.getPeriodCount(); i++) {
+        List<AdaptationSet> adaptationSets = manifest.getPeriod(i).adaptationSets;
+        for (int j = 0; j < adaptationSets.size(); j++) {
+          List<Representation> representations = adaptationSets.get(j).representations;
+          for (int k = 0; k < representations.size(); k++) {
+            addSegments(manifest, i, representations.get(k), segments);
+          }
+        }
+      }
+    }
+    return segments;
+  }
+
+  // Internal methods.
+
+  /**
+   * Adds the segments of a representation, using the same {@link DataSpec}s as
+   * {@link DefaultDashChunkSource}.
+   */
+  private static void addSegments(DashManifest manifest, int periodIndex,
+      Representation representation, List<Segment> segments) throws IOException {
+    long periodStartUs = C.msToUs(manifest.getPeriod(periodIndex).startMs);
+    if (representation instanceof Representation.SingleSegmentRepresentation) {
+      // The initialization data, index and media are all requested as ranges of a single resource
+      // that's cached under the representation's key, so it's downloaded in full.
+      Representation.SingleSegmentRepresentation singleSegmentRepresentation =
+          (Representation.SingleSegmentRepresentation) representation;
+      segments.add(new Segment(periodStartUs, new DataSpec(singleSegmentRepresentation.uri, 0,
+          singleSegmentRepresentation.contentLength, representation.getCacheKey())));
+      return;
+    }
+    RangedUri initializationUri = representation.getInitializationUri();
+    if (initializationUri != null) {
+      segments.add(new Segment(periodStartUs,
+          newDataSpec(initializationUri, representation.getInitializationCacheKey())));
+    }
+    DashSegmentIndex index = representation.getIndex();
+    long periodDurationUs = manifest.getPeriodDurationUs(periodIndex);
+    int firstSegmentNum = index.getFirstSegmentNum();
+    int lastSegmentNum = index.getLastSegmentNum(periodDurationUs);
+    if (lastSegmentNum == DashSegmentIndex.INDEX_UNBOUNDED) {
+      throw new IOException("Unbounded segment index.");
+    }
+    for (int segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+      segments.add(new Segment(periodStartUs + index.getTimeUs(segmentNum),
+          newDataSpec(index.getSegmentUrl(segmentNum),
+              representation.getSegmentCacheKey(segmentNum))));
+    }
+  }
+
+  private static DataSpec newDataSpec(RangedUri rangedUri, String cacheKey) {
+    return new DataSpec(rangedUri.getUri(), rangedUri.start, rangedUri.length, cacheKey);
+  }
+
+}
@@ -45,6 +45,8 @@ import java.util.List;
   /* package */ final int id;
   private final DashChunkSource.Factory chunkSourceFactory;
   private final int minLoadableRetryCount;
+  private final long backBufferDurationUs;
+  private final int maxBackBufferSize;
   private final EventDispatcher eventDispatcher;
   private final long elapsedRealtimeOffset;
   private final LoaderErrorThrower manifestLoaderErrorThrower;
@@ -60,13 +62,16 @@ import java.util.List;
 
   public DashMediaPeriod(int id, DashManifest manifest, int index,
       DashChunkSource.Factory chunkSourceFactory,  int minLoadableRetryCount,
-      EventDispatcher eventDispatcher, long elapsedRealtimeOffset,
-      LoaderErrorThrower manifestLoaderErrorThrower, Allocator allocator) {
+      long backBufferDurationUs, int maxBackBufferSize, EventDispatcher eventDispatcher,
+      long elapsedRealtimeOffset, LoaderErrorThrower manifestLoaderErrorThrower,
+      Allocator allocator) {
     this.id = id;
     this.manifest = manifest;
     this.index = index;
     this.chunkSourceFactory = chunkSourceFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.backBufferDurationUs = backBufferDurationUs;
+    this.maxBackBufferSize = maxBackBufferSize;
     this.eventDispatcher = eventDispatcher;
     this.elapsedRealtimeOffset = elapsedRealtimeOffset;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
@@ -205,7 +210,7 @@ import java.util.List;
         manifestLoaderErrorThrower, manifest, index, adaptationSetIndex, selection,
         elapsedRealtimeOffset);
     return new ChunkSampleStream<>(adaptationSet.type, chunkSource, this, allocator, positionUs,
-        minLoadableRetryCount, eventDispatcher);
+        minLoadableRetryCount, backBufferDurationUs, maxBackBufferSize, eventDispatcher);
   }
 
   @SuppressWarnings("unchecked")
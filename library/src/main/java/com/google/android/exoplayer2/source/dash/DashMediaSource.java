@@ -67,6 +67,16 @@ public final class DashMediaSource implements MediaSource {
    * by which the default start position precedes the end of the live window.
    */
   public static final long DEFAULT_LIVE_PRESENTATION_DELAY_FIXED_MS = 30000;
+  /**
+   * The default duration of media retained after it has been read, in milliseconds. Retention is
+   * disabled by default.
+   */
+  public static final long DEFAULT_BACK_BUFFER_DURATION_MS = 0;
+  /**
+   * The default maximum size of the media retained for each track after it has been read, in
+   * bytes. The size isn't limited by default.
+   */
+  public static final int DEFAULT_MAX_BACK_BUFFER_SIZE = Integer.MAX_VALUE;
 
   /**
    * The interval in milliseconds between invocations of
@@ -85,6 +95,8 @@ public final class DashMediaSource implements MediaSource {
   private final DashChunkSource.Factory chunkSourceFactory;
   private final int minLoadableRetryCount;
   private final long livePresentationDelayMs;
+  private final long backBufferDurationMs;
+  private final int maxBackBufferSize;
   private final EventDispatcher eventDispatcher;
   private final DashManifestParser manifestParser;
   private final ManifestCallback manifestCallback;
@@ -118,11 +130,38 @@ public final class DashMediaSource implements MediaSource {
       DashChunkSource.Factory chunkSourceFactory, int minLoadableRetryCount,
       long livePresentationDelayMs, Handler eventHandler,
       AdaptiveMediaSourceEventListener eventListener) {
+    this(manifestUri, manifestDataSourceFactory, chunkSourceFactory, minLoadableRetryCount,
+        livePresentationDelayMs, DEFAULT_BACK_BUFFER_DURATION_MS, DEFAULT_MAX_BACK_BUFFER_SIZE,
+        eventHandler, eventListener);
+  }
+
+  /**
+   * @param manifestUri The manifest {@link Uri}.
+   * @param manifestDataSourceFactory A factory for {@link DataSource} instances that will be used
+   *     to load (and refresh) the manifest.
+   * @param chunkSourceFactory A factory for {@link DashChunkSource} instances.
+   * @param minLoadableRetryCount The minimum number of times to retry if a loading error occurs.
+   * @param livePresentationDelayMs For live playbacks, the duration in milliseconds by which the
+   *     default start position should precede the end of the live window.
+   * @param backBufferDurationMs The duration of media to retain after it has been read, in
+   *     milliseconds. Seeks backward into the retained media are performed without loading.
+   * @param maxBackBufferSize The maximum size of the media retained for each track after it has
+   *     been read, in bytes. If retaining {@code backBufferDurationMs} of media would exceed this
+   *     size, the earliest media is discarded.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public DashMediaSource(Uri manifestUri, DataSource.Factory manifestDataSourceFactory,
+      DashChunkSource.Factory chunkSourceFactory, int minLoadableRetryCount,
+      long livePresentationDelayMs, long backBufferDurationMs, int maxBackBufferSize,
+      Handler eventHandler, AdaptiveMediaSourceEventListener eventListener) {
     this.manifestUri = manifestUri;
     this.manifestDataSourceFactory = manifestDataSourceFactory;
     this.chunkSourceFactory = chunkSourceFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.livePresentationDelayMs = livePresentationDelayMs;
+    this.backBufferDurationMs = backBufferDurationMs;
+    this.maxBackBufferSize = maxBackBufferSize;
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     manifestParser = new DashManifestParser(generateContentId());
     manifestCallback = new ManifestCallback();
@@ -172,8 +211,8 @@ public final class DashMediaSource implements MediaSource {
   @Override
   public MediaPeriod createPeriod(int index, Allocator allocator, long positionUs) {
     DashMediaPeriod mediaPeriod = new DashMediaPeriod(firstPeriodId + index, manifest, index,
-        chunkSourceFactory, minLoadableRetryCount, eventDispatcher, elapsedRealtimeOffsetMs, loader,
-        allocator);
+        chunkSourceFactory, minLoadableRetryCount, C.msToUs(backBufferDurationMs),
+        maxBackBufferSize, eventDispatcher, elapsedRealtimeOffsetMs, loader, allocator);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
   }
@@ -243,7 +282,9 @@ public final class DashMediaSource implements MediaSource {
     }
 
     if (periodCount == 0) {
-      if (manifest.utcTiming != null) {
+      // The server's time is only needed to determine the live window of a dynamic manifest, so
+      // avoid delaying the start of playback to resolve it for a static one.
+      if (manifest.dynamic && manifest.utcTiming != null) {
         resolveUtcTimingElement(manifest.utcTiming);
       } else {
         processManifestAndScheduleRefresh();
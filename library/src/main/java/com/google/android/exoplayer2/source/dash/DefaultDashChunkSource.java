@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.source.BehindLiveWindowException;
 import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkExtractorWrapper;
 import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.ChunkSource;
 import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
 import com.google.android.exoplayer2.source.chunk.InitializationChunk;
@@ -36,27 +37,45 @@ import com.google.android.exoplayer2.source.chunk.SingleSampleMediaChunk;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
 import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
 import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.trackselection.SegmentSizeAwareTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A default {@link DashChunkSource} implementation.
  */
-public class DefaultDashChunkSource implements DashChunkSource {
+public class DefaultDashChunkSource implements DashChunkSource, ChunkSource.LoadAbandonmentHandler {
 
   public static final class Factory implements DashChunkSource.Factory {
 
     private final DataSource.Factory dataSourceFactory;
+    private final boolean fastStartup;
 
+    /**
+     * @param dataSourceFactory A {@link DataSource.Factory} for the media data.
+     */
     public Factory(DataSource.Factory dataSourceFactory) {
+      this(dataSourceFactory, false);
+    }
+
+    /**
+     * @param dataSourceFactory A {@link DataSource.Factory} for the media data.
+     * @param fastStartup Whether the created sources should load initialization data in parallel,
+     *     as described in {@link DefaultDashChunkSource#DefaultDashChunkSource(LoaderErrorThrower,
+     *     DashManifest, int, int, TrackSelection, DataSource, long, DataSource.Factory)}.
+     */
+    public Factory(DataSource.Factory dataSourceFactory, boolean fastStartup) {
       this.dataSourceFactory = dataSourceFactory;
+      this.fastStartup = fastStartup;
     }
 
     @Override
@@ -65,17 +84,26 @@ public class DefaultDashChunkSource implements DashChunkSource {
         TrackSelection trackSelection, long elapsedRealtimeOffsetMs) {
       DataSource dataSource = dataSourceFactory.createDataSource();
       return new DefaultDashChunkSource(manifestLoaderErrorThrower, manifest, periodIndex,
-          adaptationSetIndex, trackSelection, dataSource, elapsedRealtimeOffsetMs);
+          adaptationSetIndex, trackSelection, dataSource, elapsedRealtimeOffsetMs,
+          fastStartup ? dataSourceFactory : null);
     }
 
   }
 
+  /**
+   * The number of representations other than the selected one whose initialization data is loaded
+   * in parallel in fast startup mode.
+   */
+  private static final int STARTUP_INITIALIZATION_PREFETCH_COUNT = 2;
+
   private final LoaderErrorThrower manifestLoaderErrorThrower;
   private final int adaptationSetIndex;
   private final TrackSelection trackSelection;
   private final RepresentationHolder[] representationHolders;
   private final DataSource dataSource;
+  private final PrefetchingDataSource startupDataSource;
   private final long elapsedRealtimeOffsetMs;
+  private final UpcomingSegmentSizeProvider segmentSizeProvider;
 
   private DashManifest manifest;
   private int periodIndex;
@@ -97,6 +125,35 @@ public class DefaultDashChunkSource implements DashChunkSource {
   public DefaultDashChunkSource(LoaderErrorThrower manifestLoaderErrorThrower,
       DashManifest manifest, int periodIndex, int adaptationSetIndex, TrackSelection trackSelection,
       DataSource dataSource, long elapsedRealtimeOffsetMs) {
+    this(manifestLoaderErrorThrower, manifest, periodIndex, adaptationSetIndex, trackSelection,
+        dataSource, elapsedRealtimeOffsetMs, null);
+  }
+
+  /**
+   * Constructs a source that optionally uses a fast startup mode, in which the load of the
+   * initialization and index data of the selected representation is not serialized with loads
+   * that would otherwise follow it. Whenever initialization data is requested, the first media
+   * segment (if its location is already known) and the initialization data of the
+   * representations adjacent to the selected one are requested in parallel from
+   * {@code startupDataSourceFactory}. These are then served from memory when they're needed,
+   * including when the selection switches to an adjacent representation as it ramps up.
+   *
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param periodIndex The index of the period in the manifest.
+   * @param adaptationSetIndex The index of the adaptation set in the period.
+   * @param trackSelection The track selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param elapsedRealtimeOffsetMs If known, an estimate of the instantaneous difference between
+   *     server-side unix time and {@link SystemClock#elapsedRealtime()} in milliseconds, specified
+   *     as the server's unix time minus the local elapsed time. If unknown, set to 0.
+   * @param startupDataSourceFactory A {@link DataSource.Factory} for the parallel requests made
+   *     in fast startup mode, or null to disable fast startup mode.
+   */
+  public DefaultDashChunkSource(LoaderErrorThrower manifestLoaderErrorThrower,
+      DashManifest manifest, int periodIndex, int adaptationSetIndex, TrackSelection trackSelection,
+      DataSource dataSource, long elapsedRealtimeOffsetMs,
+      DataSource.Factory startupDataSourceFactory) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.adaptationSetIndex = adaptationSetIndex;
@@ -104,6 +161,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
     this.dataSource = dataSource;
     this.periodIndex = periodIndex;
     this.elapsedRealtimeOffsetMs = elapsedRealtimeOffsetMs;
+    segmentSizeProvider = new UpcomingSegmentSizeProvider();
+    startupDataSource = startupDataSourceFactory == null ? null
+        : new PrefetchingDataSource(startupDataSourceFactory,
+            STARTUP_INITIALIZATION_PREFETCH_COUNT + 1,
+            PrefetchingDataSource.DEFAULT_MAX_BUFFERED_BYTES_PER_REQUEST);
 
     long periodDurationUs = manifest.getPeriodDurationUs(periodIndex);
     List<Representation> representations = getRepresentations();
@@ -154,7 +216,13 @@ public class DefaultDashChunkSource implements DashChunkSource {
     }
 
     long bufferedDurationUs = previous != null ? (previous.endTimeUs - playbackPositionUs) : 0;
-    trackSelection.updateSelectedTrack(bufferedDurationUs);
+    if (trackSelection instanceof SegmentSizeAwareTrackSelection) {
+      segmentSizeProvider.positionUs = previous != null ? previous.endTimeUs : playbackPositionUs;
+      ((SegmentSizeAwareTrackSelection) trackSelection).updateSelectedTrack(bufferedDurationUs,
+          segmentSizeProvider);
+    } else {
+      trackSelection.updateSelectedTrack(bufferedDurationUs);
+    }
 
     RepresentationHolder representationHolder =
         representationHolders[trackSelection.getSelectedIndex()];
@@ -170,34 +238,23 @@ public class DefaultDashChunkSource implements DashChunkSource {
     if (segmentIndex == null) {
       pendingIndexUri = selectedRepresentation.getIndexUri();
     }
+    long nowUs = getNowUnixTimeUs();
     if (pendingInitializationUri != null || pendingIndexUri != null) {
       // We have initialization and/or index requests to make.
-      Chunk initializationChunk = newInitializationChunk(representationHolder, dataSource,
+      Chunk initializationChunk = newInitializationChunk(representationHolder,
+          startupDataSource != null ? startupDataSource : dataSource,
           trackSelection.getSelectedFormat(), trackSelection.getSelectionReason(),
           trackSelection.getSelectionData(), pendingInitializationUri, pendingIndexUri);
       out.chunk = initializationChunk;
+      if (startupDataSource != null) {
+        prefetchStartupData(initializationChunk.dataSpec,
+            previous == null ? playbackPositionUs : C.TIME_UNSET, nowUs);
+      }
       return;
     }
 
-    long nowUs = getNowUnixTimeUs();
-    int firstAvailableSegmentNum = representationHolder.getFirstSegmentNum();
-    int lastAvailableSegmentNum = representationHolder.getLastSegmentNum();
-    boolean indexUnbounded = lastAvailableSegmentNum == DashSegmentIndex.INDEX_UNBOUNDED;
-    if (indexUnbounded) {
-      // The index is itself unbounded. We need to use the current time to calculate the range of
-      // available segments.
-      long liveEdgeTimeUs = nowUs - manifest.availabilityStartTime * 1000;
-      long periodStartUs = manifest.getPeriod(periodIndex).startMs * 1000;
-      long liveEdgeTimeInPeriodUs = liveEdgeTimeUs - periodStartUs;
-      if (manifest.timeShiftBufferDepth != C.TIME_UNSET) {
-        long bufferDepthUs = manifest.timeShiftBufferDepth * 1000;
-        firstAvailableSegmentNum = Math.max(firstAvailableSegmentNum,
-            representationHolder.getSegmentNum(liveEdgeTimeInPeriodUs - bufferDepthUs));
-      }
-      // getSegmentNum(liveEdgeTimestampUs) will not be completed yet, so subtract one to get the
-      // index of the last completed segment.
-      lastAvailableSegmentNum = representationHolder.getSegmentNum(liveEdgeTimeInPeriodUs) - 1;
-    }
+    int firstAvailableSegmentNum = getFirstAvailableSegmentNum(representationHolder, nowUs);
+    int lastAvailableSegmentNum = getLastAvailableSegmentNum(representationHolder, nowUs);
 
     int segmentNum;
     if (previous == null) {
@@ -219,10 +276,19 @@ public class DefaultDashChunkSource implements DashChunkSource {
       return;
     }
 
-    Chunk nextMediaChunk = newMediaChunk(representationHolder, dataSource,
+    // In fast startup mode, the first segment may have been requested from the startup source.
+    DataSource mediaDataSource = previous == null && startupDataSource != null ? startupDataSource
+        : dataSource;
+    Chunk nextMediaChunk = newMediaChunk(representationHolder, mediaDataSource,
         trackSelection.getSelectedFormat(), trackSelection.getSelectionReason(),
         trackSelection.getSelectionData(), sampleFormat, segmentNum);
     out.chunk = nextMediaChunk;
+    if (dataSource instanceof PrefetchingDataSource) {
+      int lastSegmentNumToLoad = missingLastSegment ? lastAvailableSegmentNum - 1
+          : lastAvailableSegmentNum;
+      maybePrefetchSegments((PrefetchingDataSource) dataSource, representationHolder, segmentNum,
+          lastSegmentNumToLoad);
+    }
   }
 
   @Override
@@ -270,6 +336,12 @@ public class DefaultDashChunkSource implements DashChunkSource {
         trackSelection.indexOf(chunk.trackFormat), e);
   }
 
+  @Override
+  public boolean onChunkLoadTooSlow(MediaChunk chunk) {
+    return ChunkedTrackBlacklistUtil.maybeBlacklistSlowTrack(trackSelection,
+        trackSelection.indexOf(chunk.trackFormat));
+  }
+
   // Private methods.
 
   private List<Representation> getRepresentations() {
@@ -284,9 +356,99 @@ public class DefaultDashChunkSource implements DashChunkSource {
     }
   }
 
-  private Chunk newInitializationChunk(RepresentationHolder representationHolder,
-      DataSource dataSource, Format trackFormat, int trackSelectionReason,
-      Object trackSelectionData, RangedUri initializationUri, RangedUri indexUri) {
+  private int getFirstAvailableSegmentNum(RepresentationHolder representationHolder, long nowUs) {
+    int firstAvailableSegmentNum = representationHolder.getFirstSegmentNum();
+    if (representationHolder.getLastSegmentNum() == DashSegmentIndex.INDEX_UNBOUNDED
+        && manifest.timeShiftBufferDepth != C.TIME_UNSET) {
+      // The index is itself unbounded. We need to use the current time to calculate the range of
+      // available segments.
+      long bufferDepthUs = manifest.timeShiftBufferDepth * 1000;
+      firstAvailableSegmentNum = Math.max(firstAvailableSegmentNum,
+          representationHolder.getSegmentNum(getLiveEdgeTimeInPeriodUs(nowUs) - bufferDepthUs));
+    }
+    return firstAvailableSegmentNum;
+  }
+
+  private int getLastAvailableSegmentNum(RepresentationHolder representationHolder, long nowUs) {
+    int lastAvailableSegmentNum = representationHolder.getLastSegmentNum();
+    if (lastAvailableSegmentNum == DashSegmentIndex.INDEX_UNBOUNDED) {
+      // getSegmentNum(liveEdgeTimestampUs) will not be completed yet, so subtract one to get the
+      // index of the last completed segment.
+      lastAvailableSegmentNum =
+          representationHolder.getSegmentNum(getLiveEdgeTimeInPeriodUs(nowUs)) - 1;
+    }
+    return lastAvailableSegmentNum;
+  }
+
+  private long getLiveEdgeTimeInPeriodUs(long nowUs) {
+    long liveEdgeTimeUs = nowUs - manifest.availabilityStartTime * 1000;
+    long periodStartUs = manifest.getPeriod(periodIndex).startMs * 1000;
+    return liveEdgeTimeUs - periodStartUs;
+  }
+
+  /**
+   * Announces the requests that should be made in parallel with a request for initialization data
+   * in fast startup mode. These are the first media segment of the selected representation, and
+   * the initialization data of the representations adjacent to it.
+   *
+   * @param initializationDataSpec The {@link DataSpec} of the initialization request.
+   * @param startPositionUs The position from which media will be loaded once the initialization
+   *     data has been loaded, or {@link C#TIME_UNSET} if loading is continuing from a previous
+   *     segment.
+   * @param nowUs The current server-side unix time, in microseconds.
+   */
+  private void prefetchStartupData(DataSpec initializationDataSpec, long startPositionUs,
+      long nowUs) {
+    int selectedIndex = trackSelection.getSelectedIndex();
+    RepresentationHolder representationHolder = representationHolders[selectedIndex];
+    List<DataSpec> followingDataSpecs = new ArrayList<>();
+    if (startPositionUs != C.TIME_UNSET && representationHolder.segmentIndex != null) {
+      // The location of the first segment is already known.
+      int firstAvailableSegmentNum = getFirstAvailableSegmentNum(representationHolder, nowUs);
+      int lastAvailableSegmentNum = getLastAvailableSegmentNum(representationHolder, nowUs);
+      if (firstAvailableSegmentNum <= lastAvailableSegmentNum) {
+        int segmentNum = Util.constrainValue(representationHolder.getSegmentNum(startPositionUs),
+            firstAvailableSegmentNum, lastAvailableSegmentNum);
+        followingDataSpecs.add(newSegmentDataSpec(representationHolder, segmentNum));
+      }
+    }
+    // Alternate between higher and lower quality representations, starting with the higher since
+    // the selection is most likely to ramp up.
+    int prefetchCount = 0;
+    for (int offset = 1; offset < representationHolders.length
+        && prefetchCount < STARTUP_INITIALIZATION_PREFETCH_COUNT; offset++) {
+      for (int index = selectedIndex - offset; index <= selectedIndex + offset
+          && prefetchCount < STARTUP_INITIALIZATION_PREFETCH_COUNT; index += 2 * offset) {
+        if (index >= 0 && index < representationHolders.length) {
+          DataSpec dataSpec = newInitializationDataSpec(representationHolders[index]);
+          if (dataSpec != null) {
+            followingDataSpecs.add(dataSpec);
+            prefetchCount++;
+          }
+        }
+      }
+    }
+    startupDataSource.prefetch(initializationDataSpec, followingDataSpecs);
+  }
+
+  /**
+   * Returns a {@link DataSpec} for the initialization and/or index data of a representation that
+   * hasn't yet been loaded, or null if there's nothing to load.
+   */
+  private static DataSpec newInitializationDataSpec(RepresentationHolder representationHolder) {
+    Representation representation = representationHolder.representation;
+    RangedUri initializationUri = representationHolder.sampleFormat == null
+        ? representation.getInitializationUri() : null;
+    RangedUri indexUri = representationHolder.segmentIndex == null
+        ? representation.getIndexUri() : null;
+    if (initializationUri == null && indexUri == null) {
+      return null;
+    }
+    return newInitializationDataSpec(representationHolder, initializationUri, indexUri);
+  }
+
+  private static DataSpec newInitializationDataSpec(RepresentationHolder representationHolder,
+      RangedUri initializationUri, RangedUri indexUri) {
     RangedUri requestUri;
     if (initializationUri != null) {
       // It's common for initialization and index data to be stored adjacently. Attempt to merge
@@ -298,21 +460,49 @@ public class DefaultDashChunkSource implements DashChunkSource {
     } else {
       requestUri = indexUri;
     }
-    DataSpec dataSpec = new DataSpec(requestUri.getUri(), requestUri.start, requestUri.length,
-        representationHolder.representation.getCacheKey());
+    return new DataSpec(requestUri.getUri(), requestUri.start, requestUri.length,
+        representationHolder.representation.getInitializationCacheKey());
+  }
+
+  private Chunk newInitializationChunk(RepresentationHolder representationHolder,
+      DataSource dataSource, Format trackFormat, int trackSelectionReason,
+      Object trackSelectionData, RangedUri initializationUri, RangedUri indexUri) {
+    DataSpec dataSpec = newInitializationDataSpec(representationHolder, initializationUri,
+        indexUri);
     return new InitializationChunk(dataSource, dataSpec, trackFormat,
         trackSelectionReason, trackSelectionData, representationHolder.extractorWrapper);
   }
 
+  /**
+   * Announces the segment being loaded and those that follow it to a {@link PrefetchingDataSource},
+   * so that the following segments can be requested in parallel. Segments of other representations
+   * that were previously announced are canceled, which is what happens following a track switch.
+   */
+  private static void maybePrefetchSegments(PrefetchingDataSource prefetchingDataSource,
+      RepresentationHolder representationHolder, int segmentNum, int lastSegmentNum) {
+    int count = Math.min(lastSegmentNum - segmentNum, prefetchingDataSource.getMaxPrefetchCount());
+    List<DataSpec> followingDataSpecs = new ArrayList<>(Math.max(count, 0));
+    for (int i = 1; i <= count; i++) {
+      followingDataSpecs.add(newSegmentDataSpec(representationHolder, segmentNum + i));
+    }
+    prefetchingDataSource.prefetch(newSegmentDataSpec(representationHolder, segmentNum),
+        followingDataSpecs);
+  }
+
+  private static DataSpec newSegmentDataSpec(RepresentationHolder representationHolder,
+      int segmentNum) {
+    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
+    return new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
+        representationHolder.representation.getSegmentCacheKey(segmentNum));
+  }
+
   private Chunk newMediaChunk(RepresentationHolder representationHolder, DataSource dataSource,
       Format trackFormat, int trackSelectionReason,
       Object trackSelectionData, Format sampleFormat, int segmentNum) {
     Representation representation = representationHolder.representation;
     long startTimeUs = representationHolder.getSegmentStartTimeUs(segmentNum);
     long endTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
-    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
-    DataSpec dataSpec = new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
-        representation.getCacheKey());
+    DataSpec dataSpec = newSegmentDataSpec(representationHolder, segmentNum);
 
     if (representationHolder.extractorWrapper == null) {
       return new SingleSampleMediaChunk(dataSource, dataSpec, trackFormat, trackSelectionReason,
@@ -325,6 +515,20 @@ public class DefaultDashChunkSource implements DashChunkSource {
     }
   }
 
+  // Private classes.
+
+  private final class UpcomingSegmentSizeProvider
+      implements SegmentSizeAwareTrackSelection.SegmentSizeProvider {
+
+    public long positionUs;
+
+    @Override
+    public int getUpcomingBitrate(int index, long durationUs) {
+      return representationHolders[index].getUpcomingBitrate(positionUs, durationUs);
+    }
+
+  }
+
   // Protected classes.
 
   protected static final class RepresentationHolder {
@@ -435,6 +639,47 @@ public class DefaultDashChunkSource implements DashChunkSource {
       return segmentIndex.getSegmentUrl(segmentNum - segmentNumShift);
     }
 
+    /**
+     * Returns the average bitrate of the segments starting with the one containing the specified
+     * position, as determined by their sizes.
+     *
+     * @param positionUs The position from which to start, in microseconds.
+     * @param durationUs The duration of media whose segments should be considered, in
+     *     microseconds.
+     * @return The average bitrate in bits per second, or {@link Format#NO_VALUE} if the index
+     *     hasn't been loaded or doesn't define the sizes of the segments.
+     */
+    public int getUpcomingBitrate(long positionUs, long durationUs) {
+      if (segmentIndex == null) {
+        return Format.NO_VALUE;
+      }
+      int lastSegmentNum = getLastSegmentNum();
+      if (lastSegmentNum == DashSegmentIndex.INDEX_UNBOUNDED) {
+        // Unbounded indices are defined by templates, which don't define segment sizes.
+        return Format.NO_VALUE;
+      }
+      int segmentNum = Math.max(getFirstSegmentNum(), getSegmentNum(positionUs));
+      if (segmentNum > lastSegmentNum) {
+        return Format.NO_VALUE;
+      }
+      long startTimeUs = getSegmentStartTimeUs(segmentNum);
+      long endTimeUs = startTimeUs;
+      long totalLength = 0;
+      while (segmentNum <= lastSegmentNum && endTimeUs < positionUs + durationUs) {
+        RangedUri segmentUri = getSegmentUrl(segmentNum);
+        if (segmentUri.length == C.LENGTH_UNSET) {
+          return Format.NO_VALUE;
+        }
+        totalLength += segmentUri.length;
+        endTimeUs = getSegmentEndTimeUs(segmentNum);
+        segmentNum++;
+      }
+      if (endTimeUs <= startTimeUs) {
+        return Format.NO_VALUE;
+      }
+      return (int) (totalLength * 8 * C.MICROS_PER_SECOND / (endTimeUs - startTimeUs));
+    }
+
     private static boolean mimeTypeIsWebm(String mimeType) {
       return mimeType.startsWith(MimeTypes.VIDEO_WEBM) || mimeType.startsWith(MimeTypes.AUDIO_WEBM)
           || mimeType.startsWith(MimeTypes.APPLICATION_WEBM);
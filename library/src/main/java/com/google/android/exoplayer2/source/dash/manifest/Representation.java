@@ -130,12 +130,31 @@ public abstract class Representation {
 
   /**
    * Returns a cache key for the representation, in the format
-   * {@code contentId + "." + format.id + "." + revisionId}.
+   * {@code contentId + "." + format.id + "." + revisionId}, or null if the representation's
+   * segments should each be cached under their own uri.
    */
   public String getCacheKey() {
     return cacheKey;
   }
 
+  /**
+   * Returns the cache key for the representation's initialization data, or null if it should be
+   * cached under its uri.
+   */
+  public String getInitializationCacheKey() {
+    return getCacheKey();
+  }
+
+  /**
+   * Returns the cache key for a segment of the representation, or null if it should be cached
+   * under its uri.
+   *
+   * @param segmentNum The segment number.
+   */
+  public String getSegmentCacheKey(int segmentNum) {
+    return getCacheKey();
+  }
+
   /**
    * A DASH representation consisting of a single segment.
    */
@@ -216,6 +235,7 @@ public abstract class Representation {
       implements DashSegmentIndex {
 
     private final MultiSegmentBase segmentBase;
+    private final String customCacheKey;
 
     /**
      * @param contentId Identifies the piece of content to which this representation belongs.
@@ -228,6 +248,28 @@ public abstract class Representation {
         MultiSegmentBase segmentBase, String customCacheKey) {
       super(contentId, revisionId, format, segmentBase, customCacheKey);
       this.segmentBase = segmentBase;
+      this.customCacheKey = customCacheKey;
+    }
+
+    /**
+     * Returns the custom cache key, or null if none was specified. Since each segment is a separate
+     * resource, a key shared by the representation would cause different segments to overwrite one
+     * another in the cache. Segments are instead cached under keys derived from this one, or under
+     * their own uris if it's null.
+     */
+    @Override
+    public String getCacheKey() {
+      return customCacheKey;
+    }
+
+    @Override
+    public String getInitializationCacheKey() {
+      return customCacheKey != null ? customCacheKey + ".init" : null;
+    }
+
+    @Override
+    public String getSegmentCacheKey(int segmentNum) {
+      return customCacheKey != null ? customCacheKey + "." + segmentNum : null;
     }
 
     @Override
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+/**
+ * Uniquely identifies a {@link Representation} in a {@link DashManifest}.
+ */
+public final class RepresentationKey {
+
+  /**
+   * The index of the {@link Period} in {@link DashManifest}.
+   */
+  public final int periodIndex;
+  /**
+   * The index of the {@link AdaptationSet} in {@link Period#adaptationSets}.
+   */
+  public final int adaptationSetIndex;
+  /**
+   * The index of the {@link Representation} in {@link AdaptationSet#representations}.
+   */
+  public final int representationIndex;
+
+  /**
+   * @param periodIndex The index of the {@link Period} in {@link DashManifest}.
+   * @param adaptationSetIndex The index of the {@link AdaptationSet} in
+   *     {@link Period#adaptationSets}.
+   * @param representationIndex The index of the {@link Representation} in
+   *     {@link AdaptationSet#representations}.
+   */
+  public RepresentationKey(int periodIndex, int adaptationSetIndex, int representationIndex) {
+    this.periodIndex = periodIndex;
+    this.adaptationSetIndex = adaptationSetIndex;
+    this.representationIndex = representationIndex;
+  }
+
+  @Override
+  public String toString() {
+    return periodIndex + "." + adaptationSetIndex + "." + representationIndex;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    RepresentationKey other = (RepresentationKey) obj;
+    return periodIndex == other.periodIndex && adaptationSetIndex == other.adaptationSetIndex
+        && representationIndex == other.representationIndex;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = periodIndex;
+    result = 31 * result + adaptationSetIndex;
+    result = 31 * result + representationIndex;
+    return result;
+  }
+
+}
@@ -38,16 +38,20 @@ import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
 import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
+import com.google.android.exoplayer2.trackselection.SegmentSizeAwareTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.UriUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -115,6 +119,7 @@ import java.util.Locale;
   private final HlsMediaPlaylist[] variantPlaylists;
   private final TrackGroup trackGroup;
   private final long[] variantLastPlaylistLoadTimesMs;
+  private final UpcomingSegmentSizeProvider segmentSizeProvider;
 
   private byte[] scratchSpace;
   private boolean live;
@@ -149,6 +154,7 @@ import java.util.Locale;
     playlistParser = new HlsPlaylistParser();
     variantPlaylists = new HlsMediaPlaylist[variants.length];
     variantLastPlaylistLoadTimesMs = new long[variants.length];
+    segmentSizeProvider = new UpcomingSegmentSizeProvider();
 
     Format[] variantFormats = new Format[variants.length];
     int[] initialTrackSelection = new int[variants.length];
@@ -231,7 +237,13 @@ import java.util.Locale;
     // require downloading overlapping segments.
     long bufferedDurationUs = previous == null ? 0
         : Math.max(0, previous.getAdjustedStartTimeUs() - playbackPositionUs);
-    trackSelection.updateSelectedTrack(bufferedDurationUs);
+    if (trackSelection instanceof SegmentSizeAwareTrackSelection) {
+      segmentSizeProvider.positionUs = previous == null ? playbackPositionUs : previous.endTimeUs;
+      ((SegmentSizeAwareTrackSelection) trackSelection).updateSelectedTrack(bufferedDurationUs,
+          segmentSizeProvider);
+    } else {
+      trackSelection.updateSelectedTrack(bufferedDurationUs);
+    }
     int newVariantIndex = trackSelection.getSelectedIndexInTrackGroup();
 
     boolean switchingVariant = oldVariantIndex != newVariantIndex;
@@ -422,6 +434,10 @@ import java.util.Locale;
         startTimeUs, endTimeUs, chunkMediaSequence, segment.discontinuitySequenceNumber,
         isTimestampMaster, timestampAdjuster, extractor, extractorNeedsInit, switchingVariant,
         encryptionKey, encryptionIv);
+    if (dataSource instanceof PrefetchingDataSource) {
+      maybePrefetchSegments((PrefetchingDataSource) dataSource, dataSpec, mediaPlaylist,
+          chunkIndex);
+    }
   }
 
   /**
@@ -515,6 +531,26 @@ import java.util.Locale;
         format);
   }
 
+  /**
+   * Announces the segment being loaded and those that follow it to a {@link PrefetchingDataSource},
+   * so that the following segments can be requested in parallel. Segments of other variants that
+   * were previously announced are canceled, which is what happens following a variant switch. Note
+   * that the raw segment data is prefetched, and so decryption is unaffected.
+   */
+  private static void maybePrefetchSegments(PrefetchingDataSource prefetchingDataSource,
+      DataSpec dataSpec, HlsMediaPlaylist mediaPlaylist, int segmentIndex) {
+    int count = Math.min(mediaPlaylist.segments.size() - segmentIndex - 1,
+        prefetchingDataSource.getMaxPrefetchCount());
+    List<DataSpec> followingDataSpecs = new ArrayList<>(Math.max(count, 0));
+    for (int i = 1; i <= count; i++) {
+      Segment segment = mediaPlaylist.segments.get(segmentIndex + i);
+      Uri segmentUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url);
+      followingDataSpecs.add(new DataSpec(segmentUri, segment.byterangeOffset,
+          segment.byterangeLength, null));
+    }
+    prefetchingDataSource.prefetch(dataSpec, followingDataSpecs);
+  }
+
   private long msToRerequestLiveMediaPlaylist(int variantIndex) {
     HlsMediaPlaylist mediaPlaylist = variantPlaylists[variantIndex];
     long timeSinceLastMediaPlaylistLoadMs =
@@ -576,6 +612,44 @@ import java.util.Locale;
 
   // Private classes.
 
+  /**
+   * Provides the sizes of upcoming segments from the byte ranges in loaded media playlists.
+   */
+  private final class UpcomingSegmentSizeProvider
+      implements SegmentSizeAwareTrackSelection.SegmentSizeProvider {
+
+    public long positionUs;
+
+    @Override
+    public int getUpcomingBitrate(int index, long durationUs) {
+      HlsMediaPlaylist mediaPlaylist =
+          variantPlaylists[trackSelection.getIndexInTrackGroup(index)];
+      if (live || mediaPlaylist == null || mediaPlaylist.segments.isEmpty()) {
+        // Segment start times aren't comparable between the playlists of live variants.
+        return Format.NO_VALUE;
+      }
+      List<Segment> segments = mediaPlaylist.segments;
+      int segmentIndex = Util.binarySearchFloor(segments, positionUs, true, true);
+      long startTimeUs = segments.get(segmentIndex).startTimeUs;
+      long endTimeUs = startTimeUs;
+      long totalLength = 0;
+      for (; segmentIndex < segments.size() && endTimeUs < positionUs + durationUs;
+          segmentIndex++) {
+        Segment segment = segments.get(segmentIndex);
+        if (segment.byterangeLength == C.LENGTH_UNSET) {
+          return Format.NO_VALUE;
+        }
+        totalLength += segment.byterangeLength;
+        endTimeUs = segment.startTimeUs + (long) (segment.durationSecs * C.MICROS_PER_SECOND);
+      }
+      if (endTimeUs <= startTimeUs) {
+        return Format.NO_VALUE;
+      }
+      return (int) (totalLength * 8 * C.MICROS_PER_SECOND / (endTimeUs - startTimeUs));
+    }
+
+  }
+
   /**
    * A {@link TrackSelection} to use for initialization.
    */
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.HlsUrl;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.SegmentDownloader;
+import com.google.android.exoplayer2.util.UriUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Downloads the variants and renditions of an HLS stream, identified by the urls of their media
+ * playlists as they appear in the master playlist, for offline playback through an
+ * {@link HlsMediaSource}. If the stream doesn't have a master playlist then the keys are ignored.
+ *
+ * @see SegmentDownloader
+ */
+public final class HlsDownloader extends SegmentDownloader<HlsPlaylist, String> {
+
+  private final HlsPlaylistParser playlistParser;
+
+  /**
+   * @param manifestUri The {@link Uri} of the master or media playlist.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   */
+  public HlsDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory) {
+    this(manifestUri, cache, upstreamDataSourceFactory, DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * @param manifestUri The {@link Uri} of the master or media playlist.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   * @param parallelism The number of segments that are downloaded in parallel.
+   */
+  public HlsDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory, int parallelism) {
+    super(manifestUri, cache, upstreamDataSourceFactory, parallelism);
+    playlistParser = new HlsPlaylistParser();
+  }
+
+  @Override
+  protected HlsPlaylist loadManifest(Uri uri) throws IOException, InterruptedException {
+    return loadManifest(uri, playlistParser);
+  }
+
+  @Override
+  protected List<Segment> getSegments(HlsPlaylist playlist, String[] keys)
+      throws IOException, InterruptedException {
+    List<Segment> segments = new ArrayList<>();
+    if (playlist.type == HlsPlaylist.TYPE_MEDIA) {
+      addSegments((HlsMediaPlaylist) playlist, segments);
+      return segments;
+    }
+    HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) playlist;
+    List<HlsUrl> hlsUrls = new ArrayList<>();
+    hlsUrls.addAll(masterPlaylist.variants);
+    hlsUrls.addAll(masterPlaylist.audios);
+    hlsUrls.addAll(masterPlaylist.subtitles);
+    List<String> selectedUrls = keys == null ? null : Arrays.asList(keys);
+    for (int i = 0; i < hlsUrls.size(); i++) {
+      String url = hlsUrls.get(i).url;
+      if (selectedUrls != null && !selectedUrls.contains(url)) {
+        continue;
+      }
+      // Media playlists are loaded through loadManifest so that they're cached for playback.
+      HlsPlaylist mediaPlaylist = loadManifest(UriUtil.resolveToUri(masterPlaylist.baseUri, url));
+      if (mediaPlaylist.type != HlsPlaylist.TYPE_MEDIA) {
+        throw new IOException("Expected a media playlist: " + url);
+      }
+      addSegments((HlsMediaPlaylist) mediaPlaylist, segments);
+    }
+    return segments;
+  }
+
+  // Internal methods.
+
+  /**
+   * Adds the segments of a media playlist, using the same {@link DataSpec}s as
+   * {@link HlsChunkSource}.
+   */
+  private static void addSegments(HlsMediaPlaylist mediaPlaylist, List<Segment> segments)
+      throws IOException {
+    if (mediaPlaylist.live) {
+      throw new IOException("Live streams can't be downloaded.");
+    }
+    String baseUri = mediaPlaylist.baseUri;
+    HlsMediaPlaylist.Segment initializationSegment = mediaPlaylist.initializationSegment;
+    if (initializationSegment != null) {
+      segments.add(new Segment(0, new DataSpec(
+          UriUtil.resolveToUri(baseUri, initializationSegment.url),
+          initializationSegment.byterangeOffset, initializationSegment.byterangeLength, null)));
+    }
+    HashSet<Uri> encryptionKeyUris = new HashSet<>();
+    for (HlsMediaPlaylist.Segment segment : mediaPlaylist.segments) {
+      if (segment.isEncrypted) {
+        Uri keyUri = UriUtil.resolveToUri(baseUri, segment.encryptionKeyUri);
+        if (encryptionKeyUris.add(keyUri)) {
+          segments.add(new Segment(segment.startTimeUs, new DataSpec(keyUri, 0, C.LENGTH_UNSET,
+              null, DataSpec.FLAG_ALLOW_GZIP)));
+        }
+      }
+      segments.add(new Segment(segment.startTimeUs, new DataSpec(
+          UriUtil.resolveToUri(baseUri, segment.url), segment.byterangeOffset,
+          segment.byterangeLength, null)));
+    }
+  }
+
+}
@@ -25,6 +25,7 @@ import com.google.android.exoplayer2.source.BehindLiveWindowException;
 import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkExtractorWrapper;
 import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.ChunkSource;
 import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
@@ -40,7 +41,7 @@ import java.util.List;
 /**
  * A default {@link SsChunkSource} implementation.
  */
-public class DefaultSsChunkSource implements SsChunkSource {
+public class DefaultSsChunkSource implements SsChunkSource, ChunkSource.LoadAbandonmentHandler {
 
   public static final class Factory implements SsChunkSource.Factory {
 
@@ -208,6 +209,14 @@ public class DefaultSsChunkSource implements SsChunkSource {
         trackSelection.indexOf(chunk.trackFormat), e);
   }
 
+  // LoadAbandonmentHandler implementation.
+
+  @Override
+  public boolean onChunkLoadTooSlow(MediaChunk chunk) {
+    return ChunkedTrackBlacklistUtil.maybeBlacklistSlowTrack(trackSelection,
+        trackSelection.indexOf(chunk.trackFormat));
+  }
+
   // Private methods.
 
   private static MediaChunk newMediaChunk(Format format, DataSource dataSource, Uri uri,
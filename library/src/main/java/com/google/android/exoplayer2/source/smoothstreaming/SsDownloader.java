@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.smoothstreaming;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.StreamElement;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifestParser;
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.TrackKey;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.SegmentDownloader;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downloads the tracks of a SmoothStreaming stream, identified by {@link TrackKey}s, for offline
+ * playback through an {@link SsMediaSource}.
+ *
+ * @see SegmentDownloader
+ */
+public final class SsDownloader extends SegmentDownloader<SsManifest, TrackKey> {
+
+  private final SsManifestParser manifestParser;
+
+  /**
+   * @param manifestUri The {@link Uri} of the manifest, as passed to {@link SsMediaSource}.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   */
+  public SsDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory) {
+    this(manifestUri, cache, upstreamDataSourceFactory, DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * @param manifestUri The {@link Uri} of the manifest, as passed to {@link SsMediaSource}.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   * @param parallelism The number of segments that are downloaded in parallel.
+   */
+  public SsDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory, int parallelism) {
+    // The manifest is requested from the same uri as by SsMediaSource, so that it's cached there.
+    super(Util.toLowerInvariant(manifestUri.getLastPathSegment()).equals("manifest")
+        ? manifestUri : Uri.withAppendedPath(manifestUri, "Manifest"), cache,
+        upstreamDataSourceFactory, parallelism);
+    manifestParser = new SsManifestParser();
+  }
+
+  @Override
+  protected SsManifest loadManifest(Uri uri) throws IOException, InterruptedException {
+    return loadManifest(uri, manifestParser);
+  }
+
+  @Override
+  protected List<Segment> getSegments(SsManifest manifest, TrackKey[] keys) throws IOException {
+    if (manifest.isLive) {
+      throw new IOException("Live streams can't be downloaded.");
+    }
+    List<Segment> segments = new ArrayList<>();
+    if (keys != null) {
+      for (TrackKey key : keys) {
+        addSegments(manifest.streamElements[key.streamElementIndex], key.trackIndex, segments);
+      }
+    } else {
+      for (StreamElement streamElement : manifest.streamElements) {
+        for (int i = 0; i < streamElement.formats.length; i++) {
+          addSegments(streamElement, i, segments);
+        }
+      }
+    }
+    return segments;
+  }
+
+  // Internal methods.
+
+  /**
+   * Adds the chunks of a track, using the same {@link DataSpec}s as {@link DefaultSsChunkSource}.
+   */
+  private static void addSegments(StreamElement streamElement, int trackIndex,
+      List<Segment> segments) {
+    for (int i = 0; i < streamElement.chunkCount; i++) {
+      segments.add(new Segment(streamElement.getStartTimeUs(i),
+          new DataSpec(streamElement.buildRequestUri(trackIndex, i), 0, C.LENGTH_UNSET, null)));
+    }
+  }
+
+}
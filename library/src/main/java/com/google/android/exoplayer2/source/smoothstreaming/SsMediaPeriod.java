@@ -45,6 +45,8 @@ import java.util.ArrayList;
   private final SsChunkSource.Factory chunkSourceFactory;
   private final LoaderErrorThrower manifestLoaderErrorThrower;
   private final int minLoadableRetryCount;
+  private final long backBufferDurationUs;
+  private final int maxBackBufferSize;
   private final EventDispatcher eventDispatcher;
   private final Allocator allocator;
   private final TrackGroupArray trackGroups;
@@ -56,11 +58,14 @@ import java.util.ArrayList;
   private CompositeSequenceableLoader sequenceableLoader;
 
   public SsMediaPeriod(SsManifest manifest, SsChunkSource.Factory chunkSourceFactory,
-      int minLoadableRetryCount, EventDispatcher eventDispatcher,
-      LoaderErrorThrower manifestLoaderErrorThrower, Allocator allocator) {
+      int minLoadableRetryCount, long backBufferDurationUs, int maxBackBufferSize,
+      EventDispatcher eventDispatcher, LoaderErrorThrower manifestLoaderErrorThrower,
+      Allocator allocator) {
     this.chunkSourceFactory = chunkSourceFactory;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.backBufferDurationUs = backBufferDurationUs;
+    this.maxBackBufferSize = maxBackBufferSize;
     this.eventDispatcher = eventDispatcher;
     this.allocator = allocator;
 
@@ -186,7 +191,8 @@ import java.util.ArrayList;
     SsChunkSource chunkSource = chunkSourceFactory.createChunkSource(manifestLoaderErrorThrower,
         manifest, streamElementIndex, selection, trackEncryptionBoxes);
     return new ChunkSampleStream<>(manifest.streamElements[streamElementIndex].type, chunkSource,
-        this, allocator, positionUs, minLoadableRetryCount, eventDispatcher);
+        this, allocator, positionUs, minLoadableRetryCount, backBufferDurationUs,
+        maxBackBufferSize, eventDispatcher);
   }
 
   private static TrackGroupArray buildTrackGroups(SsManifest manifest) {
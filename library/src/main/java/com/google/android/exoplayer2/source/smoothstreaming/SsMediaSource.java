@@ -53,6 +53,16 @@ public final class SsMediaSource implements MediaSource,
    * which the default start position precedes the end of the live window.
    */
   public static final long DEFAULT_LIVE_PRESENTATION_DELAY_MS = 30000;
+  /**
+   * The default duration of media retained after it has been read, in milliseconds. Retention is
+   * disabled by default.
+   */
+  public static final long DEFAULT_BACK_BUFFER_DURATION_MS = 0;
+  /**
+   * The default maximum size of the media retained for each track after it has been read, in
+   * bytes. The size isn't limited by default.
+   */
+  public static final int DEFAULT_MAX_BACK_BUFFER_SIZE = Integer.MAX_VALUE;
 
   /**
    * The minimum period between manifest refreshes.
@@ -68,6 +78,8 @@ public final class SsMediaSource implements MediaSource,
   private final SsChunkSource.Factory chunkSourceFactory;
   private final int minLoadableRetryCount;
   private final long livePresentationDelayMs;
+  private final long backBufferDurationMs;
+  private final int maxBackBufferSize;
   private final EventDispatcher eventDispatcher;
   private final SsManifestParser manifestParser;
   private final ArrayList<SsMediaPeriod> mediaPeriods;
@@ -93,12 +105,39 @@ public final class SsMediaSource implements MediaSource,
       SsChunkSource.Factory chunkSourceFactory, int minLoadableRetryCount,
       long livePresentationDelayMs, Handler eventHandler,
       AdaptiveMediaSourceEventListener eventListener) {
+    this(manifestUri, dataSourceFactory, chunkSourceFactory, minLoadableRetryCount,
+        livePresentationDelayMs, DEFAULT_BACK_BUFFER_DURATION_MS, DEFAULT_MAX_BACK_BUFFER_SIZE,
+        eventHandler, eventListener);
+  }
+
+  /**
+   * @param manifestUri The manifest {@link Uri}.
+   * @param dataSourceFactory A factory for {@link DataSource} instances that will be used
+   *     to load (and refresh) the manifest.
+   * @param chunkSourceFactory A factory for {@link SsChunkSource} instances.
+   * @param minLoadableRetryCount The minimum number of times to retry if a loading error occurs.
+   * @param livePresentationDelayMs For live playbacks, the duration in milliseconds by which the
+   *     default start position should precede the end of the live window.
+   * @param backBufferDurationMs The duration of media to retain after it has been read, in
+   *     milliseconds. Seeks backward into the retained media are performed without loading.
+   * @param maxBackBufferSize The maximum size of the media retained for each track after it has
+   *     been read, in bytes. If retaining {@code backBufferDurationMs} of media would exceed this
+   *     size, the earliest media is discarded.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public SsMediaSource(Uri manifestUri, DataSource.Factory dataSourceFactory,
+      SsChunkSource.Factory chunkSourceFactory, int minLoadableRetryCount,
+      long livePresentationDelayMs, long backBufferDurationMs, int maxBackBufferSize,
+      Handler eventHandler, AdaptiveMediaSourceEventListener eventListener) {
     this.manifestUri = Util.toLowerInvariant(manifestUri.getLastPathSegment()).equals("manifest")
         ? manifestUri : Uri.withAppendedPath(manifestUri, "Manifest");
     this.dataSourceFactory = dataSourceFactory;
     this.chunkSourceFactory = chunkSourceFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.livePresentationDelayMs = livePresentationDelayMs;
+    this.backBufferDurationMs = backBufferDurationMs;
+    this.maxBackBufferSize = maxBackBufferSize;
     this.eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     manifestParser = new SsManifestParser();
     mediaPeriods = new ArrayList<>();
@@ -124,7 +163,8 @@ public final class SsMediaSource implements MediaSource,
   public MediaPeriod createPeriod(int index, Allocator allocator, long positionUs) {
     Assertions.checkArgument(index == 0);
     SsMediaPeriod period = new SsMediaPeriod(manifest, chunkSourceFactory, minLoadableRetryCount,
-        eventDispatcher, manifestLoader, allocator);
+        C.msToUs(backBufferDurationMs), maxBackBufferSize, eventDispatcher, manifestLoader,
+        allocator);
     mediaPeriods.add(period);
     return period;
   }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.smoothstreaming.manifest;
+
+import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.StreamElement;
+
+/**
+ * Uniquely identifies a track in a {@link SsManifest}.
+ */
+public final class TrackKey {
+
+  /**
+   * The index of the {@link StreamElement} in {@link SsManifest#streamElements}.
+   */
+  public final int streamElementIndex;
+  /**
+   * The index of the track in {@link StreamElement#formats}.
+   */
+  public final int trackIndex;
+
+  /**
+   * @param streamElementIndex The index of the {@link StreamElement} in
+   *     {@link SsManifest#streamElements}.
+   * @param trackIndex The index of the track in {@link StreamElement#formats}.
+   */
+  public TrackKey(int streamElementIndex, int trackIndex) {
+    this.streamElementIndex = streamElementIndex;
+    this.trackIndex = trackIndex;
+  }
+
+  @Override
+  public String toString() {
+    return streamElementIndex + "." + trackIndex;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    TrackKey other = (TrackKey) obj;
+    return streamElementIndex == other.streamElementIndex && trackIndex == other.trackIndex;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * streamElementIndex + trackIndex;
+  }
+
+}
@@ -61,6 +61,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
 
   private boolean inputStreamEnded;
   private boolean outputStreamEnded;
+  private boolean waitingForDecoder;
   private SubtitleDecoder decoder;
   private SubtitleInputBuffer nextInputBuffer;
   private SubtitleOutputBuffer subtitle;
@@ -110,6 +111,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
       nextInputBuffer = null;
     }
     decoder = decoderFactory.createDecoder(formats[0]);
+    waitingForDecoder = false;
   }
 
   @Override
@@ -125,6 +127,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
       nextSubtitle = null;
     }
     nextInputBuffer = null;
+    waitingForDecoder = false;
     clearOutput();
     decoder.flush();
   }
@@ -139,6 +142,9 @@ public final class TextRenderer extends BaseRenderer implements Callback {
       decoder.setPositionUs(positionUs);
       try {
         nextSubtitle = decoder.dequeueOutputBuffer();
+        if (nextSubtitle != null) {
+          waitingForDecoder = false;
+        }
       } catch (SubtitleDecoderException e) {
         throw ExoPlaybackException.createForRenderer(e, getIndex());
       }
@@ -209,6 +215,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
           }
           decoder.queueInputBuffer(nextInputBuffer);
           nextInputBuffer = null;
+          waitingForDecoder = true;
         } else if (result == C.RESULT_NOTHING_READ) {
           break;
         }
@@ -231,10 +238,26 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     decoder.release();
     decoder = null;
     nextInputBuffer = null;
+    waitingForDecoder = false;
     clearOutput();
     super.onDisabled();
   }
 
+  @Override
+  public long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs) {
+    if (waitingForDecoder || getState() != STATE_STARTED) {
+      return C.TIME_UNSET;
+    }
+    // We need to render again when the next event in the current subtitle occurs, or when the next
+    // subtitle starts, whichever is sooner.
+    long nextEventTimeUs = subtitle != null ? getNextEventTime() : Long.MAX_VALUE;
+    if (nextSubtitle != null && !nextSubtitle.isEndOfStream()) {
+      nextEventTimeUs = Math.min(nextEventTimeUs, nextSubtitle.timeUs);
+    }
+    return nextEventTimeUs == Long.MAX_VALUE ? Long.MAX_VALUE
+        : Math.max(0, nextEventTimeUs - positionUs);
+  }
+
   @Override
   public boolean isEnded() {
     return outputStreamEnded;
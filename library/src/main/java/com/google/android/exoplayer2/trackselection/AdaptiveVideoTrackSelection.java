@@ -26,8 +26,14 @@ import java.util.List;
 /**
  * A bandwidth based adaptive {@link TrackSelection} for video, whose selected track is updated to
  * be the one of highest quality given the current network conditions and the state of the buffer.
+ * <p>
+ * Where the sizes of upcoming segments are provided via
+ * {@link #updateSelectedTrack(long, SegmentSizeProvider)}, the actual bitrate of the upcoming media
+ * of each track is used in place of its nominal bitrate when determining whether the available
+ * bandwidth can sustain it.
  */
-public class AdaptiveVideoTrackSelection extends BaseTrackSelection {
+public class AdaptiveVideoTrackSelection extends BaseTrackSelection
+    implements SegmentSizeAwareTrackSelection {
 
   /**
    * Factory for {@link AdaptiveVideoTrackSelection} instances.
@@ -93,6 +99,11 @@ public class AdaptiveVideoTrackSelection extends BaseTrackSelection {
   public static final int DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS = 25000;
   public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
 
+  /**
+   * The duration of upcoming media whose segment sizes are considered, in microseconds.
+   */
+  private static final long SEGMENT_SIZE_LOOK_AHEAD_US = 10000000;
+
   private final BandwidthMeter bandwidthMeter;
   private final int maxInitialBitrate;
   private final long minDurationForQualityIncreaseUs;
@@ -147,22 +158,28 @@ public class AdaptiveVideoTrackSelection extends BaseTrackSelection {
     this.maxDurationForQualityDecreaseUs = maxDurationForQualityDecreaseMs * 1000L;
     this.minDurationToRetainAfterDiscardUs = minDurationToRetainAfterDiscardMs * 1000L;
     this.bandwidthFraction = bandwidthFraction;
-    selectedIndex = determineIdealSelectedIndex(Long.MIN_VALUE);
+    selectedIndex = determineIdealSelectedIndex(Long.MIN_VALUE, null);
     reason = C.SELECTION_REASON_INITIAL;
   }
 
   @Override
   public void updateSelectedTrack(long bufferedDurationUs) {
+    updateSelectedTrack(bufferedDurationUs, null);
+  }
+
+  @Override
+  public void updateSelectedTrack(long bufferedDurationUs,
+      SegmentSizeProvider segmentSizeProvider) {
     long nowMs = SystemClock.elapsedRealtime();
     // Get the current and ideal selections.
     int currentSelectedIndex = selectedIndex;
     Format currentFormat = getSelectedFormat();
-    int idealSelectedIndex = determineIdealSelectedIndex(nowMs);
+    int idealSelectedIndex = determineIdealSelectedIndex(nowMs, segmentSizeProvider);
     Format idealFormat = getFormat(idealSelectedIndex);
     // Assume we can switch to the ideal selection.
     selectedIndex = idealSelectedIndex;
     // Revert back to the current selection if conditions are not suitable for switching.
-    if (currentFormat != null && !isBlacklisted(selectedIndex, nowMs)) {
+    if (currentFormat != null && !isBlacklisted(currentSelectedIndex, nowMs)) {
       if (idealFormat.bitrate > currentFormat.bitrate
           && bufferedDurationUs < minDurationForQualityIncreaseUs) {
         // The ideal track is a higher quality, but we have insufficient buffer to safely switch
@@ -206,7 +223,7 @@ public class AdaptiveVideoTrackSelection extends BaseTrackSelection {
     if (bufferedDurationUs < minDurationToRetainAfterDiscardUs) {
       return queueSize;
     }
-    int idealSelectedIndex = determineIdealSelectedIndex(SystemClock.elapsedRealtime());
+    int idealSelectedIndex = determineIdealSelectedIndex(SystemClock.elapsedRealtime(), null);
     Format idealFormat = getFormat(idealSelectedIndex);
     // Discard from the first SD chunk beyond minDurationToRetainAfterDiscardUs whose resolution and
     // bitrate are both lower than the ideal track.
@@ -228,16 +245,22 @@ public class AdaptiveVideoTrackSelection extends BaseTrackSelection {
    *
    * @param nowMs The current time in the timebase of {@link SystemClock#elapsedRealtime()}, or
    *     {@link Long#MIN_VALUE} to ignore blacklisting.
+   * @param segmentSizeProvider Provides the sizes of upcoming segments, or null if they're not
+   *     known, in which case the nominal bitrate of each track is used.
    */
-  private int determineIdealSelectedIndex(long nowMs) {
+  private int determineIdealSelectedIndex(long nowMs, SegmentSizeProvider segmentSizeProvider) {
     long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
     long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
         ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
     int lowestBitrateNonBlacklistedIndex = 0;
     for (int i = 0; i < length; i++) {
       if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
-        Format format = getFormat(i);
-        if (format.bitrate <= effectiveBitrate) {
+        int bitrate = segmentSizeProvider == null ? Format.NO_VALUE
+            : segmentSizeProvider.getUpcomingBitrate(i, SEGMENT_SIZE_LOOK_AHEAD_US);
+        if (bitrate == Format.NO_VALUE) {
+          bitrate = getFormat(i).bitrate;
+        }
+        if (bitrate <= effectiveBitrate) {
           return i;
         } else {
           lowestBitrateNonBlacklistedIndex = i;
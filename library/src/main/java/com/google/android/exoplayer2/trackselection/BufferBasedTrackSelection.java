@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import android.os.SystemClock;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A buffer based adaptive {@link TrackSelection}, whose selected track is determined primarily by
+ * the duration of buffered media using the BOLA algorithm.
+ * <p>
+ * BOLA assigns each track a utility proportional to the logarithm of its bitrate, and selects the
+ * track that maximizes {@code (V * (utility + gamma) - bufferedDuration) / bitrate}. The constants
+ * {@code V} and {@code gamma} are derived so that the lowest quality track is selected when the
+ * buffered duration is at or below a minimum, and the highest quality track is selected when it
+ * reaches a target. Since the selection depends on the buffer rather than on short term bandwidth
+ * estimates, it's much less prone to oscillate on volatile networks.
+ * <p>
+ * The selection is a hybrid, in that bandwidth estimates are also used in two cases:
+ * <ul>
+ *   <li>During startup, until the buffered duration first reaches the minimum, the selection is
+ *   based on the estimated bandwidth. BOLA alone would select the lowest quality track until
+ *   then.</li>
+ *   <li>The selection only switches when the buffer and the bandwidth estimate agree. It never
+ *   switches up to a track whose bitrate exceeds the available bandwidth, which prevents BOLA from
+ *   switching up when the buffer is filled by a short burst of bandwidth only to switch down again
+ *   as it drains. Similarly it doesn't switch down whilst the available bandwidth can sustain the
+ *   current track, which prevents BOLA from following the buffer as it drains and refills when
+ *   loading is paused and resumed. This doesn't apply if the buffered duration falls below the
+ *   minimum, in which case BOLA's selection is used.</li>
+ * </ul>
+ */
+public final class BufferBasedTrackSelection extends BaseTrackSelection {
+
+  /**
+   * Factory for {@link BufferBasedTrackSelection} instances.
+   */
+  public static final class Factory implements TrackSelection.Factory {
+
+    private final BandwidthMeter bandwidthMeter;
+    private final int maxInitialBitrate;
+    private final int minBufferMs;
+    private final int targetBufferMs;
+    private final float bandwidthFraction;
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     */
+    public Factory(BandwidthMeter bandwidthMeter) {
+      this(bandwidthMeter, DEFAULT_MAX_INITIAL_BITRATE, DEFAULT_MIN_BUFFER_MS,
+          DEFAULT_TARGET_BUFFER_MS, DEFAULT_BANDWIDTH_FRACTION);
+    }
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed
+     *     when a bandwidth estimate is unavailable.
+     * @param minBufferMs The duration of buffered data at or below which the lowest quality track
+     *     is selected, once startup has completed. Must be greater than zero.
+     * @param targetBufferMs The duration of buffered data at or above which the highest quality
+     *     track is selected, bandwidth permitting. Must be greater than {@code minBufferMs}.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account
+     *     for inaccuracies in the bandwidth estimator.
+     */
+    public Factory(BandwidthMeter bandwidthMeter, int maxInitialBitrate, int minBufferMs,
+        int targetBufferMs, float bandwidthFraction) {
+      Assertions.checkArgument(minBufferMs > 0);
+      Assertions.checkArgument(targetBufferMs > minBufferMs);
+      this.bandwidthMeter = bandwidthMeter;
+      this.maxInitialBitrate = maxInitialBitrate;
+      this.minBufferMs = minBufferMs;
+      this.targetBufferMs = targetBufferMs;
+      this.bandwidthFraction = bandwidthFraction;
+    }
+
+    @Override
+    public BufferBasedTrackSelection createTrackSelection(TrackGroup group, int... tracks) {
+      return new BufferBasedTrackSelection(group, tracks, bandwidthMeter, maxInitialBitrate,
+          minBufferMs, targetBufferMs, bandwidthFraction);
+    }
+
+  }
+
+  public static final int DEFAULT_MAX_INITIAL_BITRATE = 800000;
+  public static final int DEFAULT_MIN_BUFFER_MS = 10000;
+  public static final int DEFAULT_TARGET_BUFFER_MS = 25000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final int maxInitialBitrate;
+  private final long minBufferUs;
+  private final float bandwidthFraction;
+  private final double[] utilities;
+  private final double vUs;
+  private final double gamma;
+
+  private boolean startupCompleted;
+  private int selectedIndex;
+  private int reason;
+
+  /**
+   * @param group The {@link TrackGroup}. Must not be null.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     null or empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public BufferBasedTrackSelection(TrackGroup group, int[] tracks,
+      BandwidthMeter bandwidthMeter) {
+    this(group, tracks, bandwidthMeter, DEFAULT_MAX_INITIAL_BITRATE, DEFAULT_MIN_BUFFER_MS,
+        DEFAULT_TARGET_BUFFER_MS, DEFAULT_BANDWIDTH_FRACTION);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}. Must not be null.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     null or empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed when a
+   *     bandwidth estimate is unavailable.
+   * @param minBufferMs The duration of buffered data at or below which the lowest quality track is
+   *     selected, once startup has completed. Must be greater than zero.
+   * @param targetBufferMs The duration of buffered data at or above which the highest quality track
+   *     is selected, bandwidth permitting. Must be greater than {@code minBufferMs}.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account
+   *     for inaccuracies in the bandwidth estimator.
+   */
+  public BufferBasedTrackSelection(TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter,
+      int maxInitialBitrate, long minBufferMs, long targetBufferMs, float bandwidthFraction) {
+    super(group, tracks);
+    Assertions.checkArgument(minBufferMs > 0);
+    Assertions.checkArgument(targetBufferMs > minBufferMs);
+    this.bandwidthMeter = bandwidthMeter;
+    this.maxInitialBitrate = maxInitialBitrate;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.bandwidthFraction = bandwidthFraction;
+    // Tracks are ordered by decreasing bitrate. The utility of the lowest bitrate track is 1.
+    int lowestBitrate = Math.max(1, getFormat(length - 1).bitrate);
+    utilities = new double[length];
+    for (int i = 0; i < length; i++) {
+      utilities[i] = Math.log(Math.max(1, getFormat(i).bitrate) / (double) lowestBitrate) + 1;
+    }
+    double targetBufferRatio = (double) targetBufferMs / minBufferMs;
+    gamma = (utilities[0] - 1) / (targetBufferRatio - 1);
+    vUs = gamma == 0 ? 0 : minBufferUs / gamma;
+    selectedIndex = determineThroughputIndex(Long.MIN_VALUE);
+    reason = C.SELECTION_REASON_INITIAL;
+  }
+
+  @Override
+  public void updateSelectedTrack(long bufferedDurationUs) {
+    long nowMs = SystemClock.elapsedRealtime();
+    int currentSelectedIndex = selectedIndex;
+    int throughputIndex = determineThroughputIndex(nowMs);
+    if (bufferedDurationUs >= minBufferUs) {
+      startupCompleted = true;
+    }
+    if (!startupCompleted) {
+      // BOLA would select the lowest quality track, so rely on the bandwidth estimate.
+      selectedIndex = throughputIndex;
+    } else {
+      int bufferIndex = determineBufferIndex(bufferedDurationUs, nowMs);
+      if (bufferIndex < currentSelectedIndex) {
+        // Don't switch up beyond the track that the available bandwidth can sustain.
+        selectedIndex = Math.min(currentSelectedIndex, Math.max(bufferIndex, throughputIndex));
+      } else if (bufferIndex > currentSelectedIndex && bufferedDurationUs >= minBufferUs) {
+        // Don't switch down whilst the available bandwidth can sustain the current track, unless
+        // the buffer is nearly exhausted.
+        selectedIndex = Math.max(currentSelectedIndex, Math.min(bufferIndex, throughputIndex));
+      } else {
+        selectedIndex = bufferIndex;
+      }
+    }
+    if (isBlacklisted(selectedIndex, nowMs)) {
+      if (!isBlacklisted(currentSelectedIndex, nowMs)) {
+        selectedIndex = currentSelectedIndex;
+      } else {
+        // The current track is blacklisted too, so switch to the best track that isn't, without
+        // exceeding what the buffer level and the available bandwidth allow.
+        selectedIndex = startupCompleted
+            ? Math.max(determineBufferIndex(bufferedDurationUs, nowMs), throughputIndex)
+            : throughputIndex;
+      }
+    }
+    // If we adapted, update the trigger.
+    if (selectedIndex != currentSelectedIndex) {
+      reason = C.SELECTION_REASON_ADAPTIVE;
+    }
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Returns the index of the track that maximizes the BOLA objective for the specified buffered
+   * duration.
+   *
+   * @param bufferedDurationUs The duration of buffered media, in microseconds.
+   * @param nowMs The current time in the timebase of {@link SystemClock#elapsedRealtime()}.
+   */
+  private int determineBufferIndex(long bufferedDurationUs, long nowMs) {
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        double score = (vUs * (utilities[i] + gamma) - bufferedDurationUs)
+            / Math.max(1, getFormat(i).bitrate);
+        if (bestIndex == C.INDEX_UNSET || score > bestScore) {
+          bestIndex = i;
+          bestScore = score;
+        }
+      }
+    }
+    // If every track is blacklisted then select the lowest quality track.
+    return bestIndex == C.INDEX_UNSET ? length - 1 : bestIndex;
+  }
+
+  /**
+   * Returns the index of the highest quality track whose bitrate can be sustained by the estimated
+   * bandwidth.
+   *
+   * @param nowMs The current time in the timebase of {@link SystemClock#elapsedRealtime()}, or
+   *     {@link Long#MIN_VALUE} to ignore blacklisting.
+   */
+  private int determineThroughputIndex(long nowMs) {
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
+        ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
+    int lowestBitrateNonBlacklistedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
+        if (getFormat(i).bitrate <= effectiveBitrate) {
+          return i;
+        } else {
+          lowestBitrateNonBlacklistedIndex = i;
+        }
+      }
+    }
+    return lowestBitrateNonBlacklistedIndex;
+  }
+
+}
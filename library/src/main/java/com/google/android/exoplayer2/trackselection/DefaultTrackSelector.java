@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -36,6 +37,10 @@ import java.util.concurrent.atomic.AtomicReference;
  * A {@link MappingTrackSelector} that allows configuration of common parameters. It is safe to call
  * the methods of this class from the application thread. See {@link Parameters#Parameters()} for
  * default selection parameters.
+ * <p>
+ * When tracks are selected again for the same track groups, the selections for renderers whose
+ * relevant parameters are unchanged are retained rather than being recomputed. For example changing
+ * the preferred audio language doesn't cause the video track selection to be recomputed.
  */
 public class DefaultTrackSelector extends MappingTrackSelector {
 
@@ -324,6 +329,10 @@ public class DefaultTrackSelector extends MappingTrackSelector {
   private final TrackSelection.Factory adaptiveVideoTrackSelectionFactory;
   private final AtomicReference<Parameters> params;
 
+  private TrackGroupArray[] lastRendererTrackGroupArrays;
+  private Parameters lastParams;
+  private TrackSelection[] lastRendererTrackSelections;
+
   /**
    * Constructs an instance that does not support adaptive video.
    *
@@ -376,11 +385,17 @@ public class DefaultTrackSelector extends MappingTrackSelector {
   protected TrackSelection[] selectTracks(RendererCapabilities[] rendererCapabilities,
       TrackGroupArray[] rendererTrackGroupArrays, int[][][] rendererFormatSupports)
       throws ExoPlaybackException {
-    // Make a track selection for each renderer.
+    // Make a track selection for each renderer, retaining previous selections where possible.
     TrackSelection[] rendererTrackSelections = new TrackSelection[rendererCapabilities.length];
     Parameters params = this.params.get();
+    boolean trackGroupsUnchanged = rendererTrackGroupArrays == lastRendererTrackGroupArrays;
     for (int i = 0; i < rendererCapabilities.length; i++) {
-      switch (rendererCapabilities[i].getTrackType()) {
+      int trackType = rendererCapabilities[i].getTrackType();
+      if (trackGroupsUnchanged && !haveParametersChanged(trackType, lastParams, params)) {
+        rendererTrackSelections[i] = lastRendererTrackSelections[i];
+        continue;
+      }
+      switch (trackType) {
         case C.TRACK_TYPE_VIDEO:
           rendererTrackSelections[i] = selectVideoTrack(rendererCapabilities[i],
               rendererTrackGroupArrays[i], rendererFormatSupports[i], params.maxVideoWidth,
@@ -399,12 +414,43 @@ public class DefaultTrackSelector extends MappingTrackSelector {
               params.preferredAudioLanguage);
           break;
         default:
-          rendererTrackSelections[i] = selectOtherTrack(rendererCapabilities[i].getTrackType(),
-              rendererTrackGroupArrays[i], rendererFormatSupports[i]);
+          rendererTrackSelections[i] = selectOtherTrack(trackType, rendererTrackGroupArrays[i],
+              rendererFormatSupports[i]);
           break;
       }
     }
-    return rendererTrackSelections;
+    lastRendererTrackGroupArrays = rendererTrackGroupArrays;
+    lastParams = params;
+    lastRendererTrackSelections = rendererTrackSelections;
+    // The caller may modify the returned array when applying overrides.
+    return Arrays.copyOf(rendererTrackSelections, rendererTrackSelections.length);
+  }
+
+  /**
+   * Returns whether any of the parameters that affect the selection for a renderer of the
+   * specified track type differ.
+   */
+  private static boolean haveParametersChanged(int trackType, Parameters oldParams,
+      Parameters newParams) {
+    switch (trackType) {
+      case C.TRACK_TYPE_VIDEO:
+        return oldParams.maxVideoWidth != newParams.maxVideoWidth
+            || oldParams.maxVideoHeight != newParams.maxVideoHeight
+            || oldParams.allowNonSeamlessAdaptiveness != newParams.allowNonSeamlessAdaptiveness
+            || oldParams.allowMixedMimeAdaptiveness != newParams.allowMixedMimeAdaptiveness
+            || oldParams.viewportWidth != newParams.viewportWidth
+            || oldParams.viewportHeight != newParams.viewportHeight
+            || oldParams.orientationMayChange != newParams.orientationMayChange
+            || oldParams.exceedVideoConstraintsIfNecessary
+                != newParams.exceedVideoConstraintsIfNecessary;
+      case C.TRACK_TYPE_AUDIO:
+        return !Util.areEqual(oldParams.preferredAudioLanguage, newParams.preferredAudioLanguage);
+      case C.TRACK_TYPE_TEXT:
+        return !Util.areEqual(oldParams.preferredAudioLanguage, newParams.preferredAudioLanguage)
+            || !Util.areEqual(oldParams.preferredTextLanguage, newParams.preferredTextLanguage);
+      default:
+        return false;
+    }
   }
 
   // Video track selection implementation.
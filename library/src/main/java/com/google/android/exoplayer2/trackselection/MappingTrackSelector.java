@@ -19,6 +19,7 @@ import android.os.Handler;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.RendererCapabilities;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
@@ -31,6 +32,11 @@ import java.util.Map;
 /**
  * Base class for {@link TrackSelector}s that first establish a mapping between {@link TrackGroup}s
  * and renderers, and then from that mapping create a {@link TrackSelection} for each renderer.
+ * <p>
+ * The mapping only depends on the renderers and the track groups, and so is retained and reused
+ * when tracks are selected again for the same {@link TrackGroupArray}, for example because
+ * selection parameters have changed. Whilst establishing the mapping, the support that each
+ * renderer provides for each distinct {@link Format} is only queried once.
  */
 public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo> {
 
@@ -83,6 +89,10 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
   private final SparseArray<Map<TrackGroupArray, SelectionOverride>> selectionOverrides;
   private final SparseBooleanArray rendererDisabledFlags;
 
+  private RendererCapabilities[] mappedRendererCapabilities;
+  private TrackGroupArray mappedTrackGroups;
+  private MappedTrackInfo mappedTrackInfo;
+
   /**
    * @param eventHandler A handler to use when delivering events to listeners added via
    *     {@link #addListener(EventListener)}.
@@ -227,6 +237,61 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
   public final TrackSelections<MappedTrackInfo> selectTracks(
       RendererCapabilities[] rendererCapabilities, TrackGroupArray trackGroups)
       throws ExoPlaybackException {
+    if (rendererCapabilities != mappedRendererCapabilities || trackGroups != mappedTrackGroups) {
+      mappedTrackInfo = mapTrackGroups(rendererCapabilities, trackGroups);
+      mappedRendererCapabilities = rendererCapabilities;
+      mappedTrackGroups = trackGroups;
+    }
+    TrackGroupArray[] rendererTrackGroupArrays = mappedTrackInfo.trackGroups;
+
+    TrackSelection[] trackSelections = selectTracks(rendererCapabilities, rendererTrackGroupArrays,
+        mappedTrackInfo.formatSupport);
+
+    // Apply track disabling and overriding.
+    for (int i = 0; i < rendererCapabilities.length; i++) {
+      if (rendererDisabledFlags.get(i)) {
+        trackSelections[i] = null;
+      } else {
+        TrackGroupArray rendererTrackGroup = rendererTrackGroupArrays[i];
+        Map<TrackGroupArray, SelectionOverride> overrides = selectionOverrides.get(i);
+        SelectionOverride override = overrides == null ? null : overrides.get(rendererTrackGroup);
+        if (override != null) {
+          trackSelections[i] = override.createTrackSelection(rendererTrackGroup);
+        }
+      }
+    }
+
+    // Package up the track information and selections.
+    return new TrackSelections<>(mappedTrackInfo, trackSelections);
+  }
+
+  /**
+   * Given an array of renderers and a set of {@link TrackGroup}s mapped to each of them, provides a
+   * {@link TrackSelection} per renderer.
+   *
+   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers for which
+   *     {@link TrackSelection}s are to be generated.
+   * @param rendererTrackGroupArrays An array of {@link TrackGroupArray}s where each entry
+   *     corresponds to the renderer of equal index in {@code renderers}.
+   * @param rendererFormatSupports Maps every available track to a specific level of support as
+   *     defined by the renderer {@code FORMAT_*} constants.
+   * @throws ExoPlaybackException If an error occurs while selecting the tracks.
+   */
+  protected abstract TrackSelection[] selectTracks(RendererCapabilities[] rendererCapabilities,
+      TrackGroupArray[] rendererTrackGroupArrays, int[][][] rendererFormatSupports)
+      throws ExoPlaybackException;
+
+  /**
+   * Associates each track group to a renderer, and evaluates the support that the renderer
+   * provides for each track in the group.
+   *
+   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers.
+   * @param trackGroups The available track groups.
+   * @return The resulting {@link MappedTrackInfo}.
+   * @throws ExoPlaybackException If an error occurs determining the format support.
+   */
+  private static MappedTrackInfo mapTrackGroups(RendererCapabilities[] rendererCapabilities,
+      TrackGroupArray trackGroups) throws ExoPlaybackException {
     // Structures into which data will be written during the selection. The extra item at the end
     // of each array is to store data associated with track groups that cannot be associated with
     // any renderer.
@@ -243,13 +308,14 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
 
     // Associate each track group to a preferred renderer, and evaluate the support that the
     // renderer provides for each track in the group.
+    FormatSupportCache formatSupportCache = new FormatSupportCache(rendererCapabilities);
     for (int groupIndex = 0; groupIndex < trackGroups.length; groupIndex++) {
       TrackGroup group = trackGroups.get(groupIndex);
       // Associate the group to a preferred renderer.
-      int rendererIndex = findRenderer(rendererCapabilities, group);
+      int rendererIndex = findRenderer(formatSupportCache, group);
       // Evaluate the support that the renderer provides for each track in the group.
       int[] rendererFormatSupport = rendererIndex == rendererCapabilities.length
-          ? new int[group.length] : getFormatSupport(rendererCapabilities[rendererIndex], group);
+          ? new int[group.length] : getFormatSupport(formatSupportCache, rendererIndex, group);
       // Stash the results.
       int rendererTrackGroupCount = rendererTrackGroupCounts[rendererIndex];
       rendererTrackGroups[rendererIndex][rendererTrackGroupCount] = group;
@@ -273,46 +339,10 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
     TrackGroupArray unassociatedTrackGroupArray = new TrackGroupArray(Arrays.copyOf(
         rendererTrackGroups[rendererCapabilities.length], unassociatedTrackGroupCount));
 
-    TrackSelection[] trackSelections = selectTracks(rendererCapabilities, rendererTrackGroupArrays,
-        rendererFormatSupports);
-
-    // Apply track disabling and overriding.
-    for (int i = 0; i < rendererCapabilities.length; i++) {
-      if (rendererDisabledFlags.get(i)) {
-        trackSelections[i] = null;
-      } else {
-        TrackGroupArray rendererTrackGroup = rendererTrackGroupArrays[i];
-        Map<TrackGroupArray, SelectionOverride> overrides = selectionOverrides.get(i);
-        SelectionOverride override = overrides == null ? null : overrides.get(rendererTrackGroup);
-        if (override != null) {
-          trackSelections[i] = override.createTrackSelection(rendererTrackGroup);
-        }
-      }
-    }
-
-    // Package up the track information and selections.
-    MappedTrackInfo mappedTrackInfo = new MappedTrackInfo(rendererTrackTypes,
-        rendererTrackGroupArrays, mixedMimeTypeAdaptationSupport, rendererFormatSupports,
-        unassociatedTrackGroupArray);
-    return new TrackSelections<>(mappedTrackInfo, trackSelections);
+    return new MappedTrackInfo(rendererTrackTypes, rendererTrackGroupArrays,
+        mixedMimeTypeAdaptationSupport, rendererFormatSupports, unassociatedTrackGroupArray);
   }
 
-  /**
-   * Given an array of renderers and a set of {@link TrackGroup}s mapped to each of them, provides a
-   * {@link TrackSelection} per renderer.
-   *
-   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers for which
-   *     {@link TrackSelection}s are to be generated.
-   * @param rendererTrackGroupArrays An array of {@link TrackGroupArray}s where each entry
-   *     corresponds to the renderer of equal index in {@code renderers}.
-   * @param rendererFormatSupports Maps every available track to a specific level of support as
-   *     defined by the renderer {@code FORMAT_*} constants.
-   * @throws ExoPlaybackException If an error occurs while selecting the tracks.
-   */
-  protected abstract TrackSelection[] selectTracks(RendererCapabilities[] rendererCapabilities,
-      TrackGroupArray[] rendererTrackGroupArrays, int[][][] rendererFormatSupports)
-      throws ExoPlaybackException;
-
   /**
    * Finds the renderer to which the provided {@link TrackGroup} should be associated.
    * <p>
@@ -327,20 +357,21 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
    * tracks in the group, then {@code renderers.length} is returned to indicate that no association
    * was made.
    *
-   * @param rendererCapabilities The {@link RendererCapabilities} of the renderers.
+   * @param formatSupportCache The {@link FormatSupportCache} for the renderers.
    * @param group The {@link TrackGroup} whose associated renderer is to be found.
    * @return The index of the associated renderer, or {@code renderers.length} if no
    *     association was made.
    * @throws ExoPlaybackException If an error occurs finding a renderer.
    */
-  private static int findRenderer(RendererCapabilities[] rendererCapabilities, TrackGroup group)
+  private static int findRenderer(FormatSupportCache formatSupportCache, TrackGroup group)
       throws ExoPlaybackException {
-    int bestRendererIndex = rendererCapabilities.length;
+    int rendererCount = formatSupportCache.getRendererCount();
+    int bestRendererIndex = rendererCount;
     int bestSupportLevel = RendererCapabilities.FORMAT_UNSUPPORTED_TYPE;
-    for (int rendererIndex = 0; rendererIndex < rendererCapabilities.length; rendererIndex++) {
-      RendererCapabilities rendererCapability = rendererCapabilities[rendererIndex];
+    for (int rendererIndex = 0; rendererIndex < rendererCount; rendererIndex++) {
       for (int trackIndex = 0; trackIndex < group.length; trackIndex++) {
-        int trackSupportLevel = rendererCapability.supportsFormat(group.getFormat(trackIndex));
+        int trackSupportLevel = formatSupportCache.supportsFormat(rendererIndex,
+            group.getFormat(trackIndex));
         if (trackSupportLevel > bestSupportLevel) {
           bestRendererIndex = rendererIndex;
           bestSupportLevel = trackSupportLevel;
@@ -358,17 +389,18 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
    * Calls {@link RendererCapabilities#supportsFormat} for each track in the specified
    * {@link TrackGroup}, returning the results in an array.
    *
-   * @param rendererCapabilities The {@link RendererCapabilities} of the renderer.
+   * @param formatSupportCache The {@link FormatSupportCache} for the renderers.
+   * @param rendererIndex The index of the renderer.
    * @param group The {@link TrackGroup} to evaluate.
    * @return An array containing the result of calling
    *     {@link RendererCapabilities#supportsFormat} for each track in the group.
    * @throws ExoPlaybackException If an error occurs determining the format support.
    */
-  private static int[] getFormatSupport(RendererCapabilities rendererCapabilities, TrackGroup group)
-      throws ExoPlaybackException {
+  private static int[] getFormatSupport(FormatSupportCache formatSupportCache, int rendererIndex,
+      TrackGroup group) throws ExoPlaybackException {
     int[] formatSupport = new int[group.length];
     for (int i = 0; i < group.length; i++) {
-      formatSupport[i] = rendererCapabilities.supportsFormat(group.getFormat(i));
+      formatSupport[i] = formatSupportCache.supportsFormat(rendererIndex, group.getFormat(i));
     }
     return formatSupport;
   }
@@ -583,4 +615,37 @@ public abstract class MappingTrackSelector extends TrackSelector<MappedTrackInfo
 
   }
 
+  /**
+   * Memoizes the results of {@link RendererCapabilities#supportsFormat} for each renderer, so that
+   * each renderer is queried at most once for each distinct {@link Format}.
+   */
+  private static final class FormatSupportCache {
+
+    private final RendererCapabilities[] rendererCapabilities;
+    private final Map<Format, Integer>[] rendererFormatSupports;
+
+    @SuppressWarnings("unchecked")
+    public FormatSupportCache(RendererCapabilities[] rendererCapabilities) {
+      this.rendererCapabilities = rendererCapabilities;
+      rendererFormatSupports = new Map[rendererCapabilities.length];
+      for (int i = 0; i < rendererCapabilities.length; i++) {
+        rendererFormatSupports[i] = new HashMap<>();
+      }
+    }
+
+    public int getRendererCount() {
+      return rendererCapabilities.length;
+    }
+
+    public int supportsFormat(int rendererIndex, Format format) throws ExoPlaybackException {
+      Integer formatSupport = rendererFormatSupports[rendererIndex].get(format);
+      if (formatSupport == null) {
+        formatSupport = rendererCapabilities[rendererIndex].supportsFormat(format);
+        rendererFormatSupports[rendererIndex].put(format, formatSupport);
+      }
+      return formatSupport;
+    }
+
+  }
+
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import com.google.android.exoplayer2.Format;
+
+/**
+ * A {@link TrackSelection} that can take into account the actual sizes of upcoming media segments,
+ * where these are known, rather than relying only on the nominal bitrate of each track.
+ */
+public interface SegmentSizeAwareTrackSelection extends TrackSelection {
+
+  /**
+   * Provides information about the sizes of upcoming media segments.
+   */
+  interface SegmentSizeProvider {
+
+    /**
+     * Returns the average bitrate of the upcoming media of a track, as determined by the sizes of
+     * its segments.
+     *
+     * @param index The index of the track in the selection.
+     * @param durationUs The duration of upcoming media that the average should cover, in
+     *     microseconds. The returned bitrate may cover a slightly longer or shorter duration,
+     *     depending on segment boundaries.
+     * @return The average bitrate in bits per second, or {@link Format#NO_VALUE} if the sizes of
+     *     the upcoming segments are not known.
+     */
+    int getUpcomingBitrate(int index, long durationUs);
+
+  }
+
+  /**
+   * Updates the selected track, as in {@link #updateSelectedTrack(long)}, taking into account the
+   * sizes of upcoming segments where these are known.
+   *
+   * @param bufferedDurationUs The duration of media currently buffered in microseconds.
+   * @param segmentSizeProvider Provides the sizes of upcoming segments.
+   */
+  void updateSelectedTrack(long bufferedDurationUs, SegmentSizeProvider segmentSizeProvider);
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.ui;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import com.google.android.exoplayer2.SuspendableLoadControl;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.Parameters;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+
+/**
+ * Feeds the on-screen size and visibility of the views in which players are displayed into their
+ * track selection and loading, for screens that show many players at once such as a grid of
+ * previews.
+ * <p>
+ * Each time the view hierarchy is about to be drawn, for example whilst it's scrolled, the viewport
+ * of each registered player's {@link DefaultTrackSelector} is set to the size of its view, so that
+ * no higher resolution is selected than can be displayed. A player whose view is smaller than a
+ * minimum size, or isn't visible at all, is restricted to its lowest resolution track. A player
+ * whose view isn't visible at all additionally has its loading suspended, if it was registered
+ * with a {@link SuspendableLoadControl}.
+ * <p>
+ * The methods of this class must be called from the application's main thread.
+ */
+public final class PlayerViewportCoordinator implements ViewTreeObserver.OnPreDrawListener {
+
+  /**
+   * The default length of the shorter side of a view, in pixels, below which its player is
+   * restricted to its lowest resolution track.
+   */
+  public static final int DEFAULT_MIN_VIEWPORT_SIZE_PX = 144;
+
+  /**
+   * The viewport size that restricts a player to its lowest resolution track.
+   */
+  private static final int LOWEST_RESOLUTION_VIEWPORT_SIZE = 1;
+
+  private final View containerView;
+  private final int minViewportSizePx;
+  private final ArrayList<PlayerViewport> playerViewports;
+  private final Rect visibleRect;
+
+  private boolean released;
+
+  /**
+   * @param containerView A view that contains the views of all the players that will be
+   *     registered, such as a list or grid.
+   */
+  public PlayerViewportCoordinator(View containerView) {
+    this(containerView, DEFAULT_MIN_VIEWPORT_SIZE_PX);
+  }
+
+  /**
+   * @param containerView A view that contains the views of all the players that will be
+   *     registered, such as a list or grid.
+   * @param minViewportSizePx The length of the shorter side of a view, in pixels, below which its
+   *     player is restricted to its lowest resolution track.
+   */
+  public PlayerViewportCoordinator(View containerView, int minViewportSizePx) {
+    this.containerView = Assertions.checkNotNull(containerView);
+    this.minViewportSizePx = minViewportSizePx;
+    playerViewports = new ArrayList<>();
+    visibleRect = new Rect();
+    containerView.getViewTreeObserver().addOnPreDrawListener(this);
+  }
+
+  /**
+   * Registers a player, whose track selection and loading will follow the size and visibility of
+   * the view in which it's displayed.
+   *
+   * @param view The view in which the player is displayed.
+   * @param trackSelector The player's track selector.
+   * @param loadControl The player's load control, or null if its loading shouldn't be suspended
+   *     whilst the view isn't visible.
+   */
+  public void addPlayer(View view, DefaultTrackSelector trackSelector,
+      SuspendableLoadControl loadControl) {
+    Assertions.checkState(!released);
+    removePlayer(view);
+    PlayerViewport playerViewport = new PlayerViewport(Assertions.checkNotNull(view),
+        Assertions.checkNotNull(trackSelector), loadControl);
+    playerViewports.add(playerViewport);
+    playerViewport.update();
+  }
+
+  /**
+   * Unregisters the player displayed in the specified view. Its track selection and loading are
+   * left as they were most recently set.
+   *
+   * @param view The view in which the player is displayed.
+   */
+  public void removePlayer(View view) {
+    for (int i = 0; i < playerViewports.size(); i++) {
+      if (playerViewports.get(i).view == view) {
+        playerViewports.remove(i);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Unregisters all players and stops observing the container view.
+   */
+  public void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    playerViewports.clear();
+    ViewTreeObserver viewTreeObserver = containerView.getViewTreeObserver();
+    if (viewTreeObserver.isAlive()) {
+      viewTreeObserver.removeOnPreDrawListener(this);
+    }
+  }
+
+  /**
+   * Returns the track selection parameters for a player displayed in a view of the specified size
+   * and visibility.
+   *
+   * @param params The current parameters.
+   * @param width The width of the view in pixels.
+   * @param height The height of the view in pixels.
+   * @param visible Whether any part of the view is visible.
+   * @param minViewportSizePx The length of the shorter side of the view, in pixels, below which the
+   *     player is restricted to its lowest resolution track.
+   * @return The parameters, which are {@code params} if no change is required.
+   */
+  /* package */ static Parameters getViewportParameters(Parameters params, int width, int height,
+      boolean visible, int minViewportSizePx) {
+    if (!visible || Math.min(width, height) < minViewportSizePx) {
+      // A single pixel viewport is exceeded by every resolution, so only the lowest is retained.
+      return params.withViewportSize(LOWEST_RESOLUTION_VIEWPORT_SIZE,
+          LOWEST_RESOLUTION_VIEWPORT_SIZE, false);
+    }
+    return params.withViewportSize(width, height, false);
+  }
+
+  // ViewTreeObserver.OnPreDrawListener implementation.
+
+  @Override
+  public boolean onPreDraw() {
+    for (int i = 0; i < playerViewports.size(); i++) {
+      playerViewports.get(i).update();
+    }
+    return true;
+  }
+
+  // Private classes.
+
+  private final class PlayerViewport {
+
+    public final View view;
+
+    private final DefaultTrackSelector trackSelector;
+    private final SuspendableLoadControl loadControl;
+
+    public PlayerViewport(View view, DefaultTrackSelector trackSelector,
+        SuspendableLoadControl loadControl) {
+      this.view = view;
+      this.trackSelector = trackSelector;
+      this.loadControl = loadControl;
+    }
+
+    public void update() {
+      boolean visible = view.isShown() && view.getGlobalVisibleRect(visibleRect);
+      // The parameters are only replaced, and tracks reselected, if the viewport has changed.
+      trackSelector.setParameters(getViewportParameters(trackSelector.getParameters(),
+          view.getWidth(), view.getHeight(), visible, minViewportSizePx));
+      if (loadControl != null) {
+        loadControl.setLoadingSuspended(!visible);
+      }
+    }
+
+  }
+
+}
@@ -437,7 +437,7 @@ public class DefaultHttpDataSource implements HttpDataSource {
    * @return The next URL.
    * @throws IOException If redirection isn't possible.
    */
-  private static URL handleRedirect(URL originalUrl, String location) throws IOException {
+  /* package */ static URL handleRedirect(URL originalUrl, String location) throws IOException {
     if (location == null) {
       throw new ProtocolException("Null location redirect");
     }
@@ -465,8 +465,20 @@ public class DefaultHttpDataSource implements HttpDataSource {
    * @return The extracted length, or {@link C#LENGTH_UNSET}.
    */
   private static long getContentLength(HttpURLConnection connection) {
+    return getContentLength(connection.getHeaderField("Content-Length"),
+        connection.getHeaderField("Content-Range"));
+  }
+
+  /**
+   * Attempts to extract the length of the content from the values of response headers.
+   *
+   * @param contentLengthHeader The value of the Content-Length header, or null.
+   * @param contentRangeHeader The value of the Content-Range header, or null.
+   * @return The extracted length, or {@link C#LENGTH_UNSET}.
+   */
+  /* package */ static long getContentLength(String contentLengthHeader,
+      String contentRangeHeader) {
     long contentLength = C.LENGTH_UNSET;
-    String contentLengthHeader = connection.getHeaderField("Content-Length");
     if (!TextUtils.isEmpty(contentLengthHeader)) {
       try {
         contentLength = Long.parseLong(contentLengthHeader);
@@ -474,7 +486,6 @@ public class DefaultHttpDataSource implements HttpDataSource {
         Log.e(TAG, "Unexpected Content-Length [" + contentLengthHeader + "]");
       }
     }
-    String contentRangeHeader = connection.getHeaderField("Content-Range");
     if (!TextUtils.isEmpty(contentRangeHeader)) {
       Matcher matcher = CONTENT_RANGE_HEADER.matcher(contentRangeHeader);
       if (matcher.find()) {
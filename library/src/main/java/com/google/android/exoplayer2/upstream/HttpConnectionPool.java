@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.os.SystemClock;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A pool of persistent HTTP connections, keyed by scheme, host, port and proxy.
+ * <p>
+ * Connections are returned to the pool by {@link PooledHttpDataSource} when the response they
+ * carried has been fully consumed, and are handed out again to subsequent requests to the same
+ * host. This avoids paying TCP (and TLS) connection setup for each request. A single pool can be
+ * shared by any number of {@link PooledHttpDataSource}s.
+ * <p>
+ * Connections can be made directly, through a SOCKS proxy, or through an HTTP proxy. Secure
+ * connections through an HTTP proxy are tunneled using the CONNECT method. Proxies that require
+ * authentication aren't supported.
+ */
+public final class HttpConnectionPool {
+
+  /**
+   * The default maximum number of idle connections kept per host.
+   */
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 4;
+  /**
+   * The default duration for which an idle connection is kept, in milliseconds.
+   */
+  public static final long DEFAULT_KEEP_ALIVE_DURATION_MS = 30000;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final int maxIdleConnectionsPerHost;
+  private final long keepAliveDurationMs;
+  private final HashMap<String, ArrayDeque<Connection>> idleConnections;
+
+  private long connectionsOpened;
+  private long connectionsReused;
+
+  public HttpConnectionPool() {
+    this(DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST, DEFAULT_KEEP_ALIVE_DURATION_MS);
+  }
+
+  /**
+   * @param maxIdleConnectionsPerHost The maximum number of idle connections kept per host.
+   * @param keepAliveDurationMs The duration for which an idle connection is kept, in milliseconds.
+   */
+  public HttpConnectionPool(int maxIdleConnectionsPerHost, long keepAliveDurationMs) {
+    this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+    this.keepAliveDurationMs = keepAliveDurationMs;
+    idleConnections = new HashMap<>();
+  }
+
+  /**
+   * Returns the number of connections that have been established.
+   */
+  public synchronized long getConnectionsOpened() {
+    return connectionsOpened;
+  }
+
+  /**
+   * Returns the number of requests that have been made over a reused connection.
+   */
+  public synchronized long getConnectionsReused() {
+    return connectionsReused;
+  }
+
+  /**
+   * Returns the fraction of requests that were made over a reused connection, or 0 if no requests
+   * have been made.
+   */
+  public synchronized float getReuseRatio() {
+    long requests = connectionsOpened + connectionsReused;
+    return requests == 0 ? 0 : (float) connectionsReused / requests;
+  }
+
+  /**
+   * Closes all idle connections.
+   */
+  public void evictAll() {
+    ArrayDeque<Connection> evicted = new ArrayDeque<>();
+    synchronized (this) {
+      for (ArrayDeque<Connection> connections : idleConnections.values()) {
+        evicted.addAll(connections);
+      }
+      idleConnections.clear();
+    }
+    for (Connection connection : evicted) {
+      connection.closeQuietly();
+    }
+  }
+
+  /**
+   * Returns an idle connection to the specified host, or establishes a new one.
+   *
+   * @param secure Whether the connection should use TLS.
+   * @param host The host.
+   * @param port The port.
+   * @param proxy The proxy through which to connect, or {@link Proxy#NO_PROXY}.
+   * @param connectTimeoutMillis The connection timeout, in milliseconds.
+   * @param readTimeoutMillis The read timeout, in milliseconds.
+   * @param allowReuse Whether an idle connection may be returned.
+   * @return The connection.
+   * @throws IOException If a new connection could not be established.
+   */
+  /* package */ Connection acquire(boolean secure, String host, int port, Proxy proxy,
+      int connectTimeoutMillis, int readTimeoutMillis, boolean allowReuse) throws IOException {
+    String key = (secure ? "https://" : "http://") + host + ":" + port
+        + (proxy.type() == Proxy.Type.DIRECT ? "" : " via " + proxy);
+    if (allowReuse) {
+      Connection connection = takeIdleConnection(key);
+      if (connection != null) {
+        connection.socket.setSoTimeout(readTimeoutMillis);
+        return connection;
+      }
+    }
+    Connection connection = Connection.open(key, secure, host, port, proxy, connectTimeoutMillis,
+        readTimeoutMillis);
+    synchronized (this) {
+      connectionsOpened++;
+    }
+    return connection;
+  }
+
+  /**
+   * Returns a connection to the pool. The response carried by the connection must have been fully
+   * consumed.
+   *
+   * @param connection The connection.
+   */
+  /* package */ void release(Connection connection) {
+    connection.idleSinceMs = SystemClock.elapsedRealtime();
+    synchronized (this) {
+      ArrayDeque<Connection> connections = idleConnections.get(connection.key);
+      if (connections == null) {
+        connections = new ArrayDeque<>();
+        idleConnections.put(connection.key, connections);
+      }
+      if (connections.size() < maxIdleConnectionsPerHost) {
+        connections.addFirst(connection);
+        return;
+      }
+    }
+    connection.closeQuietly();
+  }
+
+  private Connection takeIdleConnection(String key) {
+    long nowMs = SystemClock.elapsedRealtime();
+    ArrayDeque<Connection> expired = null;
+    Connection connection = null;
+    synchronized (this) {
+      ArrayDeque<Connection> connections = idleConnections.get(key);
+      if (connections != null) {
+        // The most recently used connections are at the head of the queue. Discard those that have
+        // expired from the tail.
+        Iterator<Connection> iterator = connections.descendingIterator();
+        while (iterator.hasNext()) {
+          Connection candidate = iterator.next();
+          if (nowMs - candidate.idleSinceMs > keepAliveDurationMs) {
+            iterator.remove();
+            if (expired == null) {
+              expired = new ArrayDeque<>();
+            }
+            expired.add(candidate);
+          }
+        }
+        connection = connections.pollFirst();
+        if (connection != null) {
+          connectionsReused++;
+          connection.reused = true;
+        }
+      }
+    }
+    if (expired != null) {
+      for (Connection expiredConnection : expired) {
+        expiredConnection.closeQuietly();
+      }
+    }
+    return connection;
+  }
+
+  /**
+   * A persistent connection to a host.
+   */
+  /* package */ static final class Connection {
+
+    public final String key;
+    public final Socket socket;
+    public final InputStream inputStream;
+    public final OutputStream outputStream;
+
+    /**
+     * Whether the connection was obtained from the pool rather than newly established. A request
+     * that fails on a reused connection before a response is received can be safely retried, since
+     * the server may have closed the connection whilst it was idle.
+     */
+    public boolean reused;
+
+    private long idleSinceMs;
+
+    private Connection(String key, Socket socket) throws IOException {
+      this.key = key;
+      this.socket = socket;
+      inputStream = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+      outputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    public void closeQuietly() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+
+    private static Connection open(String key, boolean secure, String host, int port, Proxy proxy,
+        int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+      Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+      try {
+        switch (proxy.type()) {
+          case HTTP:
+            InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            socket.connect(new InetSocketAddress(proxyAddress.getHostName(),
+                proxyAddress.getPort()), connectTimeoutMillis);
+            break;
+          case SOCKS:
+            // Leave the proxy to resolve the host.
+            socket.connect(InetSocketAddress.createUnresolved(host, port), connectTimeoutMillis);
+            break;
+          default:
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            break;
+        }
+        socket.setSoTimeout(readTimeoutMillis);
+        socket.setTcpNoDelay(true);
+        if (secure && proxy.type() == Proxy.Type.HTTP) {
+          openTunnel(socket, host, port);
+        }
+        if (secure) {
+          SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+              .createSocket(socket, host, port, true);
+          sslSocket.startHandshake();
+          if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host,
+              sslSocket.getSession())) {
+            sslSocket.close();
+            throw new SSLException("Hostname verification failed: " + host);
+          }
+          socket = sslSocket;
+        }
+        return new Connection(key, socket);
+      } catch (IOException e) {
+        try {
+          socket.close();
+        } catch (IOException closeException) {
+          // Ignore.
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Asks an HTTP proxy to open a tunnel to the specified host, using the CONNECT method.
+     */
+    private static void openTunnel(Socket socket, String host, int port) throws IOException {
+      String authority = host + ":" + port;
+      OutputStream outputStream = socket.getOutputStream();
+      outputStream.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority
+          + "\r\n\r\n").getBytes("ISO-8859-1"));
+      outputStream.flush();
+      // Read without buffering, since anything after the response belongs to the TLS handshake.
+      InputStream inputStream = socket.getInputStream();
+      String statusLine = PooledHttpDataSource.readLine(inputStream);
+      if (statusLine == null || !statusLine.startsWith("HTTP/1.") || statusLine.length() < 12
+          || statusLine.charAt(9) != '2') {
+        throw new ProtocolException("Unexpected response to CONNECT: " + statusLine);
+      }
+      String line;
+      do {
+        line = PooledHttpDataSource.readLine(inputStream);
+      } while (line != null && !line.isEmpty());
+      if (line == null) {
+        throw new ProtocolException("Unexpected end of stream");
+      }
+    }
+
+  }
+
+}
@@ -25,6 +25,8 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -130,16 +132,40 @@ public final class Loader implements LoaderErrorThrower {
   private static final int MSG_IO_EXCEPTION = 3;
   private static final int MSG_FATAL_ERROR = 4;
 
-  private final ExecutorService downloadExecutorService;
+  private final Executor downloadExecutor;
+  private final ExecutorService ownedExecutorService;
 
   private LoadTask<? extends Loadable> currentTask;
   private IOException fatalError;
 
   /**
-   * @param threadName A name for the loader's thread.
+   * Constructs an instance that runs loads on the executor returned by
+   * {@link LoaderExecutors#getSharedExecutor()}, or on its own thread if a shared executor has not
+   * been set.
+   *
+   * @param threadName A name for the loader's thread. Unused if a shared executor has been set.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    Executor sharedExecutor = LoaderExecutors.getSharedExecutor();
+    if (sharedExecutor != null) {
+      downloadExecutor = new SerialExecutor(sharedExecutor);
+      ownedExecutorService = null;
+    } else {
+      ownedExecutorService = Util.newSingleThreadExecutor(threadName);
+      downloadExecutor = ownedExecutorService;
+    }
+  }
+
+  /**
+   * Constructs an instance that runs loads on the specified executor, which may be shared with
+   * other {@link Loader}s. Loads started by this instance are run one at a time, in order.
+   *
+   * @param executor The executor on which loads should be run. It is not shut down when the loader
+   *     is released.
+   */
+  public Loader(Executor executor) {
+    downloadExecutor = new SerialExecutor(executor);
+    ownedExecutorService = null;
   }
 
   /**
@@ -191,17 +217,19 @@ public final class Loader implements LoaderErrorThrower {
    * Releases the {@link Loader}, running {@code postLoadAction} on its thread. This method should
    * be called when the {@link Loader} is no longer required.
    *
-   * @param postLoadAction A {@link Runnable} to run on the loader's thread when
-   *     {@link Loadable#load()} is no longer running.
+   * @param postLoadAction A {@link Runnable} to run on the loader's thread (or on the executor
+   *     used by the loader) when {@link Loadable#load()} is no longer running.
    */
   public void release(Runnable postLoadAction) {
     if (currentTask != null) {
       currentTask.cancel(true);
     }
     if (postLoadAction != null) {
-      downloadExecutorService.submit(postLoadAction);
+      downloadExecutor.execute(postLoadAction);
+    }
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -236,7 +264,7 @@ public final class Loader implements LoaderErrorThrower {
     private IOException currentError;
     private int errorCount;
 
-    private volatile Thread executorThread;
+    private Thread executorThread;
     private volatile boolean released;
 
     public LoadTask(Looper looper, T loadable, Loader.Callback<T> callback,
@@ -274,8 +302,12 @@ public final class Loader implements LoaderErrorThrower {
         }
       } else {
         loadable.cancelLoad();
-        if (executorThread != null) {
-          executorThread.interrupt();
+        synchronized (this) {
+          // The check is made whilst holding the lock, so that a thread that's gone on to run a
+          // different task (when the executor is shared) is never interrupted.
+          if (executorThread != null) {
+            executorThread.interrupt();
+          }
         }
       }
       if (released) {
@@ -288,7 +320,9 @@ public final class Loader implements LoaderErrorThrower {
     @Override
     public void run() {
       try {
-        executorThread = Thread.currentThread();
+        synchronized (this) {
+          executorThread = Thread.currentThread();
+        }
         if (!loadable.isLoadCanceled()) {
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
           try {
@@ -325,6 +359,12 @@ public final class Loader implements LoaderErrorThrower {
           obtainMessage(MSG_FATAL_ERROR, e).sendToTarget();
         }
         throw e;
+      } finally {
+        synchronized (this) {
+          executorThread = null;
+          // Clear any interrupt raised by cancelation, since the thread may be reused.
+          Thread.interrupted();
+        }
       }
     }
 
@@ -369,7 +409,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void submitToExecutor() {
       currentError = null;
-      downloadExecutorService.submit(currentTask);
+      downloadExecutor.execute(currentTask);
     }
 
     private void finish() {
@@ -382,4 +422,45 @@ public final class Loader implements LoaderErrorThrower {
 
   }
 
+  /**
+   * Runs tasks one at a time and in order on an underlying (possibly shared) executor.
+   */
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks;
+
+    private Runnable activeTask;
+
+    public SerialExecutor(Executor executor) {
+      this.executor = executor;
+      tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+      tasks.add(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            task.run();
+          } finally {
+            scheduleNext();
+          }
+        }
+      });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      activeTask = tasks.poll();
+      if (activeTask != null) {
+        executor.execute(activeTask);
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Util;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides {@link Executor}s that can be shared by many {@link Loader}s.
+ * <p>
+ * By default each {@link Loader} creates its own thread, so an application with several players
+ * (each with several loaders) creates many threads. If a shared executor is set by calling
+ * {@link #setSharedExecutor(Executor)}, {@link Loader}s created with {@link Loader#Loader(String)}
+ * will run their loads on it instead. Loads performed by a single {@link Loader} remain serialized.
+ * <p>
+ * Note that loads typically block on I/O. When using a bounded executor, loads that are started
+ * whilst all of its threads are busy will be queued until a thread becomes available.
+ */
+public final class LoaderExecutors {
+
+  /**
+   * The default maximum number of threads for an executor created by
+   * {@link #newBoundedExecutor(int)}.
+   */
+  public static final int DEFAULT_MAX_THREADS = 8;
+
+  private static final String THREAD_NAME_PREFIX = "Loader:Shared";
+  private static final long THREAD_KEEP_ALIVE_MS = 30000;
+
+  private static Executor sharedExecutor;
+
+  private LoaderExecutors() {}
+
+  /**
+   * Sets the executor on which {@link Loader}s subsequently created with
+   * {@link Loader#Loader(String)} will run their loads. Existing {@link Loader}s are unaffected.
+   *
+   * @param executor The executor, or null if each {@link Loader} should create its own thread.
+   */
+  public static synchronized void setSharedExecutor(Executor executor) {
+    sharedExecutor = executor;
+  }
+
+  /**
+   * Returns the executor set by {@link #setSharedExecutor(Executor)}, or null if not set.
+   */
+  public static synchronized Executor getSharedExecutor() {
+    return sharedExecutor;
+  }
+
+  /**
+   * Returns a new executor that runs loads on at most {@code maxThreads} threads. Idle threads are
+   * terminated after a timeout, so the executor does not need to be shut down.
+   *
+   * @param maxThreads The maximum number of threads.
+   * @return The executor.
+   */
+  public static ExecutorService newBoundedExecutor(int maxThreads) {
+    return Util.newBoundedThreadPoolExecutor(THREAD_NAME_PREFIX, maxThreads,
+        THREAD_KEEP_ALIVE_MS);
+  }
+
+  /**
+   * Returns a new executor that runs each load on its own virtual thread, if the runtime supports
+   * virtual threads. Interrupting a virtual thread blocked on I/O unblocks it, so loads can be
+   * canceled in the same way as when running on platform threads.
+   *
+   * @return The executor, or null if the runtime does not support virtual threads.
+   */
+  public static ExecutorService newVirtualThreadPerLoadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (Exception e) {
+      // Virtual threads are not supported.
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,817 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.HttpConnectionPool.Connection;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Predicate;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An {@link HttpDataSource} that speaks HTTP/1.1 directly over sockets obtained from a
+ * {@link HttpConnectionPool}, so that connections are kept alive and reused across requests and
+ * across data source instances sharing the same pool.
+ * <p>
+ * A connection is returned to the pool when the source is closed, provided the response has been
+ * fully consumed or only a small amount of it remains (in which case the remainder is drained).
+ * Requests that are abandoned part way through close their connection instead.
+ * <p>
+ * Requests are made through the first proxy returned by the default {@link ProxySelector}, which
+ * reflects the {@code http.proxyHost} and {@code https.proxyHost} system properties. HTTP and SOCKS
+ * proxies are supported, but proxies that require authentication aren't. Applications that need
+ * authenticated proxies should use {@link DefaultHttpDataSource} instead.
+ * <p>
+ * By default this implementation will not follow cross-protocol redirects (i.e. redirects from
+ * HTTP to HTTPS or vice versa).
+ */
+public final class PooledHttpDataSource implements HttpDataSource {
+
+  /**
+   * A {@link HttpDataSource.Factory} that produces {@link PooledHttpDataSource} instances sharing a
+   * single {@link HttpConnectionPool}.
+   */
+  public static final class Factory implements HttpDataSource.Factory {
+
+    private final String userAgent;
+    private final TransferListener<? super DataSource> listener;
+    private final HttpConnectionPool connectionPool;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final boolean allowCrossProtocolRedirects;
+
+    /**
+     * @param userAgent The User-Agent string that should be used.
+     * @param listener An optional listener.
+     */
+    public Factory(String userAgent, TransferListener<? super DataSource> listener) {
+      this(userAgent, listener, new HttpConnectionPool(),
+          DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+          DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, false);
+    }
+
+    /**
+     * @param userAgent The User-Agent string that should be used.
+     * @param listener An optional listener.
+     * @param connectionPool The pool from which connections are obtained.
+     * @param connectTimeoutMillis The connection timeout, in milliseconds. A timeout of zero is
+     *     interpreted as an infinite timeout.
+     * @param readTimeoutMillis The read timeout, in milliseconds. A timeout of zero is interpreted
+     *     as an infinite timeout.
+     * @param allowCrossProtocolRedirects Whether cross-protocol redirects (i.e. redirects from HTTP
+     *     to HTTPS and vice versa) are enabled.
+     */
+    public Factory(String userAgent, TransferListener<? super DataSource> listener,
+        HttpConnectionPool connectionPool, int connectTimeoutMillis, int readTimeoutMillis,
+        boolean allowCrossProtocolRedirects) {
+      this.userAgent = userAgent;
+      this.listener = listener;
+      this.connectionPool = connectionPool;
+      this.connectTimeoutMillis = connectTimeoutMillis;
+      this.readTimeoutMillis = readTimeoutMillis;
+      this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+    }
+
+    /**
+     * Returns the {@link HttpConnectionPool} shared by the created data sources.
+     */
+    public HttpConnectionPool getConnectionPool() {
+      return connectionPool;
+    }
+
+    @Override
+    public PooledHttpDataSource createDataSource() {
+      return new PooledHttpDataSource(userAgent, null, listener, connectionPool,
+          connectTimeoutMillis, readTimeoutMillis, allowCrossProtocolRedirects);
+    }
+
+  }
+
+  private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
+  private static final long MAX_BYTES_TO_DRAIN = 2048;
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+  private static final String CHARSET_NAME = "ISO-8859-1";
+  private static final AtomicReference<byte[]> skipBufferReference = new AtomicReference<>();
+
+  private final boolean allowCrossProtocolRedirects;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  private final String userAgent;
+  private final Predicate<String> contentTypePredicate;
+  private final HashMap<String, String> requestProperties;
+  private final TransferListener<? super PooledHttpDataSource> listener;
+  private final HttpConnectionPool connectionPool;
+
+  private DataSpec dataSpec;
+  private Connection connection;
+  private Uri uri;
+  private int responseCode;
+  private Map<String, List<String>> responseHeaders;
+  private ResponseBodyInputStream responseBody;
+  private boolean connectionReusable;
+  private InputStream inputStream;
+  private boolean opened;
+
+  private long bytesToSkip;
+  private long bytesToRead;
+
+  private long bytesSkipped;
+  private long bytesRead;
+
+  /**
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is rejected by the
+   *     predicate then a {@link HttpDataSource.InvalidContentTypeException} is thrown from
+   *     {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   * @param connectionPool The pool from which connections are obtained.
+   * @param connectTimeoutMillis The connection timeout, in milliseconds. A timeout of zero is
+   *     interpreted as an infinite timeout.
+   * @param readTimeoutMillis The read timeout, in milliseconds. A timeout of zero is interpreted
+   *     as an infinite timeout.
+   * @param allowCrossProtocolRedirects Whether cross-protocol redirects (i.e. redirects from HTTP
+   *     to HTTPS and vice versa) are enabled.
+   */
+  public PooledHttpDataSource(String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener<? super PooledHttpDataSource> listener, HttpConnectionPool connectionPool,
+      int connectTimeoutMillis, int readTimeoutMillis, boolean allowCrossProtocolRedirects) {
+    this.userAgent = Assertions.checkNotEmpty(userAgent);
+    this.contentTypePredicate = contentTypePredicate;
+    this.listener = listener;
+    this.connectionPool = Assertions.checkNotNull(connectionPool);
+    this.requestProperties = new HashMap<>();
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+  }
+
+  @Override
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  @Override
+  public void setRequestProperty(String name, String value) {
+    Assertions.checkNotNull(name);
+    Assertions.checkNotNull(value);
+    synchronized (requestProperties) {
+      requestProperties.put(name, value);
+    }
+  }
+
+  @Override
+  public void clearRequestProperty(String name) {
+    Assertions.checkNotNull(name);
+    synchronized (requestProperties) {
+      requestProperties.remove(name);
+    }
+  }
+
+  @Override
+  public void clearAllRequestProperties() {
+    synchronized (requestProperties) {
+      requestProperties.clear();
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    this.dataSpec = dataSpec;
+    this.bytesRead = 0;
+    this.bytesSkipped = 0;
+    try {
+      executeRequest(dataSpec);
+    } catch (IOException e) {
+      closeConnectionQuietly();
+      throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
+          dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+
+    // Check for a valid response code.
+    if (responseCode < 200 || responseCode > 299) {
+      Map<String, List<String>> headers = responseHeaders;
+      releaseOrCloseConnection();
+      InvalidResponseCodeException exception =
+          new InvalidResponseCodeException(responseCode, headers, dataSpec);
+      if (responseCode == 416) {
+        exception.initCause(new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE));
+      }
+      throw exception;
+    }
+
+    // Check for a valid content type.
+    String contentType = getResponseHeader("Content-Type");
+    if (contentTypePredicate != null && !contentTypePredicate.evaluate(contentType)) {
+      releaseOrCloseConnection();
+      throw new InvalidContentTypeException(contentType, dataSpec);
+    }
+
+    // If we requested a range starting from a non-zero position and received a 200 rather than a
+    // 206, then the server does not support partial requests. We'll need to manually skip to the
+    // requested position.
+    bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+
+    // Determine the length of the data to be read, after skipping.
+    boolean gzipped = "gzip".equalsIgnoreCase(getResponseHeader("Content-Encoding"));
+    if (!gzipped) {
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        bytesToRead = dataSpec.length;
+      } else {
+        long contentLength = DefaultHttpDataSource.getContentLength(
+            getResponseHeader("Content-Length"), getResponseHeader("Content-Range"));
+        bytesToRead = contentLength != C.LENGTH_UNSET ? (contentLength - bytesToSkip)
+            : C.LENGTH_UNSET;
+      }
+    } else {
+      // The content length in the response is that of the compressed data.
+      bytesToRead = dataSpec.length;
+    }
+
+    try {
+      inputStream = gzipped ? new GZIPInputStream(responseBody) : responseBody;
+    } catch (IOException e) {
+      closeConnectionQuietly();
+      throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart(this, dataSpec);
+    }
+
+    return bytesToRead;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+    try {
+      skipInternal();
+      return readInternal(buffer, offset, readLength);
+    } catch (IOException e) {
+      // The state of the connection is unknown, so it must not be reused.
+      connectionReusable = false;
+      throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
+    }
+  }
+
+  @Override
+  public void close() throws HttpDataSourceException {
+    try {
+      if (inputStream != null) {
+        releaseOrCloseConnection();
+      }
+    } finally {
+      inputStream = null;
+      uri = null;
+      responseHeaders = null;
+      closeConnectionQuietly();
+      if (opened) {
+        opened = false;
+        if (listener != null) {
+          listener.onTransferEnd(this);
+        }
+      }
+    }
+  }
+
+  // Internal methods.
+
+  /**
+   * Executes the request for a {@link DataSpec}, following redirects where permitted. On return,
+   * {@link #connection} holds the connection carrying the final response.
+   */
+  private void executeRequest(DataSpec dataSpec) throws IOException {
+    URL url = new URL(dataSpec.uri.toString());
+    byte[] postBody = dataSpec.postBody;
+    boolean allowGzip = (dataSpec.flags & DataSpec.FLAG_ALLOW_GZIP) != 0;
+    int redirectCount = 0;
+    while (true) {
+      makeRequest(url, postBody, dataSpec.position, dataSpec.length, allowGzip);
+      if (!isRedirect(responseCode, postBody)) {
+        return;
+      }
+      String location = getResponseHeader("Location");
+      URL redirectUrl = DefaultHttpDataSource.handleRedirect(url, location);
+      if (!allowCrossProtocolRedirects && !redirectUrl.getProtocol().equals(url.getProtocol())) {
+        // Leave the redirect response to be reported as an invalid response code, as
+        // HttpURLConnection does.
+        return;
+      }
+      if (redirectCount++ == MAX_REDIRECTS) {
+        throw new NoRouteToHostException("Too many redirects: " + redirectCount);
+      }
+      // For 300, 301, 302, and 303 POST requests follow the redirect and are transformed into GET
+      // requests. For 307 and 308 POST requests are not redirected.
+      postBody = null;
+      releaseOrCloseConnection();
+      url = redirectUrl;
+    }
+  }
+
+  /**
+   * Makes a single request and reads the response headers. If the request fails on a connection
+   * that was obtained from the pool, it's retried once on a new connection. Requests with a body
+   * aren't retried, since they might not be idempotent.
+   */
+  private void makeRequest(URL url, byte[] postBody, long position, long length,
+      boolean allowGzip) throws IOException {
+    String protocol = url.getProtocol();
+    boolean secure = "https".equals(protocol);
+    if (!secure && !"http".equals(protocol)) {
+      throw new ProtocolException("Unsupported protocol: " + protocol);
+    }
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    Proxy proxy = selectProxy(url);
+    // Plain requests sent to an HTTP proxy are addressed by absolute uri. Secure requests are sent
+    // through a tunnel, and so are addressed as they would be without a proxy.
+    boolean absoluteTarget = !secure && proxy.type() == Proxy.Type.HTTP;
+    byte[] request = buildRequest(url, port, postBody, position, length, allowGzip,
+        absoluteTarget);
+    for (int attempt = 0; ; attempt++) {
+      connection = connectionPool.acquire(secure, url.getHost(), port, proxy,
+          connectTimeoutMillis, readTimeoutMillis, attempt == 0);
+      try {
+        OutputStream outputStream = connection.outputStream;
+        outputStream.write(request);
+        if (postBody != null) {
+          outputStream.write(postBody);
+        }
+        outputStream.flush();
+        readResponse(connection.inputStream);
+        uri = Uri.parse(url.toString());
+        return;
+      } catch (IOException e) {
+        boolean retry = connection.reused && postBody == null
+            && !(e instanceof InterruptedIOException);
+        closeConnectionQuietly();
+        if (!retry) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private byte[] buildRequest(URL url, int port, byte[] postBody, long position, long length,
+      boolean allowGzip, boolean absoluteTarget) throws IOException {
+    TreeMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    synchronized (requestProperties) {
+      headers.putAll(requestProperties);
+    }
+    String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + port;
+    headers.put("Host", host);
+    if (!(position == 0 && length == C.LENGTH_UNSET)) {
+      String rangeRequest = "bytes=" + position + "-";
+      if (length != C.LENGTH_UNSET) {
+        rangeRequest += (position + length - 1);
+      }
+      headers.put("Range", rangeRequest);
+    }
+    headers.put("User-Agent", userAgent);
+    headers.put("Accept-Encoding", allowGzip ? "gzip" : "identity");
+    if (postBody != null) {
+      headers.put("Content-Length", Integer.toString(postBody.length));
+    }
+    String target = url.getFile().isEmpty() ? "/" : url.getFile();
+    if (absoluteTarget) {
+      target = url.getProtocol() + "://" + host + target;
+    }
+    StringBuilder request = new StringBuilder();
+    request.append(postBody != null ? "POST " : "GET ")
+        .append(target)
+        .append(" HTTP/1.1\r\n");
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    }
+    request.append("\r\n");
+    return request.toString().getBytes(CHARSET_NAME);
+  }
+
+  /**
+   * Reads the status line and headers of a response, and sets up {@link #responseBody} to read its
+   * body.
+   */
+  private void readResponse(InputStream inputStream) throws IOException {
+    String statusLine;
+    int httpMinorVersion;
+    TreeMap<String, List<String>> headers;
+    do {
+      statusLine = readLine(inputStream);
+      if (statusLine == null) {
+        throw new EOFException("Unexpected end of stream");
+      }
+      if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      httpMinorVersion = statusLine.charAt(7) - '0';
+      try {
+        responseCode = Integer.parseInt(statusLine.substring(9, 12));
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      String line;
+      while ((line = readLine(inputStream)) != null && !line.isEmpty()) {
+        int separatorIndex = line.indexOf(':');
+        if (separatorIndex <= 0) {
+          throw new ProtocolException("Unexpected header: " + line);
+        }
+        String name = line.substring(0, separatorIndex).trim();
+        List<String> values = headers.get(name);
+        if (values == null) {
+          values = new ArrayList<>();
+          headers.put(name, values);
+        }
+        values.add(line.substring(separatorIndex + 1).trim());
+      }
+      if (line == null) {
+        throw new EOFException("Unexpected end of stream");
+      }
+      // Informational responses (e.g. 100 Continue) are followed by the actual response.
+    } while (responseCode >= 100 && responseCode < 200);
+    responseHeaders = Collections.unmodifiableMap(headers);
+
+    String connectionHeader = getResponseHeader("Connection");
+    boolean keepAlive = connectionHeader != null ? !"close".equalsIgnoreCase(connectionHeader)
+        : httpMinorVersion >= 1;
+    String transferEncoding = getResponseHeader("Transfer-Encoding");
+    String contentLength = getResponseHeader("Content-Length");
+    if (responseCode == 204 || responseCode == 304) {
+      responseBody = new FixedLengthInputStream(inputStream, 0);
+    } else if (transferEncoding != null
+        && Util.toLowerInvariant(transferEncoding).contains("chunked")) {
+      responseBody = new ChunkedInputStream(inputStream);
+    } else if (contentLength != null) {
+      try {
+        responseBody = new FixedLengthInputStream(inputStream, Long.parseLong(contentLength));
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected Content-Length: " + contentLength);
+      }
+    } else {
+      // The body is delimited by the server closing the connection.
+      responseBody = new UnboundedInputStream(inputStream);
+      keepAlive = false;
+    }
+    connectionReusable = keepAlive;
+  }
+
+  private String getResponseHeader(String name) {
+    List<String> values = responseHeaders == null ? null : responseHeaders.get(name);
+    return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+  }
+
+  /**
+   * Skips any bytes that need skipping. Else does nothing.
+   *
+   * @throws InterruptedIOException If the thread is interrupted during the operation.
+   * @throws EOFException If the end of the input stream is reached before the bytes are skipped.
+   */
+  private void skipInternal() throws IOException {
+    if (bytesSkipped == bytesToSkip) {
+      return;
+    }
+
+    // Acquire the shared skip buffer.
+    byte[] skipBuffer = skipBufferReference.getAndSet(null);
+    if (skipBuffer == null) {
+      skipBuffer = new byte[4096];
+    }
+
+    while (bytesSkipped != bytesToSkip) {
+      int readLength = (int) Math.min(bytesToSkip - bytesSkipped, skipBuffer.length);
+      int read = inputStream.read(skipBuffer, 0, readLength);
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      if (read == -1) {
+        throw new EOFException();
+      }
+      bytesSkipped += read;
+      if (listener != null) {
+        listener.onBytesTransferred(this, read);
+      }
+    }
+
+    // Release the shared skip buffer.
+    skipBufferReference.set(skipBuffer);
+  }
+
+  private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (bytesToRead != C.LENGTH_UNSET) {
+      long bytesRemaining = bytesToRead - bytesRead;
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      readLength = (int) Math.min(readLength, bytesRemaining);
+    }
+
+    int read = inputStream.read(buffer, offset, readLength);
+    if (read == -1) {
+      if (bytesToRead != C.LENGTH_UNSET) {
+        // End of stream reached having not read sufficient data.
+        throw new EOFException();
+      }
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    bytesRead += read;
+    if (listener != null) {
+      listener.onBytesTransferred(this, read);
+    }
+    return read;
+  }
+
+  /**
+   * Returns the current connection to the pool if the remainder of the response can be drained
+   * cheaply, or closes it otherwise.
+   */
+  private void releaseOrCloseConnection() {
+    if (connection == null) {
+      return;
+    }
+    boolean release = false;
+    if (connectionReusable) {
+      try {
+        release = responseBody.drain(MAX_BYTES_TO_DRAIN);
+      } catch (IOException e) {
+        // Fall through and close the connection.
+      }
+    }
+    if (release) {
+      connectionPool.release(connection);
+      connection = null;
+    } else {
+      closeConnectionQuietly();
+    }
+    responseBody = null;
+  }
+
+  /**
+   * Closes the current connection quietly, if there is one.
+   */
+  private void closeConnectionQuietly() {
+    if (connection != null) {
+      connection.closeQuietly();
+      connection = null;
+    }
+  }
+
+  /**
+   * Returns the proxy through which a request to the specified url should be made.
+   */
+  private static Proxy selectProxy(URL url) {
+    ProxySelector proxySelector = ProxySelector.getDefault();
+    if (proxySelector == null) {
+      return Proxy.NO_PROXY;
+    }
+    List<Proxy> proxies;
+    try {
+      proxies = proxySelector.select(url.toURI());
+    } catch (URISyntaxException e) {
+      return Proxy.NO_PROXY;
+    }
+    return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+  }
+
+  private static boolean isRedirect(int responseCode, byte[] postBody) {
+    return responseCode == 300 || responseCode == 301 || responseCode == 302
+        || responseCode == 303
+        || (postBody == null && (responseCode == 307 || responseCode == 308));
+  }
+
+  /**
+   * Reads a CRLF (or LF) terminated line, returning null if the end of the stream is reached
+   * before any characters are read.
+   */
+  /* package */ static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int value;
+    while ((value = inputStream.read()) != -1) {
+      if (value == '\n') {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+          line.setLength(length - 1);
+        }
+        return line.toString();
+      }
+      if (line.length() == MAX_LINE_LENGTH) {
+        throw new ProtocolException("Line too long");
+      }
+      line.append((char) value);
+    }
+    if (line.length() > 0) {
+      throw new EOFException("Unexpected end of stream");
+    }
+    return null;
+  }
+
+  // Response body streams.
+
+  /**
+   * Reads the body of a single response from a connection's input stream.
+   */
+  private abstract static class ResponseBodyInputStream extends InputStream {
+
+    protected final InputStream inputStream;
+
+    private byte[] singleByteBuffer;
+
+    public ResponseBodyInputStream(InputStream inputStream) {
+      this.inputStream = inputStream;
+    }
+
+    /**
+     * Returns whether the whole body has been read.
+     */
+    public abstract boolean isExhausted();
+
+    /**
+     * Reads and discards up to {@code maxBytes} of the body.
+     *
+     * @param maxBytes The maximum number of bytes to discard.
+     * @return Whether the whole body has been read.
+     * @throws IOException If an error occurs reading from the stream.
+     */
+    public boolean drain(long maxBytes) throws IOException {
+      byte[] buffer = new byte[(int) Math.min(maxBytes + 1, 4096)];
+      long drainedBytes = 0;
+      while (!isExhausted() && drainedBytes <= maxBytes) {
+        int read = read(buffer, 0, buffer.length);
+        if (read == -1) {
+          break;
+        }
+        drainedBytes += read;
+      }
+      return isExhausted();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (singleByteBuffer == null) {
+        singleByteBuffer = new byte[1];
+      }
+      int read = read(singleByteBuffer, 0, 1);
+      return read == -1 ? -1 : singleByteBuffer[0] & 0xFF;
+    }
+
+    @Override
+    public void close() {
+      // The underlying stream belongs to the connection, which outlives the response.
+    }
+
+  }
+
+  private static final class FixedLengthInputStream extends ResponseBodyInputStream {
+
+    private long bytesRemaining;
+
+    public FixedLengthInputStream(InputStream inputStream, long length) {
+      super(inputStream);
+      bytesRemaining = length;
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return bytesRemaining == 0;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (bytesRemaining == 0) {
+        return -1;
+      }
+      int read = inputStream.read(buffer, offset, (int) Math.min(length, bytesRemaining));
+      if (read == -1) {
+        throw new EOFException();
+      }
+      bytesRemaining -= read;
+      return read;
+    }
+
+  }
+
+  private static final class ChunkedInputStream extends ResponseBodyInputStream {
+
+    private static final long CHUNK_SIZE_UNKNOWN = -1;
+
+    private long chunkBytesRemaining;
+    private boolean exhausted;
+
+    public ChunkedInputStream(InputStream inputStream) {
+      super(inputStream);
+      chunkBytesRemaining = CHUNK_SIZE_UNKNOWN;
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return exhausted;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (exhausted) {
+        return -1;
+      }
+      if (chunkBytesRemaining == 0) {
+        // Consume the CRLF that terminates the chunk's data.
+        readLine(inputStream);
+        chunkBytesRemaining = CHUNK_SIZE_UNKNOWN;
+      }
+      if (chunkBytesRemaining == CHUNK_SIZE_UNKNOWN) {
+        readChunkSize();
+        if (exhausted) {
+          return -1;
+        }
+      }
+      int read = inputStream.read(buffer, offset, (int) Math.min(length, chunkBytesRemaining));
+      if (read == -1) {
+        throw new EOFException();
+      }
+      chunkBytesRemaining -= read;
+      return read;
+    }
+
+    private void readChunkSize() throws IOException {
+      String line = readLine(inputStream);
+      if (line == null) {
+        throw new EOFException();
+      }
+      int extensionIndex = line.indexOf(';');
+      String size = (extensionIndex == -1 ? line : line.substring(0, extensionIndex)).trim();
+      try {
+        chunkBytesRemaining = Long.parseLong(size, 16);
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected chunk size: " + line);
+      }
+      if (chunkBytesRemaining == 0) {
+        // Skip any trailers.
+        String trailer;
+        do {
+          trailer = readLine(inputStream);
+        } while (trailer != null && !trailer.isEmpty());
+        exhausted = true;
+      }
+    }
+
+  }
+
+  private static final class UnboundedInputStream extends ResponseBodyInputStream {
+
+    public UnboundedInputStream(InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public boolean isExhausted() {
+      // The connection can't be reused, so there's no point in draining it.
+      return false;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return inputStream.read(buffer, offset, length);
+    }
+
+  }
+
+}
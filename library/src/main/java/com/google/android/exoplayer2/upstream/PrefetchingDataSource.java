@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link DataSource} that is able to request data ahead of it being opened, so that several
+ * requests can be in flight at the same time.
+ * <p>
+ * Callers announce the {@link DataSpec}s they expect to open next by calling
+ * {@link #prefetch(DataSpec, List)}. Each announced request is started on a background thread and
+ * its data is buffered in memory (up to a per-request limit) as it arrives. A subsequent
+ * {@link #open(DataSpec)} with a matching {@link DataSpec} is served from that request, so the
+ * caller does not pay the latency of establishing it. Calls to {@link #open(DataSpec)} that don't
+ * match an announced request are passed directly to an upstream {@link DataSource}.
+ * <p>
+ * Data sources used for prefetching are obtained from the upstream {@link DataSource.Factory}, so
+ * any {@link TransferListener} (e.g. a {@link DefaultBandwidthMeter}) attached to the factory's
+ * sources observes the actual network transfers. Reads served from memory are not reported.
+ */
+public final class PrefetchingDataSource implements DataSource {
+
+  /**
+   * A {@link DataSource.Factory} that produces {@link PrefetchingDataSource} instances.
+   */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final int maxPrefetchCount;
+    private final int maxBufferedBytesPerRequest;
+
+    /**
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream {@link DataSource}s.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this(upstreamFactory, DEFAULT_MAX_PREFETCH_COUNT, DEFAULT_MAX_BUFFERED_BYTES_PER_REQUEST);
+    }
+
+    /**
+     * @param upstreamFactory A {@link DataSource.Factory} for the upstream {@link DataSource}s.
+     * @param maxPrefetchCount The maximum number of requests that may be in flight ahead of the
+     *     request currently being read.
+     * @param maxBufferedBytesPerRequest The maximum number of bytes that may be buffered in memory
+     *     for each prefetched request.
+     */
+    public Factory(DataSource.Factory upstreamFactory, int maxPrefetchCount,
+        int maxBufferedBytesPerRequest) {
+      this.upstreamFactory = upstreamFactory;
+      this.maxPrefetchCount = maxPrefetchCount;
+      this.maxBufferedBytesPerRequest = maxBufferedBytesPerRequest;
+    }
+
+    @Override
+    public PrefetchingDataSource createDataSource() {
+      return new PrefetchingDataSource(upstreamFactory, maxPrefetchCount,
+          maxBufferedBytesPerRequest);
+    }
+
+  }
+
+  /**
+   * The default maximum number of requests in flight ahead of the request being read.
+   */
+  public static final int DEFAULT_MAX_PREFETCH_COUNT = 2;
+  /**
+   * The default maximum number of bytes buffered in memory for each prefetched request.
+   */
+  public static final int DEFAULT_MAX_BUFFERED_BYTES_PER_REQUEST =
+      32 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  private static final int BLOCK_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+  private static final long THREAD_KEEP_ALIVE_MS = 10000;
+
+  private final DataSource.Factory upstreamFactory;
+  private final DataSource upstream;
+  private final int maxPrefetchCount;
+  private final int maxBufferedBytesPerRequest;
+  private final LinkedList<PrefetchTask> pendingTasks;
+
+  private ExecutorService executor;
+  private PrefetchTask currentTask;
+  private boolean upstreamOpened;
+
+  /**
+   * @param upstreamFactory A {@link DataSource.Factory} for the upstream {@link DataSource}s.
+   * @param maxPrefetchCount The maximum number of requests that may be in flight ahead of the
+   *     request currently being read.
+   * @param maxBufferedBytesPerRequest The maximum number of bytes that may be buffered in memory
+   *     for each prefetched request.
+   */
+  public PrefetchingDataSource(DataSource.Factory upstreamFactory, int maxPrefetchCount,
+      int maxBufferedBytesPerRequest) {
+    Assertions.checkArgument(maxPrefetchCount > 0);
+    Assertions.checkArgument(maxBufferedBytesPerRequest > 0);
+    this.upstreamFactory = upstreamFactory;
+    this.upstream = upstreamFactory.createDataSource();
+    this.maxPrefetchCount = maxPrefetchCount;
+    this.maxBufferedBytesPerRequest = maxBufferedBytesPerRequest;
+    pendingTasks = new LinkedList<>();
+  }
+
+  /**
+   * Returns the maximum number of requests that may be prefetched.
+   */
+  public int getMaxPrefetchCount() {
+    return maxPrefetchCount;
+  }
+
+  /**
+   * Sets the requests that are expected to be opened next, in the order in which they will be
+   * opened. Requests that are in flight but not included are canceled, which is the expected
+   * behavior following a seek or a track switch.
+   * <p>
+   * {@code nextDataSpec} is not prefetched, since it's about to be opened. However if it was
+   * prefetched following an earlier call then that request is retained, so that the subsequent
+   * {@link #open(DataSpec)} can be served from it. At most {@link #getMaxPrefetchCount()} of the
+   * {@code followingDataSpecs} are started.
+   * <p>
+   * This method may be called from any thread.
+   *
+   * @param nextDataSpec The {@link DataSpec} that will be opened next.
+   * @param followingDataSpecs The {@link DataSpec}s that are expected to be opened after
+   *     {@code nextDataSpec}.
+   */
+  public synchronized void prefetch(DataSpec nextDataSpec, List<DataSpec> followingDataSpecs) {
+    int count = Math.min(followingDataSpecs.size(), maxPrefetchCount);
+    Iterator<PrefetchTask> iterator = pendingTasks.iterator();
+    while (iterator.hasNext()) {
+      PrefetchTask task = iterator.next();
+      if (!matches(nextDataSpec, task.dataSpec)
+          && indexOf(followingDataSpecs, count, task.dataSpec) == C.INDEX_UNSET) {
+        task.cancel();
+        iterator.remove();
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      DataSpec dataSpec = followingDataSpecs.get(i);
+      if (findPendingTask(dataSpec) == null) {
+        PrefetchTask task = new PrefetchTask(dataSpec, upstreamFactory.createDataSource(),
+            maxBufferedBytesPerRequest);
+        pendingTasks.add(task);
+        task.start(getExecutor());
+      }
+    }
+  }
+
+  /**
+   * Cancels all requests that have been prefetched but not yet opened.
+   * <p>
+   * This method may be called from any thread.
+   */
+  public synchronized void cancelPrefetches() {
+    for (PrefetchTask task : pendingTasks) {
+      task.cancel();
+    }
+    pendingTasks.clear();
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Assertions.checkState(currentTask == null && !upstreamOpened);
+    synchronized (this) {
+      currentTask = findPendingTask(dataSpec);
+      if (currentTask != null) {
+        pendingTasks.remove(currentTask);
+      }
+    }
+    if (currentTask != null) {
+      return currentTask.awaitOpened();
+    }
+    upstreamOpened = true;
+    return upstream.open(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (currentTask != null) {
+      return currentTask.read(buffer, offset, readLength);
+    }
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override
+  public Uri getUri() {
+    if (currentTask != null) {
+      return currentTask.getUri();
+    }
+    return upstreamOpened ? upstream.getUri() : null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (currentTask != null) {
+      currentTask.cancel();
+      currentTask = null;
+    }
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  // Internal methods.
+
+  private PrefetchTask findPendingTask(DataSpec dataSpec) {
+    for (PrefetchTask task : pendingTasks) {
+      if (matches(task.dataSpec, dataSpec)) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      // Idle threads are allowed to exit, since there's no release method through which the
+      // executor could otherwise be shut down.
+      executor = Util.newBoundedThreadPoolExecutor("PrefetchingDataSource", maxPrefetchCount,
+          THREAD_KEEP_ALIVE_MS);
+    }
+    return executor;
+  }
+
+  private static int indexOf(List<DataSpec> dataSpecs, int count, DataSpec dataSpec) {
+    for (int i = 0; i < count; i++) {
+      if (matches(dataSpecs.get(i), dataSpec)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static boolean matches(DataSpec a, DataSpec b) {
+    return a.postBody == null && b.postBody == null
+        && a.absoluteStreamPosition == b.absoluteStreamPosition
+        && a.position == b.position
+        && a.length == b.length
+        && a.flags == b.flags
+        && a.uri.equals(b.uri)
+        && Util.areEqual(a.key, b.key);
+  }
+
+  /**
+   * Loads a single prefetched request on a background thread, buffering its data in a queue of
+   * fixed size blocks from which it's consumed by the thread that opens it.
+   */
+  private static final class PrefetchTask implements Runnable {
+
+    public final DataSpec dataSpec;
+
+    private final DataSource dataSource;
+    private final int maxBufferedBytes;
+    private final LinkedList<byte[]> blocks;
+
+    private Future<?> future;
+
+    // Guarded by this.
+    private boolean opened;
+    private boolean finished;
+    private boolean canceled;
+    private long resolvedLength;
+    private Uri uri;
+    private IOException error;
+    private int bufferedBytes;
+    private int readOffset;
+    private int writeOffset;
+
+    public PrefetchTask(DataSpec dataSpec, DataSource dataSource, int maxBufferedBytes) {
+      this.dataSpec = dataSpec;
+      this.dataSource = dataSource;
+      this.maxBufferedBytes = maxBufferedBytes;
+      blocks = new LinkedList<>();
+    }
+
+    public synchronized void start(ExecutorService executor) {
+      future = executor.submit(this);
+    }
+
+    public synchronized void cancel() {
+      if (canceled) {
+        return;
+      }
+      canceled = true;
+      finished = true;
+      blocks.clear();
+      bufferedBytes = 0;
+      if (future != null) {
+        future.cancel(true);
+      }
+      notifyAll();
+    }
+
+    public synchronized long awaitOpened() throws IOException {
+      try {
+        while (!opened && !finished) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      if (!opened) {
+        throw error != null ? error : new InterruptedIOException();
+      }
+      return resolvedLength;
+    }
+
+    public synchronized Uri getUri() {
+      return uri;
+    }
+
+    public synchronized int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (readLength == 0) {
+        return 0;
+      }
+      try {
+        while (bufferedBytes == 0 && !finished) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      if (bufferedBytes == 0) {
+        if (error != null) {
+          throw error;
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+      byte[] block = blocks.getFirst();
+      int blockLimit = blocks.size() == 1 ? writeOffset : BLOCK_SIZE;
+      int bytesToRead = Math.min(readLength, blockLimit - readOffset);
+      System.arraycopy(block, readOffset, buffer, offset, bytesToRead);
+      readOffset += bytesToRead;
+      bufferedBytes -= bytesToRead;
+      if (readOffset == BLOCK_SIZE) {
+        blocks.removeFirst();
+        readOffset = 0;
+      }
+      notifyAll();
+      return bytesToRead;
+    }
+
+    @Override
+    public void run() {
+      try {
+        long length = dataSource.open(dataSpec);
+        synchronized (this) {
+          resolvedLength = length;
+          uri = dataSource.getUri();
+          opened = true;
+          notifyAll();
+        }
+        while (true) {
+          byte[] block;
+          int blockOffset;
+          synchronized (this) {
+            while (!canceled && bufferedBytes >= maxBufferedBytes) {
+              wait();
+            }
+            if (canceled) {
+              return;
+            }
+            if (blocks.isEmpty() || writeOffset == BLOCK_SIZE) {
+              blocks.add(new byte[BLOCK_SIZE]);
+              writeOffset = 0;
+            }
+            block = blocks.getLast();
+            blockOffset = writeOffset;
+          }
+          // The region being written is not visible to the reader until it's published below.
+          int bytesRead = dataSource.read(block, blockOffset, BLOCK_SIZE - blockOffset);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            break;
+          }
+          synchronized (this) {
+            if (canceled) {
+              return;
+            }
+            writeOffset += bytesRead;
+            bufferedBytes += bytesRead;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          error = e;
+        }
+      } catch (InterruptedException e) {
+        // The prefetch was canceled.
+      } finally {
+        Util.closeQuietly(dataSource);
+        synchronized (this) {
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DataSource} that merges requests for nearby byte ranges of the same resource into a
+ * single upstream request.
+ * <p>
+ * When a range is opened the upstream source is opened from the requested position to the end of
+ * the resource, and is left open when this source is closed. If the next range to be opened starts
+ * at or shortly after the position reached in the upstream stream, it is served by continuing to
+ * read that stream (skipping over any gap) instead of issuing a new upstream request. The most
+ * recently read bytes are retained in an in-memory window, so that ranges starting shortly before
+ * the current upstream position can also be served without a new request.
+ * <p>
+ * Whether a forward gap is skipped over or a new request is made is decided by comparing the gap
+ * with the number of bytes that could be read from the upstream stream in the time taken to open a
+ * new request, as measured over the lifetime of the source.
+ * <p>
+ * The upstream source is closed if no range is opened within a maximum idle time of this source
+ * being closed, so that a connection isn't held open after the last load. It can also be closed
+ * immediately by calling {@link #release()}. Requests with a body or that allow gzip are passed
+ * through to the upstream source unchanged.
+ */
+public final class ReadAheadDataSource implements DataSource {
+
+  /**
+   * A {@link DataSource.Factory} that produces {@link ReadAheadDataSource} instances.
+   */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final int windowSize;
+    private final int maxSkipBytes;
+    private final long maxIdleTimeMs;
+
+    /**
+     * @param upstreamFactory A factory for the upstream sources.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this(upstreamFactory, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_SKIP_BYTES);
+    }
+
+    /**
+     * @param upstreamFactory A factory for the upstream sources.
+     * @param windowSize The number of recently read bytes to retain in memory.
+     * @param maxSkipBytes The maximum number of bytes to skip over rather than making a new
+     *     request.
+     */
+    public Factory(DataSource.Factory upstreamFactory, int windowSize, int maxSkipBytes) {
+      this(upstreamFactory, windowSize, maxSkipBytes, DEFAULT_MAX_IDLE_TIME_MS);
+    }
+
+    /**
+     * @param upstreamFactory A factory for the upstream sources.
+     * @param windowSize The number of recently read bytes to retain in memory.
+     * @param maxSkipBytes The maximum number of bytes to skip over rather than making a new
+     *     request.
+     * @param maxIdleTimeMs The time for which the upstream source is held open after a source is
+     *     closed, in milliseconds.
+     */
+    public Factory(DataSource.Factory upstreamFactory, int windowSize, int maxSkipBytes,
+        long maxIdleTimeMs) {
+      this.upstreamFactory = upstreamFactory;
+      this.windowSize = windowSize;
+      this.maxSkipBytes = maxSkipBytes;
+      this.maxIdleTimeMs = maxIdleTimeMs;
+    }
+
+    @Override
+    public ReadAheadDataSource createDataSource() {
+      return new ReadAheadDataSource(upstreamFactory.createDataSource(), windowSize, maxSkipBytes,
+          maxIdleTimeMs);
+    }
+
+  }
+
+  /**
+   * The default number of recently read bytes retained in memory.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 256 * 1024;
+  /**
+   * The default maximum number of bytes to skip over rather than making a new request.
+   */
+  public static final int DEFAULT_MAX_SKIP_BYTES = 512 * 1024;
+  /**
+   * The number of bytes that will be skipped over before the upstream throughput and request
+   * latency have been measured.
+   */
+  public static final int DEFAULT_INITIAL_SKIP_BYTES = 32 * 1024;
+  /**
+   * The default time for which the upstream source is held open after this source is closed, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_MAX_IDLE_TIME_MS = 5000;
+
+  private static ScheduledExecutorService idleCloseExecutor;
+
+  private final DataSource upstream;
+  private final byte[] window;
+  private final int maxSkipBytes;
+  private final long maxIdleTimeMs;
+
+  private boolean passthrough;
+  private DataSpec dataSpec;
+  private long readPosition;
+  private long bytesRemaining;
+
+  // State of the upstream stream, which may remain open after this source is closed.
+  private boolean upstreamOpen;
+  private DataSpec upstreamDataSpec;
+  private long upstreamPosition;
+  private long upstreamEndPosition;
+  private long windowStartPosition;
+  private int windowLength;
+
+  // Measurements used to decide between skipping and making a new request.
+  private int measuredOpenCount;
+  private long totalUpstreamOpenTimeNs;
+  private long totalUpstreamBytesRead;
+  private long totalUpstreamReadTimeNs;
+
+  private int upstreamOpens;
+  private long bytesSkipped;
+
+  // Guarded by this source, since the idle upstream source is closed on another thread.
+  private ScheduledFuture<?> pendingIdleClose;
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   */
+  public ReadAheadDataSource(DataSource upstream) {
+    this(upstream, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_SKIP_BYTES);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param windowSize The number of recently read bytes to retain in memory.
+   * @param maxSkipBytes The maximum number of bytes to skip over rather than making a new request.
+   */
+  public ReadAheadDataSource(DataSource upstream, int windowSize, int maxSkipBytes) {
+    this(upstream, windowSize, maxSkipBytes, DEFAULT_MAX_IDLE_TIME_MS);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param windowSize The number of recently read bytes to retain in memory.
+   * @param maxSkipBytes The maximum number of bytes to skip over rather than making a new request.
+   * @param maxIdleTimeMs The time for which the upstream source is held open after this source is
+   *     closed, in milliseconds.
+   */
+  public ReadAheadDataSource(DataSource upstream, int windowSize, int maxSkipBytes,
+      long maxIdleTimeMs) {
+    Assertions.checkArgument(windowSize > 0);
+    this.upstream = Assertions.checkNotNull(upstream);
+    this.window = new byte[windowSize];
+    this.maxSkipBytes = maxSkipBytes;
+    this.maxIdleTimeMs = maxIdleTimeMs;
+  }
+
+  /**
+   * Returns the number of requests that have been made to the upstream source.
+   */
+  public int getUpstreamOpenCount() {
+    return upstreamOpens;
+  }
+
+  /**
+   * Returns the number of bytes that have been read from the upstream source and discarded in
+   * order to skip over gaps between requested ranges.
+   */
+  public long getBytesSkipped() {
+    return bytesSkipped;
+  }
+
+  @Override
+  public synchronized long open(DataSpec dataSpec) throws IOException {
+    cancelIdleClose();
+    this.dataSpec = dataSpec;
+    if (dataSpec.postBody != null || (dataSpec.flags & DataSpec.FLAG_ALLOW_GZIP) != 0) {
+      closeUpstream();
+      passthrough = true;
+      upstreamOpens++;
+      return upstream.open(dataSpec);
+    }
+    passthrough = false;
+    if (!canServeFromUpstream(dataSpec)) {
+      closeUpstream();
+      openUpstream(dataSpec);
+    }
+    readPosition = dataSpec.position;
+    while (upstreamPosition < readPosition) {
+      int bytesRead = readUpstreamIntoWindow((int) Math.min(readPosition - upstreamPosition,
+          Integer.MAX_VALUE));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        closeUpstream();
+        throw new EOFException();
+      }
+      bytesSkipped += bytesRead;
+    }
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      bytesRemaining = dataSpec.length;
+    } else if (upstreamEndPosition != C.LENGTH_UNSET) {
+      bytesRemaining = upstreamEndPosition - readPosition;
+    } else {
+      bytesRemaining = C.LENGTH_UNSET;
+    }
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (passthrough) {
+      return upstream.read(buffer, offset, readLength);
+    }
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      readLength = (int) Math.min(readLength, bytesRemaining);
+    }
+    if (readPosition == upstreamPosition) {
+      int bytesRead = readUpstreamIntoWindow(readLength);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (bytesRemaining != C.LENGTH_UNSET) {
+          // End of input encountered before the requested length was read.
+          throw new EOFException();
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+    }
+    // Serve the read from the window.
+    int windowOffset = (int) (readPosition - windowStartPosition);
+    readLength = Math.min(readLength, windowLength - windowOffset);
+    System.arraycopy(window, windowOffset, buffer, offset, readLength);
+    readPosition += readLength;
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      bytesRemaining -= readLength;
+    }
+    return readLength;
+  }
+
+  @Override
+  public Uri getUri() {
+    return passthrough ? upstream.getUri() : (dataSpec == null ? null : dataSpec.uri);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    dataSpec = null;
+    if (passthrough) {
+      passthrough = false;
+      upstream.close();
+    } else if (upstreamOpen) {
+      // Leave the upstream source open, so that the following range can be read from it, unless
+      // no range is opened within the maximum idle time.
+      cancelIdleClose();
+      pendingIdleClose = getIdleCloseExecutor().schedule(new Runnable() {
+        @Override
+        public void run() {
+          closeIdleUpstream();
+        }
+      }, maxIdleTimeMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Closes the upstream source, if it was left open by {@link #close()}, and discards the
+   * in-memory window.
+   *
+   * @throws IOException If an error occurs closing the upstream source.
+   */
+  public synchronized void release() throws IOException {
+    close();
+    cancelIdleClose();
+    closeUpstream();
+  }
+
+  private synchronized void closeIdleUpstream() {
+    if (dataSpec == null && !passthrough) {
+      pendingIdleClose = null;
+      windowLength = 0;
+      if (upstreamOpen) {
+        upstreamOpen = false;
+        upstreamDataSpec = null;
+        Util.closeQuietly(upstream);
+      }
+    }
+  }
+
+  private void cancelIdleClose() {
+    if (pendingIdleClose != null) {
+      pendingIdleClose.cancel(false);
+      pendingIdleClose = null;
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getIdleCloseExecutor() {
+    if (idleCloseExecutor == null) {
+      idleCloseExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ReadAheadDataSource:IdleClose");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return idleCloseExecutor;
+  }
+
+  private boolean canServeFromUpstream(DataSpec dataSpec) {
+    if (!upstreamOpen || !Util.areEqual(dataSpec.uri, upstreamDataSpec.uri)
+        || !Util.areEqual(dataSpec.key, upstreamDataSpec.key)) {
+      return false;
+    }
+    long position = dataSpec.position;
+    if (position < windowStartPosition || position > upstreamPosition + getSkipThresholdBytes()
+        || (upstreamEndPosition != C.LENGTH_UNSET && position > upstreamEndPosition)) {
+      return false;
+    }
+    if (upstreamEndPosition != C.LENGTH_UNSET && dataSpec.length != C.LENGTH_UNSET
+        && position + dataSpec.length > upstreamEndPosition) {
+      // The upstream stream ends before the requested range. Let the upstream source decide how to
+      // handle the request.
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of bytes that can be read from the upstream stream in the time taken to
+   * make a new request, capped to {@code maxSkipBytes}.
+   */
+  private long getSkipThresholdBytes() {
+    if (measuredOpenCount == 0 || totalUpstreamReadTimeNs == 0) {
+      return Math.min(DEFAULT_INITIAL_SKIP_BYTES, maxSkipBytes);
+    }
+    double bytesPerNs = (double) totalUpstreamBytesRead / totalUpstreamReadTimeNs;
+    long meanOpenTimeNs = totalUpstreamOpenTimeNs / measuredOpenCount;
+    return Math.min((long) (bytesPerNs * meanOpenTimeNs), maxSkipBytes);
+  }
+
+  private void openUpstream(DataSpec dataSpec) throws IOException {
+    // Request everything from the requested position onward, so that subsequent nearby ranges can
+    // be read from the same stream.
+    upstreamDataSpec = new DataSpec(dataSpec.uri, dataSpec.absoluteStreamPosition,
+        dataSpec.position, C.LENGTH_UNSET, dataSpec.key, dataSpec.flags);
+    long startTimeNs = System.nanoTime();
+    long length = upstream.open(upstreamDataSpec);
+    totalUpstreamOpenTimeNs += System.nanoTime() - startTimeNs;
+    measuredOpenCount++;
+    upstreamOpens++;
+    upstreamOpen = true;
+    upstreamPosition = dataSpec.position;
+    upstreamEndPosition = length == C.LENGTH_UNSET ? C.LENGTH_UNSET : dataSpec.position + length;
+    windowStartPosition = dataSpec.position;
+    windowLength = 0;
+  }
+
+  private void closeUpstream() throws IOException {
+    if (upstreamOpen) {
+      upstreamOpen = false;
+      upstreamDataSpec = null;
+      windowLength = 0;
+      upstream.close();
+    }
+  }
+
+  /**
+   * Reads up to {@code maxLength} bytes from the upstream stream, appending them to the window. If
+   * the window is full then its older half is discarded first.
+   */
+  private int readUpstreamIntoWindow(int maxLength) throws IOException {
+    if (windowLength == window.length) {
+      int discardLength = window.length / 2;
+      System.arraycopy(window, discardLength, window, 0, windowLength - discardLength);
+      windowLength -= discardLength;
+      windowStartPosition += discardLength;
+    }
+    int length = Math.min(maxLength, window.length - windowLength);
+    long startTimeNs = System.nanoTime();
+    int bytesRead;
+    try {
+      bytesRead = upstream.read(window, windowLength, length);
+    } catch (IOException e) {
+      // The state of the upstream stream is unknown, so it must not be read from again.
+      upstreamOpen = false;
+      upstreamDataSpec = null;
+      windowLength = 0;
+      Util.closeQuietly(upstream);
+      throw e;
+    }
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      upstreamEndPosition = upstreamPosition;
+      return C.RESULT_END_OF_INPUT;
+    }
+    totalUpstreamReadTimeNs += System.nanoTime() - startTimeNs;
+    totalUpstreamBytesRead += bytesRead;
+    windowLength += bytesRead;
+    upstreamPosition += bytesRead;
+    return bytesRead;
+  }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.os.Handler;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+import com.google.android.exoplayer2.util.SystemClock;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Estimates bandwidth by listening to data transfers, which may overlap.
+ * <p>
+ * Each transfer is accounted for separately, keyed by its source, so that transfers performed by
+ * different sources can start and end in any order. Bytes transferred by all active transfers are
+ * accumulated into a sample, together with the time during which at least one transfer was active.
+ * A sample is completed whenever a transfer ends, and also periodically whilst transfers are in
+ * progress, so that long or overlapping transfers continue to update the estimate. Completed
+ * samples are passed to an {@link Estimator}, which calculates the bandwidth estimate.
+ */
+public final class ThroughputBandwidthMeter implements BandwidthMeter, TransferListener<Object> {
+
+  /**
+   * Calculates a bandwidth estimate from throughput samples.
+   */
+  public interface Estimator {
+
+    /**
+     * Adds a throughput sample.
+     *
+     * @param bytes The number of bytes transferred.
+     * @param elapsedMs The time taken to transfer the bytes, in milliseconds. Always positive.
+     */
+    void addSample(long bytes, long elapsedMs);
+
+    /**
+     * Returns the bandwidth estimate in bits/sec, or {@link #NO_ESTIMATE} if no estimate is
+     * available.
+     */
+    long getEstimate();
+
+  }
+
+  /**
+   * An {@link Estimator} that returns a percentile of a sliding window of samples, each weighted
+   * by the square root of the number of bytes it contains.
+   */
+  public static final class SlidingPercentileEstimator implements Estimator {
+
+    private final SlidingPercentile slidingPercentile;
+    private final float percentile;
+
+    /**
+     * Creates an estimator that returns the median of a window of maximum weight
+     * {@link DefaultBandwidthMeter#DEFAULT_MAX_WEIGHT}.
+     */
+    public SlidingPercentileEstimator() {
+      this(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT, 0.5f);
+    }
+
+    /**
+     * @param maxWeight The maximum weight of the sliding window.
+     * @param percentile The percentile to return, expressed as a fraction in the range (0,1].
+     */
+    public SlidingPercentileEstimator(int maxWeight, float percentile) {
+      this.slidingPercentile = new SlidingPercentile(maxWeight);
+      this.percentile = percentile;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      float bitsPerSecond = (bytes * 8000) / elapsedMs;
+      slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+    }
+
+    @Override
+    public long getEstimate() {
+      float estimate = slidingPercentile.getPercentile(percentile);
+      return Float.isNaN(estimate) ? NO_ESTIMATE : (long) estimate;
+    }
+
+  }
+
+  /**
+   * An {@link Estimator} that returns an exponentially weighted moving average of the samples. The
+   * weight of each sample depends on its duration, such that the contribution of the bytes
+   * transferred at a given time halves every {@code halfLifeMs} of subsequent transfer time.
+   */
+  public static final class EwmaEstimator implements Estimator {
+
+    /**
+     * The default half life, in milliseconds.
+     */
+    public static final long DEFAULT_HALF_LIFE_MS = 2000;
+
+    private final double halfLifeMs;
+
+    private double estimate;
+    private double totalWeight;
+
+    public EwmaEstimator() {
+      this(DEFAULT_HALF_LIFE_MS);
+    }
+
+    /**
+     * @param halfLifeMs The half life, in milliseconds.
+     */
+    public EwmaEstimator(long halfLifeMs) {
+      Assertions.checkArgument(halfLifeMs > 0);
+      this.halfLifeMs = halfLifeMs;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      double bitsPerSecond = (bytes * 8000d) / elapsedMs;
+      double alpha = Math.pow(0.5, elapsedMs / halfLifeMs);
+      estimate = alpha * estimate + (1 - alpha) * bitsPerSecond;
+      totalWeight = alpha * totalWeight + (1 - alpha);
+    }
+
+    @Override
+    public long getEstimate() {
+      // Dividing by the total weight corrects the bias towards the initial estimate of zero.
+      return totalWeight == 0 ? NO_ESTIMATE : (long) (estimate / totalWeight);
+    }
+
+  }
+
+  /**
+   * The default minimum duration of a sample taken whilst transfers are in progress.
+   */
+  public static final int DEFAULT_SAMPLE_INTERVAL_MS = 500;
+
+  private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final Estimator estimator;
+  private final int sampleIntervalMs;
+  private final Clock clock;
+  private final Set<Object> activeTransfers;
+
+  private long sampleStartTimeMs;
+  private long sampleBytesTransferred;
+
+  private long totalElapsedTimeMs;
+  private long totalBytesTransferred;
+  private long bitrateEstimate;
+
+  public ThroughputBandwidthMeter() {
+    this(null, null);
+  }
+
+  public ThroughputBandwidthMeter(Handler eventHandler, EventListener eventListener) {
+    this(eventHandler, eventListener, new SlidingPercentileEstimator(),
+        DEFAULT_SAMPLE_INTERVAL_MS);
+  }
+
+  /**
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param estimator The {@link Estimator} to which samples are passed.
+   * @param sampleIntervalMs The minimum duration of a sample taken whilst transfers are in
+   *     progress.
+   */
+  public ThroughputBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      Estimator estimator, int sampleIntervalMs) {
+    this(eventHandler, eventListener, estimator, sampleIntervalMs, new SystemClock());
+  }
+
+  /**
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param estimator The {@link Estimator} to which samples are passed.
+   * @param sampleIntervalMs The minimum duration of a sample taken whilst transfers are in
+   *     progress.
+   * @param clock The {@link Clock} used to time transfers. {@link SystemClock} should be used
+   *     except when simulating transfers.
+   */
+  public ThroughputBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      Estimator estimator, int sampleIntervalMs, Clock clock) {
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    this.estimator = Assertions.checkNotNull(estimator);
+    this.sampleIntervalMs = sampleIntervalMs;
+    this.clock = clock;
+    activeTransfers = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    bitrateEstimate = NO_ESTIMATE;
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+  /**
+   * Returns the number of transfers currently in progress.
+   */
+  public synchronized int getActiveTransferCount() {
+    return activeTransfers.size();
+  }
+
+  @Override
+  public synchronized void onTransferStart(Object source, DataSpec dataSpec) {
+    long nowMs = clock.elapsedRealtime();
+    if (activeTransfers.isEmpty()) {
+      sampleStartTimeMs = nowMs;
+    }
+    boolean added = activeTransfers.add(source);
+    Assertions.checkState(added);
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(Object source, int bytes) {
+    Assertions.checkState(activeTransfers.contains(source));
+    sampleBytesTransferred += bytes;
+    long nowMs = clock.elapsedRealtime();
+    if (nowMs - sampleStartTimeMs >= sampleIntervalMs) {
+      onSampleCompleted(nowMs);
+    }
+  }
+
+  @Override
+  public synchronized void onTransferEnd(Object source) {
+    boolean removed = activeTransfers.remove(source);
+    Assertions.checkState(removed);
+    onSampleCompleted(clock.elapsedRealtime());
+  }
+
+  private void onSampleCompleted(long nowMs) {
+    int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+    totalElapsedTimeMs += sampleElapsedTimeMs;
+    totalBytesTransferred += sampleBytesTransferred;
+    if (sampleElapsedTimeMs > 0) {
+      estimator.addSample(sampleBytesTransferred, sampleElapsedTimeMs);
+      if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+          || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+        bitrateEstimate = estimator.getEstimate();
+      }
+    }
+    notifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+  }
+
+  private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable()  {
+        @Override
+        public void run() {
+          eventListener.onBandwidthSample(elapsedMs, bytes, bitrate);
+        }
+      });
+    }
+  }
+
+}
@@ -173,7 +173,7 @@ public final class CacheDataSource implements DataSource {
     try {
       uri = dataSpec.uri;
       flags = dataSpec.flags;
-      key = dataSpec.key;
+      key = CacheUtil.getKey(dataSpec);
       readPosition = dataSpec.position;
       currentRequestIgnoresCache = (ignoreCacheOnError && seenCacheError)
           || (bypassUnboundedRequests && dataSpec.length == C.LENGTH_UNSET);
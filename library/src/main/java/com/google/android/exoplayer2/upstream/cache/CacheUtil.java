@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.NavigableSet;
+
+/**
+ * Caching related utility methods.
+ */
+public final class CacheUtil {
+
+  private CacheUtil() {}
+
+  /**
+   * Returns the key under which the data requested by a {@link DataSpec} is cached, which is
+   * {@link DataSpec#key} if set, or the string representation of {@link DataSpec#uri} otherwise.
+   *
+   * @param dataSpec The {@link DataSpec}.
+   * @return The cache key.
+   */
+  public static String getKey(DataSpec dataSpec) {
+    return dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+  }
+
+  /**
+   * Returns the number of bytes of the data requested by a {@link DataSpec} that are cached.
+   *
+   * @param dataSpec The {@link DataSpec}.
+   * @param cache The {@link Cache}.
+   * @return The number of cached bytes.
+   */
+  public static long getCachedBytes(DataSpec dataSpec, Cache cache) {
+    String key = getKey(dataSpec);
+    long position = dataSpec.absoluteStreamPosition;
+    long endPosition = getEndPosition(dataSpec, cache);
+    long cachedBytes = 0;
+    while (endPosition == C.LENGTH_UNSET || position < endPosition) {
+      long blockLength = getCachedBlockLength(cache, key, position,
+          endPosition == C.LENGTH_UNSET ? Long.MAX_VALUE : endPosition - position);
+      if (blockLength > 0) {
+        cachedBytes += blockLength;
+      } else if (blockLength == -Long.MAX_VALUE) {
+        // Nothing further is cached.
+        break;
+      }
+      position += Math.abs(blockLength);
+    }
+    return cachedBytes;
+  }
+
+  /**
+   * Caches the data requested by a {@link DataSpec}, downloading only the parts that aren't
+   * already cached. If the length of the data is unknown then it's cached up to the end of the
+   * stream, which is then recorded in the cache.
+   *
+   * @param dataSpec The {@link DataSpec} of the data to cache.
+   * @param cache The {@link Cache} in which to store the data.
+   * @param dataSource A {@link CacheDataSource} that writes into {@code cache}, which must be
+   *     created with {@link CacheDataSource#FLAG_CACHE_UNBOUNDED_REQUESTS} if the length of the
+   *     data may be unknown.
+   * @param buffer A buffer into which data is read and discarded.
+   * @return The number of bytes that were downloaded.
+   * @throws IOException If an error occurs reading from the source.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public static long cache(DataSpec dataSpec, Cache cache, CacheDataSource dataSource,
+      byte[] buffer) throws IOException, InterruptedException {
+    String key = getKey(dataSpec);
+    long position = dataSpec.absoluteStreamPosition;
+    long endPosition = getEndPosition(dataSpec, cache);
+    long downloadedBytes = 0;
+    while (endPosition == C.LENGTH_UNSET || position < endPosition) {
+      long blockLength = getCachedBlockLength(cache, key, position,
+          endPosition == C.LENGTH_UNSET ? Long.MAX_VALUE : endPosition - position);
+      if (blockLength > 0) {
+        position += blockLength;
+        continue;
+      }
+      // Download the hole, which extends to the end of the stream if nothing further is cached
+      // and the end position is unknown.
+      boolean unbounded = blockLength == -Long.MAX_VALUE;
+      long length = unbounded ? C.LENGTH_UNSET : -blockLength;
+      long bytesRead = readAndDiscard(dataSpec, position, length, key, dataSource, buffer);
+      downloadedBytes += bytesRead;
+      if (unbounded || bytesRead < length) {
+        // The end of the stream has been reached.
+        break;
+      }
+      position += bytesRead;
+    }
+    return downloadedBytes;
+  }
+
+  /**
+   * Returns the position at which the data requested by a {@link DataSpec} ends, or
+   * {@link C#LENGTH_UNSET} if it's unknown.
+   */
+  private static long getEndPosition(DataSpec dataSpec, Cache cache) {
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      return dataSpec.absoluteStreamPosition + dataSpec.length;
+    }
+    return cache.getContentLength(getKey(dataSpec));
+  }
+
+  /**
+   * Returns the length of the cached data starting at a position, or the negated length of the
+   * hole that starts there. In both cases the length is limited to {@code maxLength}. If nothing
+   * is cached at or beyond the position then {@code -maxLength} is returned.
+   */
+  private static long getCachedBlockLength(Cache cache, String key, long position,
+      long maxLength) {
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(key);
+    if (spans == null) {
+      return -maxLength;
+    }
+    long cachedEndPosition = position;
+    long nextSpanPosition = C.POSITION_UNSET;
+    for (CacheSpan span : spans) {
+      long spanEndPosition = span.position + span.length;
+      if (spanEndPosition <= cachedEndPosition) {
+        continue;
+      }
+      if (span.position <= cachedEndPosition) {
+        cachedEndPosition = spanEndPosition;
+      } else {
+        nextSpanPosition = span.position;
+        break;
+      }
+    }
+    if (cachedEndPosition > position) {
+      return Math.min(cachedEndPosition - position, maxLength);
+    }
+    return nextSpanPosition == C.POSITION_UNSET ? -maxLength
+        : -Math.min(nextSpanPosition - position, maxLength);
+  }
+
+  private static long readAndDiscard(DataSpec dataSpec, long absoluteStreamPosition, long length,
+      String key, DataSource dataSource, byte[] buffer) throws IOException, InterruptedException {
+    DataSpec blockDataSpec = new DataSpec(dataSpec.uri, dataSpec.postBody, absoluteStreamPosition,
+        dataSpec.position + absoluteStreamPosition - dataSpec.absoluteStreamPosition, length, key,
+        dataSpec.flags);
+    long totalRead = 0;
+    try {
+      dataSource.open(blockDataSpec);
+      while (length == C.LENGTH_UNSET || totalRead < length) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        int readLength = length == C.LENGTH_UNSET ? buffer.length
+            : (int) Math.min(buffer.length, length - totalRead);
+        int bytesRead = dataSource.read(buffer, 0, readLength);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        totalRead += bytesRead;
+      }
+    } finally {
+      Util.closeQuietly(dataSource);
+    }
+    return totalRead;
+  }
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the segments of an adaptive stream into a {@link Cache}, so that the stream can be
+ * played without a network connection.
+ * <p>
+ * Segments are downloaded on a number of threads in parallel, in order of their start times.
+ * Data that's already cached isn't downloaded again, so an interrupted or failed download can be
+ * resumed by calling {@link #download(ProgressListener)} again. The manifest is cached as well.
+ * <p>
+ * For playback the stream should be loaded through a {@link CacheDataSource} reading from the same
+ * cache, created with {@link CacheDataSource#FLAG_CACHE_UNBOUNDED_REQUESTS}. The cache should be
+ * created with a {@link NoOpCacheEvictor}, unless it's acceptable for downloaded data to be
+ * evicted.
+ *
+ * @param <M> The type of the manifest.
+ * @param <K> The type of the keys that identify the representations to download.
+ */
+public abstract class SegmentDownloader<M, K> {
+
+  /**
+   * Receives progress updates during a download.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Called each time a segment has been downloaded, or found to be cached already. Called on
+     * one of the download threads.
+     *
+     * @param downloader The reporting downloader.
+     * @param downloadedSegments The number of segments that have been downloaded so far.
+     * @param totalSegments The total number of segments.
+     * @param downloadedBytes The number of bytes that have been downloaded so far, excluding any
+     *     that were already cached.
+     */
+    void onDownloadProgress(SegmentDownloader<?, ?> downloader, int downloadedSegments,
+        int totalSegments, long downloadedBytes);
+
+  }
+
+  /**
+   * A segment of the stream.
+   */
+  protected static final class Segment implements Comparable<Segment> {
+
+    /**
+     * The start time of the segment in microseconds.
+     */
+    public final long startTimeUs;
+    /**
+     * The {@link DataSpec} of the segment, which must be the same as that with which the segment
+     * is requested during playback.
+     */
+    public final DataSpec dataSpec;
+
+    /**
+     * @param startTimeUs The start time of the segment in microseconds.
+     * @param dataSpec The {@link DataSpec} of the segment.
+     */
+    public Segment(long startTimeUs, DataSpec dataSpec) {
+      this.startTimeUs = startTimeUs;
+      this.dataSpec = dataSpec;
+    }
+
+    @Override
+    public int compareTo(Segment other) {
+      long startOffsetDiffUs = startTimeUs - other.startTimeUs;
+      return startOffsetDiffUs == 0 ? 0 : ((startOffsetDiffUs < 0) ? -1 : 1);
+    }
+
+  }
+
+  /**
+   * The default number of segments that are downloaded in parallel.
+   */
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private static final int BUFFER_SIZE_BYTES = 128 * 1024;
+  private static final long THREAD_KEEP_ALIVE_MS = 1000;
+
+  private final Uri manifestUri;
+  private final Cache cache;
+  private final DataSource.Factory upstreamDataSourceFactory;
+  private final int parallelism;
+  private final CacheDataSource manifestDataSource;
+
+  private M manifest;
+  private K[] keys;
+
+  private volatile boolean canceled;
+  private boolean downloading;
+  private List<Future<Void>> workers;
+  private IOException downloadError;
+  private List<Segment> segments;
+  private int nextSegmentIndex;
+  private int downloadedSegments;
+  private long downloadedBytes;
+  private long downloadStartTimeMs;
+  private long downloadDurationMs;
+
+  /**
+   * @param manifestUri The {@link Uri} of the manifest.
+   * @param cache The {@link Cache} into which the stream is downloaded.
+   * @param upstreamDataSourceFactory A {@link DataSource.Factory} for the {@link DataSource}s from
+   *     which the stream is downloaded.
+   * @param parallelism The number of segments that are downloaded in parallel.
+   */
+  public SegmentDownloader(Uri manifestUri, Cache cache,
+      DataSource.Factory upstreamDataSourceFactory, int parallelism) {
+    Assertions.checkArgument(parallelism > 0);
+    this.manifestUri = manifestUri;
+    this.cache = cache;
+    this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+    this.parallelism = parallelism;
+    manifestDataSource = createCacheDataSource();
+  }
+
+  /**
+   * Returns the {@link Uri} of the manifest.
+   */
+  public final Uri getManifestUri() {
+    return manifestUri;
+  }
+
+  /**
+   * Returns the manifest, loading it if it hasn't been loaded already. Loading the manifest also
+   * caches it.
+   *
+   * @return The manifest.
+   * @throws IOException If an error occurs loading the manifest.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public final synchronized M getManifest() throws IOException, InterruptedException {
+    if (manifest == null) {
+      manifest = loadManifest(manifestUri);
+    }
+    return manifest;
+  }
+
+  /**
+   * Selects the representations to download. If none are selected, which is the default, then all
+   * representations are downloaded.
+   *
+   * @param keys Keys identifying the representations to download, or null or an empty array to
+   *     download all representations.
+   */
+  public final synchronized void selectRepresentations(K[] keys) {
+    this.keys = keys != null && keys.length > 0 ? keys.clone() : null;
+  }
+
+  /**
+   * Downloads the manifest and the segments of the selected representations, blocking until
+   * they're all cached, an error occurs or the download is canceled. Must not be called again
+   * until it has returned.
+   *
+   * @param listener A listener to receive progress updates, or null.
+   * @throws IOException If an error occurs loading the manifest or any of the segments. Any
+   *     segments that were downloaded remain cached.
+   * @throws InterruptedException If the thread was interrupted, or {@link #cancel()} was called.
+   */
+  public final void download(ProgressListener listener) throws IOException,
+      InterruptedException {
+    canceled = false;
+    K[] keys;
+    synchronized (this) {
+      keys = this.keys;
+    }
+    List<Segment> segments = getSegments(getManifest(), keys);
+    Collections.sort(segments);
+    ExecutorService executorService = Util.newBoundedThreadPoolExecutor("SegmentDownloader",
+        parallelism, THREAD_KEEP_ALIVE_MS);
+    synchronized (this) {
+      this.segments = segments;
+      downloading = true;
+      downloadError = null;
+      nextSegmentIndex = 0;
+      downloadedSegments = 0;
+      downloadedBytes = 0;
+      downloadStartTimeMs = SystemClock.elapsedRealtime();
+      downloadDurationMs = 0;
+    }
+    try {
+      int workerCount = Math.min(parallelism, segments.size());
+      List<Future<Void>> workers = new ArrayList<>(workerCount);
+      for (int i = 0; i < workerCount; i++) {
+        workers.add(executorService.submit(new Worker(listener)));
+      }
+      synchronized (this) {
+        // If the download was canceled before this point then the workers stop by themselves.
+        this.workers = workers;
+      }
+      for (int i = 0; i < workerCount; i++) {
+        try {
+          workers.get(i).get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IllegalStateException(cause);
+        } catch (CancellationException e) {
+          throw new InterruptedException();
+        }
+      }
+      if (canceled) {
+        throw new InterruptedException();
+      }
+      synchronized (this) {
+        if (downloadError != null) {
+          throw downloadError;
+        }
+      }
+    } finally {
+      cancelWorkers();
+      executorService.shutdown();
+      synchronized (this) {
+        downloadDurationMs = SystemClock.elapsedRealtime() - downloadStartTimeMs;
+        downloading = false;
+        workers = null;
+      }
+    }
+  }
+
+  /**
+   * Cancels an ongoing call to {@link #download(ProgressListener)}, which will throw an
+   * {@link InterruptedException}. Segments that were already downloaded remain cached. May be
+   * called from any thread.
+   */
+  public final void cancel() {
+    canceled = true;
+    cancelWorkers();
+  }
+
+  /**
+   * Returns the number of segments in the most recent download, or 0 if no download has started.
+   */
+  public final synchronized int getTotalSegments() {
+    return segments == null ? 0 : segments.size();
+  }
+
+  /**
+   * Returns the number of segments that have been downloaded in the most recent download,
+   * including any that were cached already.
+   */
+  public final synchronized int getDownloadedSegments() {
+    return downloadedSegments;
+  }
+
+  /**
+   * Returns the number of bytes that have been downloaded in the most recent download, excluding
+   * any that were cached already.
+   */
+  public final synchronized long getDownloadedBytes() {
+    return downloadedBytes;
+  }
+
+  /**
+   * Returns the duration of the most recent download in milliseconds, or the time elapsed since it
+   * started if it's ongoing.
+   */
+  public final synchronized long getDownloadDurationMs() {
+    return downloading ? SystemClock.elapsedRealtime() - downloadStartTimeMs
+        : downloadDurationMs;
+  }
+
+  /**
+   * Returns the average rate at which data was downloaded in the most recent download, in bits
+   * per second, or 0 if no data has been downloaded.
+   */
+  public final synchronized long getThroughputBitsPerSecond() {
+    long durationMs = getDownloadDurationMs();
+    return durationMs == 0 ? 0 : (downloadedBytes * 8000) / durationMs;
+  }
+
+  /**
+   * Loads a manifest or playlist from the specified {@link Uri}. The loaded data is cached.
+   *
+   * @param uri The {@link Uri} of the manifest.
+   * @param parser The parser for the manifest.
+   * @return The parsed manifest.
+   * @throws IOException If an error occurs loading or parsing the manifest.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  protected final <T> T loadManifest(Uri uri, ParsingLoadable.Parser<T> parser)
+      throws IOException, InterruptedException {
+    // The manifest is cached in full before it's parsed, since a parser might not read to the end.
+    ParsingLoadable<T> loadable = new ParsingLoadable<>(manifestDataSource, uri,
+        C.DATA_TYPE_MANIFEST, parser);
+    CacheUtil.cache(loadable.dataSpec, cache, manifestDataSource, new byte[BUFFER_SIZE_BYTES]);
+    loadable.load();
+    return loadable.getResult();
+  }
+
+  /**
+   * Loads the manifest from the specified {@link Uri}, typically by calling
+   * {@link #loadManifest(Uri, ParsingLoadable.Parser)}.
+   *
+   * @param uri The {@link Uri} of the manifest.
+   * @return The parsed manifest.
+   * @throws IOException If an error occurs loading or parsing the manifest.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  protected abstract M loadManifest(Uri uri) throws IOException, InterruptedException;
+
+  /**
+   * Returns the segments of the specified representations, which need not be in any particular
+   * order. Everything that's needed to play the representations must be included, such as
+   * initialization data. Any further manifests that are required to list the segments should be
+   * loaded using {@link #loadManifest(Uri, ParsingLoadable.Parser)}, so that they're cached.
+   *
+   * @param manifest The manifest.
+   * @param keys Keys identifying the representations, or null if all representations should be
+   *     included.
+   * @return The segments.
+   * @throws IOException If an error occurs loading a further manifest, or if the representations
+   *     can't be downloaded.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  protected abstract List<Segment> getSegments(M manifest, K[] keys)
+      throws IOException, InterruptedException;
+
+  // Internal methods.
+
+  private CacheDataSource createCacheDataSource() {
+    return new CacheDataSource(cache, upstreamDataSourceFactory.createDataSource(),
+        CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_CACHE_UNBOUNDED_REQUESTS);
+  }
+
+  private synchronized Segment getNextSegment() {
+    return canceled || downloadError != null || nextSegmentIndex == segments.size() ? null
+        : segments.get(nextSegmentIndex++);
+  }
+
+  private synchronized int onSegmentDownloaded(long segmentDownloadedBytes) {
+    downloadedBytes += segmentDownloadedBytes;
+    return ++downloadedSegments;
+  }
+
+  private synchronized void onSegmentDownloadError(IOException e) {
+    if (downloadError == null) {
+      downloadError = e;
+    }
+  }
+
+  private void cancelWorkers() {
+    List<Future<Void>> workers;
+    synchronized (this) {
+      workers = this.workers;
+    }
+    if (workers != null) {
+      for (int i = 0; i < workers.size(); i++) {
+        workers.get(i).cancel(true);
+      }
+    }
+  }
+
+  // Private classes.
+
+  /**
+   * Downloads segments until none remain, an error occurs or the download is canceled.
+   */
+  private final class Worker implements Callable<Void> {
+
+    private final ProgressListener listener;
+
+    public Worker(ProgressListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public Void call() throws InterruptedException {
+      CacheDataSource dataSource = createCacheDataSource();
+      byte[] buffer = new byte[BUFFER_SIZE_BYTES];
+      Segment segment;
+      while ((segment = getNextSegment()) != null) {
+        long segmentDownloadedBytes;
+        try {
+          segmentDownloadedBytes = CacheUtil.cache(segment.dataSpec, cache, dataSource, buffer);
+        } catch (IOException e) {
+          onSegmentDownloadError(e);
+          return null;
+        }
+        int downloadedSegments = onSegmentDownloaded(segmentDownloadedBytes);
+        if (listener != null) {
+          listener.onDownloadProgress(SegmentDownloader.this, downloadedSegments, segments.size(),
+              getDownloadedBytes());
+        }
+      }
+      return null;
+    }
+
+  }
+
+}
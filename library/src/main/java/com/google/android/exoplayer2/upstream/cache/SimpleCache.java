@@ -17,10 +17,20 @@ package com.google.android.exoplayer2.upstream.cache;
 
 import android.os.ConditionVariable;
 
+import android.util.Log;
 import android.util.Pair;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,9 +42,16 @@ import java.util.TreeSet;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * Content lengths set by {@link #setContentLength(String, long)} are persisted in the cache
+ * directory, so that the end of content whose length isn't known in advance can still be found
+ * when it's read back from a new instance.
  */
 public final class SimpleCache implements Cache {
 
+  private static final String TAG = "SimpleCache";
+  private static final String CONTENT_LENGTHS_FILE_NAME = "content_lengths";
+
   private final File cacheDir;
   private final CacheEvictor evictor;
   private final HashMap<String, CacheSpan> lockedSpans;
@@ -241,6 +258,9 @@ public final class SimpleCache implements Cache {
       return;
     }
     for (File file : files) {
+      if (file.getName().equals(CONTENT_LENGTHS_FILE_NAME)) {
+        continue;
+      }
       if (file.length() == 0) {
         file.delete();
       } else {
@@ -253,9 +273,82 @@ public final class SimpleCache implements Cache {
         }
       }
     }
+    readContentLengths();
     evictor.onCacheInitialized();
   }
 
+  /**
+   * Reads the persisted content lengths, retaining those of keys for which data is cached and
+   * which don't conflict with it. The file is a log to which a record is appended for each call to
+   * {@link #setContentLength(String, long)}, and so it's rewritten to contain only the retained
+   * lengths.
+   */
+  private void readContentLengths() {
+    File file = new File(cacheDir, CONTENT_LENGTHS_FILE_NAME);
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      DataInputStream input = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      try {
+        while (true) {
+          String key = input.readUTF();
+          long length = input.readLong();
+          TreeSet<CacheSpan> spansForKey = getSpansForKey(key);
+          if (spansForKey != null && !spansForKey.isEmpty()
+              && spansForKey.last().position + spansForKey.last().length <= length) {
+            setKeyValue(key, length, spansForKey);
+          }
+        }
+      } catch (EOFException e) {
+        // We've read all of the complete records.
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read content lengths", e);
+    }
+    writeContentLengths();
+  }
+
+  private void writeContentLengths() {
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(new File(cacheDir, CONTENT_LENGTHS_FILE_NAME))));
+      for (Entry<String, Pair<Long, TreeSet<CacheSpan>>> entry : cachedSpans.entrySet()) {
+        long length = entry.getValue().first;
+        if (length != C.LENGTH_UNSET) {
+          output.writeUTF(entry.getKey());
+          output.writeLong(length);
+        }
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write content lengths", e);
+    } finally {
+      if (output != null) {
+        Util.closeQuietly(output);
+      }
+    }
+  }
+
+  private void appendContentLength(String key, long length) {
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(new File(cacheDir, CONTENT_LENGTHS_FILE_NAME), true)));
+      output.writeUTF(key);
+      output.writeLong(length);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write content length", e);
+    } finally {
+      if (output != null) {
+        Util.closeQuietly(output);
+      }
+    }
+  }
+
   /**
    * Adds a cached span to the in-memory representation.
    *
@@ -397,8 +490,8 @@ public final class SimpleCache implements Cache {
     } else {
       entries = new TreeSet<>();
     }
-    // TODO persist the length value
     setKeyValue(key, length, entries);
+    appendContentLength(key, length);
     return true;
   }
 
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values with a fixed relative precision, in the style of an HDR
+ * histogram.
+ * <p>
+ * Values smaller than {@link #SUB_BUCKET_COUNT} are counted exactly. Larger values are counted in
+ * buckets whose width doubles with each power of two, each power of two range being divided into
+ * {@link #SUB_BUCKET_COUNT} / 2 linear sub-buckets. A value is therefore recorded with a relative
+ * error of less than 2 / {@link #SUB_BUCKET_COUNT}. Recording a value takes constant time and does
+ * not allocate, which makes the histogram suitable for use on latency sensitive threads.
+ */
+public final class LogLinearHistogram {
+
+  /**
+   * The number of sub-buckets into which each power of two range is divided, multiplied by two.
+   */
+  public static final int SUB_BUCKET_COUNT = 128;
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+  private final long highestTrackableValue;
+  private final long[] counts;
+
+  private long totalCount;
+  private long totalValue;
+  private long minValue;
+  private long maxValue;
+
+  /**
+   * @param highestTrackableValue The highest value that can be recorded precisely. Larger values
+   *     are recorded as this value.
+   */
+  public LogLinearHistogram(long highestTrackableValue) {
+    Assertions.checkArgument(highestTrackableValue > 0);
+    this.highestTrackableValue = highestTrackableValue;
+    counts = new long[getIndex(highestTrackableValue) + 1];
+    minValue = Long.MAX_VALUE;
+  }
+
+  /**
+   * Creates a copy of a histogram.
+   *
+   * @param other The histogram to copy.
+   */
+  public LogLinearHistogram(LogLinearHistogram other) {
+    highestTrackableValue = other.highestTrackableValue;
+    counts = Arrays.copyOf(other.counts, other.counts.length);
+    totalCount = other.totalCount;
+    totalValue = other.totalValue;
+    minValue = other.minValue;
+    maxValue = other.maxValue;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value The value to record. Negative values are recorded as zero.
+   */
+  public void record(long value) {
+    value = Math.min(Math.max(0, value), highestTrackableValue);
+    counts[getIndex(value)]++;
+    totalCount++;
+    totalValue += value;
+    minValue = Math.min(minValue, value);
+    maxValue = Math.max(maxValue, value);
+  }
+
+  /**
+   * Adds the values recorded by another histogram to this one.
+   *
+   * @param other The histogram whose values should be added. Must have the same highest trackable
+   *     value as this histogram.
+   */
+  public void add(LogLinearHistogram other) {
+    Assertions.checkArgument(other.highestTrackableValue == highestTrackableValue);
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    totalValue += other.totalValue;
+    minValue = Math.min(minValue, other.minValue);
+    maxValue = Math.max(maxValue, other.maxValue);
+  }
+
+  /**
+   * Removes all recorded values.
+   */
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    totalValue = 0;
+    minValue = Long.MAX_VALUE;
+    maxValue = 0;
+  }
+
+  /**
+   * Returns the number of recorded values.
+   */
+  public long getCount() {
+    return totalCount;
+  }
+
+  /**
+   * Returns the number of recorded values greater than the specified value, subject to the
+   * precision of the histogram.
+   *
+   * @param value The value.
+   * @return The number of recorded values greater than {@code value}.
+   */
+  public long getCountAbove(long value) {
+    if (value >= highestTrackableValue) {
+      return 0;
+    }
+    long count = 0;
+    for (int i = getIndex(Math.max(0, value)) + 1; i < counts.length; i++) {
+      count += counts[i];
+    }
+    return count;
+  }
+
+  /**
+   * Returns the smallest recorded value, or 0 if no values have been recorded.
+   */
+  public long getMin() {
+    return totalCount == 0 ? 0 : minValue;
+  }
+
+  /**
+   * Returns the largest recorded value, or 0 if no values have been recorded.
+   */
+  public long getMax() {
+    return maxValue;
+  }
+
+  /**
+   * Returns the mean of the recorded values, or 0 if no values have been recorded.
+   */
+  public double getMean() {
+    return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+  }
+
+  /**
+   * Returns the value below which the specified percentage of the recorded values fall, subject to
+   * the precision of the histogram, or 0 if no values have been recorded.
+   *
+   * @param percentile The percentile, in the range [0, 100].
+   * @return The value at the percentile.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long targetCount = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      count += counts[i];
+      if (count >= targetCount) {
+        // Report the highest value in the bucket, but no more than the largest recorded value.
+        return Math.max(minValue, Math.min(maxValue, getHighestValueInBucket(i)));
+      }
+    }
+    return maxValue;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + totalCount + ", min=" + getMin() + ", p50=" + getValueAtPercentile(50)
+        + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax();
+  }
+
+  private static int getIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // Shift the value so that it falls in the upper half of the sub-buckets.
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int subBucketIndex = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+        + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+  }
+
+  private static long getHighestValueInBucket(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    long subBucketIndex = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT
+        + SUB_BUCKET_HALF_COUNT;
+    return ((subBucketIndex + 1) << shift) - 1;
+  }
+
+}
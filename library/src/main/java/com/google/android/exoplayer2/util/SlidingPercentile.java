@@ -15,9 +15,8 @@
  */
 package com.google.android.exoplayer2.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayDeque;
+import java.util.Random;
 
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum weight is
@@ -28,39 +27,26 @@ import java.util.Comparator;
  * This class can be used for bandwidth estimation based on a sliding window of past transfer rate
  * observations. This is an alternative to sliding mean and exponential averaging which suffer from
  * susceptibility to outliers and slow adaptation to step functions.
+ * <p>
+ * Values are held in a balanced search tree ordered by value, in which each node also records the
+ * total weight of its subtree. Adding a value and computing a percentile both take O(log n)
+ * expected time, where n is the number of values in the window.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Moving_average">Wiki: Moving average</a>
  * @see <a href="http://en.wikipedia.org/wiki/Selection_algorithm">Wiki: Selection algorithm</a>
+ * @see <a href="http://en.wikipedia.org/wiki/Treap">Wiki: Treap</a>
  */
 public final class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.index - b.index;
-    }
-  };
-
-  private static final Comparator<Sample> VALUE_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.value < b.value ? -1 : b.value < a.value ? 1 : 0;
-    }
-  };
-
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
-
   private static final int MAX_RECYCLED_SAMPLES = 5;
 
   private final int maxWeight;
-  private final ArrayList<Sample> samples;
+  private final ArrayDeque<Sample> samplesByAge;
+  private final Random random;
 
   private final Sample[] recycledSamples;
 
-  private int currentSortOrder;
+  private Sample root;
   private int nextSampleIndex;
   private int totalWeight;
   private int recycledSampleCount;
@@ -71,8 +57,9 @@ public final class SlidingPercentile {
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
     recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    samplesByAge = new ArrayDeque<>();
+    // A fixed seed keeps the shape of the tree, and therefore performance, deterministic.
+    random = new Random(0);
   }
 
   /**
@@ -82,27 +69,33 @@ public final class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
     Sample newSample = recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount]
         : new Sample();
     newSample.index = nextSampleIndex++;
     newSample.weight = weight;
     newSample.value = value;
-    samples.add(newSample);
+    newSample.priority = random.nextInt();
+    newSample.left = null;
+    newSample.right = null;
+    newSample.subtreeWeight = weight;
+    root = insert(root, newSample);
+    samplesByAge.addLast(newSample);
     totalWeight += weight;
 
     while (totalWeight > maxWeight) {
       int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
+      Sample oldestSample = samplesByAge.peekFirst();
       if (oldestSample.weight <= excessWeight) {
         totalWeight -= oldestSample.weight;
-        samples.remove(0);
+        samplesByAge.removeFirst();
+        root = remove(root, oldestSample);
         if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
+          oldestSample.left = null;
+          oldestSample.right = null;
           recycledSamples[recycledSampleCount++] = oldestSample;
         }
       } else {
-        oldestSample.weight -= excessWeight;
+        reduceWeight(oldestSample, excessWeight);
         totalWeight -= excessWeight;
       }
     }
@@ -115,38 +108,126 @@ public final class SlidingPercentile {
    * @return The requested percentile value or {@link Float#NaN} if no samples have been added.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
+    if (root == null) {
+      return Float.NaN;
+    }
     float desiredWeight = percentile * totalWeight;
-    int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
-      if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+    Sample node = root;
+    while (true) {
+      int leftWeight = node.left == null ? 0 : node.left.subtreeWeight;
+      if (node.left != null && leftWeight >= desiredWeight) {
+        node = node.left;
+      } else if (leftWeight + node.weight >= desiredWeight || node.right == null) {
+        // Either this is the sample at which the accumulated weight reaches the desired weight, or
+        // the desired weight is beyond the total weight and we clamp to the maximum value.
+        return node.value;
+      } else {
+        desiredWeight -= leftWeight + node.weight;
+        node = node.right;
       }
     }
-    // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
   }
 
+  // Tree operations.
+
   /**
-   * Sorts the samples by index.
+   * Inserts {@code sample} into the subtree rooted at {@code node}, returning the new root.
    */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  private static Sample insert(Sample node, Sample sample) {
+    if (node == null) {
+      return sample;
     }
+    node.subtreeWeight += sample.weight;
+    if (compare(sample, node) < 0) {
+      node.left = insert(node.left, sample);
+      if (node.left.priority > node.priority) {
+        node = rotateRight(node);
+      }
+    } else {
+      node.right = insert(node.right, sample);
+      if (node.right.priority > node.priority) {
+        node = rotateLeft(node);
+      }
+    }
+    return node;
   }
 
   /**
-   * Sorts the samples by value.
+   * Removes {@code sample} from the subtree rooted at {@code node}, returning the new root.
    */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private static Sample remove(Sample node, Sample sample) {
+    if (node == sample) {
+      return merge(node.left, node.right);
+    }
+    node.subtreeWeight -= sample.weight;
+    if (compare(sample, node) < 0) {
+      node.left = remove(node.left, sample);
+    } else {
+      node.right = remove(node.right, sample);
     }
+    return node;
+  }
+
+  /**
+   * Reduces the weight of {@code sample}, which must be in the tree, by {@code delta}.
+   */
+  private void reduceWeight(Sample sample, int delta) {
+    Sample node = root;
+    while (node != sample) {
+      node.subtreeWeight -= delta;
+      node = compare(sample, node) < 0 ? node.left : node.right;
+    }
+    sample.weight -= delta;
+    sample.subtreeWeight -= delta;
+  }
+
+  /**
+   * Merges two subtrees, where all samples in {@code left} precede all samples in {@code right}.
+   */
+  private static Sample merge(Sample left, Sample right) {
+    if (left == null) {
+      return right;
+    } else if (right == null) {
+      return left;
+    } else if (left.priority > right.priority) {
+      left.subtreeWeight += right.subtreeWeight;
+      left.right = merge(left.right, right);
+      return left;
+    } else {
+      right.subtreeWeight += left.subtreeWeight;
+      right.left = merge(left, right.left);
+      return right;
+    }
+  }
+
+  private static Sample rotateRight(Sample node) {
+    Sample pivot = node.left;
+    node.left = pivot.right;
+    pivot.right = node;
+    pivot.subtreeWeight = node.subtreeWeight;
+    updateSubtreeWeight(node);
+    return pivot;
+  }
+
+  private static Sample rotateLeft(Sample node) {
+    Sample pivot = node.right;
+    node.right = pivot.left;
+    pivot.left = node;
+    pivot.subtreeWeight = node.subtreeWeight;
+    updateSubtreeWeight(node);
+    return pivot;
+  }
+
+  private static void updateSubtreeWeight(Sample node) {
+    node.subtreeWeight = node.weight + (node.left == null ? 0 : node.left.subtreeWeight)
+        + (node.right == null ? 0 : node.right.subtreeWeight);
+  }
+
+  /**
+   * Orders samples by value, and then by the order in which they were added.
+   */
+  private static int compare(Sample a, Sample b) {
+    return a.value < b.value ? -1 : b.value < a.value ? 1 : a.index - b.index;
   }
 
   private static class Sample {
@@ -155,6 +236,11 @@ public final class SlidingPercentile {
     public int weight;
     public float value;
 
+    public int priority;
+    public int subtreeWeight;
+    public Sample left;
+    public Sample right;
+
   }
 
 }
@@ -53,7 +53,11 @@ import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -201,6 +205,30 @@ public final class Util {
     });
   }
 
+  /**
+   * Instantiates a new executor that runs tasks on up to {@code maxThreads} threads, queueing any
+   * further tasks until a thread becomes available. Threads are created on demand and are
+   * terminated after being idle for {@code keepAliveMs}.
+   *
+   * @param threadNamePrefix The prefix of the names of the threads.
+   * @param maxThreads The maximum number of threads.
+   * @param keepAliveMs The time for which an idle thread is kept alive, in milliseconds.
+   * @return The executor.
+   */
+  public static ExecutorService newBoundedThreadPoolExecutor(final String threadNamePrefix,
+      int maxThreads, long keepAliveMs) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveMs,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger threadCount = new AtomicInteger();
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, threadNamePrefix + ":" + threadCount.incrementAndGet());
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /**
    * Closes a {@link DataSource}, suppressing any {@link IOException} that may occur.
    *
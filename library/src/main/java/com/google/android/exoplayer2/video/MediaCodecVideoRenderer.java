@@ -53,6 +53,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   private static final String KEY_CROP_BOTTOM = "crop-bottom";
   private static final String KEY_CROP_TOP = "crop-top";
 
+  // The maximum amount by which aligning a release time with vsync may bring it forward.
+  private static final long VSYNC_ALLOWANCE_US = 17000;
+
   private final VideoFrameReleaseTimeHelper frameReleaseTimeHelper;
   private final EventDispatcher eventDispatcher;
   private final long allowedJoiningTimeMs;
@@ -436,6 +439,22 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     return false;
   }
 
+  @Override
+  protected long getMaxRenderDelayUs(long positionUs, long elapsedRealtimeUs,
+      long bufferPresentationTimeUs) {
+    if (!renderedFirstFrame || getState() != STATE_STARTED) {
+      return C.TIME_UNSET;
+    }
+    // Compute how many microseconds it is until the buffer's presentation time.
+    long elapsedSinceStartOfLoopUs = (SystemClock.elapsedRealtime() * 1000) - elapsedRealtimeUs;
+    long earlyUs = bufferPresentationTimeUs - positionUs - elapsedSinceStartOfLoopUs;
+    // The buffer will be released by processOutputBuffer once it's less than 50ms (V21) or 30ms
+    // early. Its release time may also be adjusted to align with vsync, so allow for an additional
+    // refresh period.
+    long releaseWindowUs = (Util.SDK_INT >= 21 ? 50000 : 30000) + VSYNC_ALLOWANCE_US;
+    return Math.max(0, earlyUs - releaseWindowUs);
+  }
+
   private void skipOutputBuffer(MediaCodec codec, int bufferIndex) {
     TraceUtil.beginSection("skipVideoBuffer");
     codec.releaseOutputBuffer(bufferIndex, false);
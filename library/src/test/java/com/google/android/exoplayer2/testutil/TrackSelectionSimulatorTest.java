@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.TrackSelectionSimulator.Result;
+import com.google.android.exoplayer2.trackselection.AdaptiveVideoTrackSelection;
+import com.google.android.exoplayer2.trackselection.BufferBasedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TrackSelectionSimulator}, which also compare track selections over a range
+ * of traces.
+ * These run on the JVM, and so don't require a device.
+ */
+public class TrackSelectionSimulatorTest extends TestCase {
+
+  private static final TrackGroup DASH_LADDER =
+      TrackSelectionSimulator.createVideoLadder(300000, 750000, 1200000, 2500000, 4500000);
+  private static final long DASH_CHUNK_DURATION_MS = 4000;
+  private static final TrackGroup HLS_LADDER =
+      TrackSelectionSimulator.createVideoLadder(200000, 500000, 1000000, 2000000, 3500000, 6000000);
+  private static final long HLS_CHUNK_DURATION_MS = 10000;
+  private static final long CONTENT_DURATION_MS = 300000;
+
+  public void testParseTrace() throws IOException {
+    NetworkTrace trace = NetworkTrace.parse(new StringReader(
+        "# durationMs bitrate\n1000 2000000\n\n500, 100000\n"));
+    assertEquals(2000000, trace.getBitrate(0));
+    assertEquals(2000000, trace.getBitrate(999));
+    assertEquals(100000, trace.getBitrate(1000));
+    // The trace repeats.
+    assertEquals(2000000, trace.getBitrate(1500));
+  }
+
+  public void testParseInvalidTrace() throws IOException {
+    try {
+      NetworkTrace.parse(new StringReader("1000 fast\n"));
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+    try {
+      NetworkTrace.parse(new StringReader("# empty\n"));
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+  public void testAmpleBandwidthPlaysHighestQualityWithoutStalls() {
+    Result result = simulate(NetworkTrace.createConstant(50000000), DASH_LADDER,
+        DASH_CHUNK_DURATION_MS, false, new DefaultLoadControl());
+    assertEquals(0, result.stallCount);
+    assertEquals(CONTENT_DURATION_MS, result.playedDurationMs);
+    assertTrue(result.startupDurationMs < 1000);
+    assertTrue(result.averageBitrate > 4000000);
+  }
+
+  public void testInsufficientBandwidthStalls() {
+    Result result = simulate(NetworkTrace.createConstant(200000), DASH_LADDER,
+        DASH_CHUNK_DURATION_MS, false, new DefaultLoadControl());
+    assertTrue(result.stallCount > 0);
+    assertTrue(result.getRebufferRatio() > 0.3);
+    assertTrue(result.averageBitrate < 350000);
+  }
+
+  public void testSimulationIsDeterministic() {
+    NetworkTrace trace = NetworkTrace.createVolatile(new Random(1), 100, 300000, 6000000);
+    Result result1 = simulate(trace, DASH_LADDER, DASH_CHUNK_DURATION_MS, true,
+        new DefaultLoadControl());
+    Result result2 = simulate(trace, DASH_LADDER, DASH_CHUNK_DURATION_MS, true,
+        new DefaultLoadControl());
+    assertEquals(result1.toString(), result2.toString());
+  }
+
+  public void testLoadControlDeterminesStartup() {
+    NetworkTrace trace = NetworkTrace.createConstant(2000000);
+    Result quickStartResult = simulate(trace, DASH_LADDER, DASH_CHUNK_DURATION_MS, false,
+        newLoadControl(500));
+    Result slowStartResult = simulate(trace, DASH_LADDER, DASH_CHUNK_DURATION_MS, false,
+        newLoadControl(10000));
+    assertTrue(quickStartResult.startupDurationMs < slowStartResult.startupDurationMs);
+  }
+
+  public void testCompareSelectionsOnConstantTrace() {
+    NetworkTrace trace = NetworkTrace.createConstant(3000000);
+    for (boolean hls : new boolean[] {false, true}) {
+      Result[] results = compareSelections(trace, hls);
+      for (Result result : results) {
+        assertEquals(0, result.stallCount);
+        assertTrue(result.switchCount <= 2);
+      }
+    }
+  }
+
+  public void testCompareSelectionsOnVolatileTrace() {
+    NetworkTrace trace = NetworkTrace.createVolatile(new Random(0), 200, 300000, 6000000);
+    for (boolean hls : new boolean[] {false, true}) {
+      Result[] results = compareSelections(trace, hls);
+      Result adaptiveResult = results[0];
+      Result bufferBasedResult = results[1];
+      // The buffer based selection should switch less, without stalling more or settling for a
+      // lower bitrate.
+      assertTrue(bufferBasedResult.switchCount < adaptiveResult.switchCount);
+      assertTrue(bufferBasedResult.stallDurationMs <= adaptiveResult.stallDurationMs);
+      assertTrue(bufferBasedResult.averageBitrate >= adaptiveResult.averageBitrate);
+    }
+  }
+
+  public void testCompareSelectionsOnPoorTrace() {
+    NetworkTrace trace = NetworkTrace.createVolatile(new Random(1), 200, 100000, 3000000);
+    for (boolean hls : new boolean[] {false, true}) {
+      Result[] results = compareSelections(trace, hls);
+      Result adaptiveResult = results[0];
+      Result bufferBasedResult = results[1];
+      assertTrue(bufferBasedResult.switchCount <= adaptiveResult.switchCount);
+      for (Result result : results) {
+        assertTrue(result.getRebufferRatio() < 0.1);
+      }
+    }
+  }
+
+  /**
+   * Simulates the adaptive and buffer based selections over a trace, checking that each plays
+   * the content to the end.
+   *
+   * @param trace The trace.
+   * @param hls Whether to simulate the HLS rather than the DASH ladder.
+   * @return The results of the adaptive and buffer based selections, in that order.
+   */
+  private static Result[] compareSelections(NetworkTrace trace, boolean hls) {
+    TrackGroup trackGroup = hls ? HLS_LADDER : DASH_LADDER;
+    long chunkDurationMs = hls ? HLS_CHUNK_DURATION_MS : DASH_CHUNK_DURATION_MS;
+    Result[] results = new Result[] {
+        simulate(trace, trackGroup, chunkDurationMs, false, new DefaultLoadControl()),
+        simulate(trace, trackGroup, chunkDurationMs, true, new DefaultLoadControl())};
+    for (Result result : results) {
+      assertEquals(CONTENT_DURATION_MS, result.playedDurationMs);
+      assertTrue(result.bytesLoaded > 0);
+    }
+    return results;
+  }
+
+  private static Result simulate(NetworkTrace trace, TrackGroup trackGroup, long chunkDurationMs,
+      boolean bufferBased, LoadControl loadControl) {
+    TrackSelectionSimulator simulator = new TrackSelectionSimulator(trace);
+    TrackSelection.Factory factory = bufferBased
+        ? new BufferBasedTrackSelection.Factory(simulator.getBandwidthMeter())
+        : new AdaptiveVideoTrackSelection.Factory(simulator.getBandwidthMeter());
+    return simulator.simulate(factory, trackGroup, CONTENT_DURATION_MS, chunkDurationMs,
+        loadControl);
+  }
+
+  private static LoadControl newLoadControl(int bufferForPlaybackMs) {
+    return new DefaultLoadControl(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+        DefaultLoadControl.DEFAULT_MIN_BUFFER_MS, DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+        bufferForPlaybackMs, DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS);
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.util.Clock;
+
+/**
+ * A {@link Clock} whose time only advances when {@link #advance(long)} is called.
+ */
+public final class FakeClock implements Clock {
+
+  private long timeMs;
+
+  /**
+   * @param initialTimeMs The initial time, in milliseconds.
+   */
+  public FakeClock(long initialTimeMs) {
+    timeMs = initialTimeMs;
+  }
+
+  /**
+   * Advances the time.
+   *
+   * @param durationMs The duration by which to advance, in milliseconds.
+   */
+  public synchronized void advance(long durationMs) {
+    timeMs += durationMs;
+  }
+
+  @Override
+  public synchronized long elapsedRealtime() {
+    return timeMs;
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A network throughput trace, consisting of consecutive phases of constant bandwidth. The trace
+ * repeats indefinitely.
+ */
+public final class NetworkTrace {
+
+  private final long[] durationsMs;
+  private final long[] bitrates;
+  private final long totalDurationMs;
+
+  /**
+   * @param durationsMs The duration of each phase, in milliseconds. Each must be positive.
+   * @param bitrates The bandwidth of each phase, in bits per second.
+   */
+  public NetworkTrace(long[] durationsMs, long[] bitrates) {
+    Assertions.checkArgument(durationsMs.length > 0 && durationsMs.length == bitrates.length);
+    this.durationsMs = durationsMs;
+    this.bitrates = bitrates;
+    long totalDurationMs = 0;
+    for (long durationMs : durationsMs) {
+      Assertions.checkArgument(durationMs > 0);
+      totalDurationMs += durationMs;
+    }
+    this.totalDurationMs = totalDurationMs;
+  }
+
+  /**
+   * Returns a trace with a single phase of constant bandwidth.
+   *
+   * @param bitrate The bandwidth, in bits per second.
+   */
+  public static NetworkTrace createConstant(long bitrate) {
+    return new NetworkTrace(new long[] {1000}, new long[] {bitrate});
+  }
+
+  /**
+   * Returns a pseudo-random trace resembling a mobile network, whose bandwidth changes every 1-5
+   * seconds and whose distribution is skewed towards the lower end of the range.
+   *
+   * @param random The source of randomness. Use a fixed seed for a deterministic trace.
+   * @param phaseCount The number of phases.
+   * @param minBitrate The minimum bandwidth, in bits per second.
+   * @param maxBitrate The maximum bandwidth, in bits per second.
+   */
+  public static NetworkTrace createVolatile(Random random, int phaseCount, long minBitrate,
+      long maxBitrate) {
+    long[] durationsMs = new long[phaseCount];
+    long[] bitrates = new long[phaseCount];
+    for (int i = 0; i < phaseCount; i++) {
+      durationsMs[i] = 1000 + random.nextInt(4000);
+      bitrates[i] = minBitrate
+          + (long) ((maxBitrate - minBitrate) * random.nextDouble() * random.nextDouble());
+    }
+    return new NetworkTrace(durationsMs, bitrates);
+  }
+
+  /**
+   * Parses a recorded trace. Each line consists of a phase duration in milliseconds and the
+   * bandwidth during that phase in bits per second, separated by whitespace or a comma. Empty
+   * lines and lines starting with {@code #} are ignored.
+   *
+   * @param reader The reader from which to read the trace.
+   * @return The parsed trace.
+   * @throws IOException If an error occurs reading or parsing the trace.
+   */
+  public static NetworkTrace parse(Reader reader) throws IOException {
+    BufferedReader bufferedReader = new BufferedReader(reader);
+    ArrayList<long[]> phases = new ArrayList<>();
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("[\\s,]+");
+      try {
+        if (fields.length != 2) {
+          throw new NumberFormatException();
+        }
+        long durationMs = Long.parseLong(fields[0]);
+        long bitrate = Long.parseLong(fields[1]);
+        if (durationMs <= 0 || bitrate < 0) {
+          throw new NumberFormatException();
+        }
+        phases.add(new long[] {durationMs, bitrate});
+      } catch (NumberFormatException e) {
+        throw new ParserException("Invalid trace line: " + line);
+      }
+    }
+    if (phases.isEmpty()) {
+      throw new ParserException("Empty trace");
+    }
+    long[] durationsMs = new long[phases.size()];
+    long[] bitrates = new long[phases.size()];
+    for (int i = 0; i < phases.size(); i++) {
+      durationsMs[i] = phases.get(i)[0];
+      bitrates[i] = phases.get(i)[1];
+    }
+    return new NetworkTrace(durationsMs, bitrates);
+  }
+
+  /**
+   * Returns the bandwidth at the specified time.
+   *
+   * @param timeMs The time since the start of the trace, in milliseconds.
+   * @return The bandwidth, in bits per second.
+   */
+  public long getBitrate(long timeMs) {
+    long phaseTimeMs = timeMs % totalDurationMs;
+    for (int i = 0; i < durationsMs.length; i++) {
+      if (phaseTimeMs < durationsMs[i]) {
+        return bitrates[i];
+      }
+      phaseTimeMs -= durationsMs[i];
+    }
+    // Never happens.
+    throw new IllegalStateException();
+  }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.BaseRenderer;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelections;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.ThroughputBandwidthMeter;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Deterministically simulates the adaptive playback of a single track group over a bandwidth
+ * trace, in the same way as a {@code ChunkSampleStream} driven by a {@link LoadControl}.
+ * <p>
+ * Chunks are loaded one at a time whilst the load control permits. Before each load the selection
+ * is updated with the buffered duration, and the chunk is loaded in the selected format. Loaded
+ * data is held in allocations obtained from the load control's allocator until it's played.
+ * Playback starts, or resumes after a stall, when the load control permits.
+ * <p>
+ * Time is measured by a virtual {@link Clock}, which is used by {@link #getBandwidthMeter()}. The
+ * simulation doesn't depend on the behavior of android classes, and so can run on the JVM.
+ */
+public final class TrackSelectionSimulator {
+
+  /**
+   * The result of a simulation.
+   */
+  public static final class Result {
+
+    /**
+     * The time taken to start playback, in milliseconds.
+     */
+    public final long startupDurationMs;
+    /**
+     * The total duration of stalls after playback started, in milliseconds.
+     */
+    public final long stallDurationMs;
+    /**
+     * The number of stalls after playback started.
+     */
+    public final int stallCount;
+    /**
+     * The average bitrate of the loaded chunks, in bits per second.
+     */
+    public final long averageBitrate;
+    /**
+     * The number of times the selected format changed between consecutive chunks.
+     */
+    public final int switchCount;
+    /**
+     * The duration of media played, in milliseconds.
+     */
+    public final long playedDurationMs;
+    /**
+     * The total number of bytes loaded.
+     */
+    public final long bytesLoaded;
+
+    private Result(long startupDurationMs, long stallDurationMs, int stallCount,
+        long averageBitrate, int switchCount, long playedDurationMs, long bytesLoaded) {
+      this.startupDurationMs = startupDurationMs;
+      this.stallDurationMs = stallDurationMs;
+      this.stallCount = stallCount;
+      this.averageBitrate = averageBitrate;
+      this.switchCount = switchCount;
+      this.playedDurationMs = playedDurationMs;
+      this.bytesLoaded = bytesLoaded;
+    }
+
+    /**
+     * Returns the ratio of the stall duration to the played duration.
+     */
+    public double getRebufferRatio() {
+      return playedDurationMs == 0 ? 0 : (double) stallDurationMs / playedDurationMs;
+    }
+
+    @Override
+    public String toString() {
+      return "startupMs=" + startupDurationMs + ", stallMs=" + stallDurationMs + ", stalls="
+          + stallCount + ", rebufferRatio=" + getRebufferRatio() + ", averageBitrate="
+          + averageBitrate + ", switches=" + switchCount + ", bytesLoaded=" + bytesLoaded;
+    }
+
+  }
+
+  private static final DataSpec DATA_SPEC = new DataSpec(Uri.parse("http://localhost/media"));
+  private static final int TICK_MS = 10;
+  private static final int REQUEST_LATENCY_MS = 50;
+
+  private final NetworkTrace trace;
+  private final FakeClock clock;
+  private final ThroughputBandwidthMeter bandwidthMeter;
+
+  private boolean simulated;
+
+  /**
+   * @param trace The bandwidth trace, as pairs of phase duration (ms) and bandwidth (bits/sec).
+   *     The trace is repeated if it's shorter than the simulation.
+   */
+  public TrackSelectionSimulator(long[][] trace) {
+    this(toNetworkTrace(trace));
+  }
+
+  /**
+   * @param trace The bandwidth trace. The trace is repeated if it's shorter than the simulation.
+   */
+  public TrackSelectionSimulator(NetworkTrace trace) {
+    this.trace = trace;
+    clock = new FakeClock(0);
+    bandwidthMeter = new ThroughputBandwidthMeter(null, null,
+        new ThroughputBandwidthMeter.SlidingPercentileEstimator(),
+        ThroughputBandwidthMeter.DEFAULT_SAMPLE_INTERVAL_MS, clock);
+  }
+
+  /**
+   * Returns a group of H.264 video formats with the specified bitrates, with resolutions typical
+   * for each bitrate.
+   *
+   * @param bitrates The bitrates, in bits per second.
+   * @return The group.
+   */
+  public static TrackGroup createVideoLadder(int... bitrates) {
+    Format[] formats = new Format[bitrates.length];
+    for (int i = 0; i < bitrates.length; i++) {
+      int bitrate = bitrates[i];
+      int height = bitrate < 500000 ? 240 : bitrate < 1000000 ? 360 : bitrate < 2000000 ? 480
+          : bitrate < 4000000 ? 720 : 1080;
+      formats[i] = Format.createVideoSampleFormat(Integer.toString(i), MimeTypes.VIDEO_H264, null,
+          bitrate, Format.NO_VALUE, height * 16 / 9, height, Format.NO_VALUE, null, null);
+    }
+    return new TrackGroup(formats);
+  }
+
+  /**
+   * Returns the bandwidth meter that measures the simulated loads, which should be passed to the
+   * selection being simulated.
+   */
+  public BandwidthMeter getBandwidthMeter() {
+    return bandwidthMeter;
+  }
+
+  /**
+   * Runs the simulation with a load control that stops loading when the buffered duration exceeds
+   * a maximum, and resumes when it falls below a minimum. May only be called once.
+   *
+   * @param factory The factory for the selection.
+   * @param group The track group to select from.
+   * @param contentDurationMs The duration of the content to play, in milliseconds.
+   * @param chunkDurationMs The duration of each chunk, in milliseconds.
+   * @param minBufferMs The buffered duration below which loading resumes, in milliseconds.
+   * @param maxBufferMs The buffered duration above which loading stops, in milliseconds.
+   * @param bufferForPlaybackMs The buffered duration required to start or resume playback, in
+   *     milliseconds.
+   * @return The result of the simulation.
+   */
+  public Result simulate(TrackSelection.Factory factory, TrackGroup group, long contentDurationMs,
+      long chunkDurationMs, long minBufferMs, long maxBufferMs, long bufferForPlaybackMs) {
+    return simulate(factory, group, contentDurationMs, chunkDurationMs,
+        new ThresholdLoadControl(minBufferMs, maxBufferMs, bufferForPlaybackMs));
+  }
+
+  /**
+   * Runs the simulation. May only be called once.
+   *
+   * @param factory The factory for the selection.
+   * @param group The track group to select from.
+   * @param contentDurationMs The duration of the content to play, in milliseconds.
+   * @param chunkDurationMs The duration of each chunk, in milliseconds.
+   * @param loadControl The load control to simulate.
+   * @return The result of the simulation.
+   */
+  public Result simulate(TrackSelection.Factory factory, TrackGroup group, long contentDurationMs,
+      long chunkDurationMs, LoadControl loadControl) {
+    if (simulated) {
+      throw new IllegalStateException();
+    }
+    simulated = true;
+
+    int[] tracks = new int[group.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    TrackSelection selection = factory.createTrackSelection(group, tracks);
+    loadControl.onPrepared();
+    loadControl.onTracksSelected(new Renderer[] {new SimulatedRenderer()},
+        new TrackGroupArray(group), new TrackSelections<>(null, selection));
+    Allocator allocator = loadControl.getAllocator();
+    int allocationLength = allocator.getIndividualAllocationLength();
+
+    // The allocations of chunks that have been loaded but not yet played.
+    ArrayDeque<ArrayList<Allocation>> bufferedChunkAllocations = new ArrayDeque<>();
+    ArrayList<Allocation> loadingAllocations = null;
+    long loadedDurationMs = 0;
+    long playedDurationMs = 0;
+    Object transfer = null;
+    Format loadingFormat = null;
+    Format previousFormat = null;
+    long bytesRemaining = 0;
+    long bytesPendingAllocation = 0;
+    long latencyRemainingMs = 0;
+    boolean playing = false;
+    boolean started = false;
+    long startupDurationMs = 0;
+    long stallDurationMs = 0;
+    int stallCount = 0;
+    long bitrateSum = 0;
+    int chunkCount = 0;
+    int switchCount = 0;
+    long bytesLoaded = 0;
+
+    while (playedDurationMs < contentDurationMs) {
+      long bufferedDurationMs = loadedDurationMs - playedDurationMs;
+      boolean loading = loadControl.shouldContinueLoading(bufferedDurationMs * 1000);
+      // Start loading the next chunk.
+      if (transfer == null && loading && loadedDurationMs < contentDurationMs) {
+        selection.updateSelectedTrack(bufferedDurationMs * 1000);
+        loadingFormat = selection.getSelectedFormat();
+        if (previousFormat != null && loadingFormat != previousFormat) {
+          switchCount++;
+        }
+        previousFormat = loadingFormat;
+        loadingAllocations = new ArrayList<>();
+        transfer = new Object();
+        bytesRemaining = loadingFormat.bitrate * chunkDurationMs / 8000;
+        latencyRemainingMs = REQUEST_LATENCY_MS;
+        bandwidthMeter.onTransferStart(transfer, DATA_SPEC);
+      }
+      long nowMs = clock.elapsedRealtime();
+      clock.advance(TICK_MS);
+      // Continue the load.
+      if (transfer != null) {
+        latencyRemainingMs -= TICK_MS;
+        if (latencyRemainingMs < 0) {
+          int bytes = (int) Math.min(bytesRemaining, trace.getBitrate(nowMs) * TICK_MS / 8000);
+          bytesRemaining -= bytes;
+          bytesLoaded += bytes;
+          bandwidthMeter.onBytesTransferred(transfer, bytes);
+          bytesPendingAllocation += bytes;
+          while (bytesPendingAllocation > 0
+              && (bytesPendingAllocation >= allocationLength || bytesRemaining == 0)) {
+            loadingAllocations.add(allocator.allocate());
+            bytesPendingAllocation -= allocationLength;
+          }
+          if (bytesRemaining == 0) {
+            bandwidthMeter.onTransferEnd(transfer);
+            transfer = null;
+            bytesPendingAllocation = 0;
+            bufferedChunkAllocations.add(loadingAllocations);
+            loadedDurationMs += chunkDurationMs;
+            bitrateSum += loadingFormat.bitrate;
+            chunkCount++;
+          }
+        }
+      }
+      // Continue playback.
+      bufferedDurationMs = loadedDurationMs - playedDurationMs;
+      if (playing) {
+        if (bufferedDurationMs > 0) {
+          playedDurationMs += Math.min(TICK_MS, bufferedDurationMs);
+          // Release the allocations of chunks that have been played.
+          while (!bufferedChunkAllocations.isEmpty() && playedDurationMs
+              >= loadedDurationMs - (bufferedChunkAllocations.size() - 1) * chunkDurationMs) {
+            releaseAll(allocator, bufferedChunkAllocations.remove());
+          }
+        } else {
+          playing = false;
+          stallCount++;
+        }
+      } else if (loadedDurationMs >= contentDurationMs
+          || loadControl.shouldStartPlayback(bufferedDurationMs * 1000, started)) {
+        playing = true;
+        started = true;
+      } else if (started) {
+        stallDurationMs += TICK_MS;
+      } else {
+        startupDurationMs += TICK_MS;
+      }
+    }
+    while (!bufferedChunkAllocations.isEmpty()) {
+      releaseAll(allocator, bufferedChunkAllocations.remove());
+    }
+    loadControl.onStopped();
+    return new Result(startupDurationMs, stallDurationMs, stallCount,
+        chunkCount == 0 ? 0 : bitrateSum / chunkCount, switchCount, playedDurationMs, bytesLoaded);
+  }
+
+  private static NetworkTrace toNetworkTrace(long[][] trace) {
+    long[] durationsMs = new long[trace.length];
+    long[] bitrates = new long[trace.length];
+    for (int i = 0; i < trace.length; i++) {
+      durationsMs[i] = trace[i][0];
+      bitrates[i] = trace[i][1];
+    }
+    return new NetworkTrace(durationsMs, bitrates);
+  }
+
+  private static void releaseAll(Allocator allocator, ArrayList<Allocation> allocations) {
+    allocator.release(allocations.toArray(new Allocation[allocations.size()]));
+  }
+
+  /**
+   * A load control with fixed buffer thresholds.
+   */
+  private static final class ThresholdLoadControl implements LoadControl {
+
+    private final DefaultAllocator allocator;
+    private final long minBufferUs;
+    private final long maxBufferUs;
+    private final long bufferForPlaybackUs;
+
+    private boolean loading;
+
+    public ThresholdLoadControl(long minBufferMs, long maxBufferMs, long bufferForPlaybackMs) {
+      allocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+      minBufferUs = minBufferMs * 1000;
+      maxBufferUs = maxBufferMs * 1000;
+      bufferForPlaybackUs = bufferForPlaybackMs * 1000;
+      loading = true;
+    }
+
+    @Override
+    public void onPrepared() {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups,
+        TrackSelections<?> trackSelections) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onStopped() {
+      allocator.reset();
+    }
+
+    @Override
+    public void onReleased() {
+      allocator.reset();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+      return allocator;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, boolean rebuffering) {
+      return bufferedDurationUs >= bufferForPlaybackUs;
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs) {
+      if (bufferedDurationUs > maxBufferUs) {
+        loading = false;
+      } else if (bufferedDurationUs < minBufferUs) {
+        loading = true;
+      }
+      return loading;
+    }
+
+  }
+
+  /**
+   * A renderer that's only used to inform the load control of the selected track type.
+   */
+  private static final class SimulatedRenderer extends BaseRenderer {
+
+    public SimulatedRenderer() {
+      super(C.TRACK_TYPE_VIDEO);
+    }
+
+    @Override
+    public int supportsFormat(Format format) {
+      return FORMAT_HANDLED;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return false;
+    }
+
+  }
+
+}